@@ -0,0 +1,261 @@
+/*
+
+*/
+
+import fractals.io.ModelCache;
+import fractals.io.ScreenshotWriter;
+import fractals.pipeline.FractalPipeline;
+import fractals.pipeline.InstancedModel;
+import fractals.pipeline.LSystemModel;
+import fractals.pipeline.LineStrip;
+import fractals.pipeline.PackedModel;
+import fractals.pipeline.RenderContext;
+import fractals.util.Catalog;
+import fractals.util.ModelSpec;
+import renderer.scene.*;
+import renderer.pipeline.*;
+import renderer.framebuffer.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+   Render every model in the {@link Catalog}, at one or more
+   resolutions, into image files, without opening any windows.
+   <p>
+   Each model is built and rendered by a task on a pool of worker
+   threads. Every task uses its own {@link Scene} and its own
+   {@link FrameBuffer}s, so the tasks share nothing but the
+   {@link Rasterize#doClipping} flag, which is set once, before the tasks
+   start (with {@link RenderContext#setClipping}).
+   <p>
+   Usage:
+   <pre>{@code
+      java -cp .;renderer_2.jar BatchRenderAll [options] [model ...]
+
+      -size WxH       add a resolution to render (default 1024x1024)
+      -format FMT     png, ppm, qoi, or raw (default png)
+      -out DIR        directory for the image files (default batch)
+      -threads N      number of worker threads (default: number of cores)
+      -cache DIR      model cache directory, or "off" (default .fractal-cache)
+      model           a model, such as "C_Curve(18)" (default: the whole catalog)
+   }</pre>
+   For each model, the program reports the time it took to build the
+   model (or to read it from the model cache), the time it took to
+   render each image, and the rendering throughput in line segments per
+   second. A model that cannot be built or rendered gets a failure row,
+   the rest of the models are still rendered, and the program exits
+   with status 1 at the end.
+*/
+public class BatchRenderAll
+{
+   /** The measurements made by one rendering task. */
+   private static final class Result
+   {
+      ModelSpec spec;
+      long vertices;
+      long segments;
+      long generateNanos;
+      final List<String> sizes = new ArrayList<>();
+      final List<Long> renderNanos = new ArrayList<>();
+   }
+
+
+   public static void main(String[] args) throws Exception
+   {
+      // There is no GUI in this program.
+      System.setProperty("java.awt.headless", "true");
+
+      final List<int[]> sizes = new ArrayList<>();
+      ScreenshotWriter.Format format = ScreenshotWriter.Format.PNG;
+      Path outDir = Paths.get("batch");
+      int threads = Runtime.getRuntime().availableProcessors();
+      final List<ModelSpec> specs = new ArrayList<>();
+
+      for (int i = 0; i < args.length; ++i)
+      {
+         if ("-size".equals(args[i]))
+         {
+            final String[] wh = args[++i].toLowerCase().split("x");
+            sizes.add(new int[]{Integer.parseInt(wh[0]), Integer.parseInt(wh[1])});
+         }
+         else if ("-format".equals(args[i]))
+         {
+            format = ScreenshotWriter.Format.valueOf(args[++i].toUpperCase());
+         }
+         else if ("-out".equals(args[i]))
+         {
+            outDir = Paths.get(args[++i]);
+         }
+         else if ("-threads".equals(args[i]))
+         {
+            threads = Integer.parseInt(args[++i]);
+         }
+         else if ("-cache".equals(args[i]))
+         {
+            System.setProperty(ModelCache.DIR_PROPERTY, args[++i]);
+         }
+         else
+         {
+            specs.add(ModelSpec.parse(args[i]));
+         }
+      }
+      if (sizes.isEmpty()) sizes.add(new int[]{1024, 1024});
+      if (specs.isEmpty()) specs.addAll(Catalog.specs());
+
+      Files.createDirectories(outDir);
+      RenderContext.setClipping(true);
+      final ModelCache cache = ModelCache.openDefault();
+
+      System.out.printf("Rendering %d models at %d resolution(s) with %d thread(s).\n",
+                        specs.size(), sizes.size(), threads);
+
+      final long start = System.nanoTime();
+      final ExecutorService pool = Executors.newFixedThreadPool(threads);
+      long images = 0;
+      long segmentsDrawn = 0;
+      long renderTotal = 0;
+      int failed = 0;
+      try
+      {
+         final List<Future<Result>> futures = new ArrayList<>();
+         for (final ModelSpec spec : specs)
+         {
+            final ScreenshotWriter.Format f = format;
+            final Path dir = outDir;
+            futures.add(pool.submit(() -> renderModel(spec, cache, sizes, f, dir)));
+         }
+
+         // Report the results in catalog order.
+         System.out.printf("%-36s %9s %9s %9s %11s %10s %9s\n",
+                           "model", "vertices", "segments", "gen ms",
+                           "size", "render ms", "Mseg/s");
+         for (int m = 0; m < futures.size(); ++m)
+         {
+            final Result r;
+            try
+            {
+               r = futures.get(m).get();
+            }
+            catch (ExecutionException e) // this model failed, report it and go on
+            {
+               ++failed;
+               final Throwable cause = (null != e.getCause()) ? e.getCause() : e;
+               System.out.printf("%-36s FAILED: %s\n", specs.get(m), cause);
+               System.err.printf("ERROR! Could not render %s\n", specs.get(m));
+               cause.printStackTrace(System.err);
+               continue;
+            }
+            for (int i = 0; i < r.sizes.size(); ++i)
+            {
+               final long ns = r.renderNanos.get(i);
+               System.out.printf("%-36s %9s %9s %9s %11s %10.2f %9.2f\n",
+                                 (0 == i) ? r.spec.toString() : "",
+                                 (0 == i) ? Long.toString(r.vertices) : "",
+                                 (0 == i) ? Long.toString(r.segments) : "",
+                                 (0 == i) ? String.format("%.2f", r.generateNanos / 1e6) : "",
+                                 r.sizes.get(i),
+                                 ns / 1e6,
+                                 (ns > 0) ? r.segments * 1e3 / ns : 0.0);
+               ++images;
+               segmentsDrawn += r.segments;
+               renderTotal += ns;
+            }
+         }
+      }
+      finally
+      {
+         pool.shutdown();
+      }
+
+      final double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.printf("Wrote %d images to %s in %.2f s (%.1f images/s, %.2f Mseg/s while rendering).\n",
+                        images, outDir, seconds, images / seconds,
+                        (renderTotal > 0) ? segmentsDrawn * 1e3 / renderTotal : 0.0);
+      if (failed > 0)
+      {
+         System.out.printf("%d of %d models failed.\n", failed, specs.size());
+         System.exit(1);
+      }
+   }
+
+
+   /**
+      Build (or load) one model and render it at every requested size.
+   */
+   private static Result renderModel(final ModelSpec spec,
+                                     final ModelCache cache,
+                                     final List<int[]> sizes,
+                                     final ScreenshotWriter.Format format,
+                                     final Path outDir) throws IOException
+   {
+      final Result result = new Result();
+      result.spec = spec;
+
+      long t0 = System.nanoTime();
+      final Model model = (null == cache) ? spec.build() : cache.get(spec);
+      result.generateNanos = System.nanoTime() - t0;
+
+      // Close a packed model even if a size fails, since the batch goes on.
+      try
+      {
+         if (model instanceof PackedModel)
+         {
+            result.vertices = ((PackedModel)model).getVertexCount();
+            result.segments = ((PackedModel)model).getSegmentCount();
+         }
+         else if (model instanceof InstancedModel)
+         {
+            result.vertices = 0;
+            result.segments = ((InstancedModel)model).getSegmentCount();
+         }
+         else if (model instanceof LSystemModel)
+         {
+            result.vertices = 0;
+            result.segments = ((LSystemModel)model).getSegmentCount();
+         }
+         else
+         {
+            result.vertices = model.vertexList.size();
+            result.segments = LineStrip.segmentCount(model);
+         }
+
+         for (final int[] size : sizes)
+         {
+            // One independent Scene and FrameBuffer for every image.
+            final Scene scene = new Scene(spec.toString());
+            scene.addPosition(new Position(model));
+            scene.getPosition(0).translation(0.0, 0.0, -1.0);
+            final FrameBuffer fb = new FrameBuffer(size[0], size[1]);
+
+            t0 = System.nanoTime();
+            FractalPipeline.render(scene, fb);
+            result.renderNanos.add(System.nanoTime() - t0);
+            result.sizes.add(size[0] + "x" + size[1]);
+
+            // RAW file names already end with the image's dimensions.
+            final String name = (ScreenshotWriter.Format.RAW == format)
+                              ? spec.fileName()
+                              : spec.fileName() + "_" + size[0] + "x" + size[1];
+            ScreenshotWriter.write(format, fb.pixel_buffer, fb.width, fb.height,
+                                   outDir.resolve(format.fileName(name, fb.width, fb.height)));
+         }
+      }
+      finally
+      {
+         if (model instanceof PackedModel)
+         {
+            ((PackedModel)model).close();
+         }
+      }
+      return result;
+   }
+}
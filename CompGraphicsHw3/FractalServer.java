@@ -0,0 +1,104 @@
+/*
+
+*/
+
+import fractals.io.ModelCache;
+import fractals.io.RenderService;
+import fractals.util.ModelBudget;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+   Serve fractal images over HTTP, on this machine, without any windows
+   (see {@link RenderService} for the requests that it answers).
+   <p>
+   Usage:
+   <pre>{@code
+      java -cp .;renderer_2.jar FractalServer [options]
+
+      -port N         the port to listen on (default 8080)
+      -bind ADDR      the address to listen on (default 127.0.0.1, only this machine)
+      -threads N      the most images that are rendered at the same time (default: number of cores)
+      -images SIZE    bytes of encoded images to cache, such as 64m (default 32m)
+      -segments N     the most line segments (or vertices) of a model (default 67108864)
+      -offheap SIZE   bytes of direct memory and temporary files for the packed models (default 4g)
+   }</pre>
+   For example,
+   <pre>{@code
+      curl -o c.png "http://127.0.0.1:8080/render?model=C_Curve&n=18&w=1024&h=1024&z=-1.5&proj=ortho"
+      curl http://127.0.0.1:8080/metrics
+   }</pre>
+   The models are kept within the heap budget of the
+   {@code fractals.heapBudget} property (and the off-heap budget of the
+   {@code fractals.offHeapBudget} property, when there is no {@code -offheap}
+   option) and read from the model cache
+   of the {@code fractals.cache} property, like in the other programs.
+   The server's counters are printed when it is stopped.
+*/
+public class FractalServer
+{
+   public static void main(String[] args) throws IOException
+   {
+      // There is no GUI in this program.
+      System.setProperty("java.awt.headless", "true");
+
+      int port = 8080;
+      String bind = "127.0.0.1";
+      int threads = Runtime.getRuntime().availableProcessors();
+      long images = 32L << 20;
+      long segments = RenderService.DEFAULT_MAX_SEGMENTS;
+      if (null == System.getProperty(ModelBudget.OFF_HEAP_PROPERTY))
+      {
+         // Do not let a request fill the disk with a packed model's temporary file.
+         System.setProperty(ModelBudget.OFF_HEAP_PROPERTY, "4g");
+      }
+      for (int i = 0; i < args.length; ++i)
+      {
+         if ("-port".equals(args[i]))
+         {
+            port = Integer.parseInt(args[++i]);
+         }
+         else if ("-bind".equals(args[i]))
+         {
+            bind = args[++i];
+         }
+         else if ("-threads".equals(args[i]))
+         {
+            threads = Integer.parseInt(args[++i]);
+         }
+         else if ("-images".equals(args[i]))
+         {
+            images = ModelBudget.parseSize(args[++i]);
+         }
+         else if ("-segments".equals(args[i]))
+         {
+            segments = Long.parseLong(args[++i]);
+         }
+         else if ("-offheap".equals(args[i]))
+         {
+            System.setProperty(ModelBudget.OFF_HEAP_PROPERTY, args[++i]);
+         }
+         else
+         {
+            System.err.printf("ERROR! Unknown option %s\n", args[i]);
+            System.exit(1);
+         }
+      }
+
+      final RenderService service = new RenderService(new InetSocketAddress(bind, port),
+                                                      ModelBudget.fromProperties(),
+                                                      ModelCache.openDefault(),
+                                                      images, threads, segments);
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+         service.stop(1);
+         System.out.print(service.metrics());
+      }, "fractal-server-stop"));
+      service.start();
+
+      final InetSocketAddress address = service.getAddress();
+      System.out.printf("Serving fractals at http://%s:%d/render?model=C_Curve&n=18"
+                      + " (and the counters at /metrics).\n",
+                        address.getHostString(), address.getPort());
+   }
+}//FractalServer
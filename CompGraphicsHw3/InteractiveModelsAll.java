@@ -5,20 +5,43 @@
 */
 
 import fractals.*;
+import fractals.io.FrameCache;
+import fractals.io.LatencyRecorder;
+import fractals.jfr.FrameBufferAllocationEvent;
+import fractals.io.ModelCache;
+import fractals.io.ScreenshotWriter;
+import fractals.pipeline.FractalPipeline;
+import fractals.pipeline.InstancedModel;
+import fractals.pipeline.LSystemModel;
+import fractals.pipeline.LineStrip;
+import fractals.pipeline.PackedModel;
+import fractals.pipeline.ParametricModel;
+import fractals.pipeline.Rasterizer;
+import fractals.pipeline.RenderContext;
+import fractals.pipeline.RenderStats;
+import fractals.pipeline.ViewportGrid;
+import fractals.util.Catalog;
+import fractals.util.ModelBudget;
+import fractals.util.ModelMemory;
+import fractals.util.ModelSpec;
 import renderer.scene.*;
-import renderer.scene.util.PointCloud;
 import renderer.pipeline.*;
 import renderer.framebuffer.*;
 
 import javax.swing.JFrame;
+import javax.swing.Timer;
 import java.awt.BorderLayout;
 import java.awt.event.KeyListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.ComponentListener;
 import java.awt.event.ComponentEvent;
 import java.io.File;
-import java.util.List;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
    You do not need to modify this file.
@@ -27,17 +50,44 @@ public class InteractiveModelsAll implements KeyListener, ComponentListener
 {
    private final FrameBufferPanel fbp; // The event handlers need
    private final Scene scene;          // access to these fields.
-   private final List<Model> modelArray = new ArrayList<>();
+   private final List<ModelSpec> specArray = Catalog.specs();
+   private final ModelBudget budget = ModelBudget.fromProperties();
+   private final ModelCache cache = ModelCache.openDefault();
+   private final FrameCache frameCache = FrameCache.fromProperties();
    private int currentModel = 0;
    private double xPosition = 0.0;
    private double yPosition = 0.0;
    private double zPosition = -1.0;
    private boolean displayTransformations = false;
-   private Model savedModel = null; // used to hold a PointCloud model
    private int pointSize = 0;       // used by the point clouds
 
+   private final RenderStats renderStats = new RenderStats();
+
+   // The options of every frame (clipping, debugging, point cloud, chaos
+   // game, statistics). The keys change this object, not static flags.
+   private RenderContext context = RenderContext.DEFAULT;
+   private boolean showStats = false;  // draw the statistics over the image
+   private boolean printStats = false; // print the statistics of each frame
+
    private boolean takeScreenshot = false;
    private int screenshotNumber = 0;
+   private final ScreenshotWriter screenshotWriter = new ScreenshotWriter();
+
+   private final LatencyRecorder latency = new LatencyRecorder();
+   private int latencyFileNumber = 0;
+
+   // Sweep the parameter of a ParametricModel at about 60 frames per second.
+   private final Timer sweep = new Timer(16, e -> sweepParameter());
+   private double sweepDirection = 1.0;
+
+   // Draw the Sierpinski and box fractals by the chaos game.
+   private boolean chaosGame = false;
+   private long chaosGamePoints = 1L << 21; // points per frame
+
+   // Show several catalog entries side by side, each one rendered on its own thread.
+   private final ViewportGrid grid = new ViewportGrid();
+   private int gridCells = 0; // 0 when the grid is off
+   private CompletableFuture<long[]> gridFrame = CompletableFuture.completedFuture(null);
 
    /**
       This constructor instantiates the Scene object
@@ -49,152 +99,27 @@ public class InteractiveModelsAll implements KeyListener, ComponentListener
       // Create the Scene object that we shall render
       scene = new Scene();
 
-      modelArray.add(new Canopy(30, 0));
-      modelArray.add(new Canopy(31, 1));
-      modelArray.add(new Canopy(32, 2));
-      modelArray.add(new Canopy(33, 3));
-      modelArray.add(new Canopy(34, 4));
-      modelArray.add(new Canopy(35, 5));
-      modelArray.add(new Canopy(36, 6));
-      modelArray.add(new Canopy(37, 7));
-      modelArray.add(new Canopy(38, 8));
-      modelArray.add(new Canopy(39, 9));
-      modelArray.add(new Canopy(40, 10));
-      modelArray.add(new Canopy(41, 11));
-      modelArray.add(new Canopy(42, 12));
-      modelArray.add(new Canopy(43, 13));
-      modelArray.add(new Canopy(44, 14));
-      modelArray.add(new Canopy(45, 15));
-      modelArray.add(new Canopy(46, 16));
-
-      modelArray.add(new KochCurve(0));
-      modelArray.add(new KochCurve(1));
-      modelArray.add(new KochCurve(2));
-      modelArray.add(new KochCurve(3));
-      modelArray.add(new KochCurve(4));
-      modelArray.add(new KochCurve(5));
-      modelArray.add(new KochCurve(6));
-      modelArray.add(new KochCurve(7));
-
-      modelArray.add(new H_Tree(0));
-      modelArray.add(new H_Tree(1));
-      modelArray.add(new H_Tree(2));
-      modelArray.add(new H_Tree(3));
-      modelArray.add(new H_Tree(4));
-      modelArray.add(new H_Tree(5));
-      modelArray.add(new H_Tree(6));
-      modelArray.add(new H_Tree(7));
-      modelArray.add(new H_Tree(8));
-      modelArray.add(new H_Tree(9));
-      modelArray.add(new H_Tree(10));
-      modelArray.add(new H_Tree(11));
-      modelArray.add(new H_Tree(12));
-      modelArray.add(new H_Tree(13));
-      modelArray.add(new H_Tree(14));
-      modelArray.add(new H_Tree(15));
-      modelArray.add(new H_Tree(16));
-
-      modelArray.add(new SierpinskiTriangle(0));
-      modelArray.add(new SierpinskiTriangle(1));
-      modelArray.add(new SierpinskiTriangle(2));
-      modelArray.add(new SierpinskiTriangle(3));
-      modelArray.add(new SierpinskiTriangle(4));
-      modelArray.add(new SierpinskiTriangle(5));
-      modelArray.add(new SierpinskiTriangle(6));
-      modelArray.add(new SierpinskiTriangle(7));
-      modelArray.add(new SierpinskiTriangle(8));
-      modelArray.add(new SierpinskiTriangle(9));
-      modelArray.add(new SierpinskiTriangle(10));
-
-      modelArray.add(new BoxFractal(0));
-      modelArray.add(new BoxFractal(1));
-      modelArray.add(new BoxFractal(2));
-      modelArray.add(new BoxFractal(3));
-      modelArray.add(new BoxFractal(4));
-      modelArray.add(new BoxFractal(5));
-      modelArray.add(new BoxFractal(6));
-      modelArray.add(new BoxFractal(7));
-      modelArray.add(new BoxFractal(8));
-
-      modelArray.add(new C_Curve(0));
-      modelArray.add(new C_Curve(1));
-      modelArray.add(new C_Curve(2));
-      modelArray.add(new C_Curve(3));
-      modelArray.add(new C_Curve(4));
-      modelArray.add(new C_Curve(5));
-      modelArray.add(new C_Curve(6));
-      modelArray.add(new C_Curve(7));
-      modelArray.add(new C_Curve(8));
-      modelArray.add(new C_Curve(9));
-      modelArray.add(new C_Curve(10));
-      modelArray.add(new C_Curve(11));
-      modelArray.add(new C_Curve(12));
-      modelArray.add(new C_Curve(13));
-      modelArray.add(new C_Curve(14));
-      modelArray.add(new C_Curve(15));
-      modelArray.add(new C_Curve(16));
-      modelArray.add(new C_Curve(17));
-      modelArray.add(new C_Curve(18));
-      modelArray.add(new C_Curve(19));
-      modelArray.add(new C_Curve(20));
-
-      modelArray.add(new PythagorasTree(0.4, 0.45, 0));
-      modelArray.add(new PythagorasTree(0.4, 0.45, 1));
-      modelArray.add(new PythagorasTree(0.4, 0.45, 2));
-      modelArray.add(new PythagorasTree(0.4, 0.45, 3));
-      modelArray.add(new PythagorasTree(0.4, 0.45, 4));
-      modelArray.add(new PythagorasTree(0.4, 0.45, 5));
-      modelArray.add(new PythagorasTree(0.4, 0.45, 6));
-      modelArray.add(new PythagorasTree(0.4, 0.45, 7));
-      modelArray.add(new PythagorasTree(0.4, 0.45, 8));
-      modelArray.add(new PythagorasTree(0.4, 0.45, 9));
-      modelArray.add(new PythagorasTree(0.4, 0.45, 10));
-      modelArray.add(new PythagorasTree(0.4, 0.45, 11));
-      modelArray.add(new PythagorasTree(0.4, 0.45, 12));
-      modelArray.add(new PythagorasTree(0.4, 0.45, 13));
-      modelArray.add(new PythagorasTree(0.4, 0.45, 14));
-      modelArray.add(new PythagorasTree(0.4, 0.45, 15));
-/*
-      modelArray.add(new PythagorasTree(60, 0));
-      modelArray.add(new PythagorasTree(60, 1));
-      modelArray.add(new PythagorasTree(60, 2));
-      modelArray.add(new PythagorasTree(60, 3));
-      modelArray.add(new PythagorasTree(60, 4));
-      modelArray.add(new PythagorasTree(60, 5));
-      modelArray.add(new PythagorasTree(60, 6));
-      modelArray.add(new PythagorasTree(60, 7));
-      modelArray.add(new PythagorasTree(60, 8));
-      modelArray.add(new PythagorasTree(60, 9));
-      modelArray.add(new PythagorasTree(60, 10));
-      modelArray.add(new PythagorasTree(60, 11));
-      modelArray.add(new PythagorasTree(60, 12));
-      modelArray.add(new PythagorasTree(60, 13));
-      modelArray.add(new PythagorasTree(60, 14));
-      modelArray.add(new PythagorasTree(60, 15));
-*/
-/*
-      Vertex v0 = new Vertex(-1, -1, 0);
-      Vertex v1 = new Vertex( 1, -1, 0);
-      Vertex v2 = new Vertex(-1,  1, 0);
-      modelArray.add(new SierpinskiTriangle(v0, v1, v2, 0));
-      modelArray.add(new SierpinskiTriangle(v0, v1, v2, 1));
-      modelArray.add(new SierpinskiTriangle(v0, v1, v2, 2));
-      modelArray.add(new SierpinskiTriangle(v0, v1, v2, 3));
-      modelArray.add(new SierpinskiTriangle(v0, v1, v2, 4));
-      modelArray.add(new SierpinskiTriangle(v0, v1, v2, 5));
-      modelArray.add(new SierpinskiTriangle(v0, v1, v2, 6));
-      modelArray.add(new SierpinskiTriangle(v0, v1, v2, 7));
-      modelArray.add(new SierpinskiTriangle(v0, v1, v2, 8));
-*/
+      // Build every model in the catalog that fits in the heap budget.
+      // Models that were built by an earlier run are read from the model
+      // cache (if it is on). The other models, and the packed models,
+      // are only built when they are displayed.
+      for (final ModelSpec spec : specArray)
+      {
+         if (! spec.isPacked() && budget.fits(spec))
+         {
+            budget.get(spec, this::buildModel);
+         }
+      }
+      System.out.println(budget);
+
       // Add a model to the Scene.
-      scene.addPosition(new Position(modelArray.get(currentModel)));
+      scene.addPosition(new Position(getModel(currentModel)));
 
       // Push the models away from where the camera is.
       scene.getPosition(0).translation(xPosition,
                                        yPosition,
                                        zPosition);
 
-      Rasterize.doClipping = true;
 
 
       // Define initial dimensions for a FrameBuffer.
@@ -216,6 +141,9 @@ public class InteractiveModelsAll implements KeyListener, ComponentListener
       jf.addKeyListener(this);
       jf.addComponentListener(this);
 
+      // Measure the time from each key event to the painting of its frame.
+      latency.install();
+
       print_help_message();
    }
 
@@ -226,6 +154,10 @@ public class InteractiveModelsAll implements KeyListener, ComponentListener
    @Override public void keyTyped(KeyEvent e)
    {
       //System.out.println( e );
+      latency.start(e);
+
+      // The grid's scenes and models must not change while they are rendered.
+      finishGrid();
 
       final char c = e.getKeyChar();
       if ('h' == c)
@@ -244,34 +176,79 @@ public class InteractiveModelsAll implements KeyListener, ComponentListener
       }
       else if ('D' == c)
       {
-         Rasterize.debug = ! Rasterize.debug;
+         context = context.withDebug(! context.isDebug());
       }
       else if ('i' == c)
       {
-         final int verts = scene.getPosition(0).getModel().vertexList.size();
-         final int lines = scene.getPosition(0).getModel().primitiveList.size();
-         System.out.print("The current Model has " + verts + " vertices and ");
-         System.out.println(lines + " line segments.");
+         final Model model = scene.getPosition(0).getModel();
+         if (model instanceof InstancedModel)
+         {
+            final InstancedModel im = (InstancedModel)model;
+            System.out.print("The current Model is " + im.getInstanceCount() + " copies of a motif, placed by ");
+            System.out.println(im.getMapCount() + " maps, with " + im.getSegmentCount() + " line segments.");
+         }
+         else if (model instanceof LSystemModel)
+         {
+            final LSystemModel lm = (LSystemModel)model;
+            System.out.print("The current Model is level " + lm.getLevel() + " of " + lm.getLSystem().getRuleCount());
+            System.out.println(" L-system rules, with " + lm.getSegmentCount() + " line segments.");
+         }
+         else
+         {
+            final long verts = (model instanceof PackedModel)
+                             ? ((PackedModel)model).getVertexCount()
+                             : model.vertexList.size();
+            final long lines = (model instanceof PackedModel)
+                             ? ((PackedModel)model).getSegmentCount()
+                             : LineStrip.segmentCount(model);
+            System.out.print("The current Model has " + verts + " vertices and ");
+            System.out.println(lines + " line segments.");
+         }
+         System.out.print("It uses about " + ModelMemory.format(ModelMemory.heapBytes(model)) + " of heap");
+         if (model instanceof PackedModel)
+         {
+            System.out.print(" and " + ModelMemory.format(ModelMemory.offHeapBytes(model)) + " off of the heap");
+         }
+         System.out.println(".");
+         if (! (model instanceof PackedModel) && ! (model instanceof InstancedModel)
+             && ! (model instanceof LSystemModel))
+         {
+            System.out.println("The renderer's Pipeline (used when debugging) makes "
+                             + ModelMemory.format(ModelMemory.frameCopyBytes(model))
+                             + " of transformed copies for each frame.");
+         }
+      }
+      else if ('I' == c)
+      {
+         long total = 0;
+         for (final ModelSpec spec : specArray)
+         {
+            final boolean built = budget.contains(spec);
+            final long bytes = built ? budget.sizes().get(spec) : ModelMemory.heapBytes(spec);
+            total = (bytes > Long.MAX_VALUE - total) ? Long.MAX_VALUE : total + bytes;
+            System.out.printf("%-32s %12s %s\n", spec, ModelMemory.format(bytes),
+                              built ? "" : "(not built, estimated)");
+         }
+         System.out.println("The whole catalog needs about " + ModelMemory.format(total) + " of heap.");
+         System.out.println(budget);
+         System.out.println(frameCache);
       }
       else if ('c' == c)
       {
-         Rasterize.doClipping = ! Rasterize.doClipping;
+         context = context.withClipping(! context.isClipping());
          System.out.print("Clipping is turned ");
-         System.out.println(Rasterize.doClipping ? "On" : "Off");
+         System.out.println(context.isClipping() ? "On" : "Off");
       }
       else if ('/' == c)
       {
-         currentModel = (currentModel + 1) % modelArray.size();
-         scene.getPosition(0).setModel(modelArray.get(currentModel));
-         savedModel = null;
+         selectModel((currentModel + 1) % specArray.size());
+         context = context.withPointCloud(-1);
          pointSize = 0;
       }
       else if ('?' == c)
       {
-         currentModel = (currentModel - 1);
-         if (currentModel < 0) currentModel = modelArray.size() - 1;
-         scene.getPosition(0).setModel(modelArray.get(currentModel));
-         savedModel = null;
+         selectModel((currentModel > 0) ? currentModel - 1 : specArray.size() - 1);
+         context = context.withPointCloud(-1);
          pointSize = 0;
       }
       else if ('p' == c)
@@ -282,20 +259,99 @@ public class InteractiveModelsAll implements KeyListener, ComponentListener
       }
       else if ('P' == c)
       {
-         if (savedModel != null)
+         // The point cloud is a rendering mode, the model is not copied.
+         if (context.isPointCloud())
          {
-            scene.getPosition(0).setModel(savedModel);
-            savedModel = null;
+            context = context.withPointCloud(-1);
             ++pointSize;
          }
          else
          {
-            final Model model = scene.getPosition(0).getModel();
-            savedModel = model;
-            scene.getPosition(0)
-                    .setModel(PointCloud.make(model, pointSize));
+            context = context.withPointCloud(pointSize);
+         }
+      }
+      else if ('s' == c)
+      {
+         showStats = ! showStats;
+         context = context.withStats((showStats || printStats) ? renderStats : null);
+      }
+      else if ('S' == c)
+      {
+         printStats = ! printStats;
+         context = context.withStats((showStats || printStats) ? renderStats : null);
+      }
+      else if ('l' == c)
+      {
+         System.out.println(latency.summary(latencyName()));
+      }
+      else if ('L' == c)
+      {
+         final String fileName = String.format("Latency%03d.csv", latencyFileNumber);
+         try
+         {
+            latency.writeCSV(Paths.get(fileName));
+            System.out.println("Saved the latencies in " + fileName);
+            ++latencyFileNumber;
+         }
+         catch (IOException ex)
+         {
+            System.err.printf("ERROR! Could not write to file %s\n", fileName);
+            ex.printStackTrace(System.err);
+         }
+      }
+      else if ('a' == c)
+      {
+         final Model model = scene.getPosition(0).getModel();
+         if (sweep.isRunning())
+         {
+            sweep.stop();
+         }
+         else if (model instanceof ParametricModel)
+         {
+            sweep.start();
+         }
+         else
+         {
+            System.out.println("The current model does not have a parameter to sweep.");
+         }
+         if (model instanceof ParametricModel)
+         {
+            final ParametricModel pm = (ParametricModel)model;
+            System.out.printf("%s = %.2f\n", pm.getParameterName(), pm.getParameter());
+         }
+      }
+      else if ('A' == c)
+      {
+         sweepDirection = -sweepDirection;
+      }
+      else if ('g' == c)
+      {
+         chaosGame = ! chaosGame;
+         context = context.withChaosGame(chaosGame ? chaosGamePoints : 0);
+         selectModel(currentModel);
+         if (chaosGame && null == specArray.get(currentModel).instancedForm())
+         {
+            System.out.println("The current model cannot be drawn by the chaos game.");
+         }
+      }
+      else if ('G' == c)
+      {
+         chaosGamePoints = (chaosGamePoints >= (1L << 26)) ? (1L << 20) : 2 * chaosGamePoints;
+         if (chaosGame) context = context.withChaosGame(chaosGamePoints);
+         System.out.printf("The chaos game draws %,d points per frame.\n", chaosGamePoints);
+      }
+      else if ('v' == c)
+      {
+         gridCells = (0 == gridCells) ? 4 : 0;
+         if (0 == gridCells)
+         {
+            selectModel(currentModel); // in case the grid evicted it
          }
       }
+      else if ('V' == c)
+      {
+         gridCells = (gridCells >= 9) ? 2 : (gridCells < 4) ? 4 : (gridCells < 6) ? 6 : 9;
+      }
       else if ('m' == c) //display transformation information
       {
          displayTransformations = ! displayTransformations;
@@ -308,19 +364,19 @@ public class InteractiveModelsAll implements KeyListener, ComponentListener
       }
       else if ('x' == c) // Translate ALL the models.
       {
-         xPosition -= 0.1; // left
+         xPosition -= panStep(true); // left
       }
       else if ('X' == c)
       {
-         xPosition += 0.1; // right
+         xPosition += panStep(true); // right
       }
       else if ('y' == c)
       {
-         yPosition -= 0.1; // down
+         yPosition -= panStep(false); // down
       }
       else if ('Y' == c)
       {
-         yPosition += 0.1; // up
+         yPosition += panStep(false); // up
       }
       else if ('z' == c)
       {
@@ -334,6 +390,12 @@ public class InteractiveModelsAll implements KeyListener, ComponentListener
       {
          takeScreenshot = true;
       }
+      else if ('f' == c)
+      {
+         screenshotWriter.setFormat(screenshotWriter.getFormat().next());
+         System.out.println("Screenshots will be saved as "
+                          + screenshotWriter.getFormat() + " files.");
+      }
 
       scene.getPosition(0).translation(xPosition,
                                        yPosition,
@@ -350,18 +412,51 @@ public class InteractiveModelsAll implements KeyListener, ComponentListener
                             zPosition);
       }
 
-      // Render again.
+      // Render again, unless the frame has not changed or was rendered before.
       final FrameBuffer fb = fbp.getFrameBuffer();
-      fb.clearFB();
-      Pipeline.render(scene, fb);
+      if (gridCells > 0)
+      {
+         renderGrid(fb);
+      }
+      else
+      {
+         frameCache.render(scene, fb, context);
+      }
       if (takeScreenshot)
       {
-         fb.dumpFB2File(String.format("Screenshot%03d.png", screenshotNumber),
-                        "png");
+         finishGrid();
+         // Only copies the pixels, the file is encoded in the background.
+         screenshotWriter.capture(fb, String.format("Screenshot%03d", screenshotNumber));
          ++screenshotNumber;
          takeScreenshot = false;
       }
+      if (0 == gridCells) drawStats(fb);
       fbp.update();
+      if (gridCells > 0)
+      {
+         // The frame is rendered when its last cell is.
+         final long[] event = latency.take();
+         final String name = latencyName();
+         gridFrame.thenRun(() -> javax.swing.SwingUtilities.invokeLater(() -> {
+            fbp.update();
+            latency.rendered(name, event);
+         }));
+      }
+      else
+      {
+         latency.rendered(latencyName());
+      }
+   }
+
+
+   /**
+      The name that the latencies of the frames are recorded under, the
+      current model's, or the grid's when the grid is on.
+   */
+   private String latencyName()
+   {
+      return (0 == gridCells) ? specArray.get(currentModel).toString()
+                              : String.format("Grid of %d from %s", gridCells, specArray.get(currentModel));
    }
 
 
@@ -384,25 +479,260 @@ public class InteractiveModelsAll implements KeyListener, ComponentListener
       final int h = fbp.getHeight();
 
       // Create a new FrameBuffer that fits the FrameBufferPanel.
+      final FrameBufferAllocationEvent event = new FrameBufferAllocationEvent();
+      event.begin();
+      final FrameBuffer previous = fbp.getFrameBuffer();
       final FrameBuffer fb = new FrameBuffer(w, h);
       fbp.setFrameBuffer(fb);
-      Pipeline.render(scene, fb);
+      event.end();
+      if (event.shouldCommit())
+      {
+         event.width = w;
+         event.height = h;
+         event.previousWidth = previous.width;
+         event.previousHeight = previous.height;
+         event.bytes = 4L * w * h;
+         event.commit();
+      }
+      finishGrid();
+      if (gridCells > 0)
+      {
+         renderGrid(fb);
+      }
+      else
+      {
+         frameCache.render(scene, fb, context);
+         drawStats(fb);
+      }
       fbp.update();
    }
 
 
+   /**
+      Move the parameter of the current {@link ParametricModel} one step
+      towards the end of its range (turning around at each end), and render
+      the model again. The model's coordinates are changed in place, so
+      nothing is built or allocated for each frame.
+   */
+   private void sweepParameter()
+   {
+      final Model model = scene.getPosition(0).getModel();
+      if (! (model instanceof ParametricModel))
+      {
+         sweep.stop();
+         return;
+      }
+      final ParametricModel pm = (ParametricModel)model;
+      finishGrid();
+      final double min = pm.getMinParameter();
+      final double max = pm.getMaxParameter();
+      double p = pm.getParameter() + sweepDirection * (max - min) / 240;
+      if (p >= max || p <= min)
+      {
+         p = Math.min(Math.max(p, min), max);
+         sweepDirection = -sweepDirection;
+      }
+      pm.setParameter(p);
+
+      // Each frame of the sweep is new, so it is not put in the frame cache.
+      final FrameBuffer fb = fbp.getFrameBuffer();
+      if (gridCells > 0)
+      {
+         renderGrid(fb);
+         return;
+      }
+      fb.clearFB();
+      FractalPipeline.render(scene, fb.vp, context);
+      frameCache.invalidate();
+      drawStats(fb);
+      fbp.update();
+   }
+
+
+   /**
+      Start rendering the current model and the models that follow it in
+      the catalog, side by side, each one on its own worker thread. The
+      cells are shown as each one is finished, so the frame takes about
+      as long as its slowest cell. Every cell has the same camera and
+      translation as the main scene.
+   */
+   private void renderGrid(final FrameBuffer fb)
+   {
+      final List<ModelSpec> specs = new ArrayList<>();
+      final List<Model> models = new ArrayList<>();
+      for (int i = 0; i < gridCells; ++i)
+      {
+         final int index = (currentModel + i) % specArray.size();
+         try
+         {
+            models.add(getModel(index));
+            specs.add(specArray.get(index));
+         }
+         catch (IllegalStateException e)
+         {
+            System.out.println(e.getMessage());
+         }
+      }
+      final List<Scene> scenes = new ArrayList<>();
+      for (int i = 0; i < models.size(); ++i)
+      {
+         // Getting a later model can evict (and close) an earlier one.
+         final ModelSpec spec = specs.get(i);
+         final ModelSpec instanced = spec.instancedForm();
+         if (! budget.contains((chaosGame && null != instanced) ? instanced : spec))
+         {
+            System.out.println(spec + " does not fit in the heap budget with the rest of the grid.");
+            continue;
+         }
+         final Position position = new Position(models.get(i));
+         position.translation(xPosition, yPosition, zPosition);
+         scenes.add(new Scene(scene.getCamera(), List.of(position), spec.toString()));
+      }
+
+      fb.clearFB();
+      frameCache.invalidate();
+      final long start = System.nanoTime();
+      gridFrame = grid.render(scenes, ViewportGrid.layout(fb, gridCells).subList(0, scenes.size()),
+                              context, (cell, nanos) -> javax.swing.SwingUtilities.invokeLater(fbp::update));
+      if (printStats)
+      {
+         gridFrame.thenAccept(nanos -> {
+            final long total = System.nanoTime() - start;
+            long sum = 0, slowest = 0;
+            for (int i = 0; i < nanos.length; ++i)
+            {
+               System.out.printf("%-36s %9.2f ms\n", scenes.get(i).getName(), nanos[i] / 1e6);
+               sum += nanos[i];
+               slowest = Math.max(slowest, nanos[i]);
+            }
+            System.out.printf("Grid of %d: %.2f ms (slowest cell %.2f ms, sum of the cells %.2f ms)\n",
+                              nanos.length, total / 1e6, slowest / 1e6, sum / 1e6);
+         });
+      }
+   }
+
+
+   /**
+      Wait for the cells of the grid's frame to be finished.
+   */
+   private void finishGrid()
+   {
+      try
+      {
+         gridFrame.join();
+      }
+      catch (CompletionException e)
+      {
+         System.err.printf("ERROR! Could not render the grid\n");
+         e.getCause().printStackTrace(System.err);
+      }
+      gridFrame = CompletableFuture.completedFuture(null);
+   }
+
+
+   /**
+      The distance that the x/X (or y/Y) keys move the models. In
+      orthographic projection, it is rounded to a whole number of pixels,
+      so that the frame can be scrolled instead of rendered again
+      (see {@link FractalPipeline#scroll}).
+   */
+   private double panStep(final boolean horizontal)
+   {
+      if (scene.getCamera().perspective)
+      {
+         return 0.1;
+      }
+      final FrameBuffer fb = fbp.getFrameBuffer();
+      final double s = Rasterizer.pixelsPerUnit(horizontal ? fb.width : fb.height);
+      return Math.rint(0.1 * s) / s;
+   }
+
+
+   /**
+      Make the model at {@code index} in the catalog the current model.
+      If the model that was being displayed is a {@link PackedModel},
+      it is closed, so its memory is released right away. If the new
+      model does not fit in the heap budget, the current model stays.
+   */
+   private void selectModel(final int index)
+   {
+      final Model model;
+      try
+      {
+         model = getModel(index);
+      }
+      catch (IllegalStateException e)
+      {
+         System.out.println(e.getMessage());
+         return;
+      }
+      final int previous = currentModel;
+      currentModel = index;
+      scene.getPosition(0).setModel(model);
+      if (previous != currentModel && specArray.get(previous).isPacked())
+      {
+         budget.remove(specArray.get(previous));
+      }
+   }
+
+
+   /**
+      Get the model at {@code index} in the catalog, building it if it has not
+      been built (or was evicted to keep the models within the heap budget).
+      While the chaos game is on, a model that has an instanced form is
+      replaced by it, so that its limit set is drawn.
+   */
+   private Model getModel(final int index)
+   {
+      final ModelSpec spec = specArray.get(index);
+      final ModelSpec instanced = spec.instancedForm();
+      return budget.get((chaosGame && null != instanced) ? instanced : spec, this::buildModel);
+   }
+
+
+   private Model buildModel(final ModelSpec spec)
+   {
+      final long start = System.nanoTime();
+      final Model model = (null == cache) ? spec.build() : cache.get(spec);
+      renderStats.buildNanos = System.nanoTime() - start;
+      return model;
+   }
+
+
+   /**
+      Show the statistics of the frame that was just rendered, if they are turned on.
+   */
+   private void drawStats(final FrameBuffer fb)
+   {
+      if (showStats)
+      {
+         renderStats.drawHUD(fb);
+      }
+      if (printStats)
+      {
+         System.out.println(renderStats);
+      }
+   }
+
+
    private static void print_help_message()
    {
       System.out.println("Use the 'd/D' keys to toggle debugging information on and off for the current model.");
       System.out.println("Use the '/' and '?' keys to cycle through the models.");
-      System.out.println("Use the 'i' key to get information about the current model.");
+      System.out.println("Use the 'i' key to get information about the current model (the 'I' key shows the memory used by all the models).");
       System.out.println("Use the 'p' key to toggle between parallel and orthographic projection.");
       System.out.println("Use the x/X, y/Y, z/Z, keys to translate the models along the x, y, z axes.");
       System.out.println("Use the 'm' key to toggle the display of transformation information.");
       System.out.println("Use the '=' key to reset the model translation.");
       System.out.println("Use the 'c' key to toggle line clipping on and off.");
-      System.out.println("Use the 'P' key to convert the current model to a point cloud.");
+      System.out.println("Use the 'P' key to toggle the point cloud view of the current model (each toggle back to lines makes the points bigger).");
+      System.out.println("Use the 's' key to toggle the rendering statistics display (the 'S' key prints them for each frame).");
+      System.out.println("Use the 'l' key to print the key-to-screen latency of the current model, or of the grid (the 'L' key saves all the latencies in a CSV file).");
+      System.out.println("Use the 'a' key to start and stop sweeping the parameter of a parametric model (the 'A' key reverses the sweep).");
+      System.out.println("Use the 'g' key to draw the Sierpinski and box fractals by the chaos game (the 'G' key changes the number of points).");
+      System.out.println("Use the 'v' key to show the current model and the models after it side by side (the 'V' key changes the number of models).");
       System.out.println("Use the '+' key to save a \"screenshot\" of the framebuffer.");
+      System.out.println("Use the 'f' key to cycle the screenshot format (PNG, PPM, QOI, RAW).");
       System.out.println("Use the 'h' key to redisplay this help message.");
    }
 
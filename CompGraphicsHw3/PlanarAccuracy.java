@@ -0,0 +1,180 @@
+/*
+
+*/
+
+import fractals.pipeline.FractalPipeline;
+import fractals.pipeline.PackedModel;
+import fractals.pipeline.RenderContext;
+import fractals.util.Catalog;
+import fractals.util.ModelMemory;
+import fractals.util.ModelSpec;
+import renderer.scene.*;
+import renderer.pipeline.*;
+import renderer.framebuffer.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+   Check that the planar {@link PackedModel}s, which keep their vertices
+   as {@code float}s, draw the same pictures as the full precision models.
+   <p>
+   Every model in the {@link Catalog} that has a planar form is built,
+   copied into a planar {@link PackedModel}, and rendered both ways by the
+   {@link FractalPipeline}. For each model, the program reports the largest
+   difference between the two images in any color channel of any pixel,
+   the number of pixels that differ, the memory used by each version of
+   the model, and the time it took to render each version.
+   <p>
+   Usage:
+   <pre>{@code
+      java -cp .;renderer_2.jar PlanarAccuracy [options] [model ...]
+
+      -size WxH       the resolution to render (default 1024x1024)
+      -max N          skip models with more than N line segments (default 4194304)
+      -tolerance N    the number of pixels that may differ in each image (default 16)
+      model           a model, such as "C_Curve(18)" (default: the whole catalog)
+   }</pre>
+   A vertex that is within a {@code float}'s rounding error of the edge
+   of a pixel can end up on the other side of the edge, so a model with
+   hundreds of thousands of vertices can have a few pixels that differ
+   (a whole pixel that is drawn in one image and not in the other). The
+   program exits with status 1 if more pixels than that differ in
+   any image.
+*/
+public class PlanarAccuracy
+{
+   public static void main(String[] args)
+   {
+      // There is no GUI in this program.
+      System.setProperty("java.awt.headless", "true");
+
+      int width = 1024, height = 1024;
+      long maxSegments = 1L << 22;
+      long tolerance = 16;
+      final List<ModelSpec> specs = new ArrayList<>();
+      for (int i = 0; i < args.length; ++i)
+      {
+         if ("-size".equals(args[i]))
+         {
+            final String[] wh = args[++i].toLowerCase().split("x");
+            width = Integer.parseInt(wh[0]);
+            height = Integer.parseInt(wh[1]);
+         }
+         else if ("-max".equals(args[i]))
+         {
+            maxSegments = Long.parseLong(args[++i]);
+         }
+         else if ("-tolerance".equals(args[i]))
+         {
+            tolerance = Long.parseLong(args[++i]);
+         }
+         else
+         {
+            specs.add(ModelSpec.parse(args[i]));
+         }
+      }
+      if (specs.isEmpty()) specs.addAll(Catalog.specs());
+
+      RenderContext.setClipping(true);
+      final FrameBuffer full = new FrameBuffer(width, height);
+      final FrameBuffer planar = new FrameBuffer(width, height);
+
+      System.out.printf("%-36s %8s %9s %10s %10s %9s %9s\n",
+                        "model", "max diff", "pixels", "full", "planar",
+                        "full ms", "planar ms");
+      int worst = 0;
+      long worstPixels = 0;
+      long fullBytes = 0, planarBytes = 0;
+      long fullNanos = 0, planarNanos = 0;
+      int checked = 0;
+      for (final ModelSpec spec : specs)
+      {
+         final ModelSpec planarSpec = spec.planarForm();
+         if (null == planarSpec || spec.isPlanar() || spec.segmentCount() > maxSegments)
+         {
+            continue;
+         }
+         final Model model = spec.build();
+         final PackedModel compact = PackedModel.planar(model, PackedModel.Storage.AUTO);
+         if (null == compact)
+         {
+            System.out.printf("%-36s is not in one z-plane\n", spec);
+            close(model);
+            continue;
+         }
+
+         final long tFull = render(model, full);
+         final long tPlanar = render(compact, planar);
+         int maxDiff = 0;
+         long pixels = 0;
+         for (int i = 0; i < full.pixel_buffer.length; ++i)
+         {
+            final int a = full.pixel_buffer[i], b = planar.pixel_buffer[i];
+            if (a == b) continue;
+            ++pixels;
+            for (int shift = 0; shift < 24; shift += 8)
+            {
+               maxDiff = Math.max(maxDiff, Math.abs(((a >> shift) & 0xFF) - ((b >> shift) & 0xFF)));
+            }
+         }
+         final long bytes = ModelMemory.heapBytes(model) + ModelMemory.offHeapBytes(model);
+         final long compactBytes = ModelMemory.heapBytes(compact) + ModelMemory.offHeapBytes(compact);
+         System.out.printf("%-36s %8d %9d %10s %10s %9.2f %9.2f\n",
+                           spec, maxDiff, pixels,
+                           ModelMemory.format(bytes), ModelMemory.format(compactBytes),
+                           tFull / 1e6, tPlanar / 1e6);
+         worst = Math.max(worst, maxDiff);
+         worstPixels = Math.max(worstPixels, pixels);
+         fullBytes += bytes;
+         planarBytes += compactBytes;
+         fullNanos += tFull;
+         planarNanos += tPlanar;
+         ++checked;
+         close(model);
+         compact.close();
+      }
+
+      System.out.printf("Checked %d models at %dx%d: largest difference %d,"
+                      + " at most %d pixels differ,"
+                      + " memory %s -> %s (%.0f%%), render time %.1f ms -> %.1f ms.\n",
+                        checked, width, height, worst, worstPixels,
+                        ModelMemory.format(fullBytes), ModelMemory.format(planarBytes),
+                        (fullBytes > 0) ? 100.0 * planarBytes / fullBytes : 0.0,
+                        fullNanos / 1e6, planarNanos / 1e6);
+      if (worstPixels > tolerance)
+      {
+         System.exit(1);
+      }
+   }
+
+
+   /**
+      Render a model into a cleared framebuffer, once to warm up and then
+      three more times, and return the fastest of the three times.
+   */
+   private static long render(final Model model, final FrameBuffer fb)
+   {
+      final Scene scene = new Scene(model.getName());
+      scene.addPosition(new Position(model));
+      scene.getPosition(0).translation(0.0, 0.0, -1.0);
+      long best = Long.MAX_VALUE;
+      for (int i = 0; i < 4; ++i)
+      {
+         fb.clearFB();
+         final long t0 = System.nanoTime();
+         FractalPipeline.render(scene, fb);
+         if (i > 0) best = Math.min(best, System.nanoTime() - t0);
+      }
+      return best;
+   }
+
+
+   private static void close(final Model model)
+   {
+      if (model instanceof PackedModel)
+      {
+         ((PackedModel)model).close();
+      }
+   }
+}//PlanarAccuracy
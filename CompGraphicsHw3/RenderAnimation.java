@@ -0,0 +1,313 @@
+/*
+
+*/
+
+import fractals.io.MappedFrameFile;
+import fractals.io.ScreenshotWriter;
+import fractals.pipeline.FractalPipeline;
+import fractals.pipeline.InstancedModel;
+import fractals.pipeline.LSystemModel;
+import fractals.pipeline.LineStrip;
+import fractals.pipeline.PackedModel;
+import fractals.pipeline.RenderContext;
+import fractals.util.ModelSpec;
+import renderer.scene.*;
+import renderer.pipeline.*;
+import renderer.framebuffer.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+   Render a zoom/pan "fly-through" animation of one fractal model.
+   <p>
+   The animation is described by a list of keyframes. Each keyframe
+   gives a frame number, a translation for the model's {@link Position},
+   and a projection. The translation is linearly interpolated between
+   keyframes and the projection changes at each keyframe. A keyframe
+   file has one keyframe per line, for example
+   <pre>{@code
+      # frame    x      y      z     projection
+          0     0.0    0.0   -3.0   perspective
+        240     0.3   -0.2   -0.4   perspective
+        300     0.3   -0.2   -0.4   orthographic
+   }</pre>
+   <p>
+   The model is built once and shared, read-only, by all the worker
+   threads. Each worker thread has its own {@link Scene} and its own
+   {@link FrameBuffer}, renders whichever frame is next, and writes it
+   straight to the output, so frames are never accumulated in memory.
+   The output is either one preallocated, memory-mapped file of PPM
+   frames (see {@link MappedFrameFile}) or a numbered series of image files.
+   <p>
+   Usage:
+   <pre>{@code
+      java -cp .;renderer_2.jar RenderAnimation [options]
+
+      -model SPEC     the model to animate (default "C_Curve(16)")
+      -keys FILE      keyframe file (default: a built-in zoom)
+      -size WxH       size of each frame (default 1024x1024)
+      -out FILE       write all frames into one mapped file (default frames.ppm)
+      -series PREFIX  write a numbered series, PREFIX00000.png, ..., instead
+      -format FMT     format of a numbered series: png, ppm, qoi, or raw
+      -threads N      number of worker threads (default: number of cores)
+   }</pre>
+*/
+public class RenderAnimation
+{
+   /** One keyframe of the animation path. */
+   private static final class Keyframe
+   {
+      final int frame;
+      final double x, y, z;
+      final boolean perspective;
+
+      Keyframe(final int frame,
+               final double x, final double y, final double z,
+               final boolean perspective)
+      {
+         this.frame = frame;
+         this.x = x;
+         this.y = y;
+         this.z = z;
+         this.perspective = perspective;
+      }
+   }
+
+
+   public static void main(String[] args) throws Exception
+   {
+      System.setProperty("java.awt.headless", "true");
+
+      ModelSpec spec = ModelSpec.parse("C_Curve(16)");
+      List<Keyframe> keys = null;
+      int width  = 1024;
+      int height = 1024;
+      Path out = Paths.get("frames.ppm");
+      String series = null;
+      ScreenshotWriter.Format format = ScreenshotWriter.Format.PNG;
+      int threads = Runtime.getRuntime().availableProcessors();
+
+      for (int i = 0; i < args.length; ++i)
+      {
+         switch (args[i])
+         {
+            case "-model"   : spec = ModelSpec.parse(args[++i]); break;
+            case "-keys"    : keys = readKeyframes(Paths.get(args[++i])); break;
+            case "-out"     : out = Paths.get(args[++i]); break;
+            case "-series"  : series = args[++i]; break;
+            case "-format"  : format = ScreenshotWriter.Format.valueOf(args[++i].toUpperCase()); break;
+            case "-threads" : threads = Integer.parseInt(args[++i]); break;
+            case "-size"    :
+               final String[] wh = args[++i].toLowerCase().split("x");
+               width  = Integer.parseInt(wh[0]);
+               height = Integer.parseInt(wh[1]);
+               break;
+            default:
+               throw new IllegalArgumentException("unknown option: " + args[i]);
+         }
+      }
+      if (null == keys)
+      {
+         keys = new ArrayList<>();
+         keys.add(new Keyframe(  0, 0.0, 0.0, -3.0, true));
+         keys.add(new Keyframe(240, 0.3, 0.2, -0.4, true));
+         keys.add(new Keyframe(299, 0.3, 0.2, -0.4, true));
+      }
+      final int frameCount = keys.get(keys.size() - 1).frame + 1;
+
+      RenderContext.setClipping(true);
+
+      long t0 = System.nanoTime();
+      final Model model = spec.build();
+      if (model instanceof PackedModel)
+      {
+         System.out.printf("Built %s (%d vertices, %d segments) in %.2f ms.\n",
+                           spec, ((PackedModel)model).getVertexCount(),
+                           ((PackedModel)model).getSegmentCount(),
+                           (System.nanoTime() - t0) / 1e6);
+      }
+      else if (model instanceof InstancedModel)
+      {
+         System.out.printf("Built %s (%d maps, %d segments) in %.2f ms.\n",
+                           spec, ((InstancedModel)model).getMapCount(),
+                           ((InstancedModel)model).getSegmentCount(),
+                           (System.nanoTime() - t0) / 1e6);
+      }
+      else if (model instanceof LSystemModel)
+      {
+         System.out.printf("Built %s (%d rules, %d segments) in %.2f ms.\n",
+                           spec, ((LSystemModel)model).getLSystem().getRuleCount(),
+                           ((LSystemModel)model).getSegmentCount(),
+                           (System.nanoTime() - t0) / 1e6);
+      }
+      else
+      {
+         System.out.printf("Built %s (%d vertices, %d segments) in %.2f ms.\n",
+                           spec, model.vertexList.size(), LineStrip.segmentCount(model),
+                           (System.nanoTime() - t0) / 1e6);
+      }
+
+      final MappedFrameFile mapped = (null == series)
+                                   ? new MappedFrameFile(out, width, height, frameCount)
+                                   : null;
+      final List<Keyframe> path = keys;
+      final int w = width;
+      final int h = height;
+      final String prefix = series;
+      final ScreenshotWriter.Format f = format;
+      final AtomicInteger nextFrame = new AtomicInteger(0);
+      final List<Throwable> errors = new ArrayList<>();
+
+      t0 = System.nanoTime();
+      final List<Thread> workers = new ArrayList<>();
+      for (int t = 0; t < threads; ++t)
+      {
+         final Thread worker = new Thread(() -> {
+            // Each worker has its own Scene and FrameBuffer, the Model is shared.
+            final Scene scene = new Scene();
+            scene.addPosition(new Position(model));
+            final FrameBuffer fb = new FrameBuffer(w, h);
+            try
+            {
+               int frame;
+               while ((frame = nextFrame.getAndIncrement()) < frameCount)
+               {
+                  setCamera(scene, path, frame);
+                  fb.clearFB();
+                  FractalPipeline.render(scene, fb);
+                  if (null != mapped)
+                  {
+                     mapped.writeFrame(frame, fb.pixel_buffer);
+                  }
+                  else
+                  {
+                     final String name = f.fileName(String.format("%s%05d", prefix, frame), w, h);
+                     ScreenshotWriter.write(f, fb.pixel_buffer, w, h, Paths.get(name));
+                  }
+               }
+            }
+            catch (IOException | RuntimeException e)
+            {
+               synchronized (errors) { errors.add(e); }
+               nextFrame.set(frameCount); // stop the other workers
+            }
+         }, "animation-worker-" + t);
+         workers.add(worker);
+         worker.start();
+      }
+      for (final Thread worker : workers)
+      {
+         worker.join();
+      }
+      if (null != mapped)
+      {
+         mapped.close();
+      }
+      if (model instanceof PackedModel)
+      {
+         ((PackedModel)model).close();
+      }
+      if (! errors.isEmpty())
+      {
+         System.err.println("ERROR! The animation could not be rendered.");
+         errors.get(0).printStackTrace(System.err);
+         System.exit(-1);
+      }
+
+      final double seconds = (System.nanoTime() - t0) / 1e9;
+      System.out.printf("Rendered %d %dx%d frames to %s in %.2f s (%.1f frames/s) with %d thread(s).\n",
+                        frameCount, width, height,
+                        (null == series) ? out.toString() : series + "*",
+                        seconds, frameCount / seconds, threads);
+   }
+
+
+   /**
+      Set the translation and projection of the scene for one frame.
+   */
+   private static void setCamera(final Scene scene,
+                                 final List<Keyframe> keys,
+                                 final int frame)
+   {
+      Keyframe k0 = keys.get(0);
+      Keyframe k1 = k0;
+      for (final Keyframe k : keys)
+      {
+         k1 = k;
+         if (k.frame >= frame) break;
+         k0 = k;
+      }
+      final double t = (k1.frame == k0.frame) ? 0.0
+                     : (frame - k0.frame) / (double)(k1.frame - k0.frame);
+      scene.getPosition(0).translation(k0.x + t * (k1.x - k0.x),
+                                       k0.y + t * (k1.y - k0.y),
+                                       k0.z + t * (k1.z - k0.z));
+      scene.getCamera().perspective = (frame == k1.frame) ? k1.perspective
+                                                          : k0.perspective;
+   }
+
+
+   /**
+      Read a keyframe file. Blank lines and lines that start with
+      {@code #} are ignored. Each keyframe has a frame number, x, y and z,
+      and optionally {@code perspective} or {@code orthographic} (in any
+      case, the default is perspective). Keyframes must be in increasing
+      frame order.
+
+      @param file  the keyframe file
+      @return the keyframes, in frame order
+      @throws IOException if the file cannot be read
+      @throws IllegalArgumentException if a line is not a keyframe
+   */
+   private static List<Keyframe> readKeyframes(final Path file) throws IOException
+   {
+      final List<Keyframe> keys = new ArrayList<>();
+      for (final String line : Files.readAllLines(file))
+      {
+         final String t = line.trim();
+         if (t.isEmpty() || t.startsWith("#")) continue;
+
+         final String[] f = t.split("\\s+");
+         if (f.length < 4 || f.length > 5)
+            throw new IllegalArgumentException("a keyframe is: frame x y z [perspective|orthographic]: " + line);
+         final boolean perspective;
+         if (f.length < 5 || "perspective".equalsIgnoreCase(f[4]))
+         {
+            perspective = true;
+         }
+         else if ("orthographic".equalsIgnoreCase(f[4]))
+         {
+            perspective = false;
+         }
+         else
+         {
+            throw new IllegalArgumentException("the projection must be perspective or orthographic: " + line);
+         }
+         final Keyframe k;
+         try
+         {
+            k = new Keyframe(Integer.parseInt(f[0]),
+                             Double.parseDouble(f[1]),
+                             Double.parseDouble(f[2]),
+                             Double.parseDouble(f[3]),
+                             perspective);
+         }
+         catch (NumberFormatException e)
+         {
+            throw new IllegalArgumentException("bad number in keyframe: " + line, e);
+         }
+         if (! keys.isEmpty() && k.frame <= keys.get(keys.size() - 1).frame)
+            throw new IllegalArgumentException("keyframes must be in increasing frame order: " + line);
+         keys.add(k);
+      }
+      if (keys.isEmpty())
+         throw new IllegalArgumentException("no keyframes in " + file);
+      return keys;
+   }
+}
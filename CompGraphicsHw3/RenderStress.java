@@ -0,0 +1,181 @@
+/*
+
+*/
+
+import fractals.pipeline.FractalPipeline;
+import fractals.pipeline.RenderContext;
+import fractals.pipeline.RenderStats;
+import fractals.util.ModelSpec;
+import renderer.scene.*;
+import renderer.pipeline.*;
+import renderer.framebuffer.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+   Check that the {@link FractalPipeline} draws exactly the same pixels
+   when many threads render at the same time, each with its own
+   {@link RenderContext}.
+   <p>
+   Each model is rendered once, on one thread, with each of several
+   contexts (line segments, point clouds, the chaos game, statistics,
+   and clipping turned off, which renders with the renderer's
+   {@link Pipeline}). Then every thread renders a mix of the same
+   scenes and contexts into its own framebuffer, over and over, and
+   compares every frame, pixel by pixel, with the first rendering.
+   The threads share the scenes and the models. While they render,
+   another thread keeps changing the global options (with
+   {@link RenderContext#setPointCloud}, {@link RenderContext#setChaosGame},
+   {@link RenderContext#setClipping} and {@link RenderContext#setDebug},
+   which set the renderer's {@link Rasterize#doClipping} and
+   {@link Rasterize#debug}), which must not change any of the frames.
+   <p>
+   Usage:
+   <pre>{@code
+      java -cp .;renderer_2.jar RenderStress [options] [model ...]
+
+      -threads N      the number of rendering threads (default: two per processor)
+      -frames N       the number of frames that each thread renders (default 200)
+      -size WxH       the resolution to render (default 256x256)
+      model           a model, such as "C_Curve(12)" (default: a few small models of each kind)
+   }</pre>
+   The program exits with status 1 if any frame is different.
+*/
+public class RenderStress
+{
+   public static void main(String[] args) throws InterruptedException
+   {
+      // There is no GUI in this program.
+      System.setProperty("java.awt.headless", "true");
+
+      int threads = 2 * Runtime.getRuntime().availableProcessors();
+      int frames = 200;
+      int width = 256, height = 256;
+      final List<ModelSpec> specs = new ArrayList<>();
+      for (int i = 0; i < args.length; ++i)
+      {
+         if ("-threads".equals(args[i]))
+         {
+            threads = Integer.parseInt(args[++i]);
+         }
+         else if ("-frames".equals(args[i]))
+         {
+            frames = Integer.parseInt(args[++i]);
+         }
+         else if ("-size".equals(args[i]))
+         {
+            final String[] wh = args[++i].toLowerCase().split("x");
+            width = Integer.parseInt(wh[0]);
+            height = Integer.parseInt(wh[1]);
+         }
+         else
+         {
+            specs.add(ModelSpec.parse(args[i]));
+         }
+      }
+      if (specs.isEmpty())
+      {
+         for (final String s : new String[]{"KochCurve(5)", "C_Curve(10)", "H_Tree(8)",
+                                            "SierpinskiTriangle(5)", "PackedKochCurve(5)",
+                                            "InstancedSierpinskiTriangle(6)",
+                                            "LSystemDragonCurve(10)", "PlanarPackedC_Curve(12)"})
+         {
+            specs.add(ModelSpec.parse(s));
+         }
+      }
+
+      final List<Scene> scenes = new ArrayList<>();
+      for (final ModelSpec spec : specs)
+      {
+         final Scene scene = new Scene(spec.toString());
+         scene.addPosition(new Position(spec.build()));
+         scene.getPosition(0).translation(0.0, 0.0, -1.0);
+         scenes.add(scene);
+      }
+      // Statistics are added by each thread, for its own RenderStats object.
+      final List<RenderContext> contexts = List.of(
+            RenderContext.DEFAULT,
+            RenderContext.DEFAULT.withPointCloud(0),
+            RenderContext.DEFAULT.withPointCloud(2),
+            RenderContext.DEFAULT.withChaosGame(1L << 16),
+            RenderContext.DEFAULT.withClipping(false));
+
+      // The frames drawn by one thread, with no other rendering going on.
+      final int[][] expected = new int[scenes.size() * contexts.size()][];
+      for (int s = 0; s < scenes.size(); ++s)
+      {
+         for (int c = 0; c < contexts.size(); ++c)
+         {
+            final FrameBuffer fb = new FrameBuffer(width, height);
+            FractalPipeline.render(scenes.get(s), fb.vp, contexts.get(c));
+            expected[s * contexts.size() + c] = fb.pixel_buffer;
+         }
+      }
+
+      // Change the global options the whole time that the threads render.
+      final Thread flipper = new Thread(() -> {
+         for (int i = 0; ! Thread.currentThread().isInterrupted(); ++i)
+         {
+            RenderContext.setPointCloud((0 != (i & 1)) ? i % 3 : -1);
+            RenderContext.setChaosGame((0 != (i & 2)) ? 1L << 10 : 0);
+            RenderContext.setClipping(0 != (i & 4));
+            RenderContext.setDebug(0 == (i & 1023)); // not often, it logs every pixel
+            Thread.yield();
+         }
+      }, "flag-flipper");
+      flipper.setDaemon(true);
+
+      final AtomicLong rendered = new AtomicLong();
+      final AtomicLong different = new AtomicLong();
+      final int w = width, h = height, n = frames;
+      final Thread[] workers = new Thread[threads];
+      for (int t = 0; t < threads; ++t)
+      {
+         final int thread = t;
+         workers[t] = new Thread(() -> {
+            final FrameBuffer fb = new FrameBuffer(w, h);
+            final RenderStats stats = new RenderStats();
+            for (int i = 0; i < n; ++i)
+            {
+               // Each thread goes through the frames in a different order.
+               final int frame = (int)((thread * 7919L + i * 104729L) % expected.length);
+               final Scene scene = scenes.get(frame / contexts.size());
+               RenderContext context = contexts.get(frame % contexts.size());
+               if (0 == i % 3) context = context.withStats(stats);
+               fb.clearFB();
+               FractalPipeline.render(scene, fb.vp, context);
+               rendered.incrementAndGet();
+               if (! Arrays.equals(fb.pixel_buffer, expected[frame]))
+               {
+                  different.incrementAndGet();
+                  System.out.printf("%s is different with %s\n", scene.getName(), context);
+               }
+            }
+         }, "render-" + t);
+      }
+
+      final long start = System.nanoTime();
+      flipper.start();
+      for (final Thread worker : workers) worker.start();
+      for (final Thread worker : workers) worker.join();
+      flipper.interrupt();
+      flipper.join();
+      RenderContext.setClipping(true);
+      RenderContext.setDebug(false);
+      RenderContext.setPointCloud(-1);
+      RenderContext.setChaosGame(0);
+      final long nanos = System.nanoTime() - start;
+
+      System.out.printf("Rendered %d frames of %d models with %d contexts at %dx%d"
+                      + " on %d threads in %.1f ms: %d frames were different.\n",
+                        rendered.get(), scenes.size(), contexts.size(), width, height,
+                        threads, nanos / 1e6, different.get());
+      if (different.get() > 0)
+      {
+         System.exit(1);
+      }
+   }
+}//RenderStress
@@ -0,0 +1,318 @@
+/*
+
+*/
+
+import fractals.io.MappedFrameFile;
+import fractals.io.ModelCache;
+import fractals.io.TileCoordinator;
+import fractals.io.TileJob;
+import fractals.io.TileWorker;
+import fractals.util.ModelBudget;
+import fractals.util.ModelSpec;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+   Render a poster-sized image of one model (for example 16384 by 16384
+   pixels) in tiles, on several worker JVMs, into a binary PPM file.
+   <p>
+   The coordinator splits the image into tiles and sends them to the
+   workers over local sockets (see {@link TileCoordinator}). Each worker
+   builds the model (or loads it from the model cache), renders each tile
+   it is sent into a framebuffer the size of a tile, and sends the pixels
+   back, and the coordinator writes them into the memory-mapped output
+   file. If a worker dies, or does not answer in time, its tile is sent
+   to another worker.
+   <p>
+   By default, the coordinator starts its own workers, as separate JVMs
+   on this machine, and stops them when the image is finished (or when
+   the coordinator stops). Workers that are already running, possibly
+   with larger heaps, can be used instead, with {@code -connect}.
+   <p>
+   Usage:
+   <pre>{@code
+      java -cp .;renderer_2.jar TileRender [options] model
+
+      -size WxH       the size of the image (default 16384x16384)
+      -tile N         the width and height of the tiles (default 1024)
+      -workers N      the number of worker JVMs to start (default: number of cores)
+      -heap SIZE      the maximum heap of each worker JVM, such as 4g (default: the JVM's default)
+      -connect LIST   use the running workers at host:port,host:port,... instead of starting any
+      -timeout SECS   the time a worker has to answer each tile before its tile is sent to another one (default 300)
+      -ortho          orthographic projection (default: perspective)
+      -x X, -y Y, -z Z  the translation of the model (default 0, 0, -1)
+      -points N       draw a point cloud with points of radius N (default: line segments)
+      -out FILE       the PPM file (default: the model's name and the size, such as BoxFractal_n9_16384x16384.ppm)
+      model           the model, such as "BoxFractal(9)" or "C_Curve(24)"
+
+      java -cp .;renderer_2.jar TileRender -worker [options]
+
+      -port N         the port to listen on (default: any free port, which is printed)
+      -bind ADDR      the address to listen on (default 127.0.0.1, only this machine)
+   }</pre>
+   The workers keep their models within the heap budget of the
+   {@code fractals.heapBudget} property and share the model cache of the
+   {@code fractals.cache} property, like the other programs. The
+   coordinator passes its own {@code fractals.*} properties on to the
+   workers that it starts.
+*/
+public class TileRender
+{
+   public static void main(String[] args) throws Exception
+   {
+      // There is no GUI in this program.
+      System.setProperty("java.awt.headless", "true");
+
+      if (args.length > 0 && "-worker".equals(args[0]))
+      {
+         worker(args);
+         return;
+      }
+
+      int width = 16384, height = 16384;
+      int tileSize = 1024;
+      int workerCount = Runtime.getRuntime().availableProcessors();
+      String heap = null;
+      int timeout = TileCoordinator.DEFAULT_TIMEOUT;
+      final List<InetSocketAddress> connect = new ArrayList<>();
+      boolean perspective = true;
+      double x = 0.0, y = 0.0, z = -1.0;
+      int pointSize = -1;
+      Path out = null;
+      ModelSpec spec = null;
+      for (int i = 0; i < args.length; ++i)
+      {
+         if ("-size".equals(args[i]))
+         {
+            final String[] wh = args[++i].toLowerCase().split("x");
+            width = Integer.parseInt(wh[0]);
+            height = Integer.parseInt(wh[1]);
+         }
+         else if ("-tile".equals(args[i]))
+         {
+            tileSize = Integer.parseInt(args[++i]);
+         }
+         else if ("-workers".equals(args[i]))
+         {
+            workerCount = Integer.parseInt(args[++i]);
+         }
+         else if ("-heap".equals(args[i]))
+         {
+            heap = args[++i];
+         }
+         else if ("-connect".equals(args[i]))
+         {
+            for (final String address : args[++i].split(","))
+            {
+               final int colon = address.lastIndexOf(':');
+               connect.add(new InetSocketAddress(address.substring(0, colon),
+                                                 Integer.parseInt(address.substring(colon + 1))));
+            }
+         }
+         else if ("-timeout".equals(args[i]))
+         {
+            timeout = (int)Math.min(Integer.MAX_VALUE, Math.round(Double.parseDouble(args[++i]) * 1000));
+         }
+         else if ("-ortho".equals(args[i]))
+         {
+            perspective = false;
+         }
+         else if ("-x".equals(args[i]))
+         {
+            x = Double.parseDouble(args[++i]);
+         }
+         else if ("-y".equals(args[i]))
+         {
+            y = Double.parseDouble(args[++i]);
+         }
+         else if ("-z".equals(args[i]))
+         {
+            z = Double.parseDouble(args[++i]);
+         }
+         else if ("-points".equals(args[i]))
+         {
+            pointSize = Integer.parseInt(args[++i]);
+         }
+         else if ("-out".equals(args[i]))
+         {
+            out = Paths.get(args[++i]);
+         }
+         else if (args[i].startsWith("-"))
+         {
+            System.err.printf("ERROR! Unknown option %s\n", args[i]);
+            System.exit(1);
+         }
+         else
+         {
+            spec = ModelSpec.parse(args[i]);
+         }
+      }
+      if (null == spec)
+      {
+         System.err.printf("ERROR! No model, for example: TileRender \"BoxFractal(9)\"\n");
+         System.exit(1);
+      }
+      if (null == out)
+      {
+         out = Paths.get(spec.fileName() + "_" + width + "x" + height + ".ppm");
+      }
+      final TileJob job = new TileJob(spec, width, height, perspective, x, y, z, pointSize);
+
+      final List<Process> processes = new ArrayList<>();
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+         for (final Process p : processes) p.destroy();
+      }, "tile-render-stop"));
+      if (connect.isEmpty())
+      {
+         for (int i = 0; i < workerCount; ++i)
+         {
+            connect.add(startWorker(heap, processes));
+         }
+      }
+
+      final TileCoordinator coordinator = new TileCoordinator(connect, timeout);
+      System.out.printf("Rendering %s in %dx%d tiles on %d workers into %s\n",
+                        job, tileSize, tileSize, connect.size(), out);
+      final long start = System.nanoTime();
+      try (MappedFrameFile file = new MappedFrameFile(out, width, height, 1))
+      {
+         coordinator.render(job, tileSize, file, (done, total, worker, nanos) -> {
+            // About every five percent.
+            if ((done * 20L) / total != ((done - 1) * 20L) / total)
+            {
+               System.out.printf("%d of %d tiles (%d%%), %.1f s\n",
+                                 done, total, (done * 100L) / total,
+                                 (System.nanoTime() - start) / 1e9);
+            }
+         });
+      }
+      catch (IOException e)
+      {
+         System.err.printf("ERROR! Could not render %s\n", job);
+         e.printStackTrace(System.err);
+         System.exit(1);
+      }
+      System.out.printf("Rendered %d tiles in %.1f s (%d tiles sent again, %d workers died).\n",
+                        coordinator.getTiles(), (System.nanoTime() - start) / 1e9,
+                        coordinator.getRedispatched(), coordinator.getDeadWorkers());
+   }
+
+
+   /**
+      Start a worker JVM on this machine, with the same class path and
+      {@code fractals.*} properties as this one, and wait for its port.
+   */
+   private static InetSocketAddress startWorker(final String heap,
+                                                final List<Process> processes) throws IOException
+   {
+      final List<String> command = new ArrayList<>();
+      command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+      if (null != heap)
+      {
+         command.add("-Xmx" + heap);
+      }
+      for (final String name : System.getProperties().stringPropertyNames())
+      {
+         if (name.startsWith("fractals."))
+         {
+            command.add("-D" + name + "=" + System.getProperty(name));
+         }
+      }
+      command.add("-cp");
+      command.add(System.getProperty("java.class.path"));
+      command.add(TileRender.class.getName());
+      command.add("-worker");
+      command.add("-spawned");
+
+      final Process process = new ProcessBuilder(command)
+                                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                                    .start();
+      processes.add(process);
+      final BufferedReader reader = new BufferedReader(
+            new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+      final String line = reader.readLine(); // "TileWorker listening on HOST:PORT"
+      if (null == line || ! line.startsWith("TileWorker listening on "))
+         throw new IOException("the worker did not start: " + line);
+      final String address = line.substring(line.lastIndexOf(' ') + 1);
+      final int colon = address.lastIndexOf(':');
+
+      // Pass along anything else that the worker prints.
+      final Thread copy = new Thread(() -> {
+         try
+         {
+            for (String s; null != (s = reader.readLine()); )
+            {
+               System.out.println(s);
+            }
+         }
+         catch (IOException e) // the worker is gone
+         {
+         }
+      }, "tile-worker-output");
+      copy.setDaemon(true);
+      copy.start();
+
+      return new InetSocketAddress(address.substring(0, colon),
+                                   Integer.parseInt(address.substring(colon + 1)));
+   }
+
+
+   private static void worker(final String[] args) throws IOException
+   {
+      int port = 0;
+      String bind = "127.0.0.1";
+      boolean spawned = false;
+      for (int i = 1; i < args.length; ++i)
+      {
+         if ("-port".equals(args[i]))
+         {
+            port = Integer.parseInt(args[++i]);
+         }
+         else if ("-bind".equals(args[i]))
+         {
+            bind = args[++i];
+         }
+         else if ("-spawned".equals(args[i]))
+         {
+            spawned = true;
+         }
+         else
+         {
+            System.err.printf("ERROR! Unknown option %s\n", args[i]);
+            System.exit(1);
+         }
+      }
+
+      final TileWorker worker = new TileWorker(new InetSocketAddress(bind, port),
+                                               ModelBudget.fromProperties(),
+                                               ModelCache.openDefault());
+      if (spawned)
+      {
+         // A worker that was started by a coordinator stops with it
+         // (its standard input is closed when the coordinator stops).
+         final Thread watch = new Thread(() -> {
+            try
+            {
+               while (System.in.read() >= 0) { }
+            }
+            catch (IOException e)
+            {
+            }
+            System.exit(0);
+         }, "tile-worker-parent");
+         watch.setDaemon(true);
+         watch.start();
+      }
+      System.out.printf("TileWorker listening on %s:%d\n", bind, worker.getPort());
+      System.out.flush();
+      worker.serve();
+   }
+}//TileRender
@@ -0,0 +1,228 @@
+/*
+
+*/
+
+package fractals.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+   Compare two JMH result files (written by {@code run_benchmarks.cmd}
+   with {@code -rf json}) and report every benchmark whose score got
+   worse by more than a threshold.
+<pre>{@code
+   java -cp benchmarks\classes fractals.bench.CompareResults  old.json  new.json  [percent]
+}</pre>
+   The default threshold is 10 percent. A score gets worse when it goes
+   down in the {@code Throughput} mode and when it goes up in the other
+   modes. The exit status is 1 if there was any regression, so this
+   program can be used in a build script.
+   <p>
+   This does not need JMH on the class path. It has its own small JSON
+   parser, which is just enough for the files that JMH writes.
+*/
+public final class CompareResults
+{
+   public static void main(final String[] args) throws IOException
+   {
+      if (args.length < 2)
+      {
+         System.err.println("Usage: java fractals.bench.CompareResults old.json new.json [percent]");
+         System.exit(2);
+      }
+      final double threshold = (args.length > 2) ? Double.parseDouble(args[2]) : 10.0;
+
+      final Map<String, Object[]> oldScores = scores(args[0]);
+      final Map<String, Object[]> newScores = scores(args[1]);
+
+      int regressions = 0;
+      System.out.printf("%-70s %12s %12s %8s\n", "benchmark", "old", "new", "change");
+      for (final Map.Entry<String, Object[]> e : newScores.entrySet())
+      {
+         final Object[] o = oldScores.get(e.getKey());
+         final Object[] n = e.getValue();
+         if (null == o)
+         {
+            System.out.printf("%-70s %12s %12.3f %8s\n", e.getKey(), "-", (Double)n[0], "new");
+            continue;
+         }
+         final double oldScore = (Double)o[0];
+         final double newScore = (Double)n[0];
+         final boolean higherIsBetter = "thrpt".equals(n[1]);
+         final double change = 100.0 * (newScore - oldScore) / oldScore;
+         final boolean worse = higherIsBetter ? (change < -threshold) : (change > threshold);
+         if (worse) ++regressions;
+         System.out.printf("%-70s %12.3f %12.3f %+7.1f%%%s\n",
+                           e.getKey(), oldScore, newScore, change,
+                           worse ? "  REGRESSION" : "");
+      }
+      System.out.printf("%d regression(s) worse than %.1f%%\n", regressions, threshold);
+      System.exit((regressions > 0) ? 1 : 0);
+   }
+
+
+   /**
+      Read a JMH JSON result file into a map from the name of each
+      benchmark (with its parameters) to its score and its mode.
+   */
+   @SuppressWarnings("unchecked")
+   private static Map<String, Object[]> scores(final String fileName) throws IOException
+   {
+      final String json = new String(Files.readAllBytes(Paths.get(fileName)),
+                                     StandardCharsets.UTF_8);
+      final Map<String, Object[]> scores = new LinkedHashMap<>();
+      for (final Object r : (List<Object>)new Parser(json).value())
+      {
+         final Map<String, Object> result = (Map<String, Object>)r;
+         final StringBuilder name = new StringBuilder((String)result.get("benchmark"));
+         final Object params = result.get("params");
+         if (null != params)
+         {
+            name.append(((Map<String, Object>)params).toString());
+         }
+         final Map<String, Object> metric = (Map<String, Object>)result.get("primaryMetric");
+         final Object score = metric.get("score"); // JMH writes "NaN" as a string
+         scores.put(name.toString(),
+                    new Object[]{(score instanceof Double) ? score : Double.NaN,
+                                 result.get("mode")});
+      }
+      return scores;
+   }
+
+
+   /**
+      A recursive descent parser for JSON. Objects become
+      {@link LinkedHashMap}s, arrays become {@link ArrayList}s,
+      and all numbers become {@link Double}s.
+   */
+   private static final class Parser
+   {
+      private final String s;
+      private int i = 0;
+
+      Parser(final String s)
+      {
+         this.s = s;
+      }
+
+      Object value()
+      {
+         skipSpace();
+         final char c = s.charAt(i);
+         if ('{' == c)
+         {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            ++i;
+            if (! consume('}'))
+            {
+               do
+               {
+                  skipSpace();
+                  final String key = string();
+                  expect(':');
+                  map.put(key, value());
+               }
+               while (consume(','));
+               expect('}');
+            }
+            return map;
+         }
+         else if ('[' == c)
+         {
+            final List<Object> list = new ArrayList<>();
+            ++i;
+            if (! consume(']'))
+            {
+               do
+               {
+                  list.add(value());
+               }
+               while (consume(','));
+               expect(']');
+            }
+            return list;
+         }
+         else if ('"' == c)
+         {
+            return string();
+         }
+         else if (s.startsWith("true", i))  { i += 4; return Boolean.TRUE; }
+         else if (s.startsWith("false", i)) { i += 5; return Boolean.FALSE; }
+         else if (s.startsWith("null", i))  { i += 4; return null; }
+         else
+         {
+            final int start = i;
+            while (i < s.length() && "+-0123456789.eE".indexOf(s.charAt(i)) >= 0) ++i;
+            if (start == i)
+               throw new IllegalArgumentException("bad JSON at offset " + start);
+            return Double.valueOf(s.substring(start, i));
+         }
+      }
+
+      private String string()
+      {
+         expect('"');
+         final StringBuilder sb = new StringBuilder();
+         for (char c = s.charAt(i++); '"' != c; c = s.charAt(i++))
+         {
+            if ('\\' == c)
+            {
+               c = s.charAt(i++);
+               switch (c)
+               {
+                  case 'n' : sb.append('\n'); break;
+                  case 't' : sb.append('\t'); break;
+                  case 'r' : sb.append('\r'); break;
+                  case 'b' : sb.append('\b'); break;
+                  case 'f' : sb.append('\f'); break;
+                  case 'u' : sb.append((char)Integer.parseInt(s.substring(i, i + 4), 16));
+                             i += 4;
+                             break;
+                  default  : sb.append(c); // '"', '\\', and '/'
+               }
+            }
+            else
+            {
+               sb.append(c);
+            }
+         }
+         return sb.toString();
+      }
+
+      private boolean consume(final char c)
+      {
+         skipSpace();
+         if (i < s.length() && s.charAt(i) == c)
+         {
+            ++i;
+            return true;
+         }
+         return false;
+      }
+
+      private void expect(final char c)
+      {
+         if (! consume(c))
+            throw new IllegalArgumentException("expected '" + c + "' at offset " + i);
+      }
+
+      private void skipSpace()
+      {
+         while (i < s.length() && Character.isWhitespace(s.charAt(i))) ++i;
+      }
+   }
+
+
+   // Private default constructor to enforce noninstantiable class.
+   // See Item 4 in "Effective Java", 3rd Ed, Joshua Bloch.
+   private CompareResults() {
+      throw new AssertionError();
+   }
+}//CompareResults
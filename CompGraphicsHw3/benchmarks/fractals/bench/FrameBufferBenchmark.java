@@ -0,0 +1,125 @@
+/*
+
+*/
+
+package fractals.bench;
+
+import fractals.io.ScreenshotWriter;
+import fractals.pipeline.FractalPipeline;
+import renderer.scene.*;
+import renderer.framebuffer.*;
+import fractals.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+   The cost of clearing a {@link FrameBuffer} and of saving it to a file,
+   both with the renderer's {@code dumpFB2File()} and with the
+   {@link ScreenshotWriter} encoders.
+   <p>
+   The framebuffer holds a rendered fractal, so the image encoders see
+   a realistic image instead of a blank one.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FrameBufferBenchmark
+{
+   @Param({"512x512", "1024x1024", "1920x1080"})
+   public String size;
+
+   private FrameBuffer fb;
+   private Path dir;
+
+
+   @Setup
+   public void setup() throws IOException
+   {
+      System.setProperty("java.awt.headless", "true");
+      final String[] wh = size.split("x");
+      fb = new FrameBuffer(Integer.parseInt(wh[0]), Integer.parseInt(wh[1]));
+      final Scene scene = new Scene();
+      scene.addPosition(new Position(new C_Curve(16)));
+      scene.getPosition(0).translation(0.0, 0.0, -1.0);
+      FractalPipeline.render(scene, fb);
+      dir = Files.createTempDirectory("fb-bench");
+   }
+
+
+   @TearDown
+   public void tearDown() throws IOException
+   {
+      try (java.util.stream.Stream<Path> files = Files.list(dir))
+      {
+         for (final Path p : (Iterable<Path>)files::iterator)
+         {
+            Files.delete(p);
+         }
+      }
+      Files.delete(dir);
+   }
+
+
+   @Benchmark
+   public void clearFB()
+   {
+      fb.clearFB();
+   }
+
+
+   @Benchmark
+   public void dumpFB2FilePPM()
+   {
+      fb.dumpFB2File(dir.resolve("dump.ppm").toString());
+   }
+
+
+   @Benchmark
+   public void dumpFB2FilePNG()
+   {
+      fb.dumpFB2File(dir.resolve("dump.png").toString(), "png");
+   }
+
+
+   @Benchmark
+   public void writePNG() throws IOException
+   {
+      write(ScreenshotWriter.Format.PNG);
+   }
+
+
+   @Benchmark
+   public void writePPM() throws IOException
+   {
+      write(ScreenshotWriter.Format.PPM);
+   }
+
+
+   @Benchmark
+   public void writeQOI() throws IOException
+   {
+      write(ScreenshotWriter.Format.QOI);
+   }
+
+
+   @Benchmark
+   public void writeRAW() throws IOException
+   {
+      write(ScreenshotWriter.Format.RAW);
+   }
+
+
+   private void write(final ScreenshotWriter.Format format) throws IOException
+   {
+      ScreenshotWriter.write(format, fb.pixel_buffer, fb.width, fb.height,
+                             dir.resolve(format.fileName("write", fb.width, fb.height)));
+   }
+}//FrameBufferBenchmark
@@ -0,0 +1,66 @@
+/*
+
+*/
+
+package fractals.bench;
+
+import fractals.pipeline.PackedModel;
+import fractals.util.ModelSpec;
+import renderer.scene.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+   How long it takes to build each kind of fractal model, and (when run
+   with {@code -prof gc}, as {@code run_benchmarks.cmd} does) how many
+   bytes are allocated while building it ({@code gc.alloc.rate.norm}).
+   <p>
+   The levels are the ones where each model has roughly a hundred
+   thousand line segments, so the models can be compared with each other.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GenerationBenchmark
+{
+   @Param({"Canopy(46, 16)",
+           "KochCurve(8)",
+           "H_Tree(16)",
+           "SierpinskiTriangle(9)",
+           "BoxFractal(7)",
+           "C_Curve(18)",
+           "PythagorasTree(0.4, 0.45, 15)",
+           "PackedC_Curve(18)",
+           "PackedKochCurve(8)",
+           "DoubledC_Curve(18)",
+           "DoubledKochCurve(8)",
+           "PackedLSystemC_Curve(18)",
+           "PackedLSystemKochCurve(8)"})
+   public String model;
+
+   private ModelSpec spec;
+
+
+   @Setup
+   public void setup()
+   {
+      spec = ModelSpec.parse(model);
+   }
+
+
+   @Benchmark
+   public Model build()
+   {
+      final Model m = spec.build();
+      if (m instanceof PackedModel)
+      {
+         ((PackedModel)m).close(); // release the off-heap memory right away
+      }
+      return m;
+   }
+}//GenerationBenchmark
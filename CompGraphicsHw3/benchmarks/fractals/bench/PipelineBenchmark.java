@@ -0,0 +1,103 @@
+/*
+
+*/
+
+package fractals.bench;
+
+import fractals.pipeline.FractalPipeline;
+import fractals.pipeline.LineStrip;
+import fractals.pipeline.RenderContext;
+import fractals.util.Catalog;
+import fractals.util.ModelSpec;
+import renderer.scene.*;
+import renderer.pipeline.*;
+import renderer.framebuffer.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+   End-to-end rendering of the models in the {@link Catalog}, the same
+   way {@code InteractiveModelsAll} renders them (clear the framebuffer,
+   then render the scene), with either the renderer's {@link Pipeline}
+   or the {@link FractalPipeline}.
+   <p>
+   The {@code model} parameter is either a single model or {@code catalog},
+   which renders every model of the catalog (except the packed ones, which
+   the renderer's {@link Pipeline} cannot draw) once per operation. The
+   renderer's {@link Pipeline} is given each model's {@link LineStrip}s
+   as line segments.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g"})
+@State(Scope.Benchmark)
+public class PipelineBenchmark
+{
+   @Param({"catalog", "C_Curve(20)", "SierpinskiTriangle(10)", "Canopy(46, 16)"})
+   public String model;
+
+   @Param({"Pipeline", "FractalPipeline"})
+   public String pipeline;
+
+   @Param({"true", "false"})
+   public boolean perspective;
+
+   private final List<Scene> scenes = new ArrayList<>();
+   private FrameBuffer fb;
+
+
+   @Setup
+   public void setup()
+   {
+      final List<ModelSpec> specs = new ArrayList<>();
+      if ("catalog".equals(model))
+      {
+         for (final ModelSpec spec : Catalog.specs())
+         {
+            if (! spec.isPacked()) specs.add(spec);
+         }
+      }
+      else
+      {
+         specs.add(ModelSpec.parse(model));
+      }
+      for (final ModelSpec spec : specs)
+      {
+         final Scene scene = new Scene(spec.toString());
+         final Model m = spec.build();
+         scene.addPosition(new Position("FractalPipeline".equals(pipeline)
+                                        ? m : LineStrip.toLineSegments(m)));
+         scene.getPosition(0).translation(0.0, 0.0, -1.0);
+         scene.getCamera().perspective = perspective;
+         scenes.add(scene);
+      }
+      fb = new FrameBuffer(1024, 1024);
+      RenderContext.setClipping(true);
+   }
+
+
+   @Benchmark
+   public int render()
+   {
+      final boolean fractal = "FractalPipeline".equals(pipeline);
+      for (final Scene scene : scenes)
+      {
+         fb.clearFB();
+         if (fractal)
+         {
+            FractalPipeline.render(scene, fb);
+         }
+         else
+         {
+            Pipeline.render(scene, fb);
+         }
+      }
+      return fb.pixel_buffer[fb.pixel_buffer.length / 2];
+   }
+}//PipelineBenchmark
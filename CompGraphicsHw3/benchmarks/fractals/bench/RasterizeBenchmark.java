@@ -0,0 +1,119 @@
+/*
+
+*/
+
+package fractals.bench;
+
+import fractals.pipeline.LineStrip;
+import fractals.pipeline.Rasterizer;
+import fractals.pipeline.RenderContext;
+import fractals.util.ModelSpec;
+import renderer.scene.*;
+import renderer.scene.primitives.*;
+import renderer.pipeline.*;
+import renderer.framebuffer.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+   Throughput of rasterizing an already projected model, with the
+   renderer's clipping turned on and off, compared with the
+   {@link Rasterizer} used by {@link fractals.pipeline.FractalPipeline}.
+   <p>
+   The models are placed so that they fit in the framebuffer, so turning
+   clipping off does not produce any "bad pixel coordinate" errors.
+   <p>
+   The renderer only rasterizes line segments, so each model's
+   {@link LineStrip}s are replaced by their line segments before it is
+   projected. The {@code rasterizerStrips} benchmark draws the model's
+   {@link LineStrip}s with {@link Rasterizer#lineTo} instead.
+*/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RasterizeBenchmark
+{
+   @Param({"C_Curve(18)", "SierpinskiTriangle(9)", "Canopy(46, 16)"})
+   public String model;
+
+   @Param({"true", "false"})
+   public boolean clipping;
+
+   private Model original;
+   private Model projected;
+   private FrameBuffer fb;
+
+
+   @Setup
+   public void setup()
+   {
+      original = ModelSpec.parse(model).build();
+      final Position position = new Position(LineStrip.toLineSegments(original));
+      position.translation(0.0, 0.0, -1.0);
+      projected = Projection.project(Model2Camera.model2camera(position), new Camera());
+      fb = new FrameBuffer(1024, 1024);
+      RenderContext.setClipping(clipping);
+   }
+
+
+   @TearDown
+   public void tearDown()
+   {
+      RenderContext.setClipping(true);
+   }
+
+
+   @Benchmark
+   public void rasterize()
+   {
+      Rasterize.rasterize(projected, fb.vp);
+   }
+
+
+   @Benchmark
+   public void rasterizer()
+   {
+      // The Rasterizer always clips, so this does not depend on the clipping parameter.
+      final Rasterizer r = new Rasterizer(fb.vp);
+      for (final Primitive p : projected.primitiveList)
+      {
+         final Vertex v0 = projected.vertexList.get(p.vIndexList.get(0));
+         final Vertex v1 = projected.vertexList.get(p.vIndexList.get(1));
+         r.drawLine(v0.x, v0.y, v1.x, v1.y);
+      }
+   }
+
+
+   @Benchmark
+   public void rasterizerStrips()
+   {
+      // The projected model has the same vertices, in the same order, as the original.
+      final Rasterizer r = new Rasterizer(fb.vp);
+      for (final Primitive p : original.primitiveList)
+      {
+         if (p instanceof LineStrip)
+         {
+            final LineStrip strip = (LineStrip)p;
+            final Vertex first = projected.vertexList.get(strip.getFirst());
+            r.moveTo(first.x, first.y);
+            final int end = strip.getFirst() + strip.getVertexCount();
+            for (int i = strip.getFirst() + 1; i < end; ++i)
+            {
+               final Vertex v = projected.vertexList.get(i);
+               r.lineTo(v.x, v.y);
+            }
+         }
+         else
+         {
+            final Vertex v0 = projected.vertexList.get(p.vIndexList.get(0));
+            final Vertex v1 = projected.vertexList.get(p.vIndexList.get(1));
+            r.drawLine(v0.x, v0.y, v1.x, v1.y);
+         }
+      }
+   }
+}//RasterizeBenchmark
@@ -0,0 +1,64 @@
+/*
+
+*/
+
+package fractals.bench;
+
+import fractals.util.ModelSpec;
+import renderer.scene.*;
+import renderer.pipeline.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+   Throughput of the renderer's model-to-camera and projection stages.
+   <p>
+   Each operation transforms every vertex of the model, so the number
+   of vertices per second is the score times the model's vertex count
+   (printed by {@code BatchRenderAll}).
+*/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransformBenchmark
+{
+   @Param({"C_Curve(18)", "SierpinskiTriangle(9)", "Canopy(46, 16)"})
+   public String model;
+
+   @Param({"true", "false"})
+   public boolean perspective;
+
+   private Position position;
+   private Camera camera;
+   private Model cameraModel;
+
+
+   @Setup
+   public void setup()
+   {
+      position = new Position(ModelSpec.parse(model).build());
+      position.translation(0.0, 0.0, -1.0);
+      camera = new Camera();
+      camera.perspective = perspective;
+      cameraModel = Model2Camera.model2camera(position);
+   }
+
+
+   @Benchmark
+   public Model model2camera()
+   {
+      return Model2Camera.model2camera(position);
+   }
+
+
+   @Benchmark
+   public Model projection()
+   {
+      return Projection.project(cameraModel, camera);
+   }
+}//TransformBenchmark
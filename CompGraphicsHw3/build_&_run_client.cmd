@@ -1,3 +1,10 @@
+rem  The programs keep the models that they build in the model cache, the
+rem  directory .fractal-cache next to this script (see fractals.io.ModelCache).
+rem  git ignores it, and clean_class_files.cmd deletes it. To put the cache
+rem  somewhere else, or to turn it off, add one of these options to the java command
+rem     -Dfractals.cache=DIR
+rem     -Dfractals.cache=off
+
 javac -g -Xlint -Xdiags:verbose  -cp .;renderer_2.jar  %1
 java  -Dsun.java2d.uiScale=1.0   -cp .;renderer_2.jar  %~n1
 pause
@@ -1,2 +1,2 @@
-javadoc  -cp .;renderer_2.jar  -d html  -private  -link https://docs.oracle.com/en/java/javase/11/docs/api/  --frames -linksource -quiet -nohelp -nosince -nodeprecatedlist -nodeprecated -version -author -overview renderer/overview.html  -tag param -tag return -tag throws  fractals
+javadoc  -cp .;renderer_2.jar  -d html  -private  -link https://docs.oracle.com/en/java/javase/11/docs/api/  --frames -linksource -quiet -nohelp -nosince -nodeprecatedlist -nodeprecated -version -author -overview renderer/overview.html  -tag param -tag return -tag throws  fractals fractals.io fractals.util fractals.pipeline fractals.jfr
 pause
@@ -1,3 +1,7 @@
 javac -g -Xlint -Xdiags:verbose  -cp .;renderer_2.jar  fractals\*.java  &&^
+javac -g -Xlint -Xdiags:verbose  -cp .;renderer_2.jar  fractals\io\*.java  &&^
+javac -g -Xlint -Xdiags:verbose  -cp .;renderer_2.jar  fractals\util\*.java  &&^
+javac -g -Xlint -Xdiags:verbose  -cp .;renderer_2.jar  fractals\jfr\*.java  &&^
+javac -g -Xlint -Xdiags:verbose  -cp .;renderer_2.jar  fractals\pipeline\*.java  &&^
 javac -g -Xlint -Xdiags:verbose  -cp .;renderer_2.jar           *.java
 pause
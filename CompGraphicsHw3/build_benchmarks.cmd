@@ -0,0 +1,10 @@
+rem  The benchmarks use JMH (https://github.com/openjdk/jmh).
+rem  Put these jar files (from https://repo1.maven.org/maven2/) into benchmarks\lib
+rem     org/openjdk/jmh/jmh-core/1.37/jmh-core-1.37.jar
+rem     org/openjdk/jmh/jmh-generator-annprocess/1.37/jmh-generator-annprocess-1.37.jar
+rem     net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar
+rem     org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar
+rem  and build all of the classes (build_all_classes.cmd) before building the benchmarks.
+
+javac -g -Xlint -Xdiags:verbose  -cp .;renderer_2.jar;benchmarks\lib\*  -d benchmarks\classes  benchmarks\fractals\bench\*.java
+pause
@@ -1 +1,2 @@
 del /S *.class
+if exist .fractal-cache  rmdir /S /Q .fractal-cache
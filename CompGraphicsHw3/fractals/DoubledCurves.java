@@ -0,0 +1,117 @@
+/*
+
+*/
+
+package fractals;
+
+import fractals.pipeline.DoubledCurve;
+import fractals.pipeline.PackedModel.Storage;
+import renderer.scene.*;
+
+import static fractals.pipeline.InstancedModel.maps;
+import static fractals.pipeline.InstancedModel.similarity;
+
+/**
+   The self-similar curves of this project as {@link DoubledCurve}s.
+   <p>
+   Each method returns a model with the same line segments as the
+   corresponding class, built by transforming copies of the previous
+   level instead of by recursion. The maps are found by applying the
+   construction that the class uses to its base, the same way as in
+   {@link InstancedFractals}.
+*/
+public final class DoubledCurves
+{
+   /**
+      A {@link KochCurve} with {@code n} subdivisions,
+      from {@code (-1, 0, 0)} to {@code (1, 0, 0)}.
+
+      @param n  number of subdivisions in this Koch curve
+      @return the Koch curve as a {@link DoubledCurve}
+   */
+   public static DoubledCurve kochCurve(final int n)
+   {
+      return kochCurve(new Vertex(-1.0, 0.0, 0.0),
+                       new Vertex( 1.0, 0.0, 0.0),
+                       n, Storage.AUTO);
+   }
+
+
+   /**
+      A {@link KochCurve} with {@code n} subdivisions,
+      from {@link Vertex} {@code v0} to {@link Vertex} {@code v1}.
+
+      @param v0       left {@link Vertex} of the base
+      @param v1       right {@link Vertex} of the base (in the same z-plane as {@code v0})
+      @param n        number of subdivisions in this Koch curve
+      @param storage  where to keep the packed vertices and line segments
+      @return the Koch curve as a {@link DoubledCurve}
+   */
+   public static DoubledCurve kochCurve(final Vertex v0, final Vertex v1,
+                                        final int n, final Storage storage)
+   {
+      final double x0 = v0.x, y0 = v0.y, x1 = v1.x, y1 = v1.y;
+      final double x2 = (2*x0 + x1)/3, y2 = (2*y0 + y1)/3;
+      final double x3 = (x0 + 2*x1)/3, y3 = (y0 + 2*y1)/3;
+      final double sqrt5 = Math.sqrt(5);
+      final double x4 = (x0+x1)/2 + sqrt5*(y0-y1)/6;
+      final double y4 = (y0+y1)/2 + sqrt5*(x1-x0)/6;
+      return new DoubledCurve("Koch Curve (n = " + n + ")",
+                              x0, y0, x1, y1, v0.z,
+                              maps(similarity(x0, y0, x1, y1,  x0, y0, x2, y2),
+                                   similarity(x0, y0, x1, y1,  x2, y2, x4, y4),
+                                   similarity(x0, y0, x1, y1,  x4, y4, x3, y3),
+                                   similarity(x0, y0, x1, y1,  x3, y3, x1, y1)),
+                              n, storage);
+   }
+
+
+   /**
+      A {@link C_Curve} with {@code n} subdivisions,
+      from {@code (-0.5, 0, 0)} to {@code (0.5, 0, 0)}.
+
+      @param n  number of subdivisions in this C curve
+      @return the C curve as a {@link DoubledCurve}
+   */
+   public static DoubledCurve cCurve(final int n)
+   {
+      return cCurve(new Vertex(-0.5, 0.0, 0.0),
+                    new Vertex( 0.5, 0.0, 0.0),
+                    n, Storage.AUTO);
+   }
+
+
+   /**
+      A {@link C_Curve} with {@code n} subdivisions,
+      from {@link Vertex} {@code v0} to {@link Vertex} {@code v1}.
+      <p>
+      Like the {@link C_Curve}, the line segments are drawn one level
+      above the deepest vertices, so there are {@code 2^(n-1)} of them
+      (and none when {@code n == 0}).
+
+      @param v0       left {@link Vertex} of the base
+      @param v1       right {@link Vertex} of the base (in the same z-plane as {@code v0})
+      @param n        number of subdivisions in this C curve
+      @param storage  where to keep the packed vertices and line segments
+      @return the C curve as a {@link DoubledCurve}
+   */
+   public static DoubledCurve cCurve(final Vertex v0, final Vertex v1,
+                                     final int n, final Storage storage)
+   {
+      final double x0 = v0.x, y0 = v0.y, x1 = v1.x, y1 = v1.y;
+      final double x2 = (x0+x1+y0-y1)/2;
+      final double y2 = (y0+y1+x1-x0)/2;
+      return new DoubledCurve("C Curve (n = " + n + ")",
+                              x0, y0, x1, y1, v0.z,
+                              maps(similarity(x0, y0, x1, y1,  x0, y0, x2, y2),
+                                   similarity(x0, y0, x1, y1,  x2, y2, x1, y1)),
+                              n - 1, storage);
+   }
+
+
+   // Private default constructor to enforce noninstantiable class.
+   // See Item 4 in "Effective Java", 3rd Ed, Joshua Bloch.
+   private DoubledCurves() {
+      throw new AssertionError();
+   }
+}//DoubledCurves
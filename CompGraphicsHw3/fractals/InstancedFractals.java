@@ -0,0 +1,179 @@
+/*
+
+*/
+
+package fractals;
+
+import fractals.pipeline.InstancedModel;
+
+import static fractals.pipeline.InstancedModel.maps;
+import static fractals.pipeline.InstancedModel.similarity;
+
+/**
+   The fractals of this project as {@link InstancedModel}s.
+   <p>
+   Each method returns a model that draws the same line segments as
+   the corresponding class (with its default base vertices), but the
+   model stores just one motif and the few maps that place the copies
+   of the motif. The maps are found by applying the construction that
+   the class uses to its base, so they are exactly the transformations
+   that the class's recursion applies at every level.
+*/
+public final class InstancedFractals
+{
+   /**
+      A {@link KochCurve} with {@code n} subdivisions,
+      from {@code (-1, 0, 0)} to {@code (1, 0, 0)}.
+
+      @param n  number of subdivisions in this Koch curve
+      @return the Koch curve as an {@link InstancedModel}
+   */
+   public static InstancedModel kochCurve(final int n)
+   {
+      final double x0 = -1.0, y0 = 0.0, x1 = 1.0, y1 = 0.0;
+      final double x2 = (2*x0 + x1)/3, y2 = (2*y0 + y1)/3;
+      final double x3 = (x0 + 2*x1)/3, y3 = (y0 + 2*y1)/3;
+      final double sqrt5 = Math.sqrt(5);
+      final double x4 = (x0+x1)/2 + sqrt5*(y0-y1)/6;
+      final double y4 = (y0+y1)/2 + sqrt5*(x1-x0)/6;
+      return new InstancedModel("Koch Curve (n = " + n + ")",
+                                new double[]{x0, y0, x1, y1}, 0.0,
+                                maps(similarity(x0, y0, x1, y1,  x0, y0, x2, y2),
+                                     similarity(x0, y0, x1, y1,  x2, y2, x4, y4),
+                                     similarity(x0, y0, x1, y1,  x4, y4, x3, y3),
+                                     similarity(x0, y0, x1, y1,  x3, y3, x1, y1)),
+                                n, n);
+   }
+
+
+   /**
+      A {@link C_Curve} with {@code n} subdivisions,
+      from {@code (-0.5, 0, 0)} to {@code (0.5, 0, 0)}.
+      <p>
+      Like the {@link C_Curve}, the line segments are drawn one level
+      above the deepest vertices, so there are {@code 2^(n-1)} of them
+      (and none when {@code n == 0}).
+
+      @param n  number of subdivisions in this C curve
+      @return the C curve as an {@link InstancedModel}
+   */
+   public static InstancedModel cCurve(final int n)
+   {
+      final double x0 = -0.5, y0 = 0.0, x1 = 0.5, y1 = 0.0;
+      final double x2 = (x0+x1+y0-y1)/2;
+      final double y2 = (y0+y1+x1-x0)/2;
+      final double[] motif = (0 == n) ? new double[0] : new double[]{x0, y0, x1, y1};
+      final int depth = Math.max(n - 1, 0);
+      return new InstancedModel("C Curve (n = " + n + ")",
+                                motif, 0.0,
+                                maps(similarity(x0, y0, x1, y1,  x0, y0, x2, y2),
+                                     similarity(x0, y0, x1, y1,  x2, y2, x1, y1)),
+                                depth, depth);
+   }
+
+
+   /**
+      An {@link H_Tree} with {@code n} branches, with its base
+      from {@code (-0.5, 0, 0)} to {@code (0.5, 0, 0)}.
+
+      @param n  number of branches in this H tree
+      @return the H tree as an {@link InstancedModel}
+   */
+   public static InstancedModel hTree(final int n)
+   {
+      final double x0 = -0.5, y0 = 0.0, x1 = 0.5, y1 = 0.0;
+      final double h = 0.5 * (x1 - x0) / Math.sqrt(2); // half the length of a branch
+      return new InstancedModel("H Tree (n = " + n + ")",
+                                new double[]{x0, y0, x1, y1}, 0.0,
+                                maps(similarity(x0, y0, x1, y1,  x0, y0 + h, x0, y0 - h),
+                                     similarity(x0, y0, x1, y1,  x1, y1 + h, x1, y1 - h)),
+                                n, 0);
+   }
+
+
+   /**
+      An equilateral {@link SierpinskiTriangle} with {@code n}
+      subdivisions and with its corners on the unit circle.
+
+      @param n  number of subdivisions for this triangle
+      @return the Sierpinski triangle as an {@link InstancedModel}
+   */
+   public static InstancedModel sierpinskiTriangle(final int n)
+   {
+      final double[] x = new double[3];
+      final double[] y = new double[3];
+      for (int i = 0; i < 3; ++i)
+      {
+         x[i] = Math.cos(i*2*Math.PI/3);
+         y[i] = Math.sin(i*2*Math.PI/3);
+      }
+      // Each smaller triangle is the triangle shrunk by half towards one of its corners.
+      return new InstancedModel("Sierpinski Triangle (n = " + n + ")",
+                                new double[]{x[0], y[0], x[1], y[1],
+                                             x[1], y[1], x[2], y[2],
+                                             x[2], y[2], x[0], y[0]}, 0.0,
+                                new double[]{0.5, 0, 0, 0.5, x[0]/2, y[0]/2,
+                                             0.5, 0, 0, 0.5, x[1]/2, y[1]/2,
+                                             0.5, 0, 0, 0.5, x[2]/2, y[2]/2},
+                                n, 0);
+   }
+
+
+   /**
+      A {@link BoxFractal} with {@code n} subdivisions, in
+      the square with corners {@code (-1, -1)} and {@code (1, 1)}.
+      <p>
+      Like the {@link BoxFractal}, the boxes of the last two levels
+      are drawn.
+
+      @param n  number of subdivisions for this box fractal
+      @return the box fractal as an {@link InstancedModel}
+   */
+   public static InstancedModel boxFractal(final int n)
+   {
+      final double t = 1.0/3, c = 2.0/3;
+      return new InstancedModel("Box Fractal (n = " + n + ")",
+                                new double[]{-1,  1,  1,  1,
+                                              1,  1,  1, -1,
+                                              1, -1, -1, -1,
+                                             -1, -1, -1,  1}, 0.0,
+                                new double[]{t, 0, 0, t,  0,  c,   // top
+                                             t, 0, 0, t, -c,  0,   // left
+                                             t, 0, 0, t,  0,  0,   // center
+                                             t, 0, 0, t,  c,  0,   // right
+                                             t, 0, 0, t,  0, -c},  // bottom
+                                n, Math.max(n - 1, 0));
+   }
+
+
+   /**
+      A {@link Canopy} tree with {@code n} branch splittings and its trunk
+      from {@code (0, -1, 0)} to {@code (0, -0.5, 0)}.
+
+      @param angle  angle, in degrees, between the branches
+      @param n      number of branch splittings in this tree
+      @return the canopy as an {@link InstancedModel}
+   */
+   public static InstancedModel canopy(final double angle, final int n)
+   {
+      final double x0 = 0.0, y0 = -1.0, x1 = 0.0, y1 = -0.5;
+      final double sqrt2 = Math.sqrt(2);
+      final double tanAngle = Math.tan(Math.PI/180*angle/2);
+      final double x2 = ((1+sqrt2)*x1 - x0 - tanAngle * (y0 - y1))/sqrt2;
+      final double y2 = ((1+sqrt2)*y1 - y0 - tanAngle * (x1 - x0))/sqrt2;
+      final double x3 = ((1+sqrt2)*x1 - x0 + tanAngle * (y0 - y1))/sqrt2;
+      final double y3 = ((1+sqrt2)*y1 - y0 + tanAngle * (x1 - x0))/sqrt2;
+      return new InstancedModel("Canopy Tree (n = " + n + ")",
+                                new double[]{x0, y0, x1, y1}, 0.0,
+                                maps(similarity(x0, y0, x1, y1,  x1, y1, x2, y2),
+                                     similarity(x0, y0, x1, y1,  x1, y1, x3, y3)),
+                                n, 0);
+   }
+
+
+   // Private default constructor to enforce noninstantiable class.
+   // See Item 4 in "Effective Java", 3rd Ed, Joshua Bloch.
+   private InstancedFractals() {
+      throw new AssertionError();
+   }
+}//InstancedFractals
@@ -0,0 +1,243 @@
+/*
+
+*/
+
+package fractals;
+
+import fractals.pipeline.LSystem;
+import fractals.pipeline.LSystemModel;
+import fractals.pipeline.LineStrip;
+import renderer.scene.*;
+import renderer.scene.primitives.*;
+
+/**
+   The curves and trees of this project, and two more curves,
+   as {@link LSystem} rules.
+   <p>
+   Each rule is the construction that the corresponding class applies
+   to one line segment, written as turtle moves. The classes build their
+   models by expanding these rules (see {@link #expand}), so each method
+   here returns a model that draws the same line segments as the class
+   (with its default base vertices), but that is expanded while it is
+   rendered, or into a {@link fractals.pipeline.PackedModel}.
+*/
+public final class LSystems
+{
+   /**
+      A {@link KochCurve} with {@code n} subdivisions,
+      from {@code (-1, 0, 0)} to {@code (1, 0, 0)}.
+
+      @param n  number of subdivisions in this Koch curve
+      @return the Koch curve as an {@link LSystemModel}
+   */
+   public static LSystemModel kochCurve(final int n)
+   {
+      return new LSystemModel("Koch Curve (n = " + n + ")", kochRules(), n,
+                              -1.0, 0.0, 1.0, 0.0, 0.0);
+   }
+
+
+   /**
+      The rules of a {@link KochCurve}, whose level is its number of subdivisions.
+
+      @return the Koch curve's {@link LSystem}
+   */
+   static LSystem kochRules()
+   {
+      // The peak is sqrt(5)/6 of the base above its midpoint.
+      final double peak = Math.toDegrees(Math.atan(Math.sqrt(5)));
+      final double side = Math.sqrt(6) / 6;
+      return new LSystem("F", peak, 1.0, "F",
+            "F=F(" + 1.0/3 + ")+F(" + side + ")-(" + 2*peak + ")F(" + side + ")+F(" + 1.0/3 + ")");
+   }
+
+
+   /**
+      A {@link C_Curve} with {@code n} subdivisions,
+      from {@code (-0.5, 0, 0)} to {@code (0.5, 0, 0)}.
+      <p>
+      Like the {@link C_Curve}, the line segments are drawn one level
+      above the deepest vertices, so there are {@code 2^(n-1)} of them
+      (and none when {@code n == 0}).
+
+      @param n  number of subdivisions in this C curve
+      @return the C curve as an {@link LSystemModel}
+   */
+   public static LSystemModel cCurve(final int n)
+   {
+      return new LSystemModel("C Curve (n = " + n + ")", cCurveRules(), n - 1,
+                              -0.5, 0.0, 0.5, 0.0, 0.0);
+   }
+
+
+   /**
+      The rules of a {@link C_Curve}, whose level is one less
+      than its number of subdivisions.
+
+      @return the C curve's {@link LSystem}
+   */
+   static LSystem cCurveRules()
+   {
+      final double r = Math.sqrt(0.5);
+      return new LSystem("F", 45, 1.0, "F",
+            "F=+F(" + r + ")-(90)F(" + r + ")+");
+   }
+
+
+   /**
+      An {@link H_Tree} with {@code n} branches, with its base
+      from {@code (-0.5, 0, 0)} to {@code (0.5, 0, 0)}.
+      <p>
+      Each branch moves to the middle of the next branch at each of its
+      ends, and draws the next branch across itself. (Some of the next
+      branches are drawn in the opposite direction from the ones of the
+      {@link H_Tree}, so the line segments are the same, but not all of
+      them have the same first vertex.)
+
+      @param n  number of branches in this H tree
+      @return the H tree as an {@link LSystemModel}
+   */
+   public static LSystemModel hTree(final int n)
+   {
+      return new LSystemModel("H Tree (n = " + n + ")", hTreeRules(), n,
+                              -0.5, 0.0, 0.5, 0.0, 0.0);
+   }
+
+
+   /**
+      The rules of an {@link H_Tree}, whose level is its number of branches.
+
+      @return the H tree's {@link LSystem}
+   */
+   static LSystem hTreeRules()
+   {
+      final double s = Math.sqrt(0.5); // the next branch, compared to this one
+      return new LSystem("G", 90, 1.0, "FG",
+            "G=F[|f-f(" + s/2 + ")|G(" + s + ")][+f(" + s/2 + ")|G(" + s + ")]");
+   }
+
+
+   /**
+      A {@link Canopy} tree with {@code n} branch splittings and its trunk
+      from {@code (0, -1, 0)} to {@code (0, -0.5, 0)}.
+
+      @param angle  angle, in degrees, between the branches
+      @param n      number of branch splittings in this tree
+      @return the canopy as an {@link LSystemModel}
+   */
+   public static LSystemModel canopy(final double angle, final int n)
+   {
+      return new LSystemModel("Canopy Tree (n = " + n + ")", canopyRules(angle), n,
+                              0.0, -1.0, 0.0, -0.5, 0.0);
+   }
+
+
+   /**
+      The rules of a {@link Canopy}, whose level is its number of branch splittings.
+
+      @param angle  angle, in degrees, between the branches
+      @return the canopy's {@link LSystem}
+   */
+   static LSystem canopyRules(final double angle)
+   {
+      // Each branch ends at the same height above the end of its trunk,
+      // half of the trunk's length times sqrt(2), whatever the angle is.
+      final double s = 1 / (Math.sqrt(2) * Math.cos(Math.toRadians(angle / 2)));
+      return new LSystem("G", angle / 2, 1.0, "FG",
+            "G=F[-G(" + s + ")][+G(" + s + ")]");
+   }
+
+
+   /**
+      A Heighway dragon curve with {@code n} folds,
+      from {@code (-0.5, 0, 0)} to {@code (0.5, 0, 0)}.
+      <p>
+      The dragon is a C curve whose second half bends the other way.
+
+      @param n  number of folds in this dragon curve
+      @return the dragon curve as an {@link LSystemModel}
+   */
+   public static LSystemModel dragonCurve(final int n)
+   {
+      final double r = Math.sqrt(0.5);
+      final LSystem dragon = new LSystem("F", 45, 1.0, "FG",
+            "F=+F(" + r + ")-(90)G(" + r + ")+",
+            "G=-F(" + r + ")+(90)G(" + r + ")-");
+      return new LSystemModel("Dragon Curve (n = " + n + ")", dragon, n,
+                              -0.5, 0.0, 0.5, 0.0, 0.0);
+   }
+
+
+   /**
+      A Hilbert curve of order {@code n}, which fills
+      the square with corners {@code (-1, -1)} and {@code (1, 1)}.
+      The curve has {@code 4^n - 1} line segments.
+
+      @param n  order of this Hilbert curve
+      @return the Hilbert curve as an {@link LSystemModel}
+   */
+   public static LSystemModel hilbertCurve(final int n)
+   {
+      final LSystem hilbert = new LSystem("A", 90, 0.5, "F",
+            "A=+BF-AFA-FB+",
+            "B=-AF+BFB+FA-");
+      // The curve goes through the centers of a 2^n by 2^n grid of cells.
+      final double cell = 2.0 / (1L << Math.min(Math.max(n, 0), 62));
+      final double x0 = -1.0 + cell / 2, y0 = -1.0 + cell / 2;
+      return new LSystemModel("Hilbert Curve (n = " + n + ")", hilbert, n,
+                              x0, y0, x0 + 2.0, y0, 0.0);
+   }
+
+
+   /**
+      Expand {@code rules} into {@code model}, with the turtle starting at
+      {@code v0} and heading towards {@code v1}, in the z-plane of {@code v0}.
+      <p>
+      The vertices are shared the way {@link LSystem#vertexCount} counts
+      them. If {@code strip} is {@code true}, the turtle must draw one
+      connected polyline, and the model gets a single {@link LineStrip}
+      through the vertices instead of a {@link LineSegment} for each line
+      segment.
+
+      @param rules  the {@link LSystem} to expand
+      @param level  the number of times the rules are applied
+      @param v0     the turtle's starting point
+      @param v1     the point the turtle starts heading towards
+      @param strip  whether to draw the line segments as one {@link LineStrip}
+      @param model  the {@link Model} that receives the vertices and line segments
+   */
+   static void expand(final LSystem rules, final int level,
+                      final Vertex v0, final Vertex v1,
+                      final boolean strip,
+                      final Model model)
+   {
+      final double z = v0.z;
+      final int first = model.vertexList.size();
+      rules.expand(level, v0.x, v0.y, v1.x, v1.y, new LSystem.VertexSink()
+      {
+         @Override
+         public int vertex(final double x, final double y)
+         {
+            model.addVertex(new Vertex(x, y, z));
+            return model.vertexList.size() - 1;
+         }
+
+         @Override
+         public void segment(final int vIndex0, final int vIndex1)
+         {
+            if (! strip) model.addPrimitive(new LineSegment(vIndex0, vIndex1));
+         }
+      });
+      if (strip && model.vertexList.size() > first)
+      {
+         model.addPrimitive(new LineStrip(first, model.vertexList.size() - first));
+      }
+   }
+
+
+   // Private default constructor to enforce noninstantiable class.
+   // See Item 4 in "Effective Java", 3rd Ed, Joshua Bloch.
+   private LSystems() {
+      throw new AssertionError();
+   }
+}//LSystems
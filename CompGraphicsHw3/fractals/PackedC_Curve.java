@@ -0,0 +1,99 @@
+/*
+
+*/
+
+package fractals;
+
+import fractals.pipeline.PackedModel;
+import renderer.scene.*;
+
+/**
+   A L&eacute;vy C curve, like {@link C_Curve}, whose vertices and line
+   segments are stored off the Java heap in a {@link PackedModel}.
+   <p>
+   The vertices and line segments are the same, and in the same order,
+   as in a {@link C_Curve} with the same parameters, but this class can
+   build curves that have far too many line segments to be stored as
+   {@link Vertex} and {@link renderer.scene.primitives.LineSegment} objects.
+   <p>
+   A {@code PackedC_Curve} must be rendered by the
+   {@link fractals.pipeline.FractalPipeline}, and it should be
+   {@link #close}d when it is no longer needed.
+*/
+public class PackedC_Curve extends PackedModel
+{
+   /**
+      Create a L&eacute;vy C curve in the xy-plane with {@code n}
+      subdivisions and beginning with the line segment from
+      {@code (-0.5, 0.0, 0.0)} to {@code (0.5, 0.0, 0.0)}.
+
+      @param n  number of subdivisions in this C Curve
+   */
+   public PackedC_Curve(final int n)
+   {
+      this(new Vertex(-0.5, 0.0, 0.0),
+           new Vertex( 0.5, 0.0, 0.0),
+           n, Storage.AUTO);
+   }
+
+
+   /**
+      Create a L&eacute;vy C curve with {@code n} subdivisions and
+      beginning with the line segment from {@link Vertex}
+      {@code v0} to {@link Vertex} {@code v1}.
+
+      @param v0       left {@link Vertex} of the base
+      @param v1       right {@link Vertex} of the base
+      @param n        number of subdivisions in this C Curve
+      @param storage  where to keep the packed vertices and line segments
+   */
+   public PackedC_Curve(final Vertex v0, final Vertex v1,
+                        final int n, final Storage storage)
+   {
+      // A C_Curve has 2^n + 1 vertices and 2^(n-1) line segments (none when n = 0).
+      super("C Curve (n = " + n + ")",
+            (1L << n) + 1,
+            (0 == n) ? 0 : 1L << (n - 1),
+            storage);
+
+      putVertex(v0.x, v0.y, v0.z);
+      putVertex(v1.x, v1.y, v1.z);
+
+      curve(0, v0.x, v0.y, 1, v1.x, v1.y, v0.z, n);
+   }
+
+
+   /**
+      The construction of a {@link C_Curve}, as a recursion with the
+      coordinates of the two base vertices passed along with their indices.
+
+      @param vIndex0  index of the left {@link Vertex} of the base
+      @param x0       x-coordinate of the left end of the base
+      @param y0       y-coordinate of the left end of the base
+      @param vIndex1  index of the right {@link Vertex} of the base
+      @param x1       x-coordinate of the right end of the base
+      @param y1       y-coordinate of the right end of the base
+      @param z0       z-coordinate of the plane that holds the curve
+      @param n        number of subdivisions in this C Curve
+   */
+   private void curve(final int vIndex0, final double x0, final double y0,
+                      final int vIndex1, final double x1, final double y1,
+                      final double z0,
+                      final int n)
+   {
+      if (n == 1)
+      {
+         putSegment(vIndex0, vIndex1);
+      }
+
+      if (n > 0)
+      {
+         final double x2 = (x0+x1+y0-y1)/2;
+         final double y2 = (y0+y1+x1-x0)/2;
+         final int vIndex2 = putVertex(x2, y2, z0);
+
+         curve(vIndex0, x0, y0, vIndex2, x2, y2, z0, n-1);
+         curve(vIndex2, x2, y2, vIndex1, x1, y1, z0, n-1);
+      }
+   }
+}//PackedC_Curve
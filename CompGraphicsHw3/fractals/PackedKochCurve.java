@@ -0,0 +1,106 @@
+/*
+
+*/
+
+package fractals;
+
+import fractals.pipeline.PackedModel;
+import renderer.scene.*;
+
+/**
+   A Koch curve, like {@link KochCurve}, whose vertices and line
+   segments are stored off the Java heap in a {@link PackedModel}.
+   <p>
+   The vertices and line segments are the same, and in the same order,
+   as in a {@link KochCurve} with the same parameters, but this class can
+   build curves that have far too many line segments to be stored as
+   {@link Vertex} and {@link renderer.scene.primitives.LineSegment} objects.
+   <p>
+   A {@code PackedKochCurve} must be rendered by the
+   {@link fractals.pipeline.FractalPipeline}, and it should be
+   {@link #close}d when it is no longer needed.
+*/
+public class PackedKochCurve extends PackedModel
+{
+   private static final double SQRT5 = Math.sqrt(5);
+
+   /**
+      Create a Koch curve in the xy-plane with {@code n} subdivisions
+      and beginning with the line segment from {@code (-1.0, 0.0, 0.0)}
+      to {@code (1.0, 0.0, 0.0)}.
+
+      @param n  number of subdivisions in this Koch Curve
+   */
+   public PackedKochCurve(final int n)
+   {
+      this(new Vertex(-1.0, 0.0, 0.0),
+           new Vertex( 1.0, 0.0, 0.0),
+           n, Storage.AUTO);
+   }
+
+
+   /**
+      Create a Koch curve with {@code n} subdivisions and
+      beginning with the line segment from {@link Vertex}
+      {@code v0} to {@link Vertex} {@code v1}.
+
+      @param v0       left {@link Vertex} of the base
+      @param v1       right {@link Vertex} of the base
+      @param n        number of subdivisions in this Koch Curve
+      @param storage  where to keep the packed vertices and line segments
+   */
+   public PackedKochCurve(final Vertex v0, final Vertex v1,
+                          final int n, final Storage storage)
+   {
+      // A KochCurve has 4^n + 1 vertices and 4^n line segments.
+      super("Koch Curve (n = " + n + ")",
+            (1L << (2 * n)) + 1,
+            1L << (2 * n),
+            storage);
+
+      putVertex(v0.x, v0.y, v0.z);
+      putVertex(v1.x, v1.y, v1.z);
+
+      curve(0, v0.x, v0.y, 1, v1.x, v1.y, v0.z, n);
+   }
+
+
+   /**
+      The construction of a {@link KochCurve}, as a recursion with the
+      coordinates of the two base vertices passed along with their indices.
+
+      @param vIndex0  index of the left {@link Vertex} of the base
+      @param x0       x-coordinate of the left end of the base
+      @param y0       y-coordinate of the left end of the base
+      @param vIndex1  index of the right {@link Vertex} of the base
+      @param x1       x-coordinate of the right end of the base
+      @param y1       y-coordinate of the right end of the base
+      @param z0       z-coordinate of the plane that holds the curve
+      @param n        number of subdivisions in this Koch Curve
+   */
+   private void curve(final int vIndex0, final double x0, final double y0,
+                      final int vIndex1, final double x1, final double y1,
+                      final double z0,
+                      final int n)
+   {
+      if (n > 0)
+      {
+         final double x2 = (2*x0 + x1)/3,  y2 = (2*y0 + y1)/3;
+         final double x3 = (x0 + 2*x1)/3,  y3 = (y0 + 2*y1)/3;
+         final double x4 = (x0+x1)/2 + SQRT5*(y0-y1)/6;
+         final double y4 = (y0+y1)/2 + SQRT5*(x1-x0)/6;
+         final int vIndex2 = putVertex(x2, y2, z0);
+         final int vIndex3 = putVertex(x3, y3, z0);
+         final int vIndex4 = putVertex(x4, y4, z0);
+
+         curve(vIndex0, x0, y0, vIndex2, x2, y2, z0, n-1);
+         curve(vIndex2, x2, y2, vIndex4, x4, y4, z0, n-1);
+         curve(vIndex4, x4, y4, vIndex3, x3, y3, z0, n-1);
+         curve(vIndex3, x3, y3, vIndex1, x1, y1, z0, n-1);
+      }
+      else
+      {
+         putSegment(vIndex0, vIndex1);
+      }
+   }
+}//PackedKochCurve
@@ -0,0 +1,173 @@
+/*
+
+*/
+
+package fractals;
+
+import fractals.pipeline.PackedModel;
+import renderer.scene.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+   A Pythagoras tree, like {@link PythagorasTree}, whose vertices and
+   line segments are stored off the Java heap in a {@link PackedModel}.
+   <p>
+   The vertices and line segments are the same, and in the same order,
+   as in a {@link PythagorasTree} with the same parameters, and they are
+   built the same way, with large subtrees built in parallel. A tree with
+   20 branches (6 million vertices and 10 million line segments) takes
+   about 230 MB, instead of the almost 2 GB that it takes as {@link Vertex}
+   and {@link renderer.scene.primitives.LineSegment} objects.
+   <p>
+   A {@code PackedPythagorasTree} must be rendered by the
+   {@link fractals.pipeline.FractalPipeline}, and it should be
+   {@link #close}d when it is no longer needed.
+*/
+public class PackedPythagorasTree extends PackedModel
+{
+   // Subtrees with at least this many branches are built in parallel.
+   private static final int PARALLEL_BRANCHES = 10;
+
+   /**
+      Create a Pythagoras tree in the xy-plane with {@code n}
+      branches and with its base on the line segment from
+      {@code (-0.25, -1.0, 0.0)} to {@code (0.25, -1.0, 0.0)}.
+
+      @param alpha  determines the location of the peek
+      @param beta   determines the location of the peek
+      @param n      number of branches in this Pythagoras tree
+   */
+   public PackedPythagorasTree(final double alpha,
+                               final double beta,
+                               final int n)
+   {
+      this(new Vertex(-0.25, -1.0, 0.0),
+           new Vertex( 0.25, -1.0, 0.0),
+           alpha, beta,
+           n, Storage.AUTO);
+   }
+
+
+   /**
+      Create a Pythagoras tree with {@code n} branches and
+      with its base on the line segment from {@link Vertex}
+      {@code v0} to {@link Vertex} {@code v1}.
+
+      @param v0       left {@link Vertex} of the base
+      @param v1       right {@link Vertex} of the base
+      @param alpha    determines the horizontal location of the peek
+      @param beta     determines the vertical location of the peek
+      @param n        number of branches in this Pythagoras tree
+      @param storage  where to keep the packed vertices and line segments
+   */
+   public PackedPythagorasTree(final Vertex v0, final Vertex v1,
+                               final double alpha, final double beta,
+                               final int n, final Storage storage)
+   {
+      // A tree with n branches has 2^(n+1) - 1 squares.
+      super("Pythagoras Tree (n = " + n + ")",
+            2 + 3 * ((1L << (n + 1)) - 1),
+            1 + 5 * ((1L << (n + 1)) - 1),
+            storage);
+
+      setVertex(0, v0.x, v0.y, v0.z);
+      setVertex(1, v1.x, v1.y, v1.z);
+      setSegment(0, 0, 1);
+
+      final Branch tree = new Branch(0, v0.x, v0.y, 1, v1.x, v1.y, v0.z,
+                                     alpha, beta, n, 2, 1);
+      if (n >= PARALLEL_BRANCHES)
+      {
+         ForkJoinPool.commonPool().invoke(tree);
+      }
+      else
+      {
+         tree.compute();
+      }
+      setCounts(2 + 3 * ((1 << (n + 1)) - 1), 1 + 5 * ((1L << (n + 1)) - 1));
+   }
+
+
+   /**
+      The same recursion as {@link PythagorasTree}, with the coordinates of
+      the two base vertices passed along with their indices. A subtree with
+      enough branches builds its two subtrees in parallel.
+   */
+   private final class Branch extends RecursiveAction
+   {
+      private static final long serialVersionUID = 1L;
+
+      private final int vIndex0, vIndex1;
+      private final double x0, y0, x1, y1, z;
+      private final double alpha, beta;
+      private final int n;
+      private final int vNext;
+      private final long sNext;
+
+      Branch(final int vIndex0, final double x0, final double y0,
+             final int vIndex1, final double x1, final double y1,
+             final double z,
+             final double alpha, final double beta,
+             final int n,
+             final int vNext, final long sNext)
+      {
+         this.vIndex0 = vIndex0;  this.x0 = x0;  this.y0 = y0;
+         this.vIndex1 = vIndex1;  this.x1 = x1;  this.y1 = y1;
+         this.z = z;
+         this.alpha = alpha;
+         this.beta = beta;
+         this.n = n;
+         this.vNext = vNext;
+         this.sNext = sNext;
+      }
+
+      @Override
+      protected void compute()
+      {
+         pythagoras(vIndex0, x0, y0, vIndex1, x1, y1, n, vNext, sNext);
+      }
+
+      private void pythagoras(final int vIndex0, final double x0, final double y0,
+                              final int vIndex1, final double x1, final double y1,
+                              final int n,
+                              final int vNext, final long sNext)
+      {
+         final double x2 = x0 + y0 - y1, y2 = y0 + x1 - x0;
+         final double x3 = x1 + y0 - y1, y3 = y1 + x1 - x0;
+         final double x5 = (1-alpha)*x0 + alpha*x1 + (1+beta)*(y0 - y1);
+         final double y5 = (1-alpha)*y0 + alpha*y1 + (1+beta)*(x1 - x0);
+         final int vIndex2 = vNext;
+         final int vIndex3 = vNext + 1;
+         final int vIndex5 = vNext + 2;
+         setVertex(vIndex2, x2, y2, z);
+         setVertex(vIndex3, x3, y3, z);
+         setVertex(vIndex5, x5, y5, z);
+
+         setSegment(sNext,     vIndex0, vIndex2); // the square
+         setSegment(sNext + 1, vIndex1, vIndex3);
+         setSegment(sNext + 2, vIndex2, vIndex3);
+         setSegment(sNext + 3, vIndex2, vIndex5); // the triangle
+         setSegment(sNext + 4, vIndex5, vIndex3);
+
+         if (n > 0)
+         {
+            // Each subtree has 2^n - 1 squares.
+            final long squares = (1L << n) - 1;
+            final int vRight = (int)(vNext + 3 + 3 * squares);
+            final long sRight = sNext + 5 + 5 * squares;
+            if (n - 1 >= PARALLEL_BRANCHES)
+            {
+               invokeAll(new Branch(vIndex2, x2, y2, vIndex5, x5, y5, z, alpha, beta, n-1, vNext + 3, sNext + 5),
+                         new Branch(vIndex5, x5, y5, vIndex3, x3, y3, z, alpha, beta, n-1, vRight, sRight));
+            }
+            else
+            {
+               pythagoras(vIndex2, x2, y2, vIndex5, x5, y5, n-1, vNext + 3, sNext + 5);
+               pythagoras(vIndex5, x5, y5, vIndex3, x3, y3, n-1, vRight, sRight);
+            }
+         }
+      }
+   }
+}//PackedPythagorasTree
@@ -0,0 +1,97 @@
+/*
+
+*/
+
+package fractals;
+
+import fractals.pipeline.ParametricModel;
+
+/**
+   A fractal canopy tree, like {@link Canopy}, whose angle between the
+   branches can be changed without rebuilding the tree.
+   <p>
+   The vertices and line segments are the same, and in the same order,
+   as in a {@link Canopy} with the same angle. Each of a branch's two
+   new vertices is computed from the two vertices of the branch below
+   it (see {@link Canopy}), so {@link #setParameter} moves every vertex
+   of the tree to its place for the new angle.
+*/
+public class ParametricCanopy extends ParametricModel
+{
+   private static final int LEFT  = 0;
+   private static final int RIGHT = 1;
+
+   /**
+      Create a fractal canopy tree in the xy-plane
+      with {@code n} branch splittings and starting
+      with the line segment (the tree's "trunk") from
+      {@code (0.0, -1.0, 0.0)} to {@code (0.0, -0.5, 0.0)}.
+
+      @param angle  angle, in degrees, between the branches
+      @param n      number of branch splittings in this tree
+   */
+   public ParametricCanopy(final double angle, final int n)
+   {
+      // A canopy has 2^(n+1) vertices and 2^(n+1) - 1 line segments.
+      super("Canopy Tree (n = " + n + ")",
+            checked(n),
+            (1L << (n + 1)) - 1,
+            2);
+
+      putRoot(0.0, -1.0, 0.0);
+      putRoot(0.0, -0.5, 0.0);
+
+      tree(0, 1, n);
+
+      setParameter(angle);
+   }
+
+
+   private static int checked(final int n)
+   {
+      if (n > 29)
+         throw new IllegalArgumentException("a ParametricCanopy can have at most 29 branch splittings");
+      return 1 << (n + 1);
+   }
+
+
+   /**
+      The construction of a {@link Canopy}, as a recursion
+      that records only the indices of the new vertices.
+
+      @param vIndex0  index of the first vertex of the branch
+      @param vIndex1  index of the second vertex of the branch
+      @param n        number of branch splittings in this tree
+   */
+   private void tree(final int vIndex0, final int vIndex1, final int n)
+   {
+      putSegment(vIndex0, vIndex1);
+
+      if (n > 0)
+      {
+         final int vIndex2 = putDerived(vIndex0, vIndex1, LEFT);
+         final int vIndex3 = putDerived(vIndex0, vIndex1, RIGHT);
+
+         tree(vIndex1, vIndex2, n-1);
+         tree(vIndex1, vIndex3, n-1);
+      }
+   }
+
+
+   /**
+      Set the rules for the angle (in degrees) between the branches.
+   */
+   @Override
+   protected void shape(final double angle)
+   {
+      final double sqrt2 = Math.sqrt(2);
+      final double tanAngle = Math.tan(Math.PI/180*angle/2);
+      setRule(LEFT,  -1/sqrt2, (1+sqrt2)/sqrt2, -tanAngle/sqrt2);
+      setRule(RIGHT, -1/sqrt2, (1+sqrt2)/sqrt2,  tanAngle/sqrt2);
+   }
+
+
+   @Override public String getParameterName() { return "angle"; }
+   @Override public double getMinParameter() { return 0.0; }
+   @Override public double getMaxParameter() { return 180.0; }
+}//ParametricCanopy
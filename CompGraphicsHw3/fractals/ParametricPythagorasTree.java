@@ -0,0 +1,126 @@
+/*
+
+*/
+
+package fractals;
+
+import fractals.pipeline.ParametricModel;
+
+/**
+   A Pythagoras tree, like {@link PythagorasTree}, whose branches are
+   topped by isosceles triangles with an angle at their peek that can
+   be changed without rebuilding the tree.
+   <p>
+   The vertices and line segments are the same, and in the same order,
+   as in a {@link PythagorasTree} with the same angle. The shape of the
+   triangles can also be set with the {@code alpha} and {@code beta}
+   of {@link PythagorasTree}, using {@link #setShape}.
+*/
+public class ParametricPythagorasTree extends ParametricModel
+{
+   private static final int LEFT  = 0; // top left corner of a square
+   private static final int RIGHT = 1; // top right corner of a square
+   private static final int PEEK  = 2; // peek of a triangle
+
+   /**
+      Create a Pythagoras tree in the xy-plane with {@code n}
+      branches and with its base on the line segment from
+      (-0.25, -1.0, 0.0) to (0.25, -1.0, 0.0). Each branch
+      will be topped with an isosceles triangle with the
+      given angle at its peek.
+
+      @param angle  the angle, in degrees, at the peek of the isosceles triangles
+      @param n      number of branches in this Pythagoras tree
+   */
+   public ParametricPythagorasTree(final double angle, final int n)
+   {
+      // A tree with n branches has 2^(n+1) - 1 squares.
+      super("Pythagoras Tree (n = " + n + ")",
+            checked(n),
+            1 + 5 * ((1L << (n + 1)) - 1),
+            3);
+
+      putRoot(-0.25, -1.0, 0.0);
+      putRoot( 0.25, -1.0, 0.0);
+      putSegment(0, 1);
+
+      pythagoras(0, 1, n);
+
+      setParameter(angle);
+   }
+
+
+   private static int checked(final int n)
+   {
+      if (n > 27)
+         throw new IllegalArgumentException("a ParametricPythagorasTree can have at most 27 branches");
+      return 2 + 3 * ((1 << (n + 1)) - 1);
+   }
+
+
+   /**
+      The same recursion as {@link PythagorasTree}, but only the indices
+      of the new vertices are recorded.
+
+      @param vIndex0  index of the left vertex of the base
+      @param vIndex1  index of the right vertex of the base
+      @param n        number of branches in this Pythagoras tree
+   */
+   private void pythagoras(final int vIndex0, final int vIndex1, final int n)
+   {
+      final int vIndex2 = putDerived(vIndex0, vIndex1, LEFT);
+      final int vIndex3 = putDerived(vIndex0, vIndex1, RIGHT);
+      final int vIndex5 = putDerived(vIndex0, vIndex1, PEEK);
+
+      putSegment(vIndex0, vIndex2); // the square
+      putSegment(vIndex1, vIndex3);
+      putSegment(vIndex2, vIndex3);
+      putSegment(vIndex2, vIndex5); // the triangle
+      putSegment(vIndex5, vIndex3);
+
+      if (n > 0)
+      {
+         pythagoras(vIndex2, vIndex5, n-1);
+         pythagoras(vIndex5, vIndex3, n-1);
+      }
+   }
+
+
+   /**
+      Set the rules for the angle (in degrees) at the peek of the triangles.
+   */
+   @Override
+   protected void shape(final double angle)
+   {
+      shape(0.5, 0.5/Math.tan(0.5*angle*Math.PI/180));
+   }
+
+
+   private void shape(final double alpha, final double beta)
+   {
+      setRule(LEFT,  1.0,   0.0,   1.0);
+      setRule(RIGHT, 0.0,   1.0,   1.0);
+      setRule(PEEK,  1-alpha, alpha, 1+beta);
+   }
+
+
+   /**
+      Change the triangles to have their peeks at the given {@code alpha}
+      and {@code beta} (see {@link PythagorasTree}) and recompute the
+      coordinates of the tree's vertices in place. The angle given by
+      {@link #getParameter} is then no longer the shape of the tree.
+
+      @param alpha  determines the horizontal location of the peek
+      @param beta   determines the vertical location of the peek
+   */
+   public void setShape(final double alpha, final double beta)
+   {
+      shape(alpha, beta);
+      recompute();
+   }
+
+
+   @Override public String getParameterName() { return "angle"; }
+   @Override public double getMinParameter() { return 30.0; }
+   @Override public double getMaxParameter() { return 150.0; }
+}//ParametricPythagorasTree
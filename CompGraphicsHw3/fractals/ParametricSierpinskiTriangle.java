@@ -0,0 +1,106 @@
+/*
+
+*/
+
+package fractals;
+
+import fractals.pipeline.ParametricModel;
+
+/**
+   An equilateral Sierpinski triangle, like {@link SierpinskiTriangle},
+   with its corners on the unit circle, that can be rotated without
+   rebuilding it.
+   <p>
+   The vertices and line segments are the same, and in the same order,
+   as in a {@link SierpinskiTriangle}. Only the three corners depend on
+   the rotation angle, every other vertex is the midpoint of two earlier
+   vertices, so {@link #setParameter} moves the corners and then
+   recomputes the midpoints in place.
+*/
+public class ParametricSierpinskiTriangle extends ParametricModel
+{
+   private static final int MIDPOINT = 0;
+
+   /**
+      Create an equilateral Sierpinski triangle in the xy-plane
+      with {@code n} subdivisions, with its corners on the unit
+      circle and rotated by angle {@code theta} degrees.
+
+      @param theta  rotation (in degrees) of the equilateral triangle
+      @param n      number of subdivisions for this triangle
+   */
+   public ParametricSierpinskiTriangle(final double theta, final int n)
+   {
+      // A Sierpinski triangle has (3^(n+1) + 3)/2 vertices and (3^(n+2) - 3)/2 line segments.
+      super("Sierpinski Triangle (n = " + n + ")",
+            checked(n),
+            ((long)Math.pow(3, n + 2) - 3) / 2,
+            1);
+
+      putRoot(0.0, 0.0, 0.0);
+      putRoot(0.0, 0.0, 0.0);
+      putRoot(0.0, 0.0, 0.0);
+      setRule(MIDPOINT, 0.5, 0.5, 0.0);
+
+      sierpinski(0, 1, 2, n);
+
+      setParameter(theta);
+   }
+
+
+   private static int checked(final int n)
+   {
+      if (n > 18)
+         throw new IllegalArgumentException("a ParametricSierpinskiTriangle can have at most 18 subdivisions");
+      return ((int)Math.pow(3, n + 1) + 3) / 2;
+   }
+
+
+   /**
+      The same recursion as {@link SierpinskiTriangle}, but only the
+      indices of the new vertices are recorded.
+
+      @param vIndex0  index of the first vertex of the triangle
+      @param vIndex1  index of the second vertex of the triangle
+      @param vIndex2  index of the third vertex of the triangle
+      @param n        number of subdivisions for this triangle
+   */
+   private void sierpinski(final int vIndex0,
+                           final int vIndex1,
+                           final int vIndex2,
+                           final int n)
+   {
+      putSegment(vIndex0, vIndex1);
+      putSegment(vIndex1, vIndex2);
+      putSegment(vIndex2, vIndex0);
+
+      if (n > 0)
+      {
+         final int vIndex3 = putDerived(vIndex0, vIndex1, MIDPOINT);
+         final int vIndex4 = putDerived(vIndex1, vIndex2, MIDPOINT);
+         final int vIndex5 = putDerived(vIndex2, vIndex0, MIDPOINT);
+
+         sierpinski(vIndex0, vIndex3, vIndex5, n-1);
+         sierpinski(vIndex1, vIndex3, vIndex4, n-1);
+         sierpinski(vIndex2, vIndex4, vIndex5, n-1);
+      }
+   }
+
+
+   /**
+      Put the three corners on the unit circle, rotated by {@code theta} degrees.
+   */
+   @Override
+   protected void shape(final double theta)
+   {
+      final double t = Math.toRadians(theta);
+      setVertex(0, Math.cos(t),              Math.sin(t),              0.0);
+      setVertex(1, Math.cos(t + 2*Math.PI/3), Math.sin(t + 2*Math.PI/3), 0.0);
+      setVertex(2, Math.cos(t + 4*Math.PI/3), Math.sin(t + 4*Math.PI/3), 0.0);
+   }
+
+
+   @Override public String getParameterName() { return "theta"; }
+   @Override public double getMinParameter() { return 0.0; }
+   @Override public double getMaxParameter() { return 120.0; }
+}//ParametricSierpinskiTriangle
@@ -7,14 +7,37 @@ package fractals;
 import renderer.scene.*;
 import renderer.scene.primitives.*;
 
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 /**
    Create a wireframe model of a Pythagoras tree.
    <p>
+   Each branch is a square topped by a triangle. The base of the triangle
+   is the top of the square, and the two other sides of the triangle are
+   the bases of the next two, smaller, branches, so no vertex and no line
+   segment is ever duplicated. A tree with {@code n} branches has
+   {@code 2^(n+1) - 1} squares, with 3 new vertices and 5 new line
+   segments for each square (plus the two vertices and the line segment
+   of the tree's base).
+   <p>
+   Since those counts are known in advance, every vertex and line segment
+   has a known place in the model's lists, so the model's storage is
+   allocated once, at its final size, and large subtrees are built in
+   parallel, each one filling in its own part of the lists.
+   <p>
+   A tree with more than about 16 branches is more easily stored as a
+   {@link PackedPythagorasTree}.
+   <p>
    See <a href="https://en.wikipedia.org/wiki/Pythagoras_tree_(fractal)" target="_top">
                 https://en.wikipedia.org/wiki/Pythagoras_tree_(fractal)</a>
 */
 public class PythagorasTree extends Model
 {
+   // Subtrees with at least this many branches are built in parallel.
+   private static final int PARALLEL_BRANCHES = 10;
+
    /**
       Create a Pythagoras tree in the xy-plane with {@code n}
       branches and with its base on the line segment from
@@ -23,6 +46,7 @@ public class PythagorasTree extends Model
       @param alpha  determines the location of the peek
       @param beta   determines the location of the peek
       @param n      number of branches in this Pythagoras tree
+      @throws IllegalArgumentException if {@code n} is negative or more than 27
    */
    public PythagorasTree(final double alpha,
                          final double beta,
@@ -44,6 +68,7 @@ public class PythagorasTree extends Model
 
       @param angle  determines the angle at the peek of the isosceles triangle
       @param n       number of branches in this Pythagoras tree
+      @throws IllegalArgumentException if {@code n} is negative or more than 27
    */
    public PythagorasTree(final double angle,
                          final int n)
@@ -68,6 +93,7 @@ public class PythagorasTree extends Model
       @param alpha  determines the horizontal location of the peek
       @param beta   determines the vertical location of the peek
       @param n      number of branches in this Pythagoras tree
+      @throws IllegalArgumentException if {@code n} is negative or more than 27
    */
    public PythagorasTree(final Vertex v0, final Vertex v1,
                          final double alpha, final double beta,
@@ -75,9 +101,30 @@ public class PythagorasTree extends Model
    {
       name = "Pythagoras Tree (n = " + n + ")";
 
-      addVertex(v0, v1);
+      if (n < 0 || n > 27)
+         throw new IllegalArgumentException("a PythagorasTree can have from 0 to 27 branches");
+      final long squares = (1L << (n + 1)) - 1;
 
-      pythagoras(0, 1, alpha, beta, n);
+      final Vertex[] vertices = new Vertex[(int)(2 + 3 * squares)];
+      final Primitive[] segments = new Primitive[(int)(1 + 5 * squares)];
+      vertices[0] = v0;
+      vertices[1] = v1;
+      segments[0] = new LineSegment(0, 1);
+
+      if (n >= PARALLEL_BRANCHES)
+      {
+         ForkJoinPool.commonPool().invoke(
+            new Branch(vertices, segments, 0, 1, alpha, beta, n, 2, 1));
+      }
+      else
+      {
+         pythagoras(vertices, segments, 0, 1, alpha, beta, n, 2, 1);
+      }
+
+      ((ArrayList<Vertex>)vertexList).ensureCapacity(vertices.length);
+      ((ArrayList<Primitive>)primitiveList).ensureCapacity(segments.length);
+      addVertex(vertices);
+      addPrimitive(segments);
    }
 
 
@@ -173,18 +220,108 @@ public class PythagorasTree extends Model
                 (1-alpha)*y0 + alpha*y1 + (1+beta)*(x1 - x0) )
       }</pre>
 
-      @param vIndex0  index of the left {@link Vertex} of the base
-      @param vIndex1  index of the right {@link Vertex} of the base
-      @param alpha    determines the horizontal location of the peek
-      @param beta     determines the vertical location of the peek
-      @param n        number of branches in this Pythagoras tree
+      <p>
+      The new vertices {@code p2}, {@code p3}, {@code p5} are stored at
+      indices {@code vNext}, {@code vNext+1}, {@code vNext+2}, and the
+      five new line segments at indices {@code sNext} to {@code sNext+4}.
+      Then the left subtree, whose base is from {@code p2} to {@code p5},
+      and the right subtree, whose base is from {@code p5} to {@code p3},
+      are stored one after the other.
+
+      @param vertices  the model's vertices, with the base vertices filled in
+      @param segments  the model's line segments
+      @param vIndex0   index of the left {@link Vertex} of the base
+      @param vIndex1   index of the right {@link Vertex} of the base
+      @param alpha     determines the horizontal location of the peek
+      @param beta      determines the vertical location of the peek
+      @param n         number of branches in this Pythagoras tree
+      @param vNext     index of the first new {@link Vertex}
+      @param sNext     index of the first new line segment
+   */
+   private static void pythagoras(final Vertex[] vertices,
+                                  final Primitive[] segments,
+                                  final int vIndex0, final int vIndex1,
+                                  final double alpha, final double beta,
+                                  final int n,
+                                  final int vNext, final int sNext)
+   {
+      final Vertex p0 = vertices[vIndex0];
+      final Vertex p1 = vertices[vIndex1];
+      final double x0 = p0.x, y0 = p0.y;
+      final double x1 = p1.x, y1 = p1.y;
+
+      final int vIndex2 = vNext;
+      final int vIndex3 = vNext + 1;
+      final int vIndex5 = vNext + 2;
+      vertices[vIndex2] = new Vertex(x0 + y0 - y1, y0 + x1 - x0, p0.z);
+      vertices[vIndex3] = new Vertex(x1 + y0 - y1, y1 + x1 - x0, p0.z);
+      vertices[vIndex5] = new Vertex((1-alpha)*x0 + alpha*x1 + (1+beta)*(y0 - y1),
+                                     (1-alpha)*y0 + alpha*y1 + (1+beta)*(x1 - x0),
+                                     p0.z);
+
+      segments[sNext    ] = new LineSegment(vIndex0, vIndex2); // the square
+      segments[sNext + 1] = new LineSegment(vIndex1, vIndex3);
+      segments[sNext + 2] = new LineSegment(vIndex2, vIndex3);
+      segments[sNext + 3] = new LineSegment(vIndex2, vIndex5); // the triangle
+      segments[sNext + 4] = new LineSegment(vIndex5, vIndex3);
+
+      if (n > 0)
+      {
+         // Each subtree has 2^n - 1 squares.
+         final int squares = (1 << n) - 1;
+         final int vRight = vNext + 3 + 3 * squares;
+         final int sRight = sNext + 5 + 5 * squares;
+         if (n - 1 >= PARALLEL_BRANCHES)
+         {
+            RecursiveAction.invokeAll(
+               new Branch(vertices, segments, vIndex2, vIndex5, alpha, beta, n-1, vNext + 3, sNext + 5),
+               new Branch(vertices, segments, vIndex5, vIndex3, alpha, beta, n-1, vRight, sRight));
+         }
+         else
+         {
+            pythagoras(vertices, segments, vIndex2, vIndex5, alpha, beta, n-1, vNext + 3, sNext + 5);
+            pythagoras(vertices, segments, vIndex5, vIndex3, alpha, beta, n-1, vRight, sRight);
+         }
+      }
+   }
+
+
+   /**
+      One subtree, built as a fork/join task.
    */
-   private void pythagoras(final int vIndex0, final int vIndex1,
-                           final double alpha, final double beta,
-                           final int n)
+   private static final class Branch extends RecursiveAction
    {
+      private static final long serialVersionUID = 1L;
 
+      // A task is never serialized.
+      private final transient Vertex[] vertices;
+      private final transient Primitive[] segments;
+      private final int vIndex0, vIndex1;
+      private final double alpha, beta;
+      private final int n;
+      private final int vNext, sNext;
 
+      Branch(final Vertex[] vertices, final Primitive[] segments,
+             final int vIndex0, final int vIndex1,
+             final double alpha, final double beta,
+             final int n,
+             final int vNext, final int sNext)
+      {
+         this.vertices = vertices;
+         this.segments = segments;
+         this.vIndex0 = vIndex0;
+         this.vIndex1 = vIndex1;
+         this.alpha = alpha;
+         this.beta = beta;
+         this.n = n;
+         this.vNext = vNext;
+         this.sNext = sNext;
+      }
 
+      @Override
+      protected void compute()
+      {
+         pythagoras(vertices, segments, vIndex0, vIndex1, alpha, beta, n, vNext, sNext);
+      }
    }
 }//PythagorasTree
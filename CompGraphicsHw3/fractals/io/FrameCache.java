@@ -0,0 +1,401 @@
+/*
+
+*/
+
+package fractals.io;
+
+import fractals.pipeline.FractalPipeline;
+import fractals.pipeline.ParametricModel;
+import fractals.pipeline.RenderContext;
+import fractals.pipeline.RenderStats;
+import fractals.util.ModelBudget;
+import fractals.util.ModelMemory;
+import renderer.scene.*;
+import renderer.framebuffer.*;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+   A small cache of frames rendered by the {@link FractalPipeline},
+   keyed by everything that determines a frame's pixels.
+   <p>
+   Many of the keys of an interactive program (printing information,
+   turning on the display of the translations, resetting a translation
+   that has not changed) do not change the picture, and toggling a mode
+   back and forth (the projection, clipping) goes back to a picture that
+   was just drawn. So, before a {@link Scene} is rendered, its state is
+   summed up in a {@link Key}:
+   <ul>
+   <li>the identity of each visible model (and the parameter of a
+       {@link ParametricModel}, whose vertices change in place),
+   <li>the translation of each visible position,
+   <li>the projection (perspective or orthographic),
+   <li>the clipping flag, and the point cloud and chaos game settings
+       of the {@link FractalPipeline},
+   <li>the framebuffer's size and background color.
+   </ul>
+   If the framebuffer already holds the frame for that key, nothing is
+   done. If the frame was rendered before, and is still in the cache,
+   it is copied into the framebuffer with one array copy. If the key
+   differs from the framebuffer's frame only by the same translation of
+   every position, in orthographic projection, the framebuffer is
+   scrolled (see {@link FractalPipeline#scroll}). Otherwise the scene
+   is rendered. A copy of each rendered frame is put into the cache.
+   <p>
+   A scroll is not the same as a render. A scrolled frame can differ from
+   the frame that a render would draw by several hundred pixels, which are
+   one pixel off, along the lines that cross the edges of the scrolled-in
+   strips (see {@link FractalPipeline#scroll}). So scrolled frames are
+   not put into the cache (the cache only holds rendered frames), and a
+   program that needs the exact pixels (a screenshot for comparison, for
+   example) should render the scene itself.
+   <p>
+   The cache holds at most a given number of bytes of frames, and the
+   least recently used frames are evicted to make room for new ones.
+   The size can be set on the command line.
+<pre>{@code
+   java -Dfractals.frameCache=64m ...
+}</pre>
+   The default size is 64 MB (sixteen 1024 by 1024 frames), and a size
+   of {@code 0} turns the cache off.
+   <p>
+   Frames that are rendered while debugging is on, or while the
+   {@link FractalPipeline} is collecting {@link RenderStats}, are not
+   cached, since those frames are rendered for their side effects.
+   Anything that draws over the framebuffer, after it was rendered
+   by {@link #render}, must call {@link #invalidate}.
+*/
+public final class FrameCache
+{
+   /** The system property that sets the size of the cache, in bytes (with an optional k, m, or g suffix). */
+   public static final String SIZE_PROPERTY = "fractals.frameCache";
+
+   // Give each model a number, without keeping the model reachable.
+   private static final Map<Model, Long> MODEL_IDS = new WeakHashMap<>();
+   private static long nextModelId = 0;
+
+   private final long capacity;
+   private final LinkedHashMap<Key, int[]> frames = new LinkedHashMap<>(16, 0.75f, true);
+   private long used = 0;
+   private long hits = 0;
+   private long misses = 0;
+   private long skips = 0;
+   private long scrolls = 0;
+
+   // The frame that is in the framebuffer that was last rendered into.
+   private FrameBuffer shownBuffer;
+   private Key shownKey;
+
+
+   /**
+      Create a {@code FrameCache}.
+
+      @param capacity  the number of bytes of frames that the cache may hold
+      @throws IllegalArgumentException if {@code capacity} is negative
+   */
+   public FrameCache(final long capacity)
+   {
+      if (capacity < 0)
+         throw new IllegalArgumentException("the capacity must not be negative");
+      this.capacity = capacity;
+   }
+
+
+   /**
+      Create a {@code FrameCache} whose size is given by the {@link #SIZE_PROPERTY}
+      system property.
+
+      @return a {@code FrameCache}
+      @throws IllegalArgumentException if the property has a bad value
+   */
+   public static FrameCache fromProperties()
+   {
+      final String s = System.getProperty(SIZE_PROPERTY);
+      return new FrameCache((null == s) ? 64L << 20 : ModelBudget.parseSize(s));
+   }
+
+
+   /**
+      Render {@code scene} into {@code fb}, unless {@code fb} already holds
+      the frame for the scene's current state, or a copy of that frame is
+      in the cache.
+
+      @param scene  the {@link Scene} to render
+      @param fb     the {@link FrameBuffer} to render into
+      @return {@code true} if the scene was rendered, {@code false} if
+              {@code fb} already held the frame or it came from the cache
+   */
+   public boolean render(final Scene scene, final FrameBuffer fb)
+   {
+      return render(scene, fb, RenderContext.fromGlobals());
+   }
+
+
+   /**
+      Render {@code scene} into {@code fb} with the options of a
+      {@link RenderContext}, unless {@code fb} already holds the frame
+      for the scene's current state and the options, or a copy of that
+      frame is in the cache.
+
+      @param scene    the {@link Scene} to render
+      @param fb       the {@link FrameBuffer} to render into
+      @param context  the options for the frame
+      @return {@code true} if the scene was rendered, {@code false} if
+              {@code fb} already held the frame or it came from the cache
+   */
+   public boolean render(final Scene scene, final FrameBuffer fb,
+                         final RenderContext context)
+   {
+      final Key key = key(scene, fb, context);
+      if (null != key && fb == shownBuffer && key.equals(shownKey))
+      {
+         ++skips;
+         return false;
+      }
+      final int[] frame = (null == key) ? null : frames.get(key);
+      if (null != frame)
+      {
+         ++hits;
+         System.arraycopy(frame, 0, fb.pixel_buffer, 0, frame.length);
+         shownBuffer = fb;
+         shownKey = key;
+         return false;
+      }
+
+      final double[] pan = (fb == shownBuffer) ? pan(shownKey, key) : null;
+      shownBuffer = fb;
+      shownKey = key;
+      if (null != pan && FractalPipeline.scroll(scene, fb, pan[0], pan[1], context))
+      {
+         ++scrolls; // not cached, see the class comment
+         return true;
+      }
+      fb.clearFB();
+      FractalPipeline.render(scene, fb.vp, context);
+      if (null != key)
+      {
+         ++misses;
+         if (4L * fb.pixel_buffer.length <= capacity)
+         {
+            put(key, fb.pixel_buffer.clone());
+         }
+      }
+      return true;
+   }
+
+
+   /**
+      Forget which frame the framebuffer holds, because something
+      else has drawn into it. The next call to {@link #render} will
+      not skip rendering (but the frame may still come from the cache).
+   */
+   public void invalidate()
+   {
+      shownBuffer = null;
+      shownKey = null;
+   }
+
+
+   /**
+      Remove every frame from the cache.
+   */
+   public void clear()
+   {
+      frames.clear();
+      used = 0;
+      invalidate();
+   }
+
+
+   /**
+      Sum up the state of {@code scene} that determines the pixels that
+      the {@link FractalPipeline} renders into {@code fb}.
+
+      @param scene  a {@link Scene}
+      @param fb     a {@link FrameBuffer}
+      @return the {@link Key} of the frame, or {@code null} if the frame
+              should not be cached (debugging or statistics are turned on)
+   */
+   public static Key key(final Scene scene, final FrameBuffer fb)
+   {
+      return key(scene, fb, RenderContext.fromGlobals());
+   }
+
+
+   /**
+      Sum up the state of {@code scene} and the options of {@code context}
+      that determine the pixels that the {@link FractalPipeline} renders into {@code fb}.
+
+      @param scene    a {@link Scene}
+      @param fb       a {@link FrameBuffer}
+      @param context  the options for the frame
+      @return the {@link Key} of the frame, or {@code null} if the frame
+              should not be cached (debugging or statistics are turned on)
+   */
+   public static Key key(final Scene scene, final FrameBuffer fb,
+                         final RenderContext context)
+   {
+      if (scene.debug || context.isDebug() || null != context.getStats())
+      {
+         return null;
+      }
+      int visible = 0;
+      for (final Position position : scene.positionList)
+      {
+         if (position.visible && position.getModel().visible) ++visible;
+      }
+      final long[] state = new long[7 + 5 * visible];
+      int i = 0;
+      state[i++] = fb.width;
+      state[i++] = fb.height;
+      state[i++] = fb.bgColorFB.getRGB();
+      state[i++] = scene.getCamera().perspective ? 1 : 0;
+      state[i++] = (context.isClipping() ? 1 : 0) | (context.isPointCloud() ? 2 : 0);
+      state[i++] = context.isPointCloud() ? context.getPointSize() : 0;
+      state[i++] = context.getChaosGamePoints();
+      for (final Position position : scene.positionList)
+      {
+         final Model model = position.getModel();
+         if (! position.visible || ! model.visible) continue;
+         final Vector t = position.getTranslation();
+         state[i++] = modelId(model);
+         state[i++] = (model instanceof ParametricModel)
+                    ? Double.doubleToLongBits(((ParametricModel)model).getParameter()) : 0;
+         state[i++] = Double.doubleToLongBits(t.x);
+         state[i++] = Double.doubleToLongBits(t.y);
+         state[i++] = Double.doubleToLongBits(t.z);
+      }
+      return new Key(state);
+   }
+
+
+   /**
+      @return the number of bytes of frames in the cache
+   */
+   public long getUsedBytes()
+   {
+      return used;
+   }
+
+
+   /**
+      @return the number of frames in the cache
+   */
+   public int size()
+   {
+      return frames.size();
+   }
+
+
+   @Override
+   public String toString()
+   {
+      return String.format("FrameCache: %d frames, %s of %s, %d unchanged, %d hits, %d misses (%d scrolled)",
+                           frames.size(), ModelMemory.format(used), ModelMemory.format(capacity),
+                           skips, hits, misses, scrolls);
+   }
+
+
+   private void put(final Key key, final int[] frame)
+   {
+      final long bytes = 4L * frame.length;
+      if (bytes > capacity) return;
+      final int[] old = frames.put(key, frame);
+      if (null != old) used -= 4L * old.length;
+      used += bytes;
+      // Evict the least recently used frames.
+      final Iterator<int[]> it = frames.values().iterator();
+      while (used > capacity && it.hasNext())
+      {
+         final int[] eldest = it.next();
+         if (eldest == frame) break;
+         used -= 4L * eldest.length;
+         it.remove();
+      }
+   }
+
+
+   /**
+      If the frame for {@code to} is the frame for {@code from} after every
+      position was translated by the same {@code (dx, dy)}, in orthographic
+      projection, return {@code {dx, dy}}. Otherwise return {@code null}.
+
+      @param from  the key of the cached frame
+      @param to    the key of the frame to render
+      @return the translation {@code {dx, dy}}, or {@code null}
+   */
+   private static double[] pan(final Key from, final Key to)
+   {
+      if (null == from || null == to || from.state.length != to.state.length
+          || 0 != to.state[3] || 7 == to.state.length)
+      {
+         return null;
+      }
+      for (int i = 0; i < 7; ++i) // the framebuffer, camera, and pipeline
+      {
+         if (from.state[i] != to.state[i]) return null;
+      }
+      final double dx = Double.longBitsToDouble(to.state[9])  - Double.longBitsToDouble(from.state[9]);
+      final double dy = Double.longBitsToDouble(to.state[10]) - Double.longBitsToDouble(from.state[10]);
+      for (int i = 7; i < to.state.length; i += 5)
+      {
+         if (from.state[i] != to.state[i]               // the model
+          || from.state[i + 1] != to.state[i + 1]       // its parameter
+          || from.state[i + 4] != to.state[i + 4]       // z
+          || Double.longBitsToDouble(to.state[i + 2]) - Double.longBitsToDouble(from.state[i + 2]) != dx
+          || Double.longBitsToDouble(to.state[i + 3]) - Double.longBitsToDouble(from.state[i + 3]) != dy)
+         {
+            return null;
+         }
+      }
+      return new double[]{dx, dy};
+   }
+
+
+   private static long modelId(final Model model)
+   {
+      synchronized (MODEL_IDS)
+      {
+         Long id = MODEL_IDS.get(model);
+         if (null == id)
+         {
+            id = nextModelId++;
+            MODEL_IDS.put(model, id);
+         }
+         return id;
+      }
+   }
+
+
+   /**
+      The state of a {@link Scene} that determines the pixels of its frame.
+      Two keys are equal if the frames they describe are the same.
+   */
+   public static final class Key
+   {
+      private final long[] state;
+      private final int hash;
+
+      private Key(final long[] state)
+      {
+         this.state = state;
+         this.hash = Arrays.hashCode(state);
+      }
+
+      @Override
+      public boolean equals(final Object o)
+      {
+         return (o instanceof Key) && Arrays.equals(state, ((Key)o).state);
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return hash;
+      }
+   }
+}//FrameCache
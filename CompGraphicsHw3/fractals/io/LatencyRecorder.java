@@ -0,0 +1,238 @@
+/*
+
+*/
+
+package fractals.io;
+
+import fractals.util.LatencyHistogram;
+
+import java.awt.Toolkit;
+import java.awt.event.InputEvent;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.swing.RepaintManager;
+
+/**
+   Measure the latency from an input event (usually a {@code KeyEvent})
+   to the moment that Swing has painted the frame that was rendered in
+   response to that event.
+   <p>
+   An event handler calls {@link #start} as soon as it gets an event
+   and {@link #rendered} after it has updated the {@code FrameBufferPanel}.
+   A frame that is rendered in the background is measured by calling
+   {@link #take} in the event handler, and passing what it returns to
+   {@link #rendered(String, long[])} when the frame is finished.
+   Updating the panel only asks Swing to repaint it, the painting happens
+   later on the Event Dispatch Thread. {@link #install} replaces Swing's
+   {@link RepaintManager} with one that calls {@link #presented} when it
+   has finished painting, and that is when the latency is measured.
+   <p>
+   The latency has two parts: the time the event waited in the event
+   queue (from the event's {@link InputEvent#getWhen} time stamp, which
+   is in milliseconds) and the time from {@link #start} to {@link #presented}
+   (measured with {@link System#nanoTime}). The latencies are recorded
+   in microseconds, in one {@link LatencyHistogram} per model.
+   <p>
+   All of the methods must be called on the Event Dispatch Thread.
+*/
+public final class LatencyRecorder
+{
+   private final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+
+   // The event being handled, started but not yet rendered.
+   private long startNanos = -1;
+   private long queueMicros;
+
+   // Frames that were rendered but not yet painted, two longs
+   // (start time and queue time) per frame, and the frame's model.
+   private final List<long[]> pendingTimes = new ArrayList<>();
+   private final List<String> pendingModels = new ArrayList<>();
+
+
+   /**
+      Make Swing call {@link #presented} every time it finishes painting.
+   */
+   public void install()
+   {
+      RepaintManager.setCurrentManager(new RepaintManager()
+      {
+         @Override
+         public void paintDirtyRegions()
+         {
+            super.paintDirtyRegions();
+            presented();
+         }
+      });
+   }
+
+
+   /**
+      Start measuring the latency of an input event.
+
+      @param e  the {@link InputEvent} that is being handled
+   */
+   public void start(final InputEvent e)
+   {
+      startNanos = System.nanoTime();
+      queueMicros = Math.max(0, System.currentTimeMillis() - e.getWhen()) * 1000;
+   }
+
+
+   /**
+      The frame for the event passed to {@link #start} has been
+      rendered and handed to Swing to be painted.
+
+      @param model  name of the model in the frame
+   */
+   public void rendered(final String model)
+   {
+      rendered(model, take());
+   }
+
+
+   /**
+      Take the event passed to {@link #start}, for a frame that is still
+      being rendered (so that the next event does not replace it).
+
+      @return the times of the event, or {@code null} if no event was started
+   */
+   public long[] take()
+   {
+      if (startNanos < 0) return null;
+      final long[] event = {startNanos, queueMicros};
+      startNanos = -1;
+      return event;
+   }
+
+
+   /**
+      The frame for an event that was taken with {@link #take} has been
+      rendered and handed to Swing to be painted.
+
+      @param model  name of the model (or models) in the frame
+      @param event  what {@link #take} returned, or {@code null}
+   */
+   public void rendered(final String model, final long[] event)
+   {
+      if (null == event) return;
+      pendingTimes.add(event);
+      pendingModels.add(model);
+   }
+
+
+   /**
+      Swing has painted, so every frame that has been rendered has been presented.
+   */
+   public void presented()
+   {
+      if (pendingTimes.isEmpty()) return;
+      Toolkit.getDefaultToolkit().sync(); // flush the window system's buffers
+      final long now = System.nanoTime();
+      for (int i = 0; i < pendingTimes.size(); ++i)
+      {
+         final long[] t = pendingTimes.get(i);
+         histogram(pendingModels.get(i)).record(t[1] + (now - t[0]) / 1000);
+      }
+      pendingTimes.clear();
+      pendingModels.clear();
+   }
+
+
+   /**
+      Get the histogram of the latencies, in microseconds, of a model's frames.
+
+      @param model  name of a model
+      @return the {@link LatencyHistogram} for {@code model}
+   */
+   public LatencyHistogram histogram(final String model)
+   {
+      return histograms.computeIfAbsent(model, k -> new LatencyHistogram());
+   }
+
+
+   /**
+      @return all of the histograms, by model name, in the order the models were first seen
+   */
+   public Map<String, LatencyHistogram> histograms()
+   {
+      return Collections.unmodifiableMap(histograms);
+   }
+
+
+   /**
+      Forget all of the latencies recorded so far.
+   */
+   public void reset()
+   {
+      histograms.clear();
+   }
+
+
+   /**
+      Write the count, mean, and percentiles (in milliseconds) of every
+      model's latencies to a CSV file, one line per model, followed by
+      a line for all of the models together.
+
+      @param file  {@link Path} of the CSV file
+      @throws IOException if the file cannot be written
+   */
+   public void writeCSV(final Path file) throws IOException
+   {
+      final LatencyHistogram all = new LatencyHistogram();
+      try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8))
+      {
+         out.write("model,count,mean_ms,min_ms,p50_ms,p90_ms,p99_ms,p99.9_ms,max_ms");
+         out.newLine();
+         for (final Map.Entry<String, LatencyHistogram> e : histograms.entrySet())
+         {
+            writeLine(out, e.getKey(), e.getValue());
+            all.add(e.getValue());
+         }
+         writeLine(out, "all", all);
+      }
+   }
+
+
+   private static void writeLine(final BufferedWriter out,
+                                 final String model,
+                                 final LatencyHistogram h) throws IOException
+   {
+      out.write(String.format(Locale.ROOT, "\"%s\",%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f",
+                              model.replace("\"", "\"\""),
+                              h.getCount(),
+                              h.getMean() / 1000,
+                              h.getMin() / 1000.0,
+                              h.getValueAtPercentile(50) / 1000.0,
+                              h.getValueAtPercentile(90) / 1000.0,
+                              h.getValueAtPercentile(99) / 1000.0,
+                              h.getValueAtPercentile(99.9) / 1000.0,
+                              h.getMax() / 1000.0));
+      out.newLine();
+   }
+
+
+   /**
+      Describe the latencies of one model's frames.
+
+      @param model  name of a model
+      @return the p50, p99, and max latencies of {@code model}, in milliseconds
+   */
+   public String summary(final String model)
+   {
+      final LatencyHistogram h = histograms.getOrDefault(model, new LatencyHistogram());
+      return String.format("%s: %d frames, p50 = %.1f ms, p99 = %.1f ms, max = %.1f ms",
+                           model, h.getCount(),
+                           h.getValueAtPercentile(50) / 1000.0,
+                           h.getValueAtPercentile(99) / 1000.0,
+                           h.getMax() / 1000.0);
+   }
+}//LatencyRecorder
@@ -0,0 +1,195 @@
+/*
+
+*/
+
+package fractals.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+   A preallocated file that holds a sequence of equally sized frames,
+   stored as back-to-back binary (P6) PPM images.
+   <p>
+   The whole file is allocated when it is created, so every frame has a
+   fixed location in the file. Each call to {@link #writeFrame} maps just
+   that frame's region of the file and copies the pixels into it, so any
+   number of threads can write frames at the same time, in any order,
+   and no frame needs to be held in the Java heap after it is written.
+   <p>
+   A frame can also be written a rectangular tile at a time (see
+   {@link #writeTile}), which only maps the rows of the tile, so a frame
+   that is too big to be held in the heap (or to be mapped all at once)
+   can be put together from tiles that are rendered separately.
+   <p>
+   A file of concatenated PPM images is also what tools such as
+   {@code ffmpeg -f image2pipe -c:v ppm -i frames.ppm} read, so the
+   file can be turned into a video without being split up.
+*/
+public final class MappedFrameFile implements AutoCloseable
+{
+   public final int width;
+   public final int height;
+   public final int frameCount;
+
+   private final byte[] header;
+   private final long frameBytes;
+   private final FileChannel channel;
+
+
+   /**
+      Create (or replace) a file with room for {@code frameCount}
+      frames of the given dimensions.
+
+      @param file        {@link Path} of the file
+      @param width       width of every frame
+      @param height      height of every frame
+      @param frameCount  number of frames in the file
+      @throws IOException if the file cannot be created
+   */
+   public MappedFrameFile(final Path file,
+                          final int width, final int height,
+                          final int frameCount) throws IOException
+   {
+      if (width <= 0 || height <= 0 || frameCount <= 0)
+         throw new IllegalArgumentException("width, height and frameCount must be positive");
+
+      this.width = width;
+      this.height = height;
+      this.frameCount = frameCount;
+      this.header = ("P6\n" + width + " " + height + "\n255\n").getBytes();
+      this.frameBytes = header.length + 3L * width * height;
+
+      this.channel = FileChannel.open(file,
+                                      StandardOpenOption.CREATE,
+                                      StandardOpenOption.READ,
+                                      StandardOpenOption.WRITE,
+                                      StandardOpenOption.TRUNCATE_EXISTING);
+      // Preallocate the whole file.
+      channel.write(ByteBuffer.wrap(new byte[1]), frameBytes * frameCount - 1);
+   }
+
+
+   /**
+      Get the number of bytes used by each frame (header included).
+
+      @return the size, in bytes, of one frame in the file
+   */
+   public long getFrameBytes()
+   {
+      return frameBytes;
+   }
+
+
+   /**
+      Write one frame into its place in the file. The pixels are
+      in the format of a {@code FrameBuffer}'s {@code pixel_buffer}.
+      <p>
+      This method may be called by several threads at the same time
+      (as long as they write different frames).
+
+      @param frame   index of the frame, from {@code 0} to {@code frameCount-1}
+      @param pixels  {@code width*height} pixels, one {@code 0xAARRGGBB} int per pixel
+      @throws IOException if the frame cannot be written
+      @throws IllegalArgumentException if a frame is larger than 2 GB
+              (such a frame can only be written with {@link #writeTile})
+   */
+   public void writeFrame(final int frame, final int[] pixels) throws IOException
+   {
+      if (frame < 0 || frame >= frameCount)
+         throw new IndexOutOfBoundsException("frame " + frame + " is not in [0, " + frameCount + ")");
+      if (frameBytes > Integer.MAX_VALUE)
+         throw new IllegalArgumentException("a frame larger than 2 GB can only be written a tile at a time");
+      if ((long)width * height != pixels.length)
+         throw new IllegalArgumentException("the frame does not have " + width + "x" + height + " pixels");
+
+      final MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE,
+                                               frame * frameBytes, frameBytes);
+      map.put(header);
+      final byte[] row = new byte[3 * width];
+      for (int y = 0; y < height; ++y)
+      {
+         for (int x = 0, i = y * width, j = 0; x < width; ++x, ++i)
+         {
+            final int rgb = pixels[i];
+            row[j++] = (byte)(rgb >> 16);
+            row[j++] = (byte)(rgb >>  8);
+            row[j++] = (byte) rgb;
+         }
+         map.put(row);
+      }
+   }
+
+
+   /**
+      Write a rectangular tile of one frame into its place in the file
+      (and the frame's header). The pixels are in the format of a
+      {@code FrameBuffer}'s {@code pixel_buffer}, for a framebuffer that
+      is the size of the tile. Only the rows of the file that hold the
+      tile are mapped.
+      <p>
+      This method may be called by several threads at the same time
+      (as long as their tiles do not overlap).
+
+      @param frame       index of the frame, from {@code 0} to {@code frameCount-1}
+      @param x           the column of the frame that is the tile's left column
+      @param y           the row of the frame that is the tile's top row
+      @param tileWidth   width of the tile
+      @param tileHeight  height of the tile
+      @param pixels      {@code tileWidth*tileHeight} pixels, one {@code 0xAARRGGBB} int per pixel
+      @throws IOException if the tile cannot be written
+   */
+   public void writeTile(final int frame,
+                         final int x, final int y,
+                         final int tileWidth, final int tileHeight,
+                         final int[] pixels) throws IOException
+   {
+      if (frame < 0 || frame >= frameCount)
+         throw new IndexOutOfBoundsException("frame " + frame + " is not in [0, " + frameCount + ")");
+      if (x < 0 || y < 0 || tileWidth <= 0 || tileHeight <= 0
+          || x + tileWidth > width || y + tileHeight > height)
+         throw new IllegalArgumentException("the tile must be inside of the frame");
+      if (pixels.length != tileWidth * tileHeight)
+         throw new IllegalArgumentException("the tile does not have " + tileWidth + "x" + tileHeight + " pixels");
+
+      final long frameStart = frame * frameBytes;
+      channel.write(ByteBuffer.wrap(header), frameStart);
+
+      // From the tile's first pixel to its last one.
+      final long start = frameStart + header.length + 3L * ((long)y * width + x);
+      final long length = 3L * ((long)(tileHeight - 1) * width + tileWidth);
+      if (length > Integer.MAX_VALUE)
+         throw new IllegalArgumentException("a tile cannot cover more than 2 GB of the file");
+      final MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, start, length);
+      final byte[] row = new byte[3 * tileWidth];
+      for (int r = 0; r < tileHeight; ++r)
+      {
+         for (int c = 0, i = r * tileWidth, j = 0; c < tileWidth; ++c, ++i)
+         {
+            final int rgb = pixels[i];
+            row[j++] = (byte)(rgb >> 16);
+            row[j++] = (byte)(rgb >>  8);
+            row[j++] = (byte) rgb;
+         }
+         map.position((int)(3L * r * width));
+         map.put(row);
+      }
+   }
+
+
+   /**
+      Close the file. Frames that have been written are flushed
+      to the file by the operating system.
+
+      @throws IOException if the file cannot be closed
+   */
+   @Override
+   public void close() throws IOException
+   {
+      channel.close();
+   }
+}//MappedFrameFile
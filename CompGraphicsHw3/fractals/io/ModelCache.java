@@ -0,0 +1,596 @@
+/*
+
+*/
+
+package fractals.io;
+
+import fractals.pipeline.LineStrip;
+import fractals.pipeline.PackedModel;
+import fractals.util.ModelSpec;
+import renderer.scene.*;
+import renderer.scene.primitives.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+   A persistent, on-disk cache of generated fractal models.
+   <p>
+   Each model is stored in its own file, named after the model's
+   {@link ModelSpec}, in a compact, versioned binary layout.
+   All values are little-endian.
+   <pre>{@code
+      offset  size  contents
+           0     4  magic number, the bytes "FRCM"
+           4     4  layout version
+           8     8  fingerprint of the generator's class files
+          16     4  number of vertices, V
+          20     4  number of line segments, S
+          24     4  length of the key, K
+          28     4  length of the model's name, N
+          32     K  the key, the ModelSpec as UTF-8 text
+        32+K     N  the model's name as UTF-8 text
+           D  24*V  vertices, as x, y, z doubles (D is 32+K+N rounded up to a multiple of 8)
+      D+24*V   8*S  line segments, as pairs of int vertex indices
+           T     8  CRC-32C checksum of the bytes from 0 to T
+   }</pre>
+   <p>
+   A cached model is read by mapping its file with {@link FileChannel#map},
+   so the model is rebuilt from the file without running the fractal's
+   recursion. A {@link PackedModel} is not even rebuilt, it is a view of
+   the mapped file (see {@link #view}), so a cached {@link PackedModel}
+   is ready to render as soon as its checksum has been verified. An
+   entry is ignored, and the model is rebuilt and stored again, if the
+   entry's checksum is wrong (a corrupt file), or if its layout version,
+   key, or generator fingerprint does not match (a stale file, for
+   example after the generator's code was changed).
+   <p>
+   Only {@link PackedModel}s, and models made up of {@link LineSegment}s
+   and {@link LineStrip}s, smaller than 2 GB are cached. A line strip is
+   stored as its line segments, and each run of line segments that join
+   consecutive vertices end to end is read back as one {@link LineStrip}.
+   Other models, and {@link fractals.pipeline.ParametricModel}s and
+   {@link fractals.pipeline.InstancedModel}s, are built every time.
+   A planar {@link PackedModel} is made from the cached full precision
+   model every time it is read.
+   <p>
+   A {@code ModelCache} may be used by several threads at the same time.
+   New entries are written to a temporary file that is then atomically
+   renamed, so a reader never sees a partially written entry.
+*/
+public final class ModelCache
+{
+   private static final int MAGIC   = 0x4D435246; // "FRCM", little-endian
+   private static final int VERSION = 1;
+   private static final int HEADER_BYTES = 32;
+
+   private static final Map<String, Long> FINGERPRINTS = new ConcurrentHashMap<>();
+
+   /** The fingerprint of a generator whose class files cannot be read (see {@link #fingerprint}). */
+   static final long NO_FINGERPRINT = 0;
+
+   /** Name of the system property that selects the default cache directory. */
+   public static final String DIR_PROPERTY = "fractals.cache";
+
+   private final Path dir;
+   private final AtomicLong hits     = new AtomicLong();
+   private final AtomicLong misses   = new AtomicLong();
+   private final AtomicLong rebuilds = new AtomicLong();
+
+
+   /**
+      Create a {@code ModelCache} that keeps its files in the given directory.
+      The directory is created if it does not exist.
+
+      @param dir  directory that holds the cache files
+      @throws IOException if the directory cannot be created
+   */
+   public ModelCache(final Path dir) throws IOException
+   {
+      this.dir = Files.createDirectories(dir);
+   }
+
+
+   /**
+      Open the default cache. The cache's directory is given by the
+      {@code fractals.cache} system property (the default is
+      {@code .fractal-cache}). Setting the property to {@code off}
+      turns the cache off.
+      <p>
+      The default directory is relative to the working directory, which
+      is the project's directory when a program is run by one of its
+      scripts. So git ignores every {@code .fractal-cache} directory, and
+      {@code clean_class_files.cmd} deletes the one in the project's directory.
+
+      @return the default {@code ModelCache}, or {@code null} if the
+              cache is turned off or its directory cannot be created
+   */
+   public static ModelCache openDefault()
+   {
+      final String dir = System.getProperty(DIR_PROPERTY, ".fractal-cache");
+      if ("off".equalsIgnoreCase(dir))
+      {
+         return null;
+      }
+      try
+      {
+         return new ModelCache(Paths.get(dir));
+      }
+      catch (IOException e)
+      {
+         System.err.printf("ERROR! Could not create the model cache %s\n", dir);
+         e.printStackTrace(System.err);
+         return null;
+      }
+   }
+
+
+   /**
+      Get the model described by {@code spec}, either from the cache or,
+      if it is not in the cache (or the cached entry is corrupt or stale),
+      by building the model and then storing it in the cache.
+      <p>
+      A failure to write to the cache is reported but otherwise ignored.
+
+      @param spec  {@link ModelSpec} of the model
+      @return the {@link Model} described by {@code spec}
+   */
+   public Model get(final ModelSpec spec)
+   {
+      if (spec.isParametric())
+      {
+         return spec.build(); // a cached copy could not change its parameter
+      }
+      if (spec.isInstanced() || spec.isLSystem())
+      {
+         return spec.build(); // smaller and faster to build than to read back
+      }
+      if (spec.isPlanar())
+      {
+         return spec.planarFrom(get(spec.planarBase())); // the full precision model is cached
+      }
+      if (NO_FINGERPRINT == fingerprint(spec))
+      {
+         return spec.build(); // a cached copy could not be checked
+      }
+      final Model cached = spec.isPacked() ? view(spec) : load(spec);
+      if (null != cached)
+      {
+         hits.incrementAndGet();
+         return cached;
+      }
+      misses.incrementAndGet();
+
+      final Model model = spec.build();
+      try
+      {
+         store(spec, model);
+      }
+      catch (IOException e)
+      {
+         System.err.printf("ERROR! Could not write to file %s\n", fileFor(spec));
+         e.printStackTrace(System.err);
+      }
+      return model;
+   }
+
+
+   /**
+      Read the model described by {@code spec} from the cache.
+
+      @param spec  {@link ModelSpec} of the model
+      @return the cached {@link Model}, or {@code null} if there is no
+              valid entry for {@code spec}
+   */
+   public Model load(final ModelSpec spec)
+   {
+      final Path file = fileFor(spec);
+      if (! Files.isRegularFile(file))
+      {
+         return null;
+      }
+      try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ))
+      {
+         final MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+         map.order(ByteOrder.LITTLE_ENDIAN);
+         final Model model = decode(spec, map);
+         if (null == model)
+         {
+            rebuilds.incrementAndGet();
+         }
+         return model;
+      }
+      catch (IOException | RuntimeException e)
+      {
+         // An unreadable or truncated file is just a missing entry.
+         rebuilds.incrementAndGet();
+         return null;
+      }
+   }
+
+
+   /**
+      Map the cached entry for a {@link PackedModel} and return a read-only
+      {@link PackedModel} that is a view of the mapped file. Nothing is
+      copied, and closing the model unmaps the file.
+
+      @param spec  {@link ModelSpec} of the model
+      @return a {@link PackedModel} view of the cached entry, or {@code null}
+              if there is no valid entry for {@code spec}
+   */
+   public PackedModel view(final ModelSpec spec)
+   {
+      final Path file = fileFor(spec);
+      if (! Files.isRegularFile(file))
+      {
+         return null;
+      }
+      try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ))
+      {
+         final MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+         map.order(ByteOrder.LITTLE_ENDIAN);
+         final int dataOffset = validate(spec, map);
+         if (dataOffset < 0)
+         {
+            PackedModel.free(map);
+            rebuilds.incrementAndGet();
+            return null;
+         }
+         final int v = map.getInt(16);
+         final int s = map.getInt(20);
+         final byte[] name = new byte[map.getInt(28)];
+         map.position(HEADER_BYTES + map.getInt(24));
+         map.get(name);
+
+         final ByteBuffer vertices = map.duplicate();
+         vertices.position(dataOffset);
+         final ByteBuffer segments = map.duplicate();
+         segments.position(dataOffset + 24 * v);
+         return PackedModel.wrap(new String(name, StandardCharsets.UTF_8),
+                                 vertices, v, segments, s,
+                                 ByteOrder.LITTLE_ENDIAN, map);
+      }
+      catch (IOException | RuntimeException e)
+      {
+         rebuilds.incrementAndGet();
+         return null;
+      }
+   }
+
+
+   /**
+      Write a model into the cache, replacing any existing entry for {@code spec}.
+      Models that contain primitives other than {@link LineSegment}s and
+      {@link LineStrip}s, models larger than 2 GB, and models of generators
+      that have no fingerprint (see {@link #fingerprint}) are not stored.
+
+      @param spec   {@link ModelSpec} of the model
+      @param model  the {@link Model} built from {@code spec}
+      @return {@code true} if the model was stored
+      @throws IOException if the cache file cannot be written
+   */
+   public boolean store(final ModelSpec spec, final Model model) throws IOException
+   {
+      final long fingerprint = fingerprint(spec);
+      if (NO_FINGERPRINT == fingerprint)
+      {
+         return false;
+      }
+      final PackedModel packed = (model instanceof PackedModel) ? (PackedModel)model : null;
+      for (final Primitive p : model.primitiveList)
+      {
+         if (! (p instanceof LineSegment || p instanceof LineStrip)) return false;
+      }
+
+      final byte[] key  = spec.toString().getBytes(StandardCharsets.UTF_8);
+      final byte[] name = model.getName().getBytes(StandardCharsets.UTF_8);
+      final int  v = (null == packed) ? model.vertexList.size()    : packed.getVertexCount();
+      final long s = (null == packed) ? LineStrip.segmentCount(model) : packed.getSegmentCount();
+      final long dataOffset = align8(HEADER_BYTES + key.length + name.length);
+      final long trailer = dataOffset + 24L * v + 8L * s;
+      if (trailer + 8 > Integer.MAX_VALUE)
+      {
+         return false; // too big for a single mapping
+      }
+
+      final Path tmp = Files.createTempFile(dir, spec.fileName(), ".tmp");
+      try
+      {
+         try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.READ,
+                                                     StandardOpenOption.WRITE))
+         {
+            final MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0, trailer + 8);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            map.putInt(MAGIC)
+               .putInt(VERSION)
+               .putLong(fingerprint)
+               .putInt(v)
+               .putInt((int)s)
+               .putInt(key.length)
+               .putInt(name.length)
+               .put(key)
+               .put(name);
+            map.position((int)dataOffset);
+            if (null == packed)
+            {
+               for (final Vertex vertex : model.vertexList)
+               {
+                  map.putDouble(vertex.x).putDouble(vertex.y).putDouble(vertex.z);
+               }
+               for (final Primitive p : model.primitiveList)
+               {
+                  if (p instanceof LineStrip)
+                  {
+                     final LineStrip strip = (LineStrip)p;
+                     final int end = strip.getFirst() + strip.getVertexCount();
+                     for (int i = strip.getFirst() + 1; i < end; ++i)
+                     {
+                        map.putInt(i - 1).putInt(i);
+                     }
+                  }
+                  else
+                  {
+                     map.putInt(p.vIndexList.get(0)).putInt(p.vIndexList.get(1));
+                  }
+               }
+            }
+            else
+            {
+               for (int i = 0; i < v; ++i)
+               {
+                  map.putDouble(packed.getX(i)).putDouble(packed.getY(i)).putDouble(packed.getZ(i));
+               }
+               for (long i = 0; i < s; ++i)
+               {
+                  map.putInt(packed.getStart(i)).putInt(packed.getEnd(i));
+               }
+            }
+            map.putLong(checksum(map, (int)trailer));
+            map.force();
+            PackedModel.free(map); // unmap before the file is renamed
+         }
+         Files.move(tmp, fileFor(spec), StandardCopyOption.REPLACE_EXISTING,
+                                        StandardCopyOption.ATOMIC_MOVE);
+      }
+      finally
+      {
+         Files.deleteIfExists(tmp);
+      }
+      return true;
+   }
+
+
+   /**
+      Get the {@link Path} of the cache file for a {@link ModelSpec}.
+
+      @param spec  {@link ModelSpec} of a model
+      @return the {@link Path} of the file that caches the model
+   */
+   public Path fileFor(final ModelSpec spec)
+   {
+      return dir.resolve(spec.fileName() + ".model");
+   }
+
+
+   /** @return the number of models that were read from the cache */
+   public long getHits() { return hits.get(); }
+
+   /** @return the number of models that had to be built */
+   public long getMisses() { return misses.get(); }
+
+   /** @return the number of corrupt or stale entries that were rebuilt */
+   public long getRebuilds() { return rebuilds.get(); }
+
+
+   /**
+      Check the header, the key, and the checksum of a mapped cache file.
+      Return the offset of the vertex data, or {@code -1} if the file
+      is not a valid entry for {@code spec}.
+
+      @param spec  the {@link ModelSpec} that the file should hold
+      @param map   the mapped cache file
+      @return the offset of the vertex data, or {@code -1}
+   */
+   private static int validate(final ModelSpec spec, final ByteBuffer map)
+   {
+      final int size = map.capacity();
+      if (size < HEADER_BYTES + 8
+       || map.getInt(0) != MAGIC
+       || map.getInt(4) != VERSION
+       || NO_FINGERPRINT == fingerprint(spec)
+       || map.getLong(8) != fingerprint(spec))
+      {
+         return -1;
+      }
+      final int v = map.getInt(16);
+      final int s = map.getInt(20);
+      final int keyLength  = map.getInt(24);
+      final int nameLength = map.getInt(28);
+      if (v < 0 || s < 0 || keyLength < 0 || nameLength < 0) return -1;
+      final long dataOffset = align8(HEADER_BYTES + (long)keyLength + nameLength);
+      final long trailer = dataOffset + 24L * v + 8L * s;
+      if (trailer + 8 != size
+       || map.getLong((int)trailer) != checksum(map, (int)trailer))
+      {
+         return -1;
+      }
+
+      final byte[] key = new byte[keyLength];
+      final ByteBuffer b = map.duplicate();
+      b.position(HEADER_BYTES);
+      b.get(key);
+      if (! spec.toString().equals(new String(key, StandardCharsets.UTF_8)))
+      {
+         return -1;
+      }
+      return (int)dataOffset;
+   }
+
+
+   /**
+      Decode a mapped cache file. Return {@code null} if the file
+      is not a valid entry for {@code spec}.
+
+      @param spec  the {@link ModelSpec} that the file should hold
+      @param map   the mapped cache file
+      @return the decoded {@link Model}, or {@code null}
+   */
+   private static Model decode(final ModelSpec spec, final ByteBuffer map)
+   {
+      final int dataOffset = validate(spec, map);
+      if (dataOffset < 0)
+      {
+         return null;
+      }
+      final int v = map.getInt(16);
+      final int s = map.getInt(20);
+      final byte[] name = new byte[map.getInt(28)];
+      map.position(HEADER_BYTES + map.getInt(24));
+      map.get(name);
+
+      // Bulk copies out of the mapping are much faster than
+      // reading the values one at a time.
+      final double[] xyz = new double[3 * v];
+      final int[] indices = new int[2 * s];
+      map.position(dataOffset);
+      map.asDoubleBuffer().get(xyz);
+      map.position(dataOffset + 24 * v);
+      map.asIntBuffer().get(indices);
+
+      final List<Vertex> vertexList = new ArrayList<>(v);
+      for (int i = 0; i < xyz.length; i += 3)
+      {
+         vertexList.add(new Vertex(xyz[i], xyz[i + 1], xyz[i + 2]));
+      }
+      final List<Primitive> primitiveList = new ArrayList<>();
+      for (int i = 0; i < indices.length; )
+      {
+         final int i0 = indices[i];
+         final int i1 = indices[i + 1];
+         if (i0 < 0 || i0 >= v || i1 < 0 || i1 >= v) return null;
+         // Find the run of line segments (i0, i0+1), (i0+1, i0+2), ...
+         int run = i + 2;
+         while (run < indices.length
+             && indices[run] == indices[run - 1]
+             && indices[run + 1] == indices[run] + 1
+             && indices[run + 1] < v)
+         {
+            run += 2;
+         }
+         if (i1 == i0 + 1 && run - i > 2)
+         {
+            primitiveList.add(new LineStrip(i0, (run - i) / 2 + 1));
+            i = run;
+         }
+         else
+         {
+            primitiveList.add(new LineSegment(i0, i1));
+            i += 2;
+         }
+      }
+      return new Model(vertexList, primitiveList,
+                       new String(name, StandardCharsets.UTF_8), true);
+   }
+
+
+   private static long checksum(final ByteBuffer map, final int length)
+   {
+      final CRC32C crc = new CRC32C();
+      final ByteBuffer b = map.duplicate();
+      b.position(0).limit(length);
+      crc.update(b);
+      return crc.getValue();
+   }
+
+
+   /**
+      A fingerprint of the class files that implement a fractal generator
+      (see {@link ModelSpec#generatorClasses}), so that entries made by an
+      older version of the generator are detected (and so that a
+      {@link RenderService} can tell when its images change). If any of
+      the class files cannot be read, there is no way to tell, and the
+      fingerprint is {@link #NO_FINGERPRINT}: such models are not cached.
+
+      @param spec  the {@link ModelSpec} whose generator is fingerprinted
+      @return the fingerprint, or {@link #NO_FINGERPRINT}
+   */
+   static long fingerprint(final ModelSpec spec)
+   {
+      return FINGERPRINTS.computeIfAbsent(spec.generator, g -> {
+         // 64-bit FNV-1a of the CRC-32C of each class file, nested classes included.
+         long hash = 0xcbf29ce484222325L;
+         for (final Class<?> c : spec.generatorClasses())
+         {
+            final List<String> names = new ArrayList<>();
+            classFiles(c, names);
+            for (final String name : names)
+            {
+               final CRC32C crc = new CRC32C();
+               try (InputStream in = c.getClassLoader().getResourceAsStream(name))
+               {
+                  if (null == in)
+                  {
+                     return NO_FINGERPRINT;
+                  }
+                  crc.update(name.getBytes(StandardCharsets.UTF_8));
+                  crc.update(in.readAllBytes());
+               }
+               catch (IOException e)
+               {
+                  return NO_FINGERPRINT;
+               }
+               hash = (hash ^ crc.getValue()) * 0x100000001b3L;
+            }
+         }
+         return (NO_FINGERPRINT == hash) ? 1 : hash;
+      });
+   }
+
+
+   /**
+      Add the resource names of the class file of {@code c}, and of
+      its member and anonymous classes, to {@code names}.
+
+      @param c      the class
+      @param names  receives the resource names
+   */
+   private static void classFiles(final Class<?> c, final List<String> names)
+   {
+      final String name = c.getName().replace('.', '/');
+      names.add(name + ".class");
+      for (final Class<?> member : c.getDeclaredClasses())
+      {
+         classFiles(member, names);
+      }
+      // Anonymous classes are numbered from 1 (Foo$1, Foo$2, ...).
+      final ClassLoader loader = c.getClassLoader();
+      for (int i = 1; ; ++i)
+      {
+         final String anonymous = name + "$" + i + ".class";
+         if (null == loader.getResource(anonymous)) break;
+         names.add(anonymous);
+      }
+   }
+
+
+   private static long align8(final long n)
+   {
+      return (n + 7) & ~7L;
+   }
+}//ModelCache
@@ -0,0 +1,786 @@
+/*
+
+*/
+
+package fractals.io;
+
+import fractals.pipeline.FractalPipeline;
+import fractals.pipeline.PackedModel;
+import fractals.pipeline.RenderContext;
+import fractals.util.LatencyHistogram;
+import fractals.util.ModelBudget;
+import fractals.util.ModelSpec;
+import renderer.scene.*;
+import renderer.framebuffer.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+   A small HTTP server, on the JDK's {@link HttpServer}, that renders
+   fractal images on request, for programs (like dashboards) that want
+   the pictures without running the Swing client.
+   <p>
+   A request looks like
+   <pre>{@code
+      GET /render?model=C_Curve&n=18&w=1024&h=1024&z=-1.5&proj=ortho
+   }</pre>
+   with these query parameters.
+   <ul>
+   <li>{@code model} the generator, as in a {@link ModelSpec} (or a whole
+       description, like {@code C_Curve(18)}, and then no {@code n})
+   <li>{@code n} the level of the model
+   <li>{@code params} the generator's other parameters, separated by commas
+       (for example {@code model=Canopy&params=38&n=12})
+   <li>{@code w}, {@code h} the size of the image (default 1024 by 1024)
+   <li>{@code x}, {@code y}, {@code z} the translation of the model (default 0, 0, -1)
+   <li>{@code proj} {@code persp} (the default) or {@code ortho}
+   <li>{@code format} {@code png} (the default), {@code ppm}, {@code qoi}, or {@code raw}
+   </ul>
+   {@code GET /metrics} returns the server's counters as plain text.
+   <p>
+   The models are shared by all of the requests. They are kept in a
+   {@link ModelBudget}, and they are read from (and written to) a
+   {@link ModelCache} when they are built, the same way the interactive
+   client does it. A model is built without any of the locks that the
+   other requests need (one model at a time), and then it is put into the
+   budget. Putting it can evict (and close) another model, so that is only
+   done while no frame is being rendered (a read-write lock is held for
+   reading while a frame is rendered). The packed models' direct memory
+   and temporary files are counted against the budget's off-heap budget.
+   <p>
+   The time it takes to build or render a model grows exponentially with
+   its level, and an {@link fractals.pipeline.InstancedModel} or an
+   {@link fractals.pipeline.LSystemModel} costs almost nothing to build
+   but can take hours to render. So a request for a model with more than
+   {@link #MAX_SEGMENTS_PROPERTY} line segments (or vertices) is refused
+   with a {@code 400}, before anything is built.
+   <p>
+   Each request renders into a {@link FrameBuffer} from a small pool, with
+   its own {@link RenderContext}, so the requests do not share any of the
+   static flags of the pipeline. At most one frame per processor is rendered
+   at the same time. The encoded images are kept in a cache of
+   {@link #IMAGE_CACHE_PROPERTY} bytes, and each response has an
+   {@code ETag} that is computed from the request (and the version of the
+   model's generator) before anything is rendered, so a request with a
+   matching {@code If-None-Match} header gets a {@code 304} right away.
+   <p>
+   The requests are handled on virtual threads when the JVM has them
+   (Java 21 and later), and on a pool of daemon threads otherwise.
+*/
+public final class RenderService
+{
+   /** The system property that sets the size of the cache of encoded images (for example {@code 32m}, or {@code 0} for no cache). */
+   public static final String IMAGE_CACHE_PROPERTY = "fractals.imageCache";
+
+   /** The system property that sets the most line segments (or vertices) of a model that is rendered. */
+   public static final String MAX_SEGMENTS_PROPERTY = "fractals.maxSegments";
+
+   /** The most line segments (or vertices) of a model, when {@link #MAX_SEGMENTS_PROPERTY} is not set. */
+   public static final long DEFAULT_MAX_SEGMENTS = 1L << 26;
+
+   /** The largest width or height of an image. */
+   public static final int MAX_SIZE = 8192;
+
+   private final HttpServer server;
+   private final ExecutorService executor;
+   private final ModelBudget budget;
+   private final ModelCache cache; // null when the model cache is off
+   private final long maxSegments;
+
+   // Held for reading while a frame is rendered, and for writing while a model is put into the budget.
+   private final ReentrantReadWriteLock modelLock = new ReentrantReadWriteLock();
+
+   // Held while a model is built, so that only one model is built at a time.
+   private final ReentrantLock buildLock = new ReentrantLock();
+
+   // The frames that can be rendered at the same time, and their framebuffers.
+   private final Semaphore renderers;
+   private final int poolSize;
+   private final ArrayDeque<FrameBuffer> pool = new ArrayDeque<>();
+
+   // The encoded images, by request, least recently used first.
+   private final Map<String, ByteBuffer> images = new LinkedHashMap<>(16, 0.75f, true);
+   private final long imageCapacity;
+   private long imageBytes = 0;
+
+   // Request latencies, in microseconds.
+   private final LatencyHistogram latency = new LatencyHistogram();
+   private final AtomicLong requests = new AtomicLong();
+   private final AtomicLong renders = new AtomicLong();
+   private final AtomicLong imageHits = new AtomicLong();
+   private final AtomicLong notModified = new AtomicLong();
+   private final AtomicLong modelHits = new AtomicLong();
+   private final AtomicLong modelBuilds = new AtomicLong();
+   private final AtomicLong errors = new AtomicLong();
+
+
+   /**
+      Create a {@code RenderService}. Call {@link #start} to start it.
+
+      @param address        the address and port to listen on
+      @param budget         {@link ModelBudget} that holds the models
+      @param cache          {@link ModelCache} to read models from, or {@code null}
+      @param imageCapacity  the number of bytes of encoded images to cache
+      @param threads        the most frames that are rendered at the same time
+      @param maxSegments    the most line segments (or vertices) of a model
+      @throws IOException if the server cannot listen on {@code address}
+   */
+   public RenderService(final InetSocketAddress address,
+                        final ModelBudget budget,
+                        final ModelCache cache,
+                        final long imageCapacity,
+                        final int threads,
+                        final long maxSegments) throws IOException
+   {
+      if (threads < 1)
+         throw new IllegalArgumentException("a RenderService needs at least one thread");
+      if (maxSegments < 1)
+         throw new IllegalArgumentException("maxSegments must be positive");
+
+      this.budget = budget;
+      this.cache = cache;
+      this.maxSegments = maxSegments;
+      this.imageCapacity = imageCapacity;
+      this.poolSize = threads;
+      this.renderers = new Semaphore(threads);
+      this.executor = newExecutor(4 * threads);
+      this.server = HttpServer.create(address, 0);
+      server.createContext("/render", this::handleRender);
+      server.createContext("/metrics", this::handleMetrics);
+      server.setExecutor(executor);
+   }
+
+
+   /**
+      Create a {@code RenderService} with the {@link ModelBudget} and the
+      {@link ModelCache} given by their system properties, the image cache
+      given by {@link #IMAGE_CACHE_PROPERTY} (the default is 32 MiB), the
+      limit given by {@link #MAX_SEGMENTS_PROPERTY}, and one rendering
+      thread for each processor.
+
+      @param address  the address and port to listen on
+      @return a {@code RenderService}
+      @throws IOException if the server cannot listen on {@code address}
+      @throws IllegalArgumentException if a property has a bad value
+   */
+   public static RenderService fromProperties(final InetSocketAddress address) throws IOException
+   {
+      final String s = System.getProperty(IMAGE_CACHE_PROPERTY);
+      final String m = System.getProperty(MAX_SEGMENTS_PROPERTY);
+      final long maxSegments;
+      try
+      {
+         maxSegments = (null == m) ? DEFAULT_MAX_SEGMENTS : Long.parseLong(m.trim());
+      }
+      catch (NumberFormatException e)
+      {
+         throw new IllegalArgumentException("bad " + MAX_SEGMENTS_PROPERTY + ": " + m, e);
+      }
+      return new RenderService(address,
+                               ModelBudget.fromProperties(),
+                               ModelCache.openDefault(),
+                               (null == s) ? 32L << 20 : ModelBudget.parseSize(s),
+                               Runtime.getRuntime().availableProcessors(),
+                               maxSegments);
+   }
+
+
+   /**
+      Start accepting requests.
+   */
+   public void start()
+   {
+      server.start();
+   }
+
+
+   /**
+      Stop accepting requests, and wait (at most {@code delay} seconds)
+      for the requests that are being handled.
+
+      @param delay  the most seconds to wait
+   */
+   public void stop(final int delay)
+   {
+      server.stop(delay);
+      executor.shutdown();
+   }
+
+
+   /**
+      @return the address that the server is listening on
+   */
+   public InetSocketAddress getAddress()
+   {
+      return server.getAddress();
+   }
+
+
+   /**
+      @return the counters of this server, one per line
+   */
+   public String metrics()
+   {
+      final StringBuilder sb = new StringBuilder();
+      synchronized (latency)
+      {
+         sb.append(String.format("requests %d\n", requests.get()));
+         sb.append(String.format("latency_p50_ms %.3f\n", latency.getValueAtPercentile(50) / 1000.0));
+         sb.append(String.format("latency_p99_ms %.3f\n", latency.getValueAtPercentile(99) / 1000.0));
+         sb.append(String.format("latency_max_ms %.3f\n", latency.getMax() / 1000.0));
+      }
+      sb.append(String.format("renders %d\n", renders.get()));
+      sb.append(String.format("image_cache_hits %d\n", imageHits.get()));
+      sb.append(String.format("not_modified %d\n", notModified.get()));
+      synchronized (images)
+      {
+         sb.append(String.format("image_cache_entries %d\n", images.size()));
+         sb.append(String.format("image_cache_bytes %d\n", imageBytes));
+      }
+      sb.append(String.format("model_hits %d\n", modelHits.get()));
+      sb.append(String.format("model_builds %d\n", modelBuilds.get()));
+      if (null != cache)
+      {
+         sb.append(String.format("model_cache_hits %d\n", cache.getHits()));
+         sb.append(String.format("model_cache_misses %d\n", cache.getMisses()));
+      }
+      synchronized (budget)
+      {
+         sb.append(String.format("model_heap_bytes %d\n", budget.getUsedBytes()));
+         sb.append(String.format("model_offheap_bytes %d\n", budget.getOffHeapUsedBytes()));
+         sb.append(String.format("model_evictions %d\n", budget.getEvictions()));
+      }
+      sb.append(String.format("errors %d\n", errors.get()));
+      return sb.toString();
+   }
+
+
+   private void handleRender(final HttpExchange exchange) throws IOException
+   {
+      final long start = System.nanoTime();
+      requests.incrementAndGet();
+      try
+      {
+         final String method = exchange.getRequestMethod();
+         if (! "GET".equals(method) && ! "HEAD".equals(method))
+         {
+            sendText(exchange, 405, "Only GET and HEAD are supported.\n");
+            return;
+         }
+         final Request request;
+         try
+         {
+            request = Request.parse(exchange.getRequestURI().getRawQuery());
+            checkSize(request.spec);
+         }
+         catch (IllegalArgumentException e)
+         {
+            sendText(exchange, 400, e.getMessage() + "\n");
+            return;
+         }
+
+         final String etag = request.etag();
+         exchange.getResponseHeaders().set("Cache-Control", "no-cache"); // always ask, the ETag decides
+         if (null != etag)
+         {
+            exchange.getResponseHeaders().set("ETag", etag);
+         }
+         final String match = exchange.getRequestHeaders().getFirst("If-None-Match");
+         if (null != etag && null != match && (match.contains(etag) || "*".equals(match.trim())))
+         {
+            notModified.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            return;
+         }
+
+         ByteBuffer image = cachedImage(request.key);
+         if (null != image)
+         {
+            imageHits.incrementAndGet();
+         }
+         else
+         {
+            try
+            {
+               image = render(request);
+            }
+            catch (IllegalArgumentException e) // an unknown generator, or bad parameters
+            {
+               sendText(exchange, 400, e.getMessage() + "\n");
+               return;
+            }
+            catch (IllegalStateException e) // the model does not fit in the heap budget
+            {
+               sendText(exchange, 503, e.getMessage() + "\n");
+               return;
+            }
+            putImage(request.key, image);
+         }
+         exchange.getResponseHeaders().set("Content-Type", request.contentType());
+         if ("HEAD".equals(method))
+         {
+            exchange.getResponseHeaders().set("Content-Length", Integer.toString(image.remaining()));
+            exchange.sendResponseHeaders(200, -1);
+         }
+         else
+         {
+            exchange.sendResponseHeaders(200, image.remaining());
+            try (OutputStream out = exchange.getResponseBody())
+            {
+               out.write(image.array(), image.arrayOffset() + image.position(), image.remaining());
+            }
+         }
+      }
+      catch (IOException | RuntimeException e)
+      {
+         errors.incrementAndGet();
+         System.err.printf("ERROR! Could not handle %s\n", exchange.getRequestURI());
+         e.printStackTrace(System.err);
+      }
+      catch (InterruptedException e)
+      {
+         errors.incrementAndGet();
+         Thread.currentThread().interrupt();
+      }
+      finally
+      {
+         exchange.close();
+         final long micros = (System.nanoTime() - start) / 1000;
+         synchronized (latency)
+         {
+            latency.record(micros);
+         }
+      }
+   }
+
+
+   private void handleMetrics(final HttpExchange exchange) throws IOException
+   {
+      try
+      {
+         sendText(exchange, 200, metrics());
+      }
+      finally
+      {
+         exchange.close();
+      }
+   }
+
+
+   /**
+      Render and encode the image for a request.
+
+      @param request               the parameters of the image
+      @return the encoded image
+      @throws IOException if the image cannot be encoded
+      @throws InterruptedException if the thread is interrupted while it waits for a renderer
+   */
+   private ByteBuffer render(final Request request) throws IOException, InterruptedException
+   {
+      renderers.acquire();
+      try
+      {
+         final FrameBuffer fb = borrow(request.width, request.height);
+         try
+         {
+            final Model model = lockModel(request.spec);
+            try
+            {
+               final Scene scene = new Scene(request.spec.toString());
+               scene.getCamera().perspective = request.perspective;
+               scene.addPosition(new Position(model));
+               scene.getPosition(0).translation(request.x, request.y, request.z);
+               fb.clearFB();
+               FractalPipeline.render(scene, fb.vp, RenderContext.DEFAULT);
+               renders.incrementAndGet();
+            }
+            finally
+            {
+               modelLock.readLock().unlock();
+            }
+            return ScreenshotWriter.encode(request.format, fb.pixel_buffer, fb.width, fb.height);
+         }
+         finally
+         {
+            giveBack(fb);
+         }
+      }
+      finally
+      {
+         renderers.release();
+      }
+   }
+
+
+   /**
+      Refuse a model that would take too long to build or to render.
+
+      @param spec                      the {@link ModelSpec} of the model
+      @throws IllegalArgumentException if the model has too many line segments or vertices
+   */
+   private void checkSize(final ModelSpec spec)
+   {
+      final long segments = spec.segmentCount();
+      final long vertices = spec.vertexCount();
+      if (segments > maxSegments || vertices > maxSegments)
+         throw new IllegalArgumentException(String.format(
+            "%s has %d line segments and %d vertices, but this server renders"
+          + " at most %d of each (see -D%s)",
+            spec, segments, vertices, maxSegments, MAX_SEGMENTS_PROPERTY));
+   }
+
+
+   /**
+      Get the model for {@code spec}, building it if it is not in the
+      budget, and hold the read lock, so that the model cannot be evicted
+      until the caller unlocks it.
+
+      @param spec  the {@link ModelSpec} of the model
+      @return the model, with the read lock held
+   */
+   private Model lockModel(final ModelSpec spec)
+   {
+      final Model resident = residentModel(spec);
+      if (null != resident) return resident;
+
+      // Build the model without holding the read lock or the budget,
+      // so that the other requests go on, but one model at a time.
+      buildLock.lock();
+      try
+      {
+         final Model built = residentModel(spec); // built while this request waited
+         if (null != built) return built;
+
+         synchronized (budget)
+         {
+            budget.check(spec);
+         }
+         final Model model;
+         try
+         {
+            model = buildModel(spec);
+         }
+         catch (OutOfMemoryError e) // the estimate was wrong, or something else is using the heap
+         {
+            throw new IllegalStateException("Ran out of memory while building " + spec, e);
+         }
+
+         // Putting the model into the budget can evict (and close) other models.
+         modelLock.writeLock().lock();
+         try
+         {
+            final Model kept;
+            try
+            {
+               synchronized (budget)
+               {
+                  kept = budget.put(spec, model);
+               }
+            }
+            catch (IllegalStateException e)
+            {
+               if (model instanceof PackedModel) ((PackedModel)model).close();
+               throw e;
+            }
+            modelLock.readLock().lock(); // before the write lock is released
+            return kept;
+         }
+         finally
+         {
+            modelLock.writeLock().unlock();
+         }
+      }
+      finally
+      {
+         buildLock.unlock();
+      }
+   }
+
+
+   /**
+      Get the model for {@code spec}, holding the read lock, if it is in the
+      budget, or return {@code null}, without holding the read lock.
+
+      @param spec  the {@link ModelSpec} of the model
+      @return the model, with the read lock held, or {@code null}
+   */
+   private Model residentModel(final ModelSpec spec)
+   {
+      modelLock.readLock().lock();
+      synchronized (budget)
+      {
+         if (budget.contains(spec))
+         {
+            modelHits.incrementAndGet();
+            return budget.get(spec, this::buildModel); // it is only marked as recently used
+         }
+      }
+      modelLock.readLock().unlock();
+      return null;
+   }
+
+
+   private Model buildModel(final ModelSpec spec)
+   {
+      modelBuilds.incrementAndGet();
+      return (null == cache) ? spec.build() : cache.get(spec);
+   }
+
+
+   private FrameBuffer borrow(final int width, final int height)
+   {
+      synchronized (pool)
+      {
+         for (final Iterator<FrameBuffer> it = pool.iterator(); it.hasNext(); )
+         {
+            final FrameBuffer fb = it.next();
+            if (fb.width == width && fb.height == height)
+            {
+               it.remove();
+               return fb;
+            }
+         }
+      }
+      return new FrameBuffer(width, height);
+   }
+
+
+   private void giveBack(final FrameBuffer fb)
+   {
+      synchronized (pool)
+      {
+         if (pool.size() == poolSize)
+         {
+            pool.removeLast(); // the least recently used size
+         }
+         pool.addFirst(fb);
+      }
+   }
+
+
+   private ByteBuffer cachedImage(final String key)
+   {
+      synchronized (images)
+      {
+         final ByteBuffer image = images.get(key);
+         return (null == image) ? null : image.duplicate();
+      }
+   }
+
+
+   private void putImage(final String key, final ByteBuffer image)
+   {
+      final long bytes = image.remaining();
+      if (bytes > imageCapacity) return;
+      synchronized (images)
+      {
+         final ByteBuffer previous = images.put(key, image.duplicate());
+         if (null != previous) imageBytes -= previous.remaining();
+         imageBytes += bytes;
+         final Iterator<ByteBuffer> it = images.values().iterator();
+         while (imageBytes > imageCapacity)
+         {
+            imageBytes -= it.next().remaining();
+            it.remove();
+         }
+      }
+   }
+
+
+   private static void sendText(final HttpExchange exchange,
+                                final int status,
+                                final String text) throws IOException
+   {
+      final byte[] body = text.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+      exchange.sendResponseHeaders(status, body.length);
+      try (OutputStream out = exchange.getResponseBody())
+      {
+         out.write(body);
+      }
+   }
+
+
+   /**
+      Handle the requests on virtual threads, if this JVM has them (they
+      are looked up by reflection, so that this class still compiles for,
+      and runs on, older versions of Java).
+
+      @param threads  the number of threads, if there are no virtual threads
+      @return the {@link ExecutorService} for the requests
+   */
+   private static ExecutorService newExecutor(final int threads)
+   {
+      try
+      {
+         return (ExecutorService)Executors.class
+                                          .getMethod("newVirtualThreadPerTaskExecutor")
+                                          .invoke(null);
+      }
+      catch (ReflectiveOperationException e)
+      {
+         final AtomicInteger number = new AtomicInteger();
+         return Executors.newFixedThreadPool(threads, r -> {
+            final Thread t = new Thread(r, "render-service-" + number.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+         });
+      }
+   }
+
+
+   /**
+      The parameters of a {@code /render} request.
+   */
+   private static final class Request
+   {
+      ModelSpec spec;
+      int width = 1024, height = 1024;
+      double x = 0.0, y = 0.0, z = -1.0;
+      boolean perspective = true;
+      ScreenshotWriter.Format format = ScreenshotWriter.Format.PNG;
+      String key; // everything that determines the image
+
+      static Request parse(final String query)
+      {
+         final Map<String, String> q = new HashMap<>();
+         if (null != query)
+         {
+            for (final String pair : query.split("&"))
+            {
+               if (pair.isEmpty()) continue;
+               final int eq = pair.indexOf('=');
+               final String name = (eq < 0) ? pair : pair.substring(0, eq);
+               final String value = (eq < 0) ? "" : pair.substring(eq + 1);
+               q.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                     URLDecoder.decode(value, StandardCharsets.UTF_8));
+            }
+         }
+         final String model = q.get("model");
+         if (null == model || model.isEmpty())
+            throw new IllegalArgumentException("missing model, for example /render?model=C_Curve&n=18");
+
+         final Request r = new Request();
+         if (model.contains("("))
+         {
+            r.spec = ModelSpec.parse(model);
+         }
+         else
+         {
+            final String n = q.get("n");
+            if (null == n)
+               throw new IllegalArgumentException("missing n, the level of the model");
+            final String params = q.getOrDefault("params", "");
+            r.spec = ModelSpec.parse(model + "(" + (params.isEmpty() ? "" : params + ",") + n + ")");
+         }
+         r.width  = intValue(q, "w", r.width);
+         r.height = intValue(q, "h", r.height);
+         if (r.width < 1 || r.height < 1 || r.width > MAX_SIZE || r.height > MAX_SIZE)
+            throw new IllegalArgumentException("w and h must be from 1 to " + MAX_SIZE);
+         r.x = doubleValue(q, "x", r.x);
+         r.y = doubleValue(q, "y", r.y);
+         r.z = doubleValue(q, "z", r.z);
+         final String proj = q.getOrDefault("proj", "persp").toLowerCase();
+         if (proj.startsWith("ortho"))
+            r.perspective = false;
+         else if (! proj.startsWith("persp"))
+            throw new IllegalArgumentException("proj must be persp or ortho");
+         try
+         {
+            r.format = ScreenshotWriter.Format.valueOf(q.getOrDefault("format", "png").toUpperCase());
+         }
+         catch (IllegalArgumentException e)
+         {
+            throw new IllegalArgumentException("format must be png, ppm, qoi, or raw");
+         }
+         r.key = String.format("%s %dx%d (%s, %s, %s) %s %s",
+                               r.spec, r.width, r.height,
+                               Double.toString(r.x), Double.toString(r.y), Double.toString(r.z),
+                               r.perspective ? "persp" : "ortho", r.format);
+         return r;
+      }
+
+      /**
+         The entity tag of the image. It only changes when the request,
+         or a class file of the generator, changes. There is no entity tag
+         ({@code null}) when the generator's class files cannot be read.
+
+         @return the entity tag, or {@code null}
+      */
+      String etag()
+      {
+         final long fingerprint = ModelCache.fingerprint(spec);
+         if (ModelCache.NO_FINGERPRINT == fingerprint)
+         {
+            return null;
+         }
+         // 64-bit FNV-1a of the key and the generator's fingerprint
+         long hash = 0xcbf29ce484222325L;
+         for (final byte b : key.getBytes(StandardCharsets.UTF_8))
+         {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+         }
+         hash = (hash ^ fingerprint) * 0x100000001b3L;
+         return "\"" + Long.toHexString(hash) + "\"";
+      }
+
+      String contentType()
+      {
+         switch (format)
+         {
+            case PNG : return "image/png";
+            case PPM : return "image/x-portable-pixmap";
+            case QOI : return "image/qoi";
+            default  : return "application/octet-stream";
+         }
+      }
+
+      private static int intValue(final Map<String, String> q, final String name, final int value)
+      {
+         try
+         {
+            return q.containsKey(name) ? Integer.parseInt(q.get(name)) : value;
+         }
+         catch (NumberFormatException e)
+         {
+            throw new IllegalArgumentException(name + " must be a whole number");
+         }
+      }
+
+      private static double doubleValue(final Map<String, String> q, final String name, final double value)
+      {
+         final double d;
+         try
+         {
+            d = q.containsKey(name) ? Double.parseDouble(q.get(name)) : value;
+         }
+         catch (NumberFormatException e)
+         {
+            throw new IllegalArgumentException(name + " must be a number");
+         }
+         if (! Double.isFinite(d))
+            throw new IllegalArgumentException(name + " must be a finite number");
+         return d;
+      }
+   }
+}//RenderService
@@ -0,0 +1,492 @@
+/*
+
+*/
+
+package fractals.io;
+
+import fractals.jfr.ScreenshotWriteEvent;
+import renderer.framebuffer.FrameBuffer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+
+/**
+   Save "screenshots" of a {@link FrameBuffer} without blocking
+   the thread that rendered them.
+   <p>
+   {@link #capture} takes a snapshot of the framebuffer's
+   {@code pixel_buffer} with a single array copy and hands the
+   copy to a background encoder thread. That copy is the only
+   work done on the caller's thread (usually the Java GUI Event
+   Dispatch Thread), so the cost of a capture does not depend on
+   the image format. The snapshot arrays are recycled once they
+   have been written, so a capture does not even need to allocate
+   (and zero) a new array.
+   <p>
+   Every format is written through an NIO {@link FileChannel}.
+   <ul>
+   <li>{@link Format#PNG} compressed, lossless PNG (the slowest to encode).
+   <li>{@link Format#PPM} binary PPM, the same format that is read by the
+       {@link FrameBuffer#FrameBuffer(String)} constructor.
+   <li>{@link Format#QOI} the "Quite OK Image" format, a lossless format
+       that encodes many times faster than PNG and usually compresses
+       our wireframe images better than PNG does.
+   <li>{@link Format#RAW} the pixel data exactly as it is stored in
+       {@code pixel_buffer}, one big-endian {@code 0xAARRGGBB} int per
+       pixel, with no header (the file name records the dimensions).
+   </ul>
+   <p>
+   See <a href="https://qoiformat.org/qoi-specification.pdf" target="_top">
+                https://qoiformat.org/qoi-specification.pdf</a>
+*/
+public final class ScreenshotWriter
+{
+   /**
+      The image file formats that a {@code ScreenshotWriter} can write.
+   */
+   public enum Format
+   {
+      PNG("png"), PPM("ppm"), QOI("qoi"), RAW("raw");
+
+      /** The usual file name extension for this format. */
+      public final String extension;
+
+      private Format(final String extension)
+      {
+         this.extension = extension;
+      }
+
+      /**
+         Return the format that follows this one, wrapping around
+         after the last format.
+
+         @return the next {@code Format}
+      */
+      public Format next()
+      {
+         final Format[] all = values();
+         return all[(ordinal() + 1) % all.length];
+      }
+
+      /**
+         Build a complete file name from a base name and the dimensions
+         of the image. Only the {@link #RAW} format, which has no header,
+         puts the dimensions into the file name.
+
+         @param baseName  file name without an extension
+         @param width     width of the image
+         @param height    height of the image
+         @return a file name for an image in this format
+      */
+      public String fileName(final String baseName,
+                             final int width, final int height)
+      {
+         if (this == RAW)
+            return baseName + "_" + width + "x" + height + "." + extension;
+         else
+            return baseName + "." + extension;
+      }
+   }
+
+
+   private static final int SPARE_SNAPSHOTS = 4;
+
+   private final ExecutorService encoder;
+   private final BlockingQueue<int[]> spares = new ArrayBlockingQueue<>(SPARE_SNAPSHOTS);
+   private volatile Format format;
+
+
+   /**
+      Create a {@code ScreenshotWriter} that writes PNG files.
+   */
+   public ScreenshotWriter()
+   {
+      this(Format.PNG);
+   }
+
+
+   /**
+      Create a {@code ScreenshotWriter} that writes files
+      in the given {@link Format}.
+      <p>
+      The encoder thread is a daemon thread, so it does not keep
+      the program alive, but a shutdown hook finishes writing any
+      queued screenshots before the JVM exits.
+
+      @param format  the {@link Format} for the saved images
+   */
+   public ScreenshotWriter(final Format format)
+   {
+      if (null == format)
+         throw new NullPointerException("format must not be null");
+
+      this.format = format;
+      this.encoder = Executors.newSingleThreadExecutor(r -> {
+         final Thread t = new Thread(r, "screenshot-encoder");
+         t.setDaemon(true);
+         return t;
+      });
+      Runtime.getRuntime().addShutdownHook(
+         new Thread(this::close, "screenshot-encoder-drain"));
+   }
+
+
+   /**
+      Get the {@link Format} used for new captures.
+
+      @return the current {@link Format}
+   */
+   public Format getFormat()
+   {
+      return format;
+   }
+
+
+   /**
+      Set the {@link Format} used for new captures. Captures that are
+      already queued keep the format they were captured with.
+
+      @param format  the {@link Format} for the saved images
+   */
+   public void setFormat(final Format format)
+   {
+      if (null == format)
+         throw new NullPointerException("format must not be null");
+
+      this.format = format;
+   }
+
+
+   /**
+      Take a snapshot of the given {@link FrameBuffer} and queue it
+      to be written to a file by the background encoder thread.
+
+      @param fb        {@link FrameBuffer} to take a snapshot of
+      @param baseName  name of the file, without an extension
+      @return the {@link Path} that the image will be written to
+   */
+   public Path capture(final FrameBuffer fb, final String baseName)
+   {
+      // This copy is the only work done on the caller's thread.
+      int[] pixels = spares.poll();
+      if (null == pixels || pixels.length != fb.pixel_buffer.length)
+      {
+         pixels = new int[fb.pixel_buffer.length];
+      }
+      System.arraycopy(fb.pixel_buffer, 0, pixels, 0, pixels.length);
+      final int[] snapshot = pixels;
+      final int width  = fb.width;
+      final int height = fb.height;
+      final Format f = this.format;
+      final Path file = Paths.get(f.fileName(baseName, width, height));
+
+      encoder.execute(() -> {
+         try
+         {
+            write(f, snapshot, width, height, file);
+         }
+         catch (IOException e)
+         {
+            System.err.printf("ERROR! Could not write to file %s\n", file);
+            e.printStackTrace(System.err);
+         }
+         spares.offer(snapshot);
+      });
+      return file;
+   }
+
+
+   /**
+      Stop accepting captures and wait for all the queued
+      screenshots to be written.
+   */
+   public void close()
+   {
+      encoder.shutdown();
+      try
+      {
+         encoder.awaitTermination(1, TimeUnit.MINUTES);
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+
+   /**
+      Encode an array of pixels, in the format of a {@link FrameBuffer}'s
+      {@code pixel_buffer}, and write it to a file on the calling thread.
+      The write is recorded as a {@link ScreenshotWriteEvent} when
+      Java Flight Recorder is recording.
+
+      @param format  {@link Format} of the image file
+      @param pixels  pixel data, one {@code 0xAARRGGBB} int per pixel
+      @param width   width of the image
+      @param height  height of the image
+      @param file    {@link Path} of the image file
+      @throws IOException if the file cannot be written
+   */
+   public static void write(final Format format,
+                            final int[] pixels,
+                            final int width, final int height,
+                            final Path file) throws IOException
+   {
+      final ScreenshotWriteEvent event = new ScreenshotWriteEvent();
+      event.begin();
+      long bytes = 0;
+      try (FileChannel ch = FileChannel.open(file,
+                                             StandardOpenOption.CREATE,
+                                             StandardOpenOption.WRITE,
+                                             StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         switch (format)
+         {
+            case PNG : writePNG(pixels, width, height, ch); break;
+            case PPM : writeFully(encodePPM(pixels, width, height), ch); break;
+            case QOI : writeFully(encodeQOI(pixels, width, height), ch); break;
+            case RAW : writeFully(encodeRAW(pixels), ch); break;
+         }
+         bytes = ch.size();
+      }
+      event.end();
+      if (event.shouldCommit())
+      {
+         event.file = file.toString();
+         event.format = format.toString();
+         event.width = width;
+         event.height = height;
+         event.bytes = bytes;
+         event.commit();
+      }
+   }
+
+
+   /**
+      Encode pixels in the given {@link Format}, in memory.
+
+      @param format  {@link Format} of the image
+      @param pixels  pixel data, one {@code 0xAARRGGBB} int per pixel
+      @param width   width of the image
+      @param height  height of the image
+      @return a {@link ByteBuffer} holding the complete image file
+      @throws IOException if the image cannot be encoded
+   */
+   public static ByteBuffer encode(final Format format,
+                                   final int[] pixels,
+                                   final int width, final int height) throws IOException
+   {
+      switch (format)
+      {
+         case PNG : return encodePNG(pixels, width, height);
+         case PPM : return encodePPM(pixels, width, height);
+         case QOI : return encodeQOI(pixels, width, height);
+         default  : return encodeRAW(pixels);
+      }
+   }
+
+
+   /**
+      Encode pixels as a PNG image.
+
+      @param pixels  pixel data, one {@code 0xAARRGGBB} int per pixel
+      @param width   width of the image
+      @param height  height of the image
+      @return a {@link ByteBuffer} holding the complete PNG file
+      @throws IOException if there is no PNG image writer
+   */
+   public static ByteBuffer encodePNG(final int[] pixels,
+                                      final int width, final int height) throws IOException
+   {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      if (! ImageIO.write(image(pixels, width, height), "png", out))
+      {
+         throw new IOException("no PNG image writer is available");
+      }
+      return ByteBuffer.wrap(out.toByteArray());
+   }
+
+
+   /**
+      Encode pixels as a binary (P6) PPM image.
+
+      @param pixels  pixel data, one {@code 0xAARRGGBB} int per pixel
+      @param width   width of the image
+      @param height  height of the image
+      @return a {@link ByteBuffer} holding the complete PPM file
+   */
+   public static ByteBuffer encodePPM(final int[] pixels,
+                                      final int width, final int height)
+   {
+      final byte[] header = ("P6\n" + width + " " + height + "\n255\n").getBytes();
+      final byte[] out = new byte[header.length + 3 * width * height];
+      System.arraycopy(header, 0, out, 0, header.length);
+      int j = header.length;
+      for (int i = 0; i < width * height; ++i)
+      {
+         final int rgb = pixels[i];
+         out[j++] = (byte)(rgb >> 16);
+         out[j++] = (byte)(rgb >>  8);
+         out[j++] = (byte) rgb;
+      }
+      return ByteBuffer.wrap(out);
+   }
+
+
+   /**
+      Encode pixels as a three channel (RGB) QOI image.
+
+      @param pixels  pixel data, one {@code 0xAARRGGBB} int per pixel
+      @param width   width of the image
+      @param height  height of the image
+      @return a {@link ByteBuffer} holding the complete QOI file
+   */
+   public static ByteBuffer encodeQOI(final int[] pixels,
+                                      final int width, final int height)
+   {
+      final int count = width * height;
+      // Worst case is four bytes per pixel, plus the header and end marker.
+      final byte[] out = new byte[14 + 4 * count + 8];
+      final int[] index = new int[64];
+      int j = 0;
+
+      // The 14 byte header.
+      out[j++] = 'q'; out[j++] = 'o'; out[j++] = 'i'; out[j++] = 'f';
+      out[j++] = (byte)(width  >>> 24); out[j++] = (byte)(width  >>> 16);
+      out[j++] = (byte)(width  >>>  8); out[j++] = (byte) width;
+      out[j++] = (byte)(height >>> 24); out[j++] = (byte)(height >>> 16);
+      out[j++] = (byte)(height >>>  8); out[j++] = (byte) height;
+      out[j++] = 3; // channels
+      out[j++] = 0; // sRGB with linear alpha
+
+      // Every pixel is opaque, so the alpha channel is forced to 255.
+      int prev = 0xFF000000;
+      int run = 0;
+      for (int i = 0; i < count; ++i)
+      {
+         final int px = pixels[i] | 0xFF000000;
+         if (px == prev)
+         {
+            ++run;
+            if (62 == run || count - 1 == i)
+            {
+               out[j++] = (byte)(0xC0 | (run - 1)); // QOI_OP_RUN
+               run = 0;
+            }
+            continue;
+         }
+         if (run > 0)
+         {
+            out[j++] = (byte)(0xC0 | (run - 1)); // QOI_OP_RUN
+            run = 0;
+         }
+
+         final int r = (px >> 16) & 0xFF;
+         final int g = (px >>  8) & 0xFF;
+         final int b =  px        & 0xFF;
+         final int hash = (r * 3 + g * 5 + b * 7 + 255 * 11) & 63;
+         if (index[hash] == px)
+         {
+            out[j++] = (byte)hash; // QOI_OP_INDEX
+         }
+         else
+         {
+            index[hash] = px;
+            final int vr = (byte)(r - ((prev >> 16) & 0xFF));
+            final int vg = (byte)(g - ((prev >>  8) & 0xFF));
+            final int vb = (byte)(b - ( prev        & 0xFF));
+            final int vg_r = vr - vg;
+            final int vg_b = vb - vg;
+            if (vr > -3 && vr < 2 && vg > -3 && vg < 2 && vb > -3 && vb < 2)
+            {
+               out[j++] = (byte)(0x40 | (vr + 2) << 4 | (vg + 2) << 2 | (vb + 2)); // QOI_OP_DIFF
+            }
+            else if (vg_r > -9 && vg_r < 8 && vg > -33 && vg < 32 && vg_b > -9 && vg_b < 8)
+            {
+               out[j++] = (byte)(0x80 | (vg + 32)); // QOI_OP_LUMA
+               out[j++] = (byte)((vg_r + 8) << 4 | (vg_b + 8));
+            }
+            else
+            {
+               out[j++] = (byte)0xFE; // QOI_OP_RGB
+               out[j++] = (byte)r;
+               out[j++] = (byte)g;
+               out[j++] = (byte)b;
+            }
+         }
+         prev = px;
+      }
+
+      // The end marker, seven 0x00 bytes followed by one 0x01 byte.
+      j += 7;
+      out[j++] = 1;
+      return ByteBuffer.wrap(out, 0, j);
+   }
+
+
+   /**
+      Encode pixels exactly as they are stored in a {@code pixel_buffer}.
+
+      @param pixels  pixel data, one {@code 0xAARRGGBB} int per pixel
+      @return a {@link ByteBuffer} holding the pixels as big-endian ints
+   */
+   public static ByteBuffer encodeRAW(final int[] pixels)
+   {
+      final ByteBuffer out = ByteBuffer.allocate(4 * pixels.length)
+                                       .order(ByteOrder.BIG_ENDIAN);
+      out.asIntBuffer().put(pixels);
+      return out;
+   }
+
+
+   private static void writePNG(final int[] pixels,
+                                final int width, final int height,
+                                final FileChannel ch) throws IOException
+   {
+      if (! ImageIO.write(image(pixels, width, height), "png", Channels.newOutputStream(ch)))
+      {
+         throw new IOException("no PNG image writer is available");
+      }
+   }
+
+
+   // Wrap the pixel array in an image without copying it.
+   private static BufferedImage image(final int[] pixels,
+                                      final int width, final int height)
+   {
+      final DirectColorModel cm = new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+      final WritableRaster raster = Raster.createPackedRaster(
+                                           new DataBufferInt(pixels, width * height),
+                                           width, height, width,
+                                           cm.getMasks(), null);
+      return new BufferedImage(cm, raster, false, null);
+   }
+
+
+   private static void writeFully(final ByteBuffer buf,
+                                  final FileChannel ch) throws IOException
+   {
+      while (buf.hasRemaining())
+      {
+         ch.write(buf);
+      }
+   }
+}//ScreenshotWriter
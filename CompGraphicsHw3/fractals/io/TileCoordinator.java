@@ -0,0 +1,404 @@
+/*
+
+*/
+
+package fractals.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+   Render an image that is too big for one JVM by splitting it into
+   tiles and sending the tiles to {@link TileWorker}s, which are usually
+   other processes on the same machine.
+   <p>
+   The tiles go into a queue, and each worker has a thread of its own
+   in the coordinator that takes the next tile from the queue, sends it
+   (with the {@link TileJob}) to its worker, waits for the pixels, and
+   writes them into their place in a {@link MappedFrameFile}, so the
+   whole image is never held in the heap of any process. Faster workers
+   just take more tiles.
+   <p>
+   When a worker dies (its connection is closed or reset, or it cannot be
+   reached at all), or it does not answer within the timeout (it hangs,
+   or it is busy with another coordinator), the tile that it was rendering
+   goes back to the front of the queue, for one of the other workers, and
+   that worker is not sent any more tiles. The image is only given up on
+   when every worker has died, or when a worker answers that the tile
+   cannot be rendered (which the other workers would answer, too), or when
+   a tile cannot be written.
+   <p>
+   Everything about one image is kept in an object of its own, and
+   {@link #render} closes the connections and waits for its threads before
+   it returns, so nothing from one image is left to affect the next one.
+*/
+public final class TileCoordinator
+{
+   /**
+      Something that is told when each tile of an image is finished.
+   */
+   @FunctionalInterface
+   public interface TileListener
+   {
+      /**
+         Called on one of the coordinator's threads when a tile has been written.
+
+         @param done    the number of tiles that are finished
+         @param total   the number of tiles in the image
+         @param worker  the worker that rendered the tile
+         @param nanos   the time from sending the tile to writing it
+      */
+      void tileRendered(int done, int total, InetSocketAddress worker, long nanos);
+   }
+
+   /** The time a worker has to answer, when no other timeout is given (five minutes). */
+   public static final int DEFAULT_TIMEOUT = 5 * 60 * 1000;
+
+   private static final int CONNECT_TIMEOUT = 10_000; // milliseconds
+
+   private final List<InetSocketAddress> workers;
+   private final int timeout;
+
+   private final AtomicLong tiles = new AtomicLong();
+   private final AtomicLong redispatched = new AtomicLong();
+   private final AtomicLong deadWorkers = new AtomicLong();
+
+
+   /**
+      The state of one image, shared by the threads that render it.
+   */
+   private static final class Image
+   {
+      final TileJob job;
+      final MappedFrameFile out;
+      final TileListener listener;
+      final LinkedBlockingDeque<int[]> queue = new LinkedBlockingDeque<>();
+      final List<Socket> sockets = new ArrayList<>();
+      int total;
+      int remaining;
+      int finished; // written, but the listener might not have been told yet
+      int alive;
+      IOException failure;
+      boolean over; // render has returned, or is about to
+
+      Image(final TileJob job, final MappedFrameFile out, final TileListener listener)
+      {
+         this.job = job;
+         this.out = out;
+         this.listener = listener;
+      }
+
+      synchronized void fail(final IOException e)
+      {
+         if (null == failure) failure = e;
+         notifyAll();
+      }
+
+      synchronized boolean isDone()
+      {
+         return over || 0 == remaining || null != failure;
+      }
+   }
+
+
+   /**
+      Create a {@code TileCoordinator} for the workers at the given
+      addresses, which have {@link #DEFAULT_TIMEOUT} to answer each tile.
+
+      @param workers  the addresses of the {@link TileWorker}s
+      @throws IllegalArgumentException if there are no workers
+   */
+   public TileCoordinator(final List<InetSocketAddress> workers)
+   {
+      this(workers, DEFAULT_TIMEOUT);
+   }
+
+
+   /**
+      Create a {@code TileCoordinator} for the workers at the given addresses.
+
+      @param workers  the addresses of the {@link TileWorker}s
+      @param timeout  the milliseconds that a worker has to answer each tile
+                      (including the time to build the model, for its first tile)
+                      before it is taken to be dead
+      @throws IllegalArgumentException if there are no workers, or the timeout is not positive
+   */
+   public TileCoordinator(final List<InetSocketAddress> workers, final int timeout)
+   {
+      if (workers.isEmpty())
+         throw new IllegalArgumentException("a TileCoordinator needs at least one worker");
+      if (timeout <= 0)
+         throw new IllegalArgumentException("the timeout must be positive");
+
+      this.workers = List.copyOf(workers);
+      this.timeout = timeout;
+   }
+
+
+   /**
+      Render the image of a {@link TileJob} into frame {@code 0} of
+      a {@link MappedFrameFile}, in tiles of at most {@code tileSize}
+      by {@code tileSize} pixels, and wait until it is finished.
+
+      @param job       the {@link TileJob} that describes the image
+      @param tileSize  the width and height of the tiles (the tiles at the right and bottom edges can be smaller)
+      @param out       {@link MappedFrameFile} of the size of the image
+      @param listener  is told as each tile is finished, or {@code null}
+      @throws IOException if a tile cannot be rendered, or every worker has died
+      @throws InterruptedException if this thread is interrupted while it waits
+      @throws IllegalArgumentException if the file is not the size of the image
+   */
+   public void render(final TileJob job, final int tileSize,
+                      final MappedFrameFile out,
+                      final TileListener listener) throws IOException, InterruptedException
+   {
+      if (tileSize <= 0)
+         throw new IllegalArgumentException("tileSize must be positive");
+      if (out.width != job.width || out.height != job.height)
+         throw new IllegalArgumentException("the file is not " + job.width + "x" + job.height);
+
+      final Image image = new Image(job, out, listener);
+      for (int y = 0; y < job.height; y += tileSize)
+      {
+         for (int x = 0; x < job.width; x += tileSize)
+         {
+            image.queue.add(new int[]{x, y,
+                                      Math.min(tileSize, job.width - x),
+                                      Math.min(tileSize, job.height - y)});
+         }
+      }
+      synchronized (image)
+      {
+         image.total = image.queue.size();
+         image.remaining = image.total;
+         image.alive = workers.size();
+      }
+
+      final List<Thread> threads = new ArrayList<>(workers.size());
+      try
+      {
+         for (int i = 0; i < workers.size(); ++i)
+         {
+            final InetSocketAddress worker = workers.get(i);
+            final Thread t = new Thread(() -> dispatch(worker, image),
+                                        "tile-coordinator-" + (i + 1));
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+         }
+
+         synchronized (image)
+         {
+            while (image.remaining > 0 && image.alive > 0 && null == image.failure)
+            {
+               image.wait();
+            }
+            if (null != image.failure)
+            {
+               throw image.failure;
+            }
+            if (image.remaining > 0)
+            {
+               throw new IOException(String.format("every worker died, %d of the %d tiles were not rendered",
+                                                   image.remaining, image.total));
+            }
+         }
+      }
+      finally
+      {
+         // Stop the threads that are still waiting for a worker, and wait for them.
+         synchronized (image)
+         {
+            image.over = true;
+            for (final Socket socket : image.sockets)
+            {
+               try
+               {
+                  socket.close();
+               }
+               catch (IOException e)
+               {
+               }
+            }
+         }
+         image.queue.clear();
+         for (final Thread t : threads) t.interrupt();
+         for (final Thread t : threads) t.join();
+      }
+   }
+
+
+   /**
+      Send tiles to one worker, until there are no tiles
+      left, or the worker dies, or the image fails.
+
+      @param worker  the address of the worker
+      @param image   the image whose tiles are sent
+   */
+   private void dispatch(final InetSocketAddress worker, final Image image)
+   {
+      int[] tile = null;
+      try (Socket socket = new Socket())
+      {
+         synchronized (image)
+         {
+            if (image.over) return;
+            image.sockets.add(socket); // so that render can close it
+         }
+         socket.connect(worker, CONNECT_TIMEOUT);
+         socket.setSoTimeout(timeout);
+         socket.setTcpNoDelay(true);
+         final DataInputStream in =
+               new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+         final DataOutputStream os =
+               new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+         byte[] bytes = new byte[0];
+         int[] pixels = new int[0];
+         while (! image.isDone())
+         {
+            // A tile that another worker was rendering can come back, so wait for it.
+            tile = image.queue.poll(100, TimeUnit.MILLISECONDS);
+            if (null == tile) continue;
+
+            final long start = System.nanoTime();
+            os.writeInt(TileWorker.REQUEST);
+            os.writeInt(tile[0]);
+            os.writeInt(tile[1]);
+            os.writeInt(tile[2]);
+            os.writeInt(tile[3]);
+            image.job.write(os);
+            os.flush();
+
+            final int status = in.readInt();
+            if (TileWorker.OK != status)
+            {
+               final String message = (TileWorker.ERROR == status) ? in.readUTF()
+                                                                   : "bad answer " + status;
+               image.fail(new IOException(String.format("%s could not render the tile at (%d, %d): %s",
+                                                        worker, tile[0], tile[1], message)));
+               return;
+            }
+            final int count = tile[2] * tile[3];
+            if (pixels.length != count)
+            {
+               pixels = new int[count];
+               bytes = new byte[4 * count];
+            }
+            in.readFully(bytes);
+            ByteBuffer.wrap(bytes).asIntBuffer().get(pixels);
+            try
+            {
+               image.out.writeTile(0, tile[0], tile[1], tile[2], tile[3], pixels);
+            }
+            catch (IOException e) // not the worker's fault, the other workers would fail too
+            {
+               image.fail(e);
+               return;
+            }
+            tile = null;
+
+            final int done;
+            synchronized (image)
+            {
+               done = ++image.finished;
+            }
+            tiles.incrementAndGet();
+            if (null != image.listener)
+            {
+               image.listener.tileRendered(done, image.total, worker, System.nanoTime() - start);
+            }
+            synchronized (image)
+            {
+               if (0 == --image.remaining) image.notifyAll();
+            }
+         }
+      }
+      catch (IOException e) // the worker died, or hung, give its tile to another worker
+      {
+         synchronized (image)
+         {
+            if (image.over) return; // render closed the socket
+         }
+         deadWorkers.incrementAndGet();
+         System.err.printf("ERROR! Lost the tile worker at %s (%s)\n", worker, e);
+         if (null != tile)
+         {
+            redispatched.incrementAndGet();
+            image.queue.addFirst(tile);
+         }
+      }
+      catch (InterruptedException e) // the image is finished, or has failed
+      {
+         Thread.currentThread().interrupt();
+      }
+      catch (RuntimeException e) // a tile that cannot be written, or a listener that failed
+      {
+         image.fail(new IOException("could not finish the tile at "
+                                    + ((null == tile) ? "?" : "(" + tile[0] + ", " + tile[1] + ")"), e));
+      }
+      finally
+      {
+         synchronized (image)
+         {
+            --image.alive;
+            image.notifyAll();
+         }
+      }
+   }
+
+
+   /**
+      @return the addresses of the workers
+   */
+   public List<InetSocketAddress> getWorkers()
+   {
+      return workers;
+   }
+
+
+   /**
+      @return the milliseconds that a worker has to answer each tile
+   */
+   public int getTimeout()
+   {
+      return timeout;
+   }
+
+
+   /**
+      @return the number of tiles that have been written
+   */
+   public long getTiles()
+   {
+      return tiles.get();
+   }
+
+
+   /**
+      @return the number of tiles that were sent again, because their worker died
+   */
+   public long getRedispatched()
+   {
+      return redispatched.get();
+   }
+
+
+   /**
+      @return the number of workers that have died (or could not be reached, or did not answer in time)
+   */
+   public long getDeadWorkers()
+   {
+      return deadWorkers.get();
+   }
+}//TileCoordinator
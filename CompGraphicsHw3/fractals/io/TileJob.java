@@ -0,0 +1,149 @@
+/*
+
+*/
+
+package fractals.io;
+
+import fractals.pipeline.RenderContext;
+import fractals.util.ModelSpec;
+import renderer.scene.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+   Everything that a {@link TileWorker} needs to know to render any tile
+   of an image: the model (its generator, parameters and level), the
+   camera's projection, the translation of the model, the size of the
+   whole image, and how the model is drawn.
+   <p>
+   A {@code TileJob} is small, and it is sent to a worker along with each
+   tile (see {@link TileCoordinator}), so a worker does not need to be
+   told about the job ahead of time, and a tile can be sent to any worker.
+   The worker builds the model from its {@link ModelSpec} (or loads it from
+   its {@link ModelCache}) the first time it sees the job.
+*/
+public final class TileJob
+{
+   public final ModelSpec spec;
+   public final int width;
+   public final int height;
+   public final boolean perspective;
+   public final double x, y, z;
+   public final int pointSize;
+
+
+   /**
+      Create a {@code TileJob}.
+
+      @param spec         {@link ModelSpec} of the model
+      @param width        width of the whole image, in pixels
+      @param height       height of the whole image, in pixels
+      @param perspective  {@code true} for perspective projection, {@code false} for orthographic
+      @param x            the translation of the model in the x direction
+      @param y            the translation of the model in the y direction
+      @param z            the translation of the model in the z direction
+      @param pointSize    the radius, in pixels, of the points of a point cloud,
+                          or a negative number to draw line segments
+      @throws IllegalArgumentException if the image has no pixels
+   */
+   public TileJob(final ModelSpec spec,
+                  final int width, final int height,
+                  final boolean perspective,
+                  final double x, final double y, final double z,
+                  final int pointSize)
+   {
+      if (width <= 0 || height <= 0)
+         throw new IllegalArgumentException("width and height must be positive");
+
+      this.spec = spec;
+      this.width = width;
+      this.height = height;
+      this.perspective = perspective;
+      this.x = x;
+      this.y = y;
+      this.z = z;
+      this.pointSize = Math.max(pointSize, -1);
+   }
+
+
+   /**
+      Make the {@link Scene} of this job, with a model that was built from {@link #spec}.
+
+      @param model  the {@link Model} of {@link #spec}
+      @return a {@link Scene} with one position, that holds {@code model}
+   */
+   public Scene scene(final Model model)
+   {
+      final Scene scene = new Scene(spec.toString());
+      scene.getCamera().perspective = perspective;
+      scene.addPosition(new Position(model));
+      scene.getPosition(0).translation(x, y, z);
+      return scene;
+   }
+
+
+   /**
+      @return the {@link RenderContext} for every tile of this job
+   */
+   public RenderContext context()
+   {
+      return RenderContext.DEFAULT.withPointCloud(pointSize);
+   }
+
+
+   void write(final DataOutputStream out) throws IOException
+   {
+      out.writeUTF(spec.generator);
+      out.writeInt(spec.n);
+      final double[] params = spec.getParams();
+      out.writeInt(params.length);
+      for (final double p : params)
+      {
+         out.writeDouble(p);
+      }
+      out.writeInt(width);
+      out.writeInt(height);
+      out.writeBoolean(perspective);
+      out.writeDouble(x);
+      out.writeDouble(y);
+      out.writeDouble(z);
+      out.writeInt(pointSize);
+   }
+
+
+   static TileJob read(final DataInputStream in) throws IOException
+   {
+      final String generator = in.readUTF();
+      final int n = in.readInt();
+      final int count = in.readInt();
+      if (count < 0 || count > 16)
+         throw new IOException("bad tile job: " + count + " parameters");
+      final double[] params = new double[count];
+      for (int i = 0; i < count; ++i)
+      {
+         params[i] = in.readDouble();
+      }
+      final int width = in.readInt();
+      final int height = in.readInt();
+      final boolean perspective = in.readBoolean();
+      final double x = in.readDouble();
+      final double y = in.readDouble();
+      final double z = in.readDouble();
+      final int pointSize = in.readInt();
+      return new TileJob(new ModelSpec(generator, n, params),
+                         width, height, perspective, x, y, z, pointSize);
+   }
+
+
+   @Override
+   public String toString()
+   {
+      return String.format("%s at %dx%d, %s, translated by (%s, %s, %s), %s",
+                           spec, width, height,
+                           perspective ? "perspective" : "orthographic",
+                           x, y, z,
+                           (pointSize < 0) ? "line segments" : "point cloud (size " + pointSize + ")");
+   }
+}//TileJob
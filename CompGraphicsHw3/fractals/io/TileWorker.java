@@ -0,0 +1,241 @@
+/*
+
+*/
+
+package fractals.io;
+
+import fractals.pipeline.FractalPipeline;
+import fractals.util.ModelBudget;
+import fractals.util.ModelSpec;
+import renderer.scene.*;
+import renderer.framebuffer.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+   A process that renders tiles of images for a {@link TileCoordinator},
+   over a local socket.
+   <p>
+   For each tile, the coordinator sends
+   <pre>{@code
+      int      REQUEST
+      int      x, y, width, height   the tile, in the pixels of the whole image
+      TileJob  the model, the camera, and the size of the whole image
+   }</pre>
+   and the worker renders the tile into a {@link FrameBuffer} of its own,
+   with {@link FractalPipeline#renderTile}, and answers with
+   <pre>{@code
+      int      OK
+      int[]    width*height pixels, 0xAARRGGBB, big-endian, row by row
+   }</pre>
+   or with {@code ERROR} and a message (written by
+   {@link DataOutputStream#writeUTF}) when the tile cannot be rendered
+   (for example, when the model does not fit in the worker's heap budget).
+   <p>
+   The models are kept in the worker's {@link ModelBudget}, so the model
+   is built (or read from the {@link ModelCache}) once, for the first tile,
+   and the rest of the tiles of the same image are only rendered. The
+   workers on one machine share the model cache's directory, so once one
+   of them has built a model, the others just map it.
+   <p>
+   A worker renders one tile at a time, for one coordinator at a time. To
+   use more cores, start more workers; each one is a separate JVM, with its
+   own heap, which is what lets an image be bigger than any one heap.
+*/
+public final class TileWorker implements AutoCloseable
+{
+   /** Starts each request. */
+   static final int REQUEST = 0x54494C45; // "TILE"
+
+   /** The answer to a tile that was rendered, followed by its pixels. */
+   static final int OK = 0;
+
+   /** The answer to a tile that could not be rendered, followed by a message. */
+   static final int ERROR = 1;
+
+   private final ServerSocket server;
+   private final ModelBudget budget;
+   private final ModelCache cache; // null when the model cache is off
+
+   private final AtomicLong tiles = new AtomicLong();
+   private final AtomicLong errors = new AtomicLong();
+
+
+   /**
+      Create a {@code TileWorker} that listens on {@code address}.
+      Call {@link #serve} to answer the coordinators.
+
+      @param address  the address and port to listen on (port {@code 0} for any free port)
+      @param budget   {@link ModelBudget} that holds the models
+      @param cache    {@link ModelCache} to read models from, or {@code null}
+      @throws IOException if the worker cannot listen on {@code address}
+   */
+   public TileWorker(final InetSocketAddress address,
+                     final ModelBudget budget,
+                     final ModelCache cache) throws IOException
+   {
+      this.budget = budget;
+      this.cache = cache;
+      this.server = new ServerSocket();
+      server.bind(address);
+   }
+
+
+   /**
+      @return the port that this worker listens on
+   */
+   public int getPort()
+   {
+      return server.getLocalPort();
+   }
+
+
+   /**
+      Answer the coordinators, one connection at a time, until this worker is closed.
+
+      @throws IOException if the worker cannot accept a connection
+   */
+   public void serve() throws IOException
+   {
+      while (! server.isClosed())
+      {
+         final Socket socket;
+         try
+         {
+            socket = server.accept();
+         }
+         catch (SocketException e) // closed
+         {
+            if (server.isClosed()) return;
+            throw e;
+         }
+         try (Socket s = socket)
+         {
+            s.setTcpNoDelay(true);
+            serve(new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16)),
+                  new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 1 << 16)));
+         }
+         catch (IOException e) // the coordinator went away, wait for the next one
+         {
+            System.err.printf("ERROR! Lost the connection to %s\n", socket.getRemoteSocketAddress());
+            e.printStackTrace(System.err);
+         }
+      }
+   }
+
+
+   /**
+      Answer the requests of one connection until the coordinator closes it.
+
+      @param in           the connection's input
+      @param out          the connection's output
+      @throws IOException if the connection fails
+   */
+   private void serve(final DataInputStream in, final DataOutputStream out) throws IOException
+   {
+      FrameBuffer fb = null;
+      byte[] bytes = new byte[0];
+      while (true)
+      {
+         final int request;
+         try
+         {
+            request = in.readInt();
+         }
+         catch (EOFException e) // the coordinator is finished
+         {
+            return;
+         }
+         if (REQUEST != request)
+            throw new IOException(String.format("bad request 0x%08x", request));
+
+         final int x = in.readInt();
+         final int y = in.readInt();
+         final int width = in.readInt();
+         final int height = in.readInt();
+         final TileJob job;
+         try
+         {
+            job = TileJob.read(in);
+            if (width <= 0 || height <= 0 || (long)width * height > Integer.MAX_VALUE / 4)
+               throw new IllegalArgumentException("bad tile size " + width + "x" + height);
+
+            if (null == fb || fb.width != width || fb.height != height)
+            {
+               fb = null; // let the old framebuffer go before making the new one
+               fb = new FrameBuffer(width, height);
+               bytes = new byte[4 * width * height];
+            }
+            else
+            {
+               fb.clearFB();
+            }
+            final Model model = budget.get(job.spec, this::buildModel);
+            FractalPipeline.renderTile(job.scene(model), fb,
+                                       job.width, job.height, x, y,
+                                       job.context());
+         }
+         catch (IllegalArgumentException | IllegalStateException e) // a bad job, or it does not fit
+         {
+            errors.incrementAndGet();
+            out.writeInt(ERROR);
+            out.writeUTF(String.valueOf(e.getMessage()));
+            out.flush();
+            continue;
+         }
+
+         ByteBuffer.wrap(bytes).asIntBuffer().put(fb.pixel_buffer);
+         out.writeInt(OK);
+         out.write(bytes);
+         out.flush();
+         tiles.incrementAndGet();
+      }
+   }
+
+
+   private Model buildModel(final ModelSpec spec)
+   {
+      return (null == cache) ? spec.build() : cache.get(spec);
+   }
+
+
+   /**
+      @return the number of tiles that this worker has rendered
+   */
+   public long getTiles()
+   {
+      return tiles.get();
+   }
+
+
+   /**
+      @return the number of tiles that this worker could not render
+   */
+   public long getErrors()
+   {
+      return errors.get();
+   }
+
+
+   /**
+      Stop listening. The connection that is being answered is finished first.
+
+      @throws IOException if the socket cannot be closed
+   */
+   @Override
+   public void close() throws IOException
+   {
+      server.close();
+   }
+}//TileWorker
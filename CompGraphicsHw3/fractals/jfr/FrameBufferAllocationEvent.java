@@ -0,0 +1,41 @@
+/*
+
+*/
+
+package fractals.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+   A Java Flight Recorder event for the allocation of a new
+   {@link renderer.framebuffer.FrameBuffer}, for example when
+   a window is resized.
+*/
+@Name("fractals.FrameBufferAllocation")
+@Label("FrameBuffer Allocation")
+@Category({"Fractals"})
+@Description("A new FrameBuffer was allocated")
+public final class FrameBufferAllocationEvent extends Event
+{
+   @Label("Width")
+   public int width;
+
+   @Label("Height")
+   public int height;
+
+   @Label("Previous Width")
+   public int previousWidth;
+
+   @Label("Previous Height")
+   public int previousHeight;
+
+   @Label("Size")
+   @Description("The size of the new FrameBuffer's pixel_buffer")
+   @DataAmount
+   public long bytes;
+}//FrameBufferAllocationEvent
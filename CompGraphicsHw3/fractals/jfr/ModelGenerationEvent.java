@@ -0,0 +1,40 @@
+/*
+
+*/
+
+package fractals.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+   A Java Flight Recorder event for the building of one fractal model
+   by {@link fractals.util.ModelSpec#build}.
+*/
+@Name("fractals.ModelGeneration")
+@Label("Model Generation")
+@Category({"Fractals"})
+@Description("A fractal model was built")
+public final class ModelGenerationEvent extends Event
+{
+   @Label("Generator")
+   @Description("The class of the model")
+   public Class<?> generator;
+
+   @Label("Level")
+   @Description("The level n of the fractal")
+   public int n;
+
+   @Label("Model")
+   @Description("The model's ModelSpec, for example C_Curve(18)")
+   public String spec;
+
+   @Label("Vertices")
+   public long vertices;
+
+   @Label("Line Segments")
+   public long segments;
+}//ModelGenerationEvent
@@ -0,0 +1,86 @@
+/*
+
+*/
+
+package fractals.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+   A Java Flight Recorder event for one frame rendered by the
+   {@link fractals.pipeline.FractalPipeline}.
+   <p>
+   While this event is enabled, every frame is rendered the way it is
+   when its {@link fractals.pipeline.RenderContext} has a
+   {@link fractals.pipeline.RenderStats} object, so the
+   event can hold the times and counts of each stage of the pipeline
+   (see {@link fractals.pipeline.RenderStats}).
+*/
+@Name("fractals.RenderFrame")
+@Label("Render Frame")
+@Category({"Fractals"})
+@Description("A frame was rendered by the FractalPipeline")
+public final class RenderFrameEvent extends Event
+{
+   @Label("Models")
+   @Description("The names of the visible models")
+   public String models;
+
+   @Label("Width")
+   public int width;
+
+   @Label("Height")
+   public int height;
+
+   @Label("Clipping")
+   @Description("Is the renderer's clipping turned on")
+   public boolean clipping;
+
+   @Label("Perspective")
+   @Description("Perspective (true) or orthographic (false) projection")
+   public boolean perspective;
+
+   @Label("Point Cloud")
+   public boolean pointCloud;
+
+   @Label("Vertices Transformed")
+   public long vertices;
+
+   @Label("Segments Drawn")
+   public long segmentsDrawn;
+
+   @Label("Segments Clipped")
+   public long segmentsClipped;
+
+   @Label("Segments Rejected")
+   public long segmentsRejected;
+
+   @Label("Pixels Written")
+   public long pixels;
+
+   @Label("Model to Camera")
+   @Timespan(Timespan.NANOSECONDS)
+   public long model2camera;
+
+   @Label("Projection")
+   @Timespan(Timespan.NANOSECONDS)
+   public long projection;
+
+   @Label("Clipping Time")
+   @Timespan(Timespan.NANOSECONDS)
+   public long clip;
+
+   @Label("Rasterization")
+   @Timespan(Timespan.NANOSECONDS)
+   public long rasterize;
+
+   @Label("Renderer Pipeline")
+   @Description("Time spent in the renderer's Pipeline, which is used when a debugging flag is set")
+   @Timespan(Timespan.NANOSECONDS)
+   public long renderer;
+}//RenderFrameEvent
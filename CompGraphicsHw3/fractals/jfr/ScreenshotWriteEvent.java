@@ -0,0 +1,39 @@
+/*
+
+*/
+
+package fractals.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+   A Java Flight Recorder event for the encoding and writing of one
+   image file by {@link fractals.io.ScreenshotWriter}.
+*/
+@Name("fractals.ScreenshotWrite")
+@Label("Screenshot Write")
+@Category({"Fractals"})
+@Description("An image of a framebuffer was written to a file")
+public final class ScreenshotWriteEvent extends Event
+{
+   @Label("File")
+   public String file;
+
+   @Label("Format")
+   public String format;
+
+   @Label("Width")
+   public int width;
+
+   @Label("Height")
+   public int height;
+
+   @Label("Size")
+   @DataAmount
+   public long bytes;
+}//ScreenshotWriteEvent
@@ -0,0 +1,312 @@
+/*
+
+*/
+
+package fractals.pipeline;
+
+import renderer.scene.*;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+   Draw the limit set (the "level infinity" fractal) of an
+   {@link InstancedModel}'s maps by playing the chaos game.
+   <p>
+   Starting from any point, the chaos game repeatedly applies one of the
+   model's maps, chosen at random, and plots each point it lands on.
+   Since the maps are contractions, after a few steps every point is
+   within a pixel of the fractal's limit set, so the image has no depth,
+   and it takes no memory for vertices, line segments, or copies of the
+   motif. For the Sierpinski triangle and the box fractal, the limit set
+   is the same shape as a very deep model.
+   <p>
+   Each frame, a budget of points is split between several independent
+   streams, one per thread of the common {@link ForkJoinPool}. Each stream
+   has its own xorshift random number generator and counts its points in
+   its own density buffer, the size of the viewport, so the streams never
+   share anything while they run. Then the buffers are added up (and
+   cleared for the next frame), in parallel by rows, and each pixel that
+   was hit is shaded by the logarithm of its density. The memory used is
+   one buffer per stream, no matter how deep the fractal is.
+   <p>
+   The streams' seeds are the same for every frame, so the same view
+   of the same model always gives the same image.
+   <p>
+   The maps are chosen with probabilities proportional to the areas of
+   their images (the absolute values of their determinants), which
+   spreads the points evenly over the limit set. If all of the maps
+   collapse the plane onto lines, they are chosen with equal probabilities.
+*/
+public final class ChaosGame
+{
+   private static final int WARM_UP = 64; // steps before a stream starts plotting
+   private static final long SEED = 0x9E3779B97F4A7C15L;
+
+   // A map is chosen by looking up the top bits of a random number in a
+   // table, instead of by searching the maps' cumulative probabilities,
+   // since a search's branches are unpredictable (they are random). So
+   // each map's probability is rounded to a multiple of 1/4096.
+   private static final int CHOICE_BITS = 12;
+
+   // The density buffers, kept for the next frame on the same rendering thread.
+   private static final ThreadLocal<ChaosGame> BUFFERS = new ThreadLocal<>();
+
+   private final int[][] density;
+   private final int size;
+
+
+   private ChaosGame(final int streams, final int size)
+   {
+      this.density = new int[streams][size];
+      this.size = size;
+   }
+
+
+   /**
+      Plot {@code points} points of the limit set of {@code model}'s maps
+      into the viewport of {@code rasterizer}, using {@code rasterizer}'s
+      color for the densest pixels.
+
+      @param model        the {@link InstancedModel} whose maps are played
+      @param t            the model's translation
+      @param perspective  is the projection a perspective projection?
+      @param points       the number of points to plot
+      @param rasterizer   the {@link Rasterizer} for the viewport
+      @return the number of points that landed in the viewport
+   */
+   static long render(final InstancedModel model,
+                      final Vector t,
+                      final boolean perspective,
+                      final long points,
+                      final Rasterizer rasterizer)
+   {
+      final int streams = Math.max(1, ForkJoinPool.getCommonPoolParallelism());
+      final int size = rasterizer.pixelCount();
+      ChaosGame game = BUFFERS.get();
+      if (null == game || game.size != size || game.density.length != streams)
+      {
+         game = new ChaosGame(streams, size);
+         BUFFERS.set(game);
+      }
+      return game.play(model, t, perspective, points, rasterizer);
+   }
+
+
+   private long play(final InstancedModel model,
+                     final Vector t,
+                     final boolean perspective,
+                     final long points,
+                     final Rasterizer rasterizer)
+   {
+      // The cumulative probability of each map, and then the table
+      // of which map to use for each value of the top bits of a
+      // random number.
+      final double[] maps = model.maps();
+      final int k = maps.length / 6;
+      if (0 == k) return 0;
+      final double[] cumulative = new double[k];
+      double total = 0.0;
+      for (int m = 0; m < k; ++m)
+      {
+         total += Math.abs(maps[6*m] * maps[6*m + 3] - maps[6*m + 1] * maps[6*m + 2]);
+         cumulative[m] = total;
+      }
+      final short[] choice = new short[1 << CHOICE_BITS];
+      for (int q = 0, m = 0; q < choice.length; ++q)
+      {
+         final double u = (q + 0.5) / choice.length;
+         while (m < k - 1 && u >= ((total > 0) ? cumulative[m] / total : (m + 1.0) / k)) ++m;
+         choice[q] = (short)m;
+      }
+
+      final double s = perspective ? 1 / -(t.z + model.getZ()) : 1.0;
+
+      final Stream[] streams = new Stream[density.length];
+      for (int i = 0; i < streams.length; ++i)
+      {
+         final long share = points / streams.length + ((i < points % streams.length) ? 1 : 0);
+         streams[i] = new Stream(maps, choice, share, SEED * (i + 1),
+                                 t.x, t.y, s, rasterizer, density[i]);
+      }
+      ForkJoinTask.invokeAll(streams);
+      long hits = 0;
+      for (final Stream stream : streams)
+      {
+         hits += stream.hits;
+      }
+
+      // Add up the densities (into the first buffer), then shade the pixels.
+      final Merge sum = new Merge(false, 0, density, 0, size, rasterizer);
+      ForkJoinPool.commonPool().invoke(sum);
+      final Merge shade = new Merge(true, sum.max, density, 0, size, rasterizer);
+      ForkJoinPool.commonPool().invoke(shade);
+      rasterizer.written += shade.count;
+      return hits;
+   }
+
+
+   /**
+      One stream of the chaos game.
+   */
+   private static final class Stream extends RecursiveAction
+   {
+      private static final long serialVersionUID = 1L;
+
+      private final double[] maps;
+      private final short[] choice;
+      private final long points;
+      private final long seed;
+      private final double tx, ty, s;
+      private final transient Rasterizer rasterizer; // a task is never serialized
+      private final int[] density;
+      long hits = 0;
+
+      Stream(final double[] maps, final short[] choice,
+             final long points, final long seed,
+             final double tx, final double ty, final double s,
+             final Rasterizer rasterizer, final int[] density)
+      {
+         this.maps = maps;
+         this.choice = choice;
+         this.points = points;
+         this.seed = seed;
+         this.tx = tx;
+         this.ty = ty;
+         this.s = s;
+         this.rasterizer = rasterizer;
+         this.density = density;
+      }
+
+      @Override
+      protected void compute()
+      {
+         long r = seed;
+         double x = 0.0, y = 0.0;
+         long count = 0;
+         for (long i = -WARM_UP; i < points; ++i)
+         {
+            // xorshift64*
+            r ^= r >>> 12;  r ^= r << 25;  r ^= r >>> 27;
+            final int j = 6 * choice[(int)((r * 0x2545F4914F6CDD1DL) >>> (64 - CHOICE_BITS))];
+            final double nx = maps[j]   * x + maps[j+1] * y + maps[j+4];
+            final double ny = maps[j+2] * x + maps[j+3] * y + maps[j+5];
+            x = nx;
+            y = ny;
+            if (i < 0) continue;
+            final int p = rasterizer.pixelIndex(s * (x + tx), s * (y + ty));
+            if (p >= 0)
+            {
+               ++density[p];
+               ++count;
+            }
+         }
+         hits = count;
+      }
+   }
+
+
+   /**
+      Add up the streams' densities for a range of pixels, or shade those
+      pixels. Either way, the buffers are left cleared for the next frame.
+   */
+   private static final class Merge extends RecursiveAction
+   {
+      private static final long serialVersionUID = 1L;
+      private static final int THRESHOLD = 1 << 15;
+
+      private final boolean shade;
+      private final double scale; // for shading, 1 / log(1 + the largest density)
+      private final int[][] density; // the streams' buffers
+      private final int from, to;
+      private final transient Rasterizer rasterizer; // a task is never serialized
+      int max = 0;    // the largest density in the range (after adding up)
+      long count = 0; // the number of pixels written (after shading)
+
+      Merge(final boolean shade, final int max,
+            final int[][] density,
+            final int from, final int to,
+            final Rasterizer rasterizer)
+      {
+         this.shade = shade;
+         this.scale = 1 / Math.log1p(max);
+         this.density = density;
+         this.from = from;
+         this.to = to;
+         this.rasterizer = rasterizer;
+      }
+
+      private Merge(final Merge parent, final int from, final int to)
+      {
+         this.shade = parent.shade;
+         this.scale = parent.scale;
+         this.density = parent.density;
+         this.from = from;
+         this.to = to;
+         this.rasterizer = parent.rasterizer;
+      }
+
+      @Override
+      protected void compute()
+      {
+         if (to - from > THRESHOLD)
+         {
+            final int mid = (from + to) >>> 1;
+            final Merge left = new Merge(this, from, mid);
+            final Merge right = new Merge(this, mid, to);
+            invokeAll(left, right);
+            max = Math.max(left.max, right.max);
+            count = left.count + right.count;
+         }
+         else if (! shade)
+         {
+            final int[] total = density[0];
+            int m = 0;
+            for (int i = 1; i < density.length; ++i)
+            {
+               final int[] buffer = density[i];
+               for (int p = from; p < to; ++p)
+               {
+                  total[p] += buffer[p];
+               }
+               Arrays.fill(buffer, from, to, 0);
+            }
+            for (int p = from; p < to; ++p)
+            {
+               m = Math.max(m, total[p]);
+            }
+            max = m;
+         }
+         else
+         {
+            final int[] total = density[0];
+            final int color = rasterizer.color;
+            long n = 0;
+            for (int p = from; p < to; ++p)
+            {
+               final int d = total[p];
+               if (0 != d)
+               {
+                  // Even a pixel that was hit once is easy to see.
+                  final double shade = 0.25 + 0.75 * Math.log1p(d) * scale;
+                  rasterizer.writePixel(p, scaleColor(color, shade));
+                  total[p] = 0;
+                  ++n;
+               }
+            }
+            count = n;
+         }
+      }
+   }
+
+
+   private static int scaleColor(final int argb, final double shade)
+   {
+      final int r = (int)(((argb >> 16) & 0xFF) * shade);
+      final int g = (int)(((argb >>  8) & 0xFF) * shade);
+      final int b = (int)(( argb        & 0xFF) * shade);
+      return (argb & 0xFF000000) | (r << 16) | (g << 8) | b;
+   }
+}//ChaosGame
@@ -0,0 +1,295 @@
+/*
+
+*/
+
+package fractals.pipeline;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+   A self-similar curve, like a {@link fractals.KochCurve} or a
+   {@link fractals.C_Curve}, built level by level out of transformed
+   copies of the level before it, instead of by recursive subdivision.
+   <p>
+   A self-similar curve from {@code p0} to {@code p1} is made of
+   {@code k} smaller copies of itself, where copy {@code j} is the
+   whole curve moved by a similarity map {@code T_j} (a rotation,
+   a scaling, and a translation) that takes the base {@code p0, p1}
+   to the {@code j}'th piece of the subdivided base. So level {@code n}
+   of the curve is
+   <pre>{@code
+      curve(n) = T_0(curve(n-1)) + T_1(curve(n-1)) + ... + T_(k-1)(curve(n-1))
+   }</pre>
+   where each copy starts at the point where the one before it ends.
+   Building a level is a bulk copy of the previous level's coordinate
+   arrays with one affine transformation per copy, a tight loop over
+   arrays with no recursion and no objects, which the JIT compiler can
+   vectorize.
+   <p>
+   The first levels, up to at most {@link #SOURCE_SEGMENTS} line segments,
+   are built in small arrays on the heap, which stay in the processor's
+   cache. The rest of the levels are not built one at a time. Instead,
+   each copy of the small curve that makes up the whole curve gets the
+   composition of the maps that lead to it, and the copies are transformed
+   and written straight to the packed storage, in parallel on the
+   {@link ForkJoinPool#commonPool}. So every vertex and line segment of
+   the whole curve is written exactly once, in order, and the speed is
+   limited by the memory bandwidth.
+   <p>
+   The vertices are in order along the curve, and line segment {@code i}
+   is from vertex {@code i} to vertex {@code i+1}. So the curve has the
+   same line segments, in the same order, as the recursive version, but
+   its vertices are numbered differently (and the recursive
+   {@link fractals.C_Curve}'s unused vertices are left out). The
+   coordinates agree with the recursive version's to within rounding.
+*/
+public class DoubledCurve extends PackedModel
+{
+   /** The largest number of line segments in the levels that are built on the heap. */
+   public static final int SOURCE_SEGMENTS = 1 << 12;
+
+   // Each task writes about this many vertices.
+   private static final int TASK_VERTICES = 1 << 16;
+
+   private final double[] maps; // a, b, c, d, e, f for each copy
+   private final int k;
+   private final double z;
+
+   // The curve at the last level that is built on the heap.
+   private double[] xs;
+   private double[] ys;
+   private int sourceSegments;
+
+
+   /**
+      Create a self-similar curve, from {@code (x0, y0, z)} to {@code (x1, y1, z)},
+      whose pieces are placed by {@code maps} (see
+      {@link InstancedModel#similarity} and {@link InstancedModel#maps}).
+      <p>
+      A curve of level {@code 0} is the one line segment from
+      {@code (x0, y0)} to {@code (x1, y1)}. A curve of level
+      {@code -1} is just those two vertices, with no line segments.
+
+      @param name     name for this model
+      @param x0       x-coordinate of the start of the curve
+      @param y0       y-coordinate of the start of the curve
+      @param x1       x-coordinate of the end of the curve
+      @param y1       y-coordinate of the end of the curve
+      @param z        z-coordinate of the plane that holds the curve
+      @param maps     the maps, six numbers {@code a, b, c, d, e, f} for each piece of the curve, in order along the curve
+      @param level    number of levels of copies
+      @param storage  where to keep the packed vertices and line segments
+      @throws IllegalArgumentException if the curve has more than {@code 2^31-2} line segments
+   */
+   public DoubledCurve(final String name,
+                       final double x0, final double y0,
+                       final double x1, final double y1,
+                       final double z,
+                       final double[] maps,
+                       final int level,
+                       final Storage storage)
+   {
+      super(name,
+            (level < 0) ? 2 : segments(pieces(maps), level) + 1,
+            (level < 0) ? 0 : segments(pieces(maps), level),
+            storage);
+      this.maps = maps;
+      this.k = maps.length / 6;
+      this.z = z;
+
+      if (level < 0)
+      {
+         putVertex(x0, y0, z);
+         putVertex(x1, y1, z);
+         return;
+      }
+
+      // Build the first levels on the heap.
+      int sourceLevel = 0;
+      sourceSegments = 1;
+      while (sourceLevel < level && (long)sourceSegments * k <= SOURCE_SEGMENTS)
+      {
+         sourceSegments *= k;
+         ++sourceLevel;
+      }
+      xs = new double[sourceSegments + 1];
+      ys = new double[sourceSegments + 1];
+      xs[0] = x0;  ys[0] = y0;
+      xs[1] = x1;  ys[1] = y1;
+      for (int n = 1, length = 1; n <= sourceLevel; ++n, length *= k)
+      {
+         // The copies after the first one get the transformed curve,
+         // except for their first vertex, which is the previous copy's
+         // last vertex. Then the first copy is transformed in place.
+         for (int j = k - 1; j >= 0; --j)
+         {
+            transform(6 * j, xs, ys, (0 == j) ? 0 : 1, length + 1, xs, ys, j * length);
+         }
+      }
+
+      // Write the copies of the heap's curve, one for each
+      // sequence of maps in the rest of the levels.
+      final long copies = segments(k, level - sourceLevel);
+      ForkJoinPool.commonPool().invoke(new Copies(level - sourceLevel, 0, copies));
+      final long segments = copies * sourceSegments;
+      final double[] m = compose(level - sourceLevel, copies - 1); // the end of the curve
+      setVertex((int)segments,
+                m[0] * xs[sourceSegments] + m[1] * ys[sourceSegments] + m[4],
+                m[2] * xs[sourceSegments] + m[3] * ys[sourceSegments] + m[5],
+                z);
+      setCounts((int)segments + 1, segments);
+      xs = null;
+      ys = null;
+   }
+
+
+   /**
+      @return the number of pieces that each level of this curve is made of
+   */
+   public final int getPieceCount()
+   {
+      return k;
+   }
+
+
+   /**
+      Write the copies of the heap's curve with indices {@code from}
+      (inclusive) to {@code to} (exclusive). Each copy writes all of
+      its vertices except its last one, which is the first vertex of
+      the next copy, and all of its line segments.
+   */
+   private final class Copies extends RecursiveAction
+   {
+      private static final long serialVersionUID = 1L;
+
+      private final int levels;
+      private final long from, to;
+
+      Copies(final int levels, final long from, final long to)
+      {
+         this.levels = levels;
+         this.from = from;
+         this.to = to;
+      }
+
+      @Override
+      protected void compute()
+      {
+         if ((to - from) * sourceSegments > TASK_VERTICES && to - from > 1)
+         {
+            final long mid = (from + to) >>> 1;
+            invokeAll(new Copies(levels, from, mid), new Copies(levels, mid, to));
+            return;
+         }
+         final int length = sourceSegments;
+         final double[] xyz = new double[3 * length];
+         final int[] pairs = new int[2 * length];
+         for (long c = from; c < to; ++c)
+         {
+            final double[] m = compose(levels, c);
+            final double a = m[0], b = m[1], cc = m[2];
+            final double d = m[3], e = m[4], f = m[5];
+            for (int i = 0; i < length; ++i)
+            {
+               final double x = xs[i], y = ys[i];
+               xyz[3*i    ] = a*x + b*y + e;
+               xyz[3*i + 1] = cc*x + d*y + f;
+               xyz[3*i + 2] = z;
+            }
+            final int first = (int)(c * length);
+            for (int i = 0; i < length; ++i)
+            {
+               pairs[2*i    ] = first + i;
+               pairs[2*i + 1] = first + i + 1;
+            }
+            setVertices(first, xyz, length);
+            setSegments(first, pairs, length);
+         }
+      }
+   }
+
+
+   /**
+      Compose the maps that lead to copy {@code c} of the heap's curve,
+      after {@code levels} more levels. The digits of {@code c}, in base
+      {@code k}, are the pieces that the copy is in, from the largest
+      piece to the smallest.
+
+      @param levels  the number of levels below the heap's curve
+      @param c       the index of the copy among the curve's copies at that level
+      @return the composed map, as {@code a, b, c, d, e, f}
+   */
+   private double[] compose(final int levels, final long c)
+   {
+      double a = 1, b = 0, cc = 0, d = 1, e = 0, f = 0;
+      long place = segments(k, levels - 1);
+      for (int level = 0; level < levels; ++level, place /= k)
+      {
+         final int j = 6 * (int)((c / place) % k);
+         final double ta = maps[j],   tb = maps[j+1], tc = maps[j+2];
+         final double td = maps[j+3], te = maps[j+4], tf = maps[j+5];
+         // (a, b, c, d, e, f) = (a, b, c, d, e, f) o (ta, tb, tc, td, te, tf)
+         final double na = a*ta + b*tc,  nb = a*tb + b*td;
+         final double nc = cc*ta + d*tc, nd = cc*tb + d*td;
+         e = a*te + b*tf + e;
+         f = cc*te + d*tf + f;
+         a = na;  b = nb;  cc = nc;  d = nd;
+      }
+      return new double[]{a, b, cc, d, e, f};
+   }
+
+
+   /**
+      Transform points {@code from} to {@code to-1} of {@code (sx, sy)} by
+      map {@code j} of this curve and put them in {@code (dx, dy)}, starting
+      at index {@code offset + from}.
+
+      @param j       index of the map
+      @param sx      x-coordinates of the points to transform
+      @param sy      y-coordinates of the points to transform
+      @param from    index of the first point to transform
+      @param to      one more than the index of the last point to transform
+      @param dx      receives the x-coordinates of the transformed points
+      @param dy      receives the y-coordinates of the transformed points
+      @param offset  where, in {@code (dx, dy)}, the transformed point {@code 0} would go
+   */
+   private void transform(final int j,
+                          final double[] sx, final double[] sy,
+                          final int from, final int to,
+                          final double[] dx, final double[] dy,
+                          final int offset)
+   {
+      final double a = maps[j],   b = maps[j+1], c = maps[j+2];
+      final double d = maps[j+3], e = maps[j+4], f = maps[j+5];
+      for (int i = from; i < to; ++i)
+      {
+         final double x = sx[i], y = sy[i];
+         dx[offset + i] = a*x + b*y + e;
+         dy[offset + i] = c*x + d*y + f;
+      }
+   }
+
+
+   // The number of maps, after checking that there is at least one.
+   private static int pieces(final double[] maps)
+   {
+      if (maps.length < 6 || 0 != maps.length % 6)
+         throw new IllegalArgumentException("a curve needs at least one map, as six numbers");
+      return maps.length / 6;
+   }
+
+
+   // k^level, the number of line segments in a curve of that level
+   // (or more than 2^31-2, so that the PackedModel refuses it).
+   private static long segments(final int k, final int level)
+   {
+      long count = 1;
+      for (int i = 0; i < level; ++i)
+      {
+         count *= k;
+         if (count >= Integer.MAX_VALUE) return Integer.MAX_VALUE;
+      }
+      return count;
+   }
+}//DoubledCurve
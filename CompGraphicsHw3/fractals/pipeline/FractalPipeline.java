@@ -0,0 +1,691 @@
+/*
+
+*/
+
+package fractals.pipeline;
+
+import fractals.jfr.RenderFrameEvent;
+import renderer.scene.*;
+import renderer.scene.primitives.*;
+import renderer.scene.util.CheckModel;
+import renderer.scene.util.PointCloud;
+import renderer.pipeline.*;
+import renderer.framebuffer.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+   A rendering pipeline for fractal models that does the same work as the
+   renderer's {@link Pipeline}, but without building any intermediate models.
+   <p>
+   The renderer's {@link Pipeline} makes a new {@link Model}, with a new
+   {@link Vertex} object for every vertex, in each of its model-to-camera
+   and projection stages. This pipeline translates and projects the two
+   vertices of each line segment as it rasterizes the line segment, so
+   rendering a {@link Model} allocates nothing, and a {@link PackedModel}
+   is read directly from its off-heap storage.
+   <p>
+   The pixels are the same as the ones drawn by {@link Pipeline#render}
+   (see {@link Rasterizer}). When any of the renderer's debugging flags are
+   set, the regular models are rendered by {@link Pipeline#render} so that
+   all of the renderer's logging still happens.
+   <p>
+   When the context's point cloud option is set (see
+   {@link RenderContext#withPointCloud}), every model is drawn as the point
+   cloud that {@link PointCloud#make} would make from it, but without
+   making a new model. The vertices that belong in the point cloud are
+   found once per model and cached, so switching between wireframe and
+   point cloud, or changing the size of the points, costs nothing but
+   the rendering itself.
+   <p>
+   An {@link InstancedModel} is expanded while it is rendered, and the
+   copies of its motif that are entirely outside of the view are skipped.
+   An {@link LSystemModel} is expanded from its rules while it is rendered.
+   <p>
+   When the context's number of chaos game points is positive (see
+   {@link RenderContext#withChaosGame}), an {@link InstancedModel}
+   is not expanded at all. Instead, the limit set of its maps is drawn
+   by the {@link ChaosGame}, with that many points.
+   <p>
+   When the context has a {@link RenderStats} object (see
+   {@link RenderContext#withStats}), each frame's per-stage counts and
+   times are put into it.
+   <p>
+   Each frame is recorded as a {@link RenderFrameEvent} when Java Flight
+   Recorder is recording. While the event is enabled, every frame's
+   statistics are collected (in a {@link RenderStats} object for each
+   thread, when the context has none) so that the event can
+   hold them.
+   <p>
+   Several threads can render at the same time into disjoint
+   {@link FrameBuffer.Viewport}s (of the same or of different
+   framebuffers), as long as none of them changes the scenes or the
+   models while they are rendered. The options of a frame come from a
+   {@link RenderContext}, each frame has its own {@link Rasterizer},
+   which only writes the pixels of its viewport, and the caches of
+   per-model data are synchronized. The one thing that cannot be shared
+   is a {@link RenderStats} object, so each thread that collects
+   statistics needs a context with its own. See {@link ViewportGrid}.
+   <p>
+   The static {@link #render(Scene, FrameBuffer)} renders with the context
+   made by {@link RenderContext#fromGlobals}, from the global options. A
+   program should keep a context of its own and give it to each frame.
+*/
+public final class FractalPipeline
+{
+   // The statistics for RenderFrameEvents, one per rendering thread.
+   private static final ThreadLocal<RenderStats> EVENT_STATS =
+                                          ThreadLocal.withInitial(RenderStats::new);
+
+   /**
+      Render all of the visible models in a {@link Scene} into a {@link FrameBuffer}.
+
+      @param scene  {@link Scene} to render
+      @param fb     {@link FrameBuffer} to hold the rendered image
+   */
+   public static void render(final Scene scene, final FrameBuffer fb)
+   {
+      render(scene, fb.vp, RenderContext.fromGlobals());
+   }
+
+
+   /**
+      Render all of the visible models in a {@link Scene} into a
+      {@link FrameBuffer.Viewport}.
+
+      @param scene  {@link Scene} to render
+      @param vp     {@link FrameBuffer.Viewport} to hold the rendered image
+   */
+   public static void render(final Scene scene, final FrameBuffer.Viewport vp)
+   {
+      render(scene, vp, RenderContext.fromGlobals());
+   }
+
+
+   /**
+      Render all of the visible models in a {@link Scene} into a
+      {@link FrameBuffer.Viewport}, with the options of a {@link RenderContext}.
+      None of the static flags are used.
+
+      @param scene    {@link Scene} to render
+      @param vp       {@link FrameBuffer.Viewport} to hold the rendered image
+      @param context  the options for this frame
+   */
+   public static void render(final Scene scene, final FrameBuffer.Viewport vp,
+                             final RenderContext context)
+   {
+      final RenderFrameEvent event = new RenderFrameEvent();
+      RenderStats renderStats = context.getStats();
+      if (null == renderStats && event.isEnabled())
+      {
+         renderStats = EVENT_STATS.get();
+      }
+
+      event.begin();
+      if (null != renderStats)
+      {
+         InstrumentedPipeline.render(scene, vp, renderStats, context);
+      }
+      else
+      {
+         renderFrame(scene, vp, new Rasterizer(vp), context);
+      }
+      event.end();
+
+      // (A recording that starts during this frame only gets the next frame.)
+      if (null != renderStats && event.shouldCommit())
+      {
+         final StringBuilder models = new StringBuilder();
+         for (final Position position : scene.positionList)
+         {
+            if (! position.visible || ! position.getModel().visible) continue;
+            if (models.length() > 0) models.append(", ");
+            models.append(position.getModel().getName());
+         }
+         event.models = models.toString();
+         event.width = vp.getWidthVP();
+         event.height = vp.getHeightVP();
+         event.clipping = context.isClipping();
+         event.perspective = scene.getCamera().perspective;
+         event.pointCloud = context.isPointCloud();
+         event.vertices = renderStats.verticesTransformed;
+         event.segmentsDrawn = renderStats.segmentsDrawn;
+         event.segmentsClipped = renderStats.segmentsClipped;
+         event.segmentsRejected = renderStats.segmentsRejected;
+         event.pixels = renderStats.pixelsWritten;
+         event.model2camera = renderStats.model2cameraNanos;
+         event.projection = renderStats.projectionNanos;
+         event.clip = renderStats.clipNanos;
+         event.rasterize = renderStats.rasterizeNanos;
+         event.renderer = renderStats.rendererNanos;
+         event.commit();
+      }
+   }
+
+
+   /**
+      Update a {@link FrameBuffer} that holds the frame of a {@link Scene}
+      after every position of the scene has been translated by the same
+      {@code (dx, dy)}, in orthographic projection, without rendering the
+      whole scene again.
+      <p>
+      In orthographic projection, such a translation moves the whole image
+      by {@code dx * }{@link Rasterizer#pixelsPerUnit}{@code (width)} pixels
+      to the right and {@code dy * }{@link Rasterizer#pixelsPerUnit}{@code (height)}
+      pixels up. When those are whole numbers, the pixels that stay in the
+      framebuffer are moved with one {@link System#arraycopy} per row, and
+      only the strips along the edges that come into view are cleared and
+      rendered, by {@link Rasterizer}s that are limited to the strips. So
+      the cost of rasterizing is in proportion to the area of the strips
+      instead of to the size of the model (every vertex is still projected,
+      but the ones outside of the strips are rejected right away).
+      <p>
+      The frame is close to, but not always exactly, the one that
+      {@link #render} would draw. The rasterizer rounds each line segment's
+      pixels from where the segment starts, and the translated coordinates
+      do not always round the same way as the old ones did (when a
+      coordinate falls halfway between two pixels), so a line that crosses
+      the edge of a strip can be drawn one pixel off on one side of the edge
+      from where a whole render would put it. In the catalog's models, that
+      is up to several hundred pixels of a frame (for example, the
+      {@code SierpinskiTriangle} and the {@code PythagorasTree}), and a
+      frame that is scrolled again and again keeps the differences of each
+      scroll. Use {@link #render} when the exact pixels matter. Nothing is done, and
+      {@code false} is returned, if the shift is not a whole number of
+      pixels, or if the framebuffer's viewport is not the whole
+      framebuffer, or if the scene is in perspective, or if anything would be
+      rendered by the renderer's {@link Pipeline} (debugging, or clipping
+      turned off), or if the statistics or the chaos game are turned on.
+
+      @param scene  the translated {@link Scene}
+      @param fb     {@link FrameBuffer} that holds the frame of the scene before the translation
+      @param dx     the translation in the x direction
+      @param dy     the translation in the y direction
+      @return {@code true} if {@code fb} now holds the frame of the translated scene
+   */
+   public static boolean scroll(final Scene scene, final FrameBuffer fb,
+                                final double dx, final double dy)
+   {
+      return scroll(scene, fb, dx, dy, RenderContext.fromGlobals());
+   }
+
+
+   /**
+      {@link #scroll(Scene, FrameBuffer, double, double)} with the options
+      of a {@link RenderContext} instead of the static flags.
+
+      @param scene    the translated {@link Scene}
+      @param fb       {@link FrameBuffer} that holds the frame of the scene before the translation
+      @param dx       the translation in the x direction
+      @param dy       the translation in the y direction
+      @param context  the options the frame was rendered with
+      @return {@code true} if {@code fb} now holds the frame of the translated scene
+   */
+   public static boolean scroll(final Scene scene, final FrameBuffer fb,
+                                final double dx, final double dy,
+                                final RenderContext context)
+   {
+      if (scene.getCamera().perspective || context.usesRenderer(scene)
+          || null != context.getStats() || context.getChaosGamePoints() > 0)
+      {
+         return false;
+      }
+      for (final Position position : scene.positionList)
+      {
+         if (position.debug) return false;
+      }
+      final int w = fb.width, h = fb.height;
+      if (0 != fb.vp.vp_ul_x || 0 != fb.vp.vp_ul_y
+          || w != fb.vp.getWidthVP() || h != fb.vp.getHeightVP())
+      {
+         return false; // the framebuffer's viewport is not the whole framebuffer
+      }
+      final double kx = dx * Rasterizer.pixelsPerUnit(w);
+      final double ky = dy * Rasterizer.pixelsPerUnit(h);
+      if (Math.abs(kx - Math.rint(kx)) > 1e-6 || Math.abs(ky - Math.rint(ky)) > 1e-6)
+      {
+         return false;
+      }
+      // The image moves sx pixels to the right and sy pixels down.
+      final int sx = (int)Math.max(-w, Math.min(w, Math.rint(kx)));
+      final int sy = (int)Math.max(-h, Math.min(h, -Math.rint(ky)));
+
+      // Move the rows that stay in view, in an order that
+      // does not overwrite a row before it has been moved.
+      final int[] pixels = fb.pixel_buffer;
+      final int width = w - Math.abs(sx);
+      final int from = Math.max(-sx, 0), to = Math.max(sx, 0);
+      if (width > 0)
+      {
+         if (sy <= 0)
+         {
+            for (int row = 0; row < h + sy; ++row)
+            {
+               System.arraycopy(pixels, (row - sy) * w + from, pixels, row * w + to, width);
+            }
+         }
+         else
+         {
+            for (int row = h - 1; row >= sy; --row)
+            {
+               System.arraycopy(pixels, (row - sy) * w + from, pixels, row * w + to, width);
+            }
+         }
+      }
+
+      // Render the column strip, and then the row strip next to it.
+      final int columnX = (sx >= 0) ? 0 : w + sx;
+      final int rowY = (sy >= 0) ? 0 : h + sy;
+      renderRegion(scene, fb, columnX, 0, Math.abs(sx), h, context);
+      renderRegion(scene, fb, to == 0 ? 0 : sx, rowY, width, Math.abs(sy), context);
+      return true;
+   }
+
+
+   /**
+      Clear a rectangle of a {@link FrameBuffer} and render
+      the part of a {@link Scene} that is in the rectangle.
+
+      @param scene    {@link Scene} to render
+      @param fb       {@link FrameBuffer} to hold the rendered image
+      @param x        the rectangle's left column
+      @param y        the rectangle's top row
+      @param width    the rectangle's width, in pixels
+      @param height   the rectangle's height, in pixels
+      @param context  the options for this frame
+   */
+   private static void renderRegion(final Scene scene, final FrameBuffer fb,
+                                    final int x, final int y,
+                                    final int width, final int height,
+                                    final RenderContext context)
+   {
+      if (width <= 0 || height <= 0) return;
+      final int bg = fb.bgColorFB.getRGB();
+      for (int row = y; row < y + height; ++row)
+      {
+         Arrays.fill(fb.pixel_buffer, row * fb.width + x, row * fb.width + x + width, bg);
+      }
+      renderFrame(scene, fb.vp, new Rasterizer(fb.vp, x, y, width, height), context);
+   }
+
+
+   /**
+      Render one tile of the frame of a {@link Scene} in an image that is
+      {@code imageWidth} by {@code imageHeight} pixels, into a {@link FrameBuffer}
+      that holds just the tile (see {@link Rasterizer#Rasterizer(FrameBuffer, int, int, int, int)}).
+      The tile's framebuffer is not cleared.
+      <p>
+      The pixels of the tile are the same as the pixels in the same place
+      of the whole image rendered by {@link #render}, so an image that is
+      too big for one framebuffer (or for one process) can be rendered a
+      tile at a time. The models are rendered by this pipeline only, so a
+      scene that would need the renderer's {@link Pipeline} (debugging, or
+      clipping turned off) cannot be rendered in tiles, and neither can the
+      {@link ChaosGame}, whose density buffers are as big as the whole image.
+      No statistics are collected.
+
+      @param scene        {@link Scene} to render
+      @param tile         {@link FrameBuffer} to hold the tile
+      @param imageWidth   width of the whole image, in pixels
+      @param imageHeight  height of the whole image, in pixels
+      @param tileX        the column of the image that is the tile's left column
+      @param tileY        the row of the image that is the tile's top row
+      @param context      the options for this tile
+      @throws IllegalArgumentException if the tile is not inside of the image,
+              or if the scene or the context cannot be rendered in tiles
+   */
+   public static void renderTile(final Scene scene, final FrameBuffer tile,
+                                 final int imageWidth, final int imageHeight,
+                                 final int tileX, final int tileY,
+                                 final RenderContext context)
+   {
+      if (context.usesRenderer(scene) || context.getChaosGamePoints() > 0)
+         throw new IllegalArgumentException("cannot render tiles with " + context);
+      for (final Position position : scene.positionList)
+      {
+         if (position.debug)
+            throw new IllegalArgumentException("cannot render tiles of a position that is being debugged");
+      }
+
+      final Rasterizer rasterizer = new Rasterizer(tile, imageWidth, imageHeight, tileX, tileY);
+      renderFrame(scene, tile.vp, rasterizer, context);
+   }
+
+
+   /**
+      Render a frame without collecting any statistics.
+
+      @param scene       {@link Scene} to render
+      @param vp          {@link FrameBuffer.Viewport} to hold the rendered image
+      @param rasterizer  the {@link Rasterizer} that draws into {@code vp}
+      @param context     the options for this frame
+   */
+   private static void renderFrame(final Scene scene, final FrameBuffer.Viewport vp,
+                                   final Rasterizer rasterizer,
+                                   final RenderContext context)
+   {
+      final boolean debug = context.usesRenderer(scene);
+      final boolean perspective = scene.getCamera().perspective;
+      final boolean pointCloud = context.isPointCloud();
+      final int pointSize = context.getPointSize();
+      final long chaosGamePoints = context.getChaosGamePoints();
+
+      for (final Position position : scene.positionList)
+      {
+         final Model model = position.getModel();
+         if (! position.visible || ! model.visible) continue;
+
+         if (model instanceof InstancedModel && chaosGamePoints > 0)
+         {
+            ChaosGame.render((InstancedModel)model, position.getTranslation(), perspective,
+                             chaosGamePoints, rasterizer);
+         }
+         else if (model instanceof InstancedModel)
+         {
+            renderInstanced((InstancedModel)model, position.getTranslation(), perspective,
+                            pointCloud ? pointSize : -1, rasterizer);
+         }
+         else if (model instanceof LSystemModel)
+         {
+            renderLSystem((LSystemModel)model, position.getTranslation(), perspective,
+                          pointCloud ? pointSize : -1, rasterizer);
+         }
+         else if (pointCloud && ! (model instanceof PackedModel) && (debug || position.debug))
+         {
+            final Position points = new Position(PointCloud.make(LineStrip.toLineSegments(model),
+                                                                 pointSize),
+                                                 position.getName(),
+                                                 position.getTranslation(),
+                                                 position.visible, position.debug);
+            context.runRenderer(new Scene(scene.getCamera(), List.of(points), scene.name), vp);
+         }
+         else if (pointCloud)
+         {
+            renderPoints(model, position.getTranslation(), perspective,
+                         pointSize, rasterizer);
+         }
+         else if (model instanceof PackedModel)
+         {
+            renderPacked((PackedModel)model, position.getTranslation(),
+                         perspective, rasterizer);
+         }
+         else if (debug || position.debug)
+         {
+            final Position segments = new Position(LineStrip.toLineSegments(model),
+                                                   position.getName(),
+                                                   position.getTranslation(),
+                                                   position.visible, position.debug);
+            context.runRenderer(new Scene(scene.getCamera(), List.of(segments), scene.name), vp);
+         }
+         else
+         {
+            CheckModel.check(model);
+            renderModel(model, position.getTranslation(), perspective, rasterizer);
+         }
+      }
+   }
+
+
+   /**
+      Render the line segments, line strips, and points of a regular {@link Model}.
+      In an orthographic view, the blocks of primitives that are outside of
+      the rasterizer's rectangle are skipped (see {@link SegmentBounds}).
+
+      @param model        the {@link Model} to render
+      @param t            translation of the model's {@link Position}
+      @param perspective  whether the camera uses a perspective projection
+      @param rasterizer   the {@link Rasterizer} that draws into the frame
+   */
+   private static void renderModel(final Model model,
+                                   final Vector t,
+                                   final boolean perspective,
+                                   final Rasterizer rasterizer)
+   {
+      final List<Vertex> vertexList = model.vertexList;
+      final List<Primitive> primitiveList = model.primitiveList;
+      final double[] bounds = perspective ? null : SegmentBounds.of(model);
+      for (int n = 0; n < primitiveList.size(); ++n)
+      {
+         if (null != bounds && 0 == n % SegmentBounds.BLOCK
+             && SegmentBounds.outside(bounds, n / SegmentBounds.BLOCK, t, rasterizer))
+         {
+            n += SegmentBounds.BLOCK - 1;
+            continue;
+         }
+         final Primitive p = primitiveList.get(n);
+         if (p instanceof LineSegment)
+         {
+            final Vertex v0 = vertexList.get(p.vIndexList.get(0));
+            final Vertex v1 = vertexList.get(p.vIndexList.get(1));
+            // Model to camera coordinates, then projection.
+            double x0 = t.x + v0.x, y0 = t.y + v0.y;
+            double x1 = t.x + v1.x, y1 = t.y + v1.y;
+            if (perspective)
+            {
+               final double z0 = t.z + v0.z;
+               final double z1 = t.z + v1.z;
+               x0 = x0 / -z0;  y0 = y0 / -z0;
+               x1 = x1 / -z1;  y1 = y1 / -z1;
+            }
+            rasterizer.drawLine(x0, y0, x1, y1);
+         }
+         else if (p instanceof LineStrip)
+         {
+            // Each vertex is projected once, and shared by two line segments.
+            final LineStrip strip = (LineStrip)p;
+            final double[] blocks = perspective ? null : SegmentBounds.of(model, strip);
+            final int end = strip.getFirst() + strip.getVertexCount();
+            boolean move = true;
+            for (int i = strip.getFirst(); i < end; ++i)
+            {
+               final int s = i - strip.getFirst(); // the line segment that starts at vertex i
+               if (null != blocks && 0 == s % SegmentBounds.BLOCK && i + 1 < end
+                   && SegmentBounds.outside(blocks, s / SegmentBounds.BLOCK, t, rasterizer))
+               {
+                  i += SegmentBounds.BLOCK - 1;
+                  move = true;
+                  continue;
+               }
+               final Vertex v = vertexList.get(i);
+               double x = t.x + v.x, y = t.y + v.y;
+               if (perspective)
+               {
+                  final double z = t.z + v.z;
+                  x = x / -z;  y = y / -z;
+               }
+               if (move)
+                  rasterizer.moveTo(x, y);
+               else
+                  rasterizer.lineTo(x, y);
+               move = false;
+            }
+         }
+         else if (p instanceof Point)
+         {
+            final Vertex v = vertexList.get(p.vIndexList.get(0));
+            double x = t.x + v.x, y = t.y + v.y;
+            if (perspective)
+            {
+               final double z = t.z + v.z;
+               x = x / -z;  y = y / -z;
+            }
+            rasterizer.drawPoint(x, y, ((Point)p).radius);
+         }
+         else
+         {
+            System.err.println("FractalPipeline: cannot rasterize " + p);
+         }
+      }
+   }
+
+
+   /**
+      Render the line segments of a {@link PackedModel}. In an orthographic
+      view, the blocks of line segments that are outside of the rasterizer's
+      rectangle are skipped (see {@link SegmentBounds}).
+
+      @param model        the {@link PackedModel} to render
+      @param t            translation of the model's {@link Position}
+      @param perspective  whether the camera uses a perspective projection
+      @param rasterizer   the {@link Rasterizer} that draws into the frame
+   */
+   private static void renderPacked(final PackedModel model,
+                                    final Vector t,
+                                    final boolean perspective,
+                                    final Rasterizer rasterizer)
+   {
+      final long segments = model.getSegmentCount();
+      final double[] bounds = perspective ? null : SegmentBounds.of(model);
+      for (long s = 0; s < segments; ++s)
+      {
+         if (null != bounds && 0 == s % SegmentBounds.BLOCK
+             && SegmentBounds.outside(bounds, (int)(s / SegmentBounds.BLOCK), t, rasterizer))
+         {
+            s += SegmentBounds.BLOCK - 1;
+            continue;
+         }
+         final int i0 = model.getStart(s);
+         final int i1 = model.getEnd(s);
+         double x0 = t.x + model.getX(i0), y0 = t.y + model.getY(i0);
+         double x1 = t.x + model.getX(i1), y1 = t.y + model.getY(i1);
+         if (perspective)
+         {
+            final double z0 = t.z + model.getZ(i0);
+            final double z1 = t.z + model.getZ(i1);
+            x0 = x0 / -z0;  y0 = y0 / -z0;
+            x1 = x1 / -z1;  y1 = y1 / -z1;
+         }
+         rasterizer.drawLine(x0, y0, x1, y1);
+      }
+   }
+
+
+   /**
+      Render the line segments of an {@link InstancedModel}, or, if
+      {@code radius >= 0}, their endpoints as points of that radius.
+
+      @param model        the {@link InstancedModel} to render
+      @param t            translation of the model's {@link Position}
+      @param perspective  whether the camera uses a perspective projection
+      @param radius       radius, in pixels, of each point, or less than {@code 0} to draw line segments
+      @param rasterizer   the {@link Rasterizer} that draws into the frame
+   */
+   private static void renderInstanced(final InstancedModel model,
+                                       final Vector t,
+                                       final boolean perspective,
+                                       final int radius,
+                                       final Rasterizer rasterizer)
+   {
+      final double z = t.z + model.getZ();
+      model.expand(t, perspective, rasterizer, radius <= 0, (mx0, my0, mx1, my1) ->
+      {
+         double x0 = t.x + mx0, y0 = t.y + my0;
+         double x1 = t.x + mx1, y1 = t.y + my1;
+         if (perspective)
+         {
+            x0 = x0 / -z;  y0 = y0 / -z;
+            x1 = x1 / -z;  y1 = y1 / -z;
+         }
+         if (radius < 0)
+         {
+            rasterizer.drawLine(x0, y0, x1, y1);
+         }
+         else
+         {
+            rasterizer.drawPoint(x0, y0, radius);
+            rasterizer.drawPoint(x1, y1, radius);
+         }
+      });
+   }
+
+
+   /**
+      Render the line segments of an {@link LSystemModel}, or, if
+      {@code radius >= 0}, their endpoints as points of that radius.
+
+      @param model        the {@link LSystemModel} to render
+      @param t            translation of the model's {@link Position}
+      @param perspective  whether the camera uses a perspective projection
+      @param radius       radius, in pixels, of each point, or less than {@code 0} to draw line segments
+      @param rasterizer   the {@link Rasterizer} that draws into the frame
+   */
+   private static void renderLSystem(final LSystemModel model,
+                                     final Vector t,
+                                     final boolean perspective,
+                                     final int radius,
+                                     final Rasterizer rasterizer)
+   {
+      final double z = t.z + model.getZ();
+      model.expand((mx0, my0, mx1, my1) ->
+      {
+         double x0 = t.x + mx0, y0 = t.y + my0;
+         double x1 = t.x + mx1, y1 = t.y + my1;
+         if (perspective)
+         {
+            x0 = x0 / -z;  y0 = y0 / -z;
+            x1 = x1 / -z;  y1 = y1 / -z;
+         }
+         if (radius < 0)
+         {
+            rasterizer.drawLine(x0, y0, x1, y1);
+         }
+         else
+         {
+            rasterizer.drawPoint(x0, y0, radius);
+            rasterizer.drawPoint(x1, y1, radius);
+         }
+      });
+   }
+
+
+   /**
+      Render the vertices of a {@link Model} or {@link PackedModel}
+      that are used by at least one of its primitives, as points.
+
+      @param model        the {@link Model} or {@link PackedModel} whose vertices are rendered
+      @param t            translation of the model's {@link Position}
+      @param perspective  whether the camera uses a perspective projection
+      @param radius       radius, in pixels, of each point
+      @param rasterizer   the {@link Rasterizer} that draws into the frame
+   */
+   private static void renderPoints(final Model model,
+                                    final Vector t,
+                                    final boolean perspective,
+                                    final int radius,
+                                    final Rasterizer rasterizer)
+   {
+      final PackedModel packed = (model instanceof PackedModel) ? (PackedModel)model : null;
+      final List<Vertex> vertexList = model.vertexList;
+      final long[] used = UsedVertices.of(model);
+      for (int word = 0; word < used.length; ++word)
+      {
+         for (long bits = used[word]; 0 != bits; bits &= bits - 1)
+         {
+            final int i = (word << 6) + Long.numberOfTrailingZeros(bits);
+            double x, y, z;
+            if (null == packed)
+            {
+               final Vertex v = vertexList.get(i);
+               x = t.x + v.x;  y = t.y + v.y;  z = t.z + v.z;
+            }
+            else
+            {
+               x = t.x + packed.getX(i);  y = t.y + packed.getY(i);  z = t.z + packed.getZ(i);
+            }
+            if (perspective)
+            {
+               x = x / -z;  y = y / -z;
+            }
+            rasterizer.drawPoint(x, y, radius);
+         }
+      }
+   }
+
+
+   // Private default constructor to enforce noninstantiable class.
+   // See Item 4 in "Effective Java", 3rd Ed, Joshua Bloch.
+   private FractalPipeline() {
+      throw new AssertionError();
+   }
+}//FractalPipeline
@@ -0,0 +1,402 @@
+/*
+
+*/
+
+package fractals.pipeline;
+
+import renderer.scene.*;
+
+import java.util.Arrays;
+
+/**
+   A {@link Model} made up of many copies of one motif, where each copy
+   is placed by a 2D affine transformation, the way an iterated function
+   system (IFS) builds a fractal.
+   <p>
+   Each of the fractals in this project is a set of affine copies of a
+   small motif. A Koch curve is four smaller copies of a Koch curve, a
+   Sierpinski triangle is three half sized copies of a Sierpinski
+   triangle, and so on. An {@code InstancedModel} stores only
+   <ul>
+   <li>the motif, a few line segments in the xy-plane,
+   <li>the maps, one affine transformation for each of the copies
+       that make up the next level of the fractal,
+   <li>the depth of the fractal, and the first level whose copies
+       of the motif are drawn.
+   </ul>
+   The copies make an implicit tree. The root is the motif itself (level 0),
+   and each copy at level {@code L} has one child at level {@code L+1} for
+   each map, transformed by the composition of its parent's transformation
+   and the map. The copies at the levels from {@code firstLevel} to
+   {@code depth} are drawn. So a level 20 fractal takes a few hundred bytes
+   instead of millions of {@link Vertex} and line segment objects.
+   <p>
+   The {@link FractalPipeline} expands the tree while it renders the model.
+   A bounding box is kept for the subtree below each level, so when a
+   copy's whole subtree is outside of the viewport, the subtree is skipped
+   without visiting any of its copies.
+   <p>
+   The {@code vertexList} and {@code primitiveList} of an
+   {@code InstancedModel} are always empty, so it must be rendered
+   by the {@link FractalPipeline}.
+*/
+public class InstancedModel extends Model
+{
+   /**
+      Receives the line segments of an {@code InstancedModel}, in model
+      coordinates, as the model is expanded.
+   */
+   interface SegmentSink
+   {
+      void segment(double x0, double y0, double x1, double y1);
+   }
+
+   private final double[] motif; // x0, y0, x1, y1 for each line segment
+   private final double z;
+   private final double[] maps;  // a, b, c, d, e, f for each map
+   private final int depth;
+   private final int firstLevel;
+   private final double[] bounds; // xMin, yMin, xMax, yMax of the subtree below each level
+
+
+   /**
+      Create an {@code InstancedModel}.
+      <p>
+      Each map is given by six numbers {@code a, b, c, d, e, f}, and
+      it transforms a point {@code (x, y)} to
+      <pre>{@code
+         (a*x + b*y + e, c*x + d*y + f)
+      }</pre>
+
+      @param name        name for this model
+      @param motif       the motif's line segments, as {@code x0, y0, x1, y1} for each segment
+      @param z           the z-coordinate of the plane that holds the model
+      @param maps        the maps, as {@code a, b, c, d, e, f} for each map
+      @param depth       the level of the deepest copies of the motif
+      @param firstLevel  the level of the first copies that are drawn
+      @throws IllegalArgumentException if an array has the wrong length or the levels are out of order
+   */
+   public InstancedModel(final String name,
+                         final double[] motif,
+                         final double z,
+                         final double[] maps,
+                         final int depth,
+                         final int firstLevel)
+   {
+      super(name);
+      if (0 != motif.length % 4)
+         throw new IllegalArgumentException("the motif needs four numbers per line segment");
+      if (0 == maps.length || 0 != maps.length % 6)
+         throw new IllegalArgumentException("there must be at least one map, with six numbers per map");
+      if (depth < 0 || firstLevel < 0 || firstLevel > depth)
+         throw new IllegalArgumentException("need 0 <= firstLevel <= depth");
+
+      this.motif = motif.clone();
+      this.z = z;
+      this.maps = maps.clone();
+      this.depth = depth;
+      this.firstLevel = firstLevel;
+      this.bounds = new double[4 * (depth + 1)];
+
+      // The bounding box of the subtree below a level is the union of the
+      // motif (if the level is drawn) and of the boxes of the children.
+      for (int level = depth; level >= 0; --level)
+      {
+         double xMin = Double.POSITIVE_INFINITY, yMin = Double.POSITIVE_INFINITY;
+         double xMax = Double.NEGATIVE_INFINITY, yMax = Double.NEGATIVE_INFINITY;
+         if (level >= firstLevel)
+         {
+            for (int i = 0; i < motif.length; i += 2)
+            {
+               xMin = Math.min(xMin, motif[i]);  xMax = Math.max(xMax, motif[i]);
+               yMin = Math.min(yMin, motif[i+1]); yMax = Math.max(yMax, motif[i+1]);
+            }
+         }
+         if (level < depth && bounds[4*(level+1)] <= bounds[4*(level+1) + 2])
+         {
+            final int b = 4 * (level + 1);
+            for (int m = 0; m < maps.length; m += 6)
+            {
+               for (int corner = 0; corner < 4; ++corner)
+               {
+                  final double x = bounds[b + ((corner & 1) << 1)];
+                  final double y = bounds[b + 1 + (corner & 2)];
+                  final double tx = maps[m]*x   + maps[m+1]*y + maps[m+4];
+                  final double ty = maps[m+2]*x + maps[m+3]*y + maps[m+5];
+                  xMin = Math.min(xMin, tx);  xMax = Math.max(xMax, tx);
+                  yMin = Math.min(yMin, ty);  yMax = Math.max(yMax, ty);
+               }
+            }
+         }
+         bounds[4*level]     = xMin;
+         bounds[4*level + 1] = yMin;
+         bounds[4*level + 2] = xMax;
+         bounds[4*level + 3] = yMax;
+      }
+   }
+
+
+   /**
+      Make the map that takes the line segment from {@code (x0, y0)} to
+      {@code (x1, y1)} to the line segment from {@code (u0, v0)} to
+      {@code (u1, v1)} by a rotation, a uniform scaling, and a translation.
+
+      @param x0  x-coordinate of the first point of the given segment
+      @param y0  y-coordinate of the first point of the given segment
+      @param x1  x-coordinate of the second point of the given segment
+      @param y1  y-coordinate of the second point of the given segment
+      @param u0  x-coordinate of the first point of the segment's image
+      @param v0  y-coordinate of the first point of the segment's image
+      @param u1  x-coordinate of the second point of the segment's image
+      @param v1  y-coordinate of the second point of the segment's image
+      @return the map, as the six numbers {@code a, b, c, d, e, f}
+   */
+   public static double[] similarity(final double x0, final double y0,
+                                     final double x1, final double y1,
+                                     final double u0, final double v0,
+                                     final double u1, final double v1)
+   {
+      // As complex numbers, w = p*z + q with p = (w1 - w0)/(z1 - z0).
+      final double dx = x1 - x0, dy = y1 - y0;
+      final double du = u1 - u0, dv = v1 - v0;
+      final double len2 = dx*dx + dy*dy;
+      final double pr = (du*dx + dv*dy) / len2;
+      final double pi = (dv*dx - du*dy) / len2;
+      return new double[]{pr, -pi, pi, pr,
+                          u0 - (pr*x0 - pi*y0),
+                          v0 - (pi*x0 + pr*y0)};
+   }
+
+
+   /**
+      Concatenate maps into one array, for the {@code maps} parameter
+      of the constructor.
+
+      @param maps  the maps, each one as six numbers
+      @return all of the maps in one array
+   */
+   public static double[] maps(final double[]... maps)
+   {
+      final double[] all = new double[6 * maps.length];
+      for (int i = 0; i < maps.length; ++i)
+      {
+         System.arraycopy(maps[i], 0, all, 6 * i, 6);
+      }
+      return all;
+   }
+
+
+   /**
+      @return the number of copies of the motif that are drawn
+   */
+   public final long getInstanceCount()
+   {
+      final int k = getMapCount();
+      long count = 0;
+      long atLevel = 1;
+      for (int level = 0; level <= depth; ++level)
+      {
+         if (level >= firstLevel) count = (count > Long.MAX_VALUE - atLevel) ? Long.MAX_VALUE : count + atLevel;
+         atLevel = (atLevel > Long.MAX_VALUE / k) ? Long.MAX_VALUE : atLevel * k;
+      }
+      return count;
+   }
+
+
+   /**
+      @return the number of line segments that are drawn when this model is expanded
+   */
+   public final long getSegmentCount()
+   {
+      final long instances = getInstanceCount();
+      final long perInstance = motif.length / 4;
+      return (0 != perInstance && instances > Long.MAX_VALUE / perInstance)
+             ? Long.MAX_VALUE : instances * perInstance;
+   }
+
+
+   /**
+      @return the number of maps (the number of children of each copy)
+   */
+   public final int getMapCount()
+   {
+      return maps.length / 6;
+   }
+
+
+   /**
+      @return the level of the deepest copies of the motif
+   */
+   public final int getDepth()
+   {
+      return depth;
+   }
+
+
+   /**
+      @return the z-coordinate of the plane that holds this model
+   */
+   public final double getZ()
+   {
+      return z;
+   }
+
+
+   // The maps, six coefficients each, for the ChaosGame (not a copy).
+   final double[] maps()
+   {
+      return maps;
+   }
+
+
+   /**
+      @return the number of bytes of heap used by this model's motif, maps, and bounds
+   */
+   public final long getDataBytes()
+   {
+      return 8L * (motif.length + maps.length + bounds.length) + 3 * 16;
+   }
+
+
+   /**
+      Expand this model, passing every line segment of every copy that
+      might be visible to {@code sink}, in model coordinates. A copy whose
+      whole subtree is outside of the part of the image plane that the
+      {@link Rasterizer} can draw (after translating the model by {@code t}
+      and projecting it) is skipped.
+      <p>
+      Points with a radius greater than 0 can reach pixels outside of that
+      part of the image plane, so {@code cull} should be {@code false} when
+      the line segments are drawn as points.
+
+      @param t            the model's translation
+      @param perspective  is the projection a perspective projection?
+      @param rasterizer   the {@link Rasterizer} that will draw the line segments
+      @param cull         skip the copies that cannot be seen?
+      @param sink         receives the line segments
+      @return the number of copies of the motif that were skipped
+   */
+   long expand(final Vector t, final boolean perspective,
+               final Rasterizer rasterizer, final boolean cull,
+               final SegmentSink sink)
+   {
+      // The model is in one z-plane, so the projection is a uniform scaling.
+      final double zc = t.z + z;
+      final double s = perspective ? 1 / -zc : 1.0;
+      final Rasterizer view = (cull && (! perspective || zc < 0)) ? rasterizer : null;
+      return expand(0, 1.0, 0.0, 0.0, 1.0, 0.0, 0.0, t.x, t.y, s, view, sink);
+   }
+
+
+   private long expand(final int level,
+                       final double a, final double b,
+                       final double c, final double d,
+                       final double e, final double f,
+                       final double tx, final double ty, final double s,
+                       final Rasterizer view,
+                       final SegmentSink sink)
+   {
+      // (view is null when nothing is culled, and the copies just above the
+      // leaves are cheaper to draw, and let the rasterizer reject, than to test)
+      if (null != view && level < depth - 1 && outside(level, a, b, c, d, e, f, tx, ty, s, view))
+      {
+         return subtreeSize(level);
+      }
+      if (level >= firstLevel)
+      {
+         for (int i = 0; i < motif.length; i += 4)
+         {
+            final double x0 = motif[i],   y0 = motif[i+1];
+            final double x1 = motif[i+2], y1 = motif[i+3];
+            sink.segment(a*x0 + b*y0 + e, c*x0 + d*y0 + f,
+                         a*x1 + b*y1 + e, c*x1 + d*y1 + f);
+         }
+      }
+      long culled = 0;
+      if (level < depth)
+      {
+         for (int m = 0; m < maps.length; m += 6)
+         {
+            final double ma = maps[m],   mb = maps[m+1];
+            final double mc = maps[m+2], md = maps[m+3];
+            final double me = maps[m+4], mf = maps[m+5];
+            culled += expand(level + 1,
+                             a*ma + b*mc, a*mb + b*md,
+                             c*ma + d*mc, c*mb + d*md,
+                             a*me + b*mf + e, c*me + d*mf + f,
+                             tx, ty, s, view, sink);
+         }
+      }
+      return culled;
+   }
+
+
+   /**
+      Is the transformed bounding box of the subtree below {@code level}
+      entirely outside of the rectangle that the rasterizer can draw?
+
+      @param level  the level of the copy
+      @param a      the copy's map, {@code x' = a*x + b*y + e}
+      @param b      the copy's map, {@code x' = a*x + b*y + e}
+      @param c      the copy's map, {@code y' = c*x + d*y + f}
+      @param d      the copy's map, {@code y' = c*x + d*y + f}
+      @param e      the copy's map, {@code x' = a*x + b*y + e}
+      @param f      the copy's map, {@code y' = c*x + d*y + f}
+      @param tx     x-coordinate of the model's translation
+      @param ty     y-coordinate of the model's translation
+      @param s      the scaling of the projection
+      @param view   the {@link Rasterizer} whose rectangle is tested
+      @return {@code true} if no copy in the subtree can light a pixel
+   */
+   private boolean outside(final int level,
+                           final double a, final double b,
+                           final double c, final double d,
+                           final double e, final double f,
+                           final double tx, final double ty, final double s,
+                           final Rasterizer view)
+   {
+      final int i = 4 * level;
+      double xMin = Double.POSITIVE_INFINITY, yMin = Double.POSITIVE_INFINITY;
+      double xMax = Double.NEGATIVE_INFINITY, yMax = Double.NEGATIVE_INFINITY;
+      for (int corner = 0; corner < 4; ++corner)
+      {
+         final double x = bounds[i + ((corner & 1) << 1)];
+         final double y = bounds[i + 1 + (corner & 2)];
+         final double px = s * (a*x + b*y + e + tx);
+         final double py = s * (c*x + d*y + f + ty);
+         xMin = Math.min(xMin, px);  xMax = Math.max(xMax, px);
+         yMin = Math.min(yMin, py);  yMax = Math.max(yMax, py);
+      }
+      return xMax < view.xMin || yMax < view.yMin || xMin > view.xMax || yMin > view.yMax;
+   }
+
+
+   /**
+      The number of copies that are drawn in the subtree below a copy at {@code level}.
+
+      @param level  the level of the copy
+      @return the number of copies (or {@link Long#MAX_VALUE} if there are too many to count)
+   */
+   private long subtreeSize(final int level)
+   {
+      final int k = getMapCount();
+      long size = 0;
+      long atLevel = 1;
+      for (int l = level; l <= depth; ++l)
+      {
+         if (l >= firstLevel) size = (size > Long.MAX_VALUE - atLevel) ? Long.MAX_VALUE : size + atLevel;
+         atLevel = (atLevel > Long.MAX_VALUE / k) ? Long.MAX_VALUE : atLevel * k;
+      }
+      return size;
+   }
+
+
+   @Override
+   public String toString()
+   {
+      return String.format("InstancedModel: %s, %d segments in the motif, %d maps,"
+                         + " depth %d (drawn from level %d), bounds %s",
+                           name, motif.length / 4, getMapCount(), depth, firstLevel,
+                           Arrays.toString(Arrays.copyOf(bounds, 4)));
+   }
+}//InstancedModel
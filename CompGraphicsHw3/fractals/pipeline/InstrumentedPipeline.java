@@ -0,0 +1,339 @@
+/*
+
+*/
+
+package fractals.pipeline;
+
+import renderer.scene.*;
+import renderer.scene.primitives.*;
+import renderer.scene.util.CheckModel;
+import renderer.scene.util.PointCloud;
+import renderer.framebuffer.*;
+
+import java.util.List;
+
+/**
+   The {@link FractalPipeline} with a {@link RenderStats} object
+   filled in by each stage.
+   <p>
+   The primitives of each model are copied into a block of at most
+   {@link #BLOCK} primitives, and then each stage runs over the whole
+   block. This lights the same pixels as the {@link FractalPipeline},
+   but it separates the stages, so each one can be counted and timed.
+*/
+final class InstrumentedPipeline
+{
+   private static final int BLOCK = 4096;
+
+   // Stage data for one block of primitives. A point is stored as
+   // a line segment with equal endpoints and a radius >= 0.
+   private final double[] x0 = new double[BLOCK], y0 = new double[BLOCK], z0 = new double[BLOCK];
+   private final double[] x1 = new double[BLOCK], y1 = new double[BLOCK], z1 = new double[BLOCK];
+   private final int[] radius = new int[BLOCK];
+   private final int[] code = new int[BLOCK];
+   private int n = 0;
+
+   private final Rasterizer rasterizer;
+   private final RenderStats stats;
+   private Vector t;
+   private boolean perspective;
+
+
+   private InstrumentedPipeline(final Rasterizer rasterizer, final RenderStats stats)
+   {
+      this.rasterizer = rasterizer;
+      this.stats = stats;
+   }
+
+
+   /**
+      Render a {@link Scene} the same way as {@link FractalPipeline#render},
+      with the options of {@code context}, and put the counts and times
+      of this frame into {@code stats}.
+
+      @param scene    {@link Scene} to render
+      @param vp       {@link FrameBuffer.Viewport} to hold the rendered image
+      @param stats    the {@link RenderStats} that receives this frame's counts and times
+      @param context  the options for this frame
+   */
+   static void render(final Scene scene,
+                      final FrameBuffer.Viewport vp,
+                      final RenderStats stats,
+                      final RenderContext context)
+   {
+      final long start = System.nanoTime();
+      stats.reset();
+      final boolean debug = context.usesRenderer(scene);
+      final boolean pointCloud = context.isPointCloud();
+      final int pointSize = context.getPointSize();
+      final Rasterizer rasterizer = new Rasterizer(vp);
+      final InstrumentedPipeline p = new InstrumentedPipeline(rasterizer, stats);
+      p.perspective = scene.getCamera().perspective;
+
+      for (final Position position : scene.positionList)
+      {
+         final Model model = position.getModel();
+         if (! position.visible || ! model.visible) continue;
+         ++stats.models;
+         p.t = position.getTranslation();
+
+         if (model instanceof InstancedModel && context.getChaosGamePoints() > 0)
+         {
+            final long t0 = System.nanoTime();
+            final long points = context.getChaosGamePoints();
+            final long hits = ChaosGame.render((InstancedModel)model, p.t, p.perspective,
+                                               points, rasterizer);
+            stats.pointsDrawn += hits;
+            stats.pointsRejected += points - hits;
+            stats.rasterizeNanos += System.nanoTime() - t0;
+         }
+         else if (model instanceof InstancedModel)
+         {
+            p.instanced((InstancedModel)model, pointCloud ? pointSize : -1);
+         }
+         else if (model instanceof LSystemModel)
+         {
+            p.lSystem((LSystemModel)model, pointCloud ? pointSize : -1);
+         }
+         else if (pointCloud && ! (model instanceof PackedModel) && (debug || position.debug))
+         {
+            final long t0 = System.nanoTime();
+            final Position points = new Position(PointCloud.make(LineStrip.toLineSegments(model),
+                                                                 pointSize),
+                                                 position.getName(),
+                                                 position.getTranslation(),
+                                                 position.visible, position.debug);
+            context.runRenderer(new Scene(scene.getCamera(), List.of(points), scene.name), vp);
+            stats.rendererNanos += System.nanoTime() - t0;
+         }
+         else if (pointCloud)
+         {
+            p.points(model, pointSize);
+         }
+         else if (model instanceof PackedModel)
+         {
+            p.packed((PackedModel)model);
+         }
+         else if (debug || position.debug)
+         {
+            final long t0 = System.nanoTime();
+            final Position segments = new Position(LineStrip.toLineSegments(model),
+                                                   position.getName(),
+                                                   position.getTranslation(),
+                                                   position.visible, position.debug);
+            context.runRenderer(new Scene(scene.getCamera(), List.of(segments), scene.name), vp);
+            stats.rendererNanos += System.nanoTime() - t0;
+         }
+         else
+         {
+            CheckModel.check(model);
+            p.model(model);
+         }
+      }
+      stats.pixelsWritten = rasterizer.written;
+      stats.totalNanos = System.nanoTime() - start;
+   }
+
+
+   private void model(final Model model)
+   {
+      final List<Vertex> vertexList = model.vertexList;
+      for (final Primitive prim : model.primitiveList)
+      {
+         if (prim instanceof LineSegment)
+         {
+            final Vertex v0 = vertexList.get(prim.vIndexList.get(0));
+            final Vertex v1 = vertexList.get(prim.vIndexList.get(1));
+            add(v0.x, v0.y, v0.z, v1.x, v1.y, v1.z, -1);
+         }
+         else if (prim instanceof LineStrip)
+         {
+            final LineStrip strip = (LineStrip)prim;
+            final int end = strip.getFirst() + strip.getVertexCount();
+            for (int i = strip.getFirst() + 1; i < end; ++i)
+            {
+               final Vertex v0 = vertexList.get(i - 1);
+               final Vertex v1 = vertexList.get(i);
+               add(v0.x, v0.y, v0.z, v1.x, v1.y, v1.z, -1);
+            }
+         }
+         else if (prim instanceof Point)
+         {
+            final Vertex v = vertexList.get(prim.vIndexList.get(0));
+            add(v.x, v.y, v.z, v.x, v.y, v.z, ((Point)prim).radius);
+         }
+         else
+         {
+            System.err.println("FractalPipeline: cannot rasterize " + prim);
+         }
+      }
+      flush();
+   }
+
+
+   private void packed(final PackedModel model)
+   {
+      final long segments = model.getSegmentCount();
+      for (long s = 0; s < segments; ++s)
+      {
+         final int i0 = model.getStart(s);
+         final int i1 = model.getEnd(s);
+         add(model.getX(i0), model.getY(i0), model.getZ(i0),
+             model.getX(i1), model.getY(i1), model.getZ(i1), -1);
+      }
+      flush();
+   }
+
+
+   private void instanced(final InstancedModel model, final int pointRadius)
+   {
+      final double z = model.getZ();
+      stats.instancesCulled += model.expand(t, perspective, rasterizer, pointRadius <= 0, (x0, y0, x1, y1) ->
+      {
+         if (pointRadius < 0)
+         {
+            add(x0, y0, z, x1, y1, z, -1);
+         }
+         else
+         {
+            add(x0, y0, z, x0, y0, z, pointRadius);
+            add(x1, y1, z, x1, y1, z, pointRadius);
+         }
+      });
+      flush();
+   }
+
+
+   private void lSystem(final LSystemModel model, final int pointRadius)
+   {
+      final double z = model.getZ();
+      model.expand((x0, y0, x1, y1) ->
+      {
+         if (pointRadius < 0)
+         {
+            add(x0, y0, z, x1, y1, z, -1);
+         }
+         else
+         {
+            add(x0, y0, z, x0, y0, z, pointRadius);
+            add(x1, y1, z, x1, y1, z, pointRadius);
+         }
+      });
+      flush();
+   }
+
+
+   private void points(final Model model, final int pointRadius)
+   {
+      final PackedModel packed = (model instanceof PackedModel) ? (PackedModel)model : null;
+      final List<Vertex> vertexList = model.vertexList;
+      final long[] used = UsedVertices.of(model);
+      for (int word = 0; word < used.length; ++word)
+      {
+         for (long bits = used[word]; 0 != bits; bits &= bits - 1)
+         {
+            final int i = (word << 6) + Long.numberOfTrailingZeros(bits);
+            if (null == packed)
+            {
+               final Vertex v = vertexList.get(i);
+               add(v.x, v.y, v.z, v.x, v.y, v.z, pointRadius);
+            }
+            else
+            {
+               final double x = packed.getX(i), y = packed.getY(i), z = packed.getZ(i);
+               add(x, y, z, x, y, z, pointRadius);
+            }
+         }
+      }
+      flush();
+   }
+
+
+   private void add(final double ax, final double ay, final double az,
+                    final double bx, final double by, final double bz,
+                    final int r)
+   {
+      x0[n] = ax;  y0[n] = ay;  z0[n] = az;
+      x1[n] = bx;  y1[n] = by;  z1[n] = bz;
+      radius[n] = r;
+      if (++n == BLOCK) flush();
+   }
+
+
+   /**
+      Run every stage of the pipeline over the current block.
+   */
+   private void flush()
+   {
+      if (0 == n) return;
+
+      // Model to camera coordinates.
+      final long t0 = System.nanoTime();
+      long vertices = 0;
+      for (int i = 0; i < n; ++i)
+      {
+         x0[i] = t.x + x0[i];  y0[i] = t.y + y0[i];  z0[i] = t.z + z0[i];
+         if (radius[i] < 0)
+         {
+            x1[i] = t.x + x1[i];  y1[i] = t.y + y1[i];  z1[i] = t.z + z1[i];
+            vertices += 2;
+         }
+         else
+         {
+            vertices += 1;
+         }
+      }
+      stats.verticesTransformed += vertices;
+
+      // Projection.
+      final long t1 = System.nanoTime();
+      if (perspective)
+      {
+         for (int i = 0; i < n; ++i)
+         {
+            x0[i] = x0[i] / -z0[i];  y0[i] = y0[i] / -z0[i];
+            if (radius[i] < 0)
+            {
+               x1[i] = x1[i] / -z1[i];  y1[i] = y1[i] / -z1[i];
+            }
+         }
+      }
+
+      // Clipping.
+      final long t2 = System.nanoTime();
+      for (int i = 0; i < n; ++i)
+      {
+         if (radius[i] < 0)
+         {
+            code[i] = rasterizer.clipLine(x0[i], y0[i], x1[i], y1[i]);
+            if (Rasterizer.REJECTED == code[i])    ++stats.segmentsRejected;
+            else if (Rasterizer.INSIDE == code[i]) ++stats.segmentsDrawn;
+            else                                   ++stats.segmentsClipped;
+         }
+         else
+         {
+            code[i] = rasterizer.clipPoint(x0[i], y0[i], radius[i]);
+            if (Rasterizer.REJECTED == code[i]) ++stats.pointsRejected;
+            else                                ++stats.pointsDrawn;
+         }
+      }
+
+      // Rasterization.
+      final long t3 = System.nanoTime();
+      for (int i = 0; i < n; ++i)
+      {
+         if (Rasterizer.REJECTED == code[i]) continue;
+         if (radius[i] < 0)
+            rasterizer.drawLine(x0[i], y0[i], x1[i], y1[i]);
+         else
+            rasterizer.drawPoint(x0[i], y0[i], radius[i]);
+      }
+      final long t4 = System.nanoTime();
+
+      stats.model2cameraNanos += t1 - t0;
+      stats.projectionNanos   += t2 - t1;
+      stats.clipNanos         += t3 - t2;
+      stats.rasterizeNanos    += t4 - t3;
+      n = 0;
+   }
+}//InstrumentedPipeline
@@ -0,0 +1,599 @@
+/*
+
+*/
+
+package fractals.pipeline;
+
+import java.util.Arrays;
+
+/**
+   A Lindenmayer system (L-system) that draws a fractal with a turtle.
+   <p>
+   An L-system is an axiom (a string of symbols) and a production rule
+   for some of the symbols. Each level of the fractal replaces every
+   symbol that has a rule with the rule's string. The final string is
+   then read by a turtle that draws as it moves.
+   <ul>
+   <li>an upper case letter that is in the {@code drawn} letters moves
+       the turtle forward, drawing a line segment,
+   <li>a lower case letter moves the turtle forward without drawing,
+   <li>{@code +} turns the turtle to the left (counterclockwise),
+       {@code -} turns it to the right, and {@code |} turns it around,
+   <li>{@code [} saves the turtle's position and heading,
+       and {@code ]} goes back to the last saved ones.
+   </ul>
+   Every other letter is ignored by the turtle.
+   <p>
+   Any letter or turn can have a parameter, in parentheses. The parameter
+   of a turn is its angle, in degrees (the default is the L-system's
+   angle). The parameter of a letter is its length, as a fraction of the
+   length of the letter that its rule replaced (the default is
+   {@code 1}). So a rule like
+   <pre>{@code
+      F=+(45)F(0.7071067811865476)-(90)F(0.7071067811865476)+(45)
+   }</pre>
+   replaces a line segment with two shorter ones, and the curve stays
+   between the same two points at every level (this is the L&eacute;vy
+   C curve). The classic L-systems, whose segments all have the same
+   length, use the default lengths and a {@code levelScale}, which
+   shrinks the first segment at each level.
+   <p>
+   The rewritten string is never built. The symbols are expanded while
+   they are drawn, with an explicit stack that holds one entry for each
+   level (the rule being read at that level and the position in it), so
+   the memory used depends only on the number of levels, and the line
+   segments are passed to a {@link SegmentSink} (or, with their vertices,
+   to a {@link VertexSink} or a {@link PackedModel}) as soon as the turtle
+   draws them.
+   <p>
+   The vertex and line segment counts of a level are computed from the
+   rules without drawing anything, so a {@link PackedModel} can be sized
+   before it is filled (or a model checked against the counts). A line
+   segment that starts where the turtle's last line segment ended (or
+   where the turtle was when its position was saved) shares that vertex.
+*/
+public final class LSystem
+{
+   /**
+      Receives the line segments drawn by the turtle.
+   */
+   public interface SegmentSink
+   {
+      /**
+         The turtle drew a line segment from {@code (x0, y0)} to {@code (x1, y1)}.
+
+         @param x0  x-coordinate of the line segment's first point
+         @param y0  y-coordinate of the line segment's first point
+         @param x1  x-coordinate of the line segment's second point
+         @param y1  y-coordinate of the line segment's second point
+      */
+      void segment(double x0, double y0, double x1, double y1);
+   }
+
+
+   /**
+      Receives the vertices and line segments drawn by the turtle,
+      with the vertices shared the same way as in {@link #toPackedModel}.
+   */
+   public interface VertexSink
+   {
+      /**
+         The turtle needs a new vertex at {@code (x, y)}.
+
+         @param x  x-coordinate of the new vertex
+         @param y  y-coordinate of the new vertex
+         @return the index of the new vertex
+      */
+      int vertex(double x, double y);
+
+      /**
+         The turtle drew a line segment between two of the vertices.
+
+         @param v0  index of the line segment's first vertex
+         @param v1  index of the line segment's second vertex
+      */
+      void segment(int v0, int v1);
+   }
+
+   // The kinds of operations.
+   private static final byte SYMBOL = 0; // a letter
+   private static final byte TURN   = 1;
+   private static final byte PUSH   = 2;
+   private static final byte POP    = 3;
+
+   // What a letter does when it is not replaced by its rule.
+   private static final byte NOTHING = 0;
+   private static final byte DRAW    = 1;
+   private static final byte MOVE    = 2;
+
+   private final String axiom;
+   private final String[] productions;
+   private final double angle;
+   private final double levelScale;
+   private final String drawn;
+
+   // Every rule, and then the axiom, compiled into one list of
+   // operations. Operations start[r] to start[r+1]-1 belong to rule r.
+   private final byte[] op;
+   private final byte[] action;  // for a SYMBOL, what it does when it is not replaced
+   private final int[] rule;     // for a SYMBOL, the index of its rule, or -1
+   private final double[] value; // a SYMBOL's length, or a TURN's cosine
+   private final double[] sin;   // a TURN's sine
+   private final int[] start;
+   private final int axiomRule;
+
+
+   /**
+      Create an L-system.
+
+      @param axiom        the symbols of level {@code 0}
+      @param angle        the angle, in degrees, of a turn that does not have a parameter
+      @param levelScale   the length of the first segment is the length of the base times {@code levelScale^level}
+      @param drawn        the upper case letters that draw a line segment
+      @param productions  the rules, each one written as a letter, {@code =}, and the letter's replacement
+      @throws IllegalArgumentException if a rule or the axiom cannot be parsed
+   */
+   public LSystem(final String axiom,
+                  final double angle,
+                  final double levelScale,
+                  final String drawn,
+                  final String... productions)
+   {
+      this.axiom = axiom;
+      this.productions = productions.clone();
+      this.angle = angle;
+      this.levelScale = levelScale;
+      this.drawn = drawn;
+
+      // Find the letter that each rule replaces.
+      final int[] ruleOf = new int[128];
+      Arrays.fill(ruleOf, -1);
+      for (int r = 0; r < productions.length; ++r)
+      {
+         final String p = productions[r].trim();
+         if (p.length() < 2 || ! Character.isLetter(p.charAt(0)) || '=' != p.charAt(1) || p.charAt(0) >= 128)
+            throw new IllegalArgumentException("a rule must look like X=...: " + productions[r]);
+         if (-1 != ruleOf[p.charAt(0)])
+            throw new IllegalArgumentException("two rules for " + p.charAt(0));
+         ruleOf[p.charAt(0)] = r;
+      }
+
+      // Compile the rules and the axiom (each symbol is at least one character).
+      int length = axiom.length();
+      for (final String p : productions) length += p.length();
+      op = new byte[length];
+      action = new byte[length];
+      rule = new int[length];
+      value = new double[length];
+      sin = new double[length];
+      start = new int[productions.length + 2];
+      int n = 0;
+      for (int r = 0; r <= productions.length; ++r)
+      {
+         start[r] = n;
+         final String body = (r < productions.length)
+                           ? productions[r].trim().substring(2)
+                           : axiom;
+         n = compile(body, ruleOf, n);
+      }
+      start[productions.length + 1] = n;
+      axiomRule = productions.length;
+   }
+
+
+   /**
+      Expand the symbols of level {@code level} and pass every line
+      segment that the turtle draws to {@code sink}. The turtle starts
+      at {@code (x0, y0)}, heading towards {@code (x1, y1)}, and the
+      length of a symbol in the axiom is the distance between those
+      two points times {@code levelScale^level}. A level less than
+      {@code 0} draws nothing.
+
+      @param level  the number of times the rules are applied
+      @param x0     x-coordinate of the turtle's starting point
+      @param y0     y-coordinate of the turtle's starting point
+      @param x1     x-coordinate of the point the turtle starts heading towards
+      @param y1     y-coordinate of the point the turtle starts heading towards
+      @param sink   the {@link SegmentSink} that receives the line segments
+   */
+   public void expand(final int level,
+                      final double x0, final double y0,
+                      final double x1, final double y1,
+                      final SegmentSink sink)
+   {
+      run(level, x0, y0, x1, y1, sink, null);
+   }
+
+
+   /**
+      Expand the symbols of level {@code level} and pass every vertex and
+      line segment that the turtle draws to {@code sink}. The turtle starts
+      the same way as in {@link #expand(int, double, double, double, double, SegmentSink)},
+      and the vertices are the ones that {@link #vertexCount} counts.
+
+      @param level  the number of times the rules are applied
+      @param x0     x-coordinate of the turtle's starting point
+      @param y0     y-coordinate of the turtle's starting point
+      @param x1     x-coordinate of the point the turtle starts heading towards
+      @param y1     y-coordinate of the point the turtle starts heading towards
+      @param sink   the {@link VertexSink} that receives the vertices and line segments
+   */
+   public void expand(final int level,
+                      final double x0, final double y0,
+                      final double x1, final double y1,
+                      final VertexSink sink)
+   {
+      run(level, x0, y0, x1, y1, null, sink);
+   }
+
+
+   /**
+      Expand the symbols of level {@code level} into a {@link PackedModel}.
+      The turtle starts the same way as in {@link #expand(int, double, double, double, double, SegmentSink)}.
+
+      @param name     name for the model
+      @param level    the number of times the rules are applied
+      @param x0       x-coordinate of the turtle's starting point
+      @param y0       y-coordinate of the turtle's starting point
+      @param x1       x-coordinate of the point the turtle starts heading towards
+      @param y1       y-coordinate of the point the turtle starts heading towards
+      @param z        z-coordinate of the plane that holds the model
+      @param storage  where to keep the packed vertices and line segments
+      @return the new {@link PackedModel}
+      @throws IllegalArgumentException if the model has more than {@code 2^31-1} vertices
+   */
+   public PackedModel toPackedModel(final String name,
+                                    final int level,
+                                    final double x0, final double y0,
+                                    final double x1, final double y1,
+                                    final double z,
+                                    final PackedModel.Storage storage)
+   {
+      final PackedModel model = new PackedModel(name, vertexCount(level), segmentCount(level), storage);
+      run(level, x0, y0, x1, y1, null, new VertexSink()
+      {
+         @Override
+         public int vertex(final double x, final double y)
+         {
+            return model.putVertex(x, y, z);
+         }
+
+         @Override
+         public void segment(final int v0, final int v1)
+         {
+            model.putSegment(v0, v1);
+         }
+      });
+      return model;
+   }
+
+
+   /**
+      The turtle. Exactly one of {@code sink} and {@code vertices} is not {@code null}.
+
+      @param level     the number of times the rules are applied
+      @param x0        x-coordinate of the turtle's starting point
+      @param y0        y-coordinate of the turtle's starting point
+      @param x1        x-coordinate of the point the turtle starts heading towards
+      @param y1        y-coordinate of the point the turtle starts heading towards
+      @param sink      receives the line segments, or {@code null}
+      @param vertices  receives the vertices and line segments, or {@code null}
+   */
+   private void run(final int level,
+                    final double x0, final double y0,
+                    final double x1, final double y1,
+                    final SegmentSink sink,
+                    final VertexSink vertices)
+   {
+      if (level < 0) return;
+
+      final double length = Math.hypot(x1 - x0, y1 - y0);
+      double x = x0, y = y0;
+      double hx = (x1 - x0) / length, hy = (y1 - y0) / length; // the heading, a unit vector
+      int vertex = -1; // the vertex the turtle is on, for a VertexSink
+
+      // One entry per level: the next operation to do, the end
+      // of the rule, and the length of the rule's letters.
+      final int[] next = new int[level + 1];
+      final int[] end = new int[level + 1];
+      final double[] unit = new double[level + 1];
+      int top = 0;
+      next[0] = start[axiomRule];
+      end[0] = start[axiomRule + 1];
+      unit[0] = length * Math.pow(levelScale, level);
+
+      // The saved turtles.
+      double[] saved = new double[5 * 16];
+      int saves = 0;
+
+      while (top >= 0)
+      {
+         final int i = next[top];
+         if (i == end[top])
+         {
+            --top;
+            continue;
+         }
+         next[top] = i + 1;
+         switch (op[i])
+         {
+            case SYMBOL:
+               final int r = rule[i];
+               if (r >= 0 && top < level)
+               {
+                  unit[top + 1] = unit[top] * value[i];
+                  ++top;
+                  next[top] = start[r];
+                  end[top] = start[r + 1];
+               }
+               else if (DRAW == action[i])
+               {
+                  final double d = unit[top] * value[i];
+                  final double nx = x + d * hx, ny = y + d * hy;
+                  if (null != sink)
+                  {
+                     sink.segment(x, y, nx, ny);
+                  }
+                  else
+                  {
+                     if (vertex < 0) vertex = vertices.vertex(x, y);
+                     final int v = vertices.vertex(nx, ny);
+                     vertices.segment(vertex, v);
+                     vertex = v;
+                  }
+                  x = nx;
+                  y = ny;
+               }
+               else if (MOVE == action[i])
+               {
+                  final double d = unit[top] * value[i];
+                  x += d * hx;
+                  y += d * hy;
+                  vertex = -1;
+               }
+               break;
+            case TURN:
+               final double c = value[i], s = sin[i];
+               final double t = c * hx - s * hy;
+               hy = s * hx + c * hy;
+               hx = t;
+               break;
+            case PUSH:
+               if (5 * saves == saved.length) saved = Arrays.copyOf(saved, 2 * saved.length);
+               saved[5 * saves    ] = x;
+               saved[5 * saves + 1] = y;
+               saved[5 * saves + 2] = hx;
+               saved[5 * saves + 3] = hy;
+               saved[5 * saves + 4] = vertex;
+               ++saves;
+               break;
+            default: // POP
+               --saves;
+               x = saved[5 * saves];
+               y = saved[5 * saves + 1];
+               hx = saved[5 * saves + 2];
+               hy = saved[5 * saves + 3];
+               vertex = (int)saved[5 * saves + 4];
+               break;
+         }
+      }
+   }
+
+
+   /**
+      The number of line segments that level {@code level} draws,
+      computed from the rules without drawing them.
+
+      @param level  the number of times the rules are applied
+      @return the number of line segments (or {@link Long#MAX_VALUE} if there are too many to count)
+   */
+   public long segmentCount(final int level)
+   {
+      return count(level, false);
+   }
+
+
+   /**
+      The number of vertices in the {@link PackedModel} made by
+      {@link #toPackedModel}, computed from the rules without drawing them.
+
+      @param level  the number of times the rules are applied
+      @return the number of vertices (or {@link Long#MAX_VALUE} if there are too many to count)
+   */
+   public long vertexCount(final int level)
+   {
+      return count(level, true);
+   }
+
+
+   /**
+      Count the segments, or the vertices, of a level, one level of the
+      rules at a time. A rule's vertices depend on whether the turtle is
+      on a vertex when the rule starts, so the vertices are counted for
+      both cases, along with whether the turtle is on a vertex at the end.
+
+      @param level     the number of times the rules are applied
+      @param vertices  count the vertices instead of the line segments?
+      @return the number of line segments, or vertices (or {@link Long#MAX_VALUE} if there are too many to count)
+   */
+   private long count(final int level, final boolean vertices)
+   {
+      if (level < 0) return 0;
+      final int rules = productions.length;
+      // counts[r][on], and whether the turtle ends on a vertex, for the rules
+      // at the level below the one being counted (no rules are used at level 0).
+      long[][] below = null;
+      boolean[][] endsOn = null;
+      for (int l = 0; l <= level; ++l)
+      {
+         final int count = (l < level) ? rules : rules + 1; // the axiom is only used at the top
+         final long[][] counts = new long[rules + 1][2];
+         final boolean[][] ends = new boolean[rules + 1][2];
+         for (int r = (l < level) ? 0 : rules; r < count; ++r)
+         {
+            for (int on = 0; on < 2; ++on)
+            {
+               long total = 0;
+               boolean onVertex = (1 == on);
+               final boolean[] stack = new boolean[start[r + 1] - start[r]];
+               int saves = 0;
+               for (int i = start[r]; i < start[r + 1]; ++i)
+               {
+                  if (PUSH == op[i])
+                  {
+                     stack[saves++] = onVertex;
+                  }
+                  else if (POP == op[i])
+                  {
+                     onVertex = stack[--saves];
+                  }
+                  else if (SYMBOL == op[i])
+                  {
+                     if (rule[i] >= 0 && l > 0)
+                     {
+                        total = sum(total, below[rule[i]][onVertex ? 1 : 0]);
+                        onVertex = endsOn[rule[i]][onVertex ? 1 : 0];
+                     }
+                     else if (DRAW == action[i])
+                     {
+                        total = sum(total, (! vertices) ? 1 : onVertex ? 1 : 2);
+                        onVertex = true;
+                     }
+                     else if (MOVE == action[i])
+                     {
+                        onVertex = false;
+                     }
+                  }
+               }
+               counts[r][on] = total;
+               ends[r][on] = onVertex;
+            }
+         }
+         below = counts;
+         endsOn = ends;
+      }
+      return below[rules][0];
+   }
+
+
+   private static long sum(final long a, final long b)
+   {
+      return (a > Long.MAX_VALUE - b) ? Long.MAX_VALUE : a + b;
+   }
+
+
+   /**
+      Parse the symbols of a rule (or of the axiom) into operations,
+      starting at operation {@code n}.
+
+      @param body    the symbols, without the rule's letter and {@code =}
+      @param ruleOf  the index of each letter's rule, or {@code -1}
+      @param n       index of the first operation of this rule
+      @return the index after the rule's last operation
+   */
+   private int compile(final String body, final int[] ruleOf, int n)
+   {
+      int depth = 0;
+      for (int i = 0; i < body.length(); )
+      {
+         final char c = body.charAt(i++);
+         if (Character.isWhitespace(c)) continue;
+
+         // An optional parameter.
+         double param = Double.NaN;
+         if (i < body.length() && '(' == body.charAt(i))
+         {
+            final int close = body.indexOf(')', i);
+            if (close < 0)
+               throw new IllegalArgumentException("missing ) in " + body);
+            try
+            {
+               param = Double.parseDouble(body.substring(i + 1, close).trim());
+            }
+            catch (NumberFormatException e)
+            {
+               throw new IllegalArgumentException("bad parameter in " + body, e);
+            }
+            i = close + 1;
+         }
+
+         if (Character.isLetter(c) && c < 128)
+         {
+            final byte what = Character.isLowerCase(c) ? MOVE
+                            : (drawn.indexOf(c) >= 0) ? DRAW
+                            : NOTHING;
+            n = add(n, SYMBOL, what, ruleOf[c], Double.isNaN(param) ? 1.0 : param, 0.0);
+         }
+         else if ('+' == c || '-' == c || '|' == c)
+         {
+            final double degrees = ('|' == c) ? 180.0
+                                 : (Double.isNaN(param) ? angle : param) * (('+' == c) ? 1 : -1);
+            double cos = Math.cos(Math.toRadians(degrees));
+            double sin = Math.sin(Math.toRadians(degrees));
+            if (0 == degrees % 90) // exact, so that square turns do not drift
+            {
+               cos = Math.rint(cos);
+               sin = Math.rint(sin);
+            }
+            n = add(n, TURN, NOTHING, -1, cos, sin);
+         }
+         else if ('[' == c)
+         {
+            ++depth;
+            n = add(n, PUSH, NOTHING, -1, 0.0, 0.0);
+         }
+         else if (']' == c)
+         {
+            if (--depth < 0)
+               throw new IllegalArgumentException("unmatched ] in " + body);
+            n = add(n, POP, NOTHING, -1, 0.0, 0.0);
+         }
+         else
+         {
+            throw new IllegalArgumentException("unknown symbol " + c + " in " + body);
+         }
+      }
+      if (0 != depth)
+         throw new IllegalArgumentException("unmatched [ in " + body);
+      return n;
+   }
+
+
+   private int add(final int n, final byte op, final byte action, final int rule,
+                   final double value, final double sin)
+   {
+      this.op[n] = op;
+      this.action[n] = action;
+      this.rule[n] = rule;
+      this.value[n] = value;
+      this.sin[n] = sin;
+      return n + 1;
+   }
+
+
+   /**
+      @return the number of bytes of heap used by this L-system's rules
+   */
+   public long getDataBytes()
+   {
+      return 30L * op.length + 4L * start.length + 64;
+   }
+
+
+   /**
+      @return the number of production rules
+   */
+   public int getRuleCount()
+   {
+      return productions.length;
+   }
+
+
+   @Override
+   public String toString()
+   {
+      return "LSystem(axiom = " + axiom + ", angle = " + angle
+           + ", levelScale = " + levelScale + ", drawn = " + drawn
+           + ", rules = " + String.join(", ", productions) + ")";
+   }
+}//LSystem
@@ -0,0 +1,137 @@
+/*
+
+*/
+
+package fractals.pipeline;
+
+import renderer.scene.*;
+
+/**
+   A {@link Model} that is a level of an {@link LSystem}, drawn from a
+   given base line segment.
+   <p>
+   Like an {@link InstancedModel}, an {@code LSystemModel} holds only
+   its rules, its level, and its base. The {@link FractalPipeline}
+   expands the rules while it renders the model, and passes each line
+   segment to the rasterizer as soon as the turtle draws it, so nothing
+   the size of the fractal is ever stored. The same line segments can be
+   put into a {@link PackedModel} by {@link #toPackedModel}.
+   <p>
+   The {@code vertexList} and {@code primitiveList} of an
+   {@code LSystemModel} are always empty, so it must be rendered
+   by the {@link FractalPipeline}.
+*/
+public class LSystemModel extends Model
+{
+   private final LSystem lSystem;
+   private final int level;
+   private final double x0, y0, x1, y1, z;
+
+
+   /**
+      Create an {@code LSystemModel}. The turtle starts at {@code (x0, y0, z)},
+      heading towards {@code (x1, y1, z)} (see {@link LSystem#expand}).
+
+      @param name     name for this model
+      @param lSystem  the {@link LSystem} that draws this model
+      @param level    the number of times the rules are applied
+      @param x0       x-coordinate of the turtle's starting point
+      @param y0       y-coordinate of the turtle's starting point
+      @param x1       x-coordinate of the point the turtle starts heading towards
+      @param y1       y-coordinate of the point the turtle starts heading towards
+      @param z        z-coordinate of the plane that holds the model
+   */
+   public LSystemModel(final String name,
+                       final LSystem lSystem,
+                       final int level,
+                       final double x0, final double y0,
+                       final double x1, final double y1,
+                       final double z)
+   {
+      super(name);
+      this.lSystem = lSystem;
+      this.level = level;
+      this.x0 = x0;
+      this.y0 = y0;
+      this.x1 = x1;
+      this.y1 = y1;
+      this.z = z;
+   }
+
+
+   /**
+      Expand this model, passing every line segment to {@code sink},
+      in model coordinates (in the plane {@link #getZ}).
+
+      @param sink  receives the line segments
+   */
+   public final void expand(final LSystem.SegmentSink sink)
+   {
+      lSystem.expand(level, x0, y0, x1, y1, sink);
+   }
+
+
+   /**
+      Put this model's line segments into a {@link PackedModel}.
+
+      @param storage  where to keep the packed vertices and line segments
+      @return a {@link PackedModel} with the same line segments as this model
+   */
+   public final PackedModel toPackedModel(final PackedModel.Storage storage)
+   {
+      return lSystem.toPackedModel(name, level, x0, y0, x1, y1, z, storage);
+   }
+
+
+   /**
+      @return the number of line segments that are drawn when this model is expanded
+   */
+   public final long getSegmentCount()
+   {
+      return lSystem.segmentCount(level);
+   }
+
+
+   /**
+      @return the {@link LSystem} that draws this model
+   */
+   public final LSystem getLSystem()
+   {
+      return lSystem;
+   }
+
+
+   /**
+      @return the number of times the rules are applied
+   */
+   public final int getLevel()
+   {
+      return level;
+   }
+
+
+   /**
+      @return the z-coordinate of the plane that holds this model
+   */
+   public final double getZ()
+   {
+      return z;
+   }
+
+
+   /**
+      @return the number of bytes of heap used by this model's rules
+   */
+   public final long getDataBytes()
+   {
+      return lSystem.getDataBytes();
+   }
+
+
+   @Override
+   public String toString()
+   {
+      return String.format("LSystemModel: %s, level %d, base (%s, %s) to (%s, %s), z = %s, %s",
+                           name, level, x0, y0, x1, y1, z, lSystem);
+   }
+}//LSystemModel
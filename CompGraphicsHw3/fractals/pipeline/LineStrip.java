@@ -0,0 +1,158 @@
+/*
+
+*/
+
+package fractals.pipeline;
+
+import renderer.scene.*;
+import renderer.scene.primitives.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+   A connected polyline through a run of consecutive vertices of a
+   {@link Model}, the vertices {@code first} to {@code first+count-1},
+   in that order.
+   <p>
+   A curve like a {@link fractals.KochCurve} is one long polyline. As
+   {@link LineSegment}s, each of its pieces is a primitive object with
+   its own list of two boxed {@link Integer} indices. A {@code LineStrip}
+   is one primitive for the whole curve, and its indices are implicit, so
+   its {@code vIndexList} is empty. When the {@link FractalPipeline}
+   renders a {@code LineStrip}, each vertex is projected once, and the
+   {@link Rasterizer} reuses the rounded position and the clipping outcode
+   of each shared endpoint (see {@link Rasterizer#lineTo}).
+   <p>
+   The renderer's {@link renderer.pipeline.Pipeline} and
+   {@link renderer.scene.util.PointCloud} only know about
+   {@link LineSegment}s and {@link Point}s, so a model is given to them
+   after {@link #toLineSegments} has replaced its {@code LineStrip}s.
+*/
+public class LineStrip extends Primitive
+{
+   private final int first;
+   private final int count;
+
+
+   /**
+      Create a {@code LineStrip} through the vertices with
+      indices {@code first} to {@code first+count-1}.
+
+      @param first  index of the first vertex of the polyline
+      @param count  number of vertices in the polyline
+      @throws IllegalArgumentException if {@code first} or {@code count} is negative
+   */
+   public LineStrip(final int first, final int count)
+   {
+      super();
+      if (first < 0 || count < 0)
+         throw new IllegalArgumentException("a LineStrip needs first >= 0 and count >= 0");
+      this.first = first;
+      this.count = count;
+   }
+
+
+   /**
+      @return the index of the first vertex of this polyline
+   */
+   public final int getFirst()
+   {
+      return first;
+   }
+
+
+   /**
+      @return the number of vertices in this polyline
+   */
+   public final int getVertexCount()
+   {
+      return count;
+   }
+
+
+   /**
+      @return the number of line segments in this polyline
+   */
+   public final int getSegmentCount()
+   {
+      return Math.max(count - 1, 0);
+   }
+
+
+   /**
+      The number of line segments in a {@link Model}, counting each
+      {@link LineSegment} as one and each {@code LineStrip} as all of
+      its line segments.
+
+      @param model  a {@link Model}
+      @return the number of line segments drawn for {@code model}'s primitives
+   */
+   public static long segmentCount(final Model model)
+   {
+      long segments = 0;
+      for (final Primitive p : model.primitiveList)
+      {
+         segments += (p instanceof LineStrip) ? ((LineStrip)p).getSegmentCount() : 1;
+      }
+      return segments;
+   }
+
+
+   /**
+      Does a {@link Model} have any {@code LineStrip}s?
+
+      @param model  a {@link Model}
+      @return {@code true} if one of {@code model}'s primitives is a {@code LineStrip}
+   */
+   public static boolean hasStrips(final Model model)
+   {
+      for (final Primitive p : model.primitiveList)
+      {
+         if (p instanceof LineStrip) return true;
+      }
+      return false;
+   }
+
+
+   /**
+      Get a {@link Model} with the same vertices as {@code model}, and with
+      each {@code LineStrip} replaced by its {@link LineSegment}s, for the
+      renderer's stages that do not know about {@code LineStrip}s.
+
+      @param model  a {@link Model}
+      @return {@code model} itself if it has no {@code LineStrip}s, otherwise
+              a new {@link Model} that shares {@code model}'s vertices
+   */
+   public static Model toLineSegments(final Model model)
+   {
+      if (! hasStrips(model))
+      {
+         return model;
+      }
+      final List<Primitive> primitives = new ArrayList<>();
+      for (final Primitive p : model.primitiveList)
+      {
+         if (p instanceof LineStrip)
+         {
+            final LineStrip strip = (LineStrip)p;
+            for (int v = strip.first; v < strip.first + strip.count - 1; ++v)
+            {
+               primitives.add(new LineSegment(v, v + 1));
+            }
+         }
+         else
+         {
+            primitives.add(p);
+         }
+      }
+      return new Model(model.vertexList, primitives, model.getName(), model.visible);
+   }
+
+
+   @Override
+   public String toString()
+   {
+      return "LineStrip: ([" + first + " .. " + (first + count - 1) + "])";
+   }
+}//LineStrip
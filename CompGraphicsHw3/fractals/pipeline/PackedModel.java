@@ -0,0 +1,769 @@
+/*
+
+*/
+
+package fractals.pipeline;
+
+import renderer.scene.*;
+import renderer.scene.primitives.*;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+   A {@link Model} whose vertices and line segments are stored outside
+   of the Java heap.
+   <p>
+   A regular {@link Model} holds one {@link Vertex} object per vertex and
+   one {@link renderer.scene.primitives.LineSegment} object (with its own
+   list of {@link Integer} indices) per line segment. For a model with
+   hundreds of millions of line segments those objects do not fit in the
+   heap, and even when they do fit, the garbage collector has to trace
+   all of them. A {@code PackedModel} keeps each vertex as three packed
+   {@code double}s and each line segment as two packed {@code int}
+   indices in direct {@link ByteBuffer}s, or in buffers mapped from a
+   temporary file, so the heap holds only a few small objects no matter
+   how big the model is.
+   <p>
+   The {@code vertexList} and {@code primitiveList} of a {@code PackedModel}
+   are always empty, so a {@code PackedModel} can be put in a {@link Position}
+   like any other {@link Model}, but it must be rendered by the
+   {@link FractalPipeline}, which reads the packed data directly.
+   <p>
+   A <em>planar</em> {@code PackedModel}, for a model whose vertices are
+   all in one z-plane (like every 2D fractal), keeps just the x and y
+   coordinates of each vertex, as {@code float}s, and one z-coordinate
+   for the whole model. So each vertex takes 8 bytes instead of 24, and
+   the model (with its line segments) takes about half as much memory,
+   and half as much memory bandwidth to render. A {@code float} has a
+   24 bit significand, so for a model in the unit square the rounding
+   error is far smaller than a pixel at any resolution that this
+   project renders (see {@link #planar}).
+   <p>
+   The memory is released as soon as {@link #close} is called; it does
+   not wait for the garbage collector. The model must not be rendered
+   (or read in any other way) after it has been closed.
+*/
+public class PackedModel extends Model implements AutoCloseable
+{
+   /** Where the packed data is kept. */
+   public enum Storage
+   {
+      /** direct (off-heap) memory, limited by {@code -XX:MaxDirectMemorySize} */
+      DIRECT,
+      /** a temporary file mapped into memory, limited only by disk space */
+      MAPPED,
+      /** direct memory if the model is small enough, otherwise a mapped file */
+      AUTO
+   }
+
+   static final int VERTEX_BYTES  = 24; // x, y, z doubles
+   static final int PLANAR_VERTEX_BYTES = 8; // x, y floats
+   static final int SEGMENT_BYTES =  8; // two int indices
+
+   // The data is split into chunks, since a ByteBuffer holds at most 2 GB.
+   private static final int VERTEX_SHIFT  = 24; // 16M vertices (384 MB) per chunk
+   private static final int SEGMENT_SHIFT = 24; // 16M segments (128 MB) per chunk
+   private static final int VERTEX_MASK   = (1 << VERTEX_SHIFT) - 1;
+   private static final int SEGMENT_MASK  = (1 << SEGMENT_SHIFT) - 1;
+
+   private static final ByteBuffer[] NO_CHUNKS = new ByteBuffer[0];
+
+   private final int  vertexCapacity;
+   private final long segmentCapacity;
+   private final boolean planar;
+   private final int  vertexBytes; // VERTEX_BYTES, or PLANAR_VERTEX_BYTES
+   private final double planeZ;    // the z-coordinate of a planar model's vertices
+   private ByteBuffer[] vertexChunks;
+   private ByteBuffer[] segmentChunks;
+   private ByteBuffer[] owned;   // the buffers to release in close()
+   private Path tempFile;        // the file behind MAPPED storage
+   private int  vertexCount  = 0;
+   private long segmentCount = 0;
+
+
+   /**
+      Create an empty {@code PackedModel} with room for the given
+      number of vertices and line segments.
+
+      @param name             name for this model
+      @param vertexCapacity   maximum number of vertices
+      @param segmentCapacity  maximum number of line segments
+      @param storage          where to keep the packed data
+      @throws IllegalArgumentException if there are more than {@code 2^31-1} vertices
+      @throws java.io.UncheckedIOException if a MAPPED file cannot be created
+   */
+   public PackedModel(final String name,
+                      final long vertexCapacity,
+                      final long segmentCapacity,
+                      final Storage storage)
+   {
+      this(name, vertexCapacity, segmentCapacity, storage, false, 0.0);
+   }
+
+
+   /**
+      Create an empty planar {@code PackedModel}, whose vertices are all
+      in the plane {@code z}, with room for the given number of vertices
+      and line segments. The x and y coordinates of the vertices are
+      kept as {@code float}s.
+
+      @param name             name for this model
+      @param vertexCapacity   maximum number of vertices
+      @param segmentCapacity  maximum number of line segments
+      @param storage          where to keep the packed data
+      @param z                z-coordinate of every vertex
+      @throws IllegalArgumentException if there are more than {@code 2^31-1} vertices
+      @throws java.io.UncheckedIOException if a MAPPED file cannot be created
+   */
+   public PackedModel(final String name,
+                      final long vertexCapacity,
+                      final long segmentCapacity,
+                      final Storage storage,
+                      final double z)
+   {
+      this(name, vertexCapacity, segmentCapacity, storage, true, z);
+   }
+
+
+   private PackedModel(final String name,
+                       final long vertexCapacity,
+                       final long segmentCapacity,
+                       final Storage storage,
+                       final boolean planar,
+                       final double z)
+   {
+      super(name);
+      if (vertexCapacity < 0 || vertexCapacity > Integer.MAX_VALUE)
+         throw new IllegalArgumentException("a PackedModel holds at most 2^31-1 vertices");
+      if (segmentCapacity < 0)
+         throw new IllegalArgumentException("segmentCapacity must not be negative");
+
+      this.vertexCapacity = (int)vertexCapacity;
+      this.segmentCapacity = segmentCapacity;
+      this.planar = planar;
+      this.vertexBytes = planar ? PLANAR_VERTEX_BYTES : VERTEX_BYTES;
+      this.planeZ = z;
+
+      final long bytes = vertexBytes * vertexCapacity + SEGMENT_BYTES * segmentCapacity;
+      final boolean direct = (Storage.DIRECT == storage)
+                          || (Storage.AUTO == storage && bytes <= Runtime.getRuntime().maxMemory() / 2);
+      if (direct)
+      {
+         vertexChunks  = allocateDirect(vertexCapacity,  VERTEX_SHIFT,  vertexBytes);
+         segmentChunks = allocateDirect(segmentCapacity, SEGMENT_SHIFT, SEGMENT_BYTES);
+      }
+      else
+      {
+         allocateMapped(vertexCapacity, segmentCapacity);
+      }
+      owned = concat(vertexChunks, segmentChunks);
+   }
+
+
+   /**
+      A {@code PackedModel} that is a view of existing buffers, for example
+      of a memory-mapped file. The buffers hold {@code vertexCount} vertices,
+      as packed x, y, z doubles, and {@code segmentCount} line segments, as
+      packed pairs of int indices, in the given byte order.
+
+      @param name          name for the model
+      @param vertices      {@link ByteBuffer} holding the vertices
+      @param vertexCount   number of vertices
+      @param segments      {@link ByteBuffer} holding the line segments
+      @param segmentCount  number of line segments
+      @param order         the {@link ByteOrder} of the data
+      @param owner         a direct or mapped buffer to release when the model is closed, or {@code null}
+   */
+   private PackedModel(final String name,
+                       final ByteBuffer vertices, final int vertexCount,
+                       final ByteBuffer segments, final long segmentCount,
+                       final ByteOrder order,
+                       final ByteBuffer owner)
+   {
+      super(name);
+      this.vertexCapacity = vertexCount;
+      this.segmentCapacity = segmentCount;
+      this.planar = false;
+      this.vertexBytes = VERTEX_BYTES;
+      this.planeZ = 0.0;
+      this.vertexCount = vertexCount;
+      this.segmentCount = segmentCount;
+      this.vertexChunks  = slice(vertices, vertexCount,  VERTEX_SHIFT,  VERTEX_BYTES,  order);
+      this.segmentChunks = slice(segments, segmentCount, SEGMENT_SHIFT, SEGMENT_BYTES, order);
+      this.owned = (null == owner) ? NO_CHUNKS : new ByteBuffer[]{owner};
+   }
+
+
+   /**
+      Create a read-only {@code PackedModel} that is a view of packed data
+      in existing buffers. No data is copied.
+      <p>
+      The vertex buffer holds, starting at its position, {@code vertexCount}
+      vertices as x, y, z {@code double}s. The segment buffer holds, starting
+      at its position, {@code segmentCount} line segments as pairs of
+      {@code int} vertex indices. Each buffer must be smaller than 2 GB.
+
+      @param name          name for the model
+      @param vertices      {@link ByteBuffer} holding the vertices
+      @param vertexCount   number of vertices
+      @param segments      {@link ByteBuffer} holding the line segments
+      @param segmentCount  number of line segments
+      @param order         the {@link ByteOrder} of the data
+      @param owner         a direct or mapped buffer to release when the model is closed, or {@code null}
+      @return a {@code PackedModel} that reads from the given buffers
+   */
+   public static PackedModel wrap(final String name,
+                                  final ByteBuffer vertices, final int vertexCount,
+                                  final ByteBuffer segments, final long segmentCount,
+                                  final ByteOrder order,
+                                  final ByteBuffer owner)
+   {
+      return new PackedModel(name, vertices, vertexCount, segments, segmentCount,
+                             order, owner);
+   }
+
+
+   /**
+      Make a planar copy of a {@link Model} or {@code PackedModel} whose
+      vertices are all in one z-plane, with the same vertices (rounded
+      to {@code float}s) and line segments, in the same order. The
+      original model is not changed (or closed).
+
+      @param model    a {@link Model}, made up of line segments and
+                      {@link LineStrip}s, or a {@code PackedModel}
+      @param storage  where to keep the copy's packed data
+      @return a planar {@code PackedModel}, or {@code null} if {@code model}
+              is not in one z-plane or has primitives that are not line segments
+              or line strips (each line strip is copied as its line segments)
+   */
+   public static PackedModel planar(final Model model, final Storage storage)
+   {
+      final PackedModel packed = (model instanceof PackedModel) ? (PackedModel)model : null;
+      final int vertices = (null == packed) ? model.vertexList.size() : packed.getVertexCount();
+      final long segments = (null == packed) ? LineStrip.segmentCount(model) : packed.getSegmentCount();
+      final double z = (0 == vertices) ? 0.0
+                     : (null == packed) ? model.vertexList.get(0).z : packed.getZ(0);
+      for (int i = 0; i < vertices; ++i)
+      {
+         final double vz = (null == packed) ? model.vertexList.get(i).z : packed.getZ(i);
+         if (vz != z) return null;
+      }
+      for (final Primitive p : model.primitiveList)
+      {
+         if (! (p instanceof LineSegment || p instanceof LineStrip)) return null;
+      }
+
+      final PackedModel copy = new PackedModel(model.getName(), vertices, segments, storage, z);
+      for (int i = 0; i < vertices; ++i)
+      {
+         if (null == packed)
+         {
+            final Vertex v = model.vertexList.get(i);
+            copy.setVertex(i, v.x, v.y, z);
+         }
+         else
+         {
+            copy.setVertex(i, packed.getX(i), packed.getY(i), z);
+         }
+      }
+      if (null == packed)
+      {
+         long s = 0;
+         for (final Primitive p : model.primitiveList)
+         {
+            if (p instanceof LineStrip)
+            {
+               final LineStrip strip = (LineStrip)p;
+               final int end = strip.getFirst() + strip.getVertexCount();
+               for (int v = strip.getFirst() + 1; v < end; ++v)
+               {
+                  copy.setSegment(s++, v - 1, v);
+               }
+            }
+            else
+            {
+               copy.setSegment(s++, p.vIndexList.get(0), p.vIndexList.get(1));
+            }
+         }
+      }
+      else
+      {
+         for (long s = 0; s < segments; ++s)
+         {
+            copy.setSegment(s, packed.getStart(s), packed.getEnd(s));
+         }
+      }
+      copy.setCounts(vertices, segments);
+      return copy;
+   }
+
+
+   /**
+      Are this model's vertices kept as {@code float} x and y coordinates
+      in one z-plane?
+
+      @return {@code true} if this is a planar model
+   */
+   public final boolean isPlanar()
+   {
+      return planar;
+   }
+
+
+   /**
+      Get the number of vertices in this model.
+
+      @return the number of vertices in this model
+   */
+   public final int getVertexCount()
+   {
+      return vertexCount;
+   }
+
+
+   /**
+      Get the number of line segments in this model.
+
+      @return the number of line segments in this model
+   */
+   public final long getSegmentCount()
+   {
+      return segmentCount;
+   }
+
+
+   /**
+      Get the x-coordinate of a vertex.
+
+      @param v  index of a vertex
+      @return the x-coordinate of the vertex
+   */
+   public final double getX(final int v)
+   {
+      final ByteBuffer chunk = vertexChunks[v >>> VERTEX_SHIFT];
+      return planar ? chunk.getFloat((v & VERTEX_MASK) * PLANAR_VERTEX_BYTES)
+                    : chunk.getDouble((v & VERTEX_MASK) * VERTEX_BYTES);
+   }
+
+
+   /**
+      Get the y-coordinate of a vertex.
+
+      @param v  index of a vertex
+      @return the y-coordinate of the vertex
+   */
+   public final double getY(final int v)
+   {
+      final ByteBuffer chunk = vertexChunks[v >>> VERTEX_SHIFT];
+      return planar ? chunk.getFloat((v & VERTEX_MASK) * PLANAR_VERTEX_BYTES + 4)
+                    : chunk.getDouble((v & VERTEX_MASK) * VERTEX_BYTES + 8);
+   }
+
+
+   /**
+      Get the z-coordinate of a vertex.
+
+      @param v  index of a vertex
+      @return the z-coordinate of the vertex
+   */
+   public final double getZ(final int v)
+   {
+      return planar ? planeZ
+                    : vertexChunks[v >>> VERTEX_SHIFT].getDouble((v & VERTEX_MASK) * VERTEX_BYTES + 16);
+   }
+
+
+   /**
+      Get the index of the first vertex of a line segment.
+
+      @param s  index of a line segment
+      @return the index of the segment's first vertex
+   */
+   public final int getStart(final long s)
+   {
+      return segmentChunks[(int)(s >>> SEGMENT_SHIFT)].getInt((int)(s & SEGMENT_MASK) * SEGMENT_BYTES);
+   }
+
+
+   /**
+      Get the index of the second vertex of a line segment.
+
+      @param s  index of a line segment
+      @return the index of the segment's second vertex
+   */
+   public final int getEnd(final long s)
+   {
+      return segmentChunks[(int)(s >>> SEGMENT_SHIFT)].getInt((int)(s & SEGMENT_MASK) * SEGMENT_BYTES + 4);
+   }
+
+
+   /**
+      Append a vertex to this model.
+
+      @param x  x-coordinate of the new vertex
+      @param y  y-coordinate of the new vertex
+      @param z  z-coordinate of the new vertex
+      @return the index of the new vertex
+      @throws IllegalStateException if the model is full
+      @throws IllegalArgumentException if this model is planar and {@code z} is not its plane
+   */
+   public final int putVertex(final double x, final double y, final double z)
+   {
+      if (vertexCount == vertexCapacity)
+         throw new IllegalStateException("there is no room for another vertex in " + name);
+      final int v = vertexCount;
+      setVertex(v, x, y, z);
+      vertexCount = v + 1;
+      return v;
+   }
+
+
+   /**
+      Change the coordinates of an existing vertex.
+
+      @param v  index of the vertex
+      @param x  new x-coordinate
+      @param y  new y-coordinate
+      @param z  new z-coordinate
+      @throws IllegalArgumentException if this model is planar and {@code z} is not its plane
+   */
+   public final void setVertex(final int v, final double x, final double y, final double z)
+   {
+      final ByteBuffer chunk = vertexChunks[v >>> VERTEX_SHIFT];
+      if (planar)
+      {
+         if (z != planeZ)
+            throw new IllegalArgumentException("a vertex is not in the plane z = " + planeZ + " of " + name);
+         final int i = (v & VERTEX_MASK) * PLANAR_VERTEX_BYTES;
+         chunk.putFloat(i,     (float)x);
+         chunk.putFloat(i + 4, (float)y);
+         return;
+      }
+      final int i = (v & VERTEX_MASK) * VERTEX_BYTES;
+      chunk.putDouble(i,      x);
+      chunk.putDouble(i +  8, y);
+      chunk.putDouble(i + 16, z);
+   }
+
+
+   /**
+      Append a line segment to this model.
+
+      @param v0  index of the segment's first vertex
+      @param v1  index of the segment's second vertex
+      @throws IllegalStateException if the model is full
+   */
+   public final void putSegment(final int v0, final int v1)
+   {
+      if (segmentCount == segmentCapacity)
+         throw new IllegalStateException("there is no room for another line segment in " + name);
+      setSegment(segmentCount++, v0, v1);
+   }
+
+
+   /**
+      Change the vertices of an existing line segment.
+
+      @param s   index of the line segment
+      @param v0  index of the segment's new first vertex
+      @param v1  index of the segment's new second vertex
+   */
+   public final void setSegment(final long s, final int v0, final int v1)
+   {
+      final ByteBuffer chunk = segmentChunks[(int)(s >>> SEGMENT_SHIFT)];
+      final int i = (int)(s & SEGMENT_MASK) * SEGMENT_BYTES;
+      chunk.putInt(i,     v0);
+      chunk.putInt(i + 4, v1);
+   }
+
+
+   /**
+      Change the coordinates of a run of consecutive existing vertices,
+      with one bulk copy for each chunk of storage that the run is in.
+      Like {@link #setVertex}, this can be called from several threads
+      at once, for runs that do not overlap.
+
+      @param v      index of the first vertex of the run
+      @param xyz    the new coordinates, as x, y, z for each vertex
+      @param count  number of vertices in the run
+      @throws IllegalArgumentException if this model is planar and a vertex is not in its plane
+   */
+   public final void setVertices(final int v, final double[] xyz, final int count)
+   {
+      if (planar)
+      {
+         for (int i = 0; i < count; ++i)
+         {
+            setVertex(v + i, xyz[3*i], xyz[3*i + 1], xyz[3*i + 2]);
+         }
+         return;
+      }
+      for (int done = 0; done < count; )
+      {
+         final int first = v + done;
+         final int offset = first & VERTEX_MASK;
+         final int n = Math.min(count - done, (1 << VERTEX_SHIFT) - offset);
+         // The view has its own position, so the chunk itself is not changed.
+         final DoubleBuffer view = vertexChunks[first >>> VERTEX_SHIFT].asDoubleBuffer();
+         view.position(3 * offset);
+         view.put(xyz, 3 * done, 3 * n);
+         done += n;
+      }
+   }
+
+
+   /**
+      Change the vertices of a run of consecutive existing line segments,
+      with one bulk copy for each chunk of storage that the run is in.
+      Like {@link #setSegment}, this can be called from several threads
+      at once, for runs that do not overlap.
+
+      @param s      index of the first line segment of the run
+      @param pairs  the new vertex indices, two for each line segment
+      @param count  number of line segments in the run
+   */
+   public final void setSegments(final long s, final int[] pairs, final int count)
+   {
+      for (int done = 0; done < count; )
+      {
+         final long first = s + done;
+         final int offset = (int)(first & SEGMENT_MASK);
+         final int n = Math.min(count - done, (1 << SEGMENT_SHIFT) - offset);
+         final IntBuffer view = segmentChunks[(int)(first >>> SEGMENT_SHIFT)].asIntBuffer();
+         view.position(2 * offset);
+         view.put(pairs, 2 * done, 2 * n);
+         done += n;
+      }
+   }
+
+
+   /**
+      Set the number of vertices and line segments in this model.
+      <p>
+      A subclass that knows where each of its vertices and line segments
+      belongs can write them in any order, even from several threads at
+      once (each thread writing different indices), with {@link #setVertex}
+      and {@link #setSegment}, and then call this method, from the thread
+      that waited for the others, to make them part of the model.
+
+      @param vertexCount   number of vertices that have been written
+      @param segmentCount  number of line segments that have been written
+      @throws IllegalArgumentException if a count is larger than the model's capacity
+   */
+   protected final void setCounts(final int vertexCount, final long segmentCount)
+   {
+      if (vertexCount < 0 || vertexCount > vertexCapacity
+       || segmentCount < 0 || segmentCount > segmentCapacity)
+         throw new IllegalArgumentException("the counts do not fit in " + name);
+      this.vertexCount = vertexCount;
+      this.segmentCount = segmentCount;
+   }
+
+
+   /**
+      Get the number of bytes of packed data held by this model.
+
+      @return the size, in bytes, of this model's vertices and line segments
+   */
+   public final long getPackedBytes()
+   {
+      return (long)vertexBytes * vertexCapacity + SEGMENT_BYTES * segmentCapacity;
+   }
+
+
+   /**
+      Has this model been closed?
+
+      @return {@code true} if {@link #close} has been called
+   */
+   public final boolean isClosed()
+   {
+      return NO_CHUNKS == vertexChunks;
+   }
+
+
+   /**
+      Release this model's memory (and delete its temporary file, if it has one).
+      Calling {@code close} more than once has no effect.
+   */
+   @Override
+   public void close()
+   {
+      if (isClosed()) return;
+
+      // Drop every reference to the buffers before they are released,
+      // so a closed model fails with an exception instead of reading
+      // memory that no longer belongs to it.
+      final ByteBuffer[] release = owned;
+      vertexChunks = NO_CHUNKS;
+      segmentChunks = NO_CHUNKS;
+      owned = NO_CHUNKS;
+      vertexCount = 0;
+      segmentCount = 0;
+      for (final ByteBuffer b : release)
+      {
+         free(b);
+      }
+      if (null != tempFile)
+      {
+         try
+         {
+            Files.deleteIfExists(tempFile);
+         }
+         catch (IOException e)
+         {
+            // The file is also marked deleteOnExit.
+         }
+         tempFile = null;
+      }
+   }
+
+
+   /**
+      Release the memory of a direct or mapped {@link ByteBuffer} right away.
+      If the JVM does not allow this, the memory is released when the buffer
+      is garbage collected.
+
+      @param buffer  a direct or mapped {@link ByteBuffer} (not a slice or duplicate)
+   */
+   public static void free(final ByteBuffer buffer)
+   {
+      if (null == INVOKE_CLEANER || ! buffer.isDirect()) return;
+      try
+      {
+         INVOKE_CLEANER.invoke(UNSAFE, buffer);
+      }
+      catch (ReflectiveOperationException | RuntimeException e)
+      {
+         // Leave the buffer to the garbage collector.
+      }
+   }
+
+
+   @Override
+   public String toString()
+   {
+      return "PackedModel: " + name + "\n"
+           + "This PackedModel has " + vertexCount + " vertices"
+           + (planar ? " in the plane z = " + planeZ + ".\n" : ".\n")
+           + "This PackedModel has " + segmentCount + " line segments.\n"
+           + "This PackedModel uses " + getPackedBytes() + " bytes"
+           + ((null == tempFile) ? " of direct memory.\n" : " of the file " + tempFile + ".\n");
+   }
+
+
+   private static ByteBuffer[] allocateDirect(final long count, final int shift, final int bytes)
+   {
+      final ByteBuffer[] chunks = new ByteBuffer[chunkCount(count, shift)];
+      for (int c = 0; c < chunks.length; ++c)
+      {
+         final long n = Math.min(count - ((long)c << shift), 1L << shift);
+         chunks[c] = ByteBuffer.allocateDirect((int)(n * bytes)).order(ByteOrder.nativeOrder());
+      }
+      return chunks;
+   }
+
+
+   private void allocateMapped(final long vertices, final long segments)
+   {
+      try
+      {
+         tempFile = Files.createTempFile("fractal", ".packed");
+         tempFile.toFile().deleteOnExit();
+         try (FileChannel ch = FileChannel.open(tempFile, StandardOpenOption.READ,
+                                                          StandardOpenOption.WRITE))
+         {
+            long offset = 0;
+            vertexChunks = new ByteBuffer[chunkCount(vertices, VERTEX_SHIFT)];
+            for (int c = 0; c < vertexChunks.length; ++c)
+            {
+               final long n = Math.min(vertices - ((long)c << VERTEX_SHIFT), 1L << VERTEX_SHIFT);
+               vertexChunks[c] = ch.map(FileChannel.MapMode.READ_WRITE, offset, n * vertexBytes)
+                                   .order(ByteOrder.nativeOrder());
+               offset += n * vertexBytes;
+            }
+            segmentChunks = new ByteBuffer[chunkCount(segments, SEGMENT_SHIFT)];
+            for (int c = 0; c < segmentChunks.length; ++c)
+            {
+               final long n = Math.min(segments - ((long)c << SEGMENT_SHIFT), 1L << SEGMENT_SHIFT);
+               segmentChunks[c] = ch.map(FileChannel.MapMode.READ_WRITE, offset, n * SEGMENT_BYTES)
+                                    .order(ByteOrder.nativeOrder());
+               offset += n * SEGMENT_BYTES;
+            }
+         }
+      }
+      catch (IOException e)
+      {
+         throw new java.io.UncheckedIOException("could not create the file for " + name, e);
+      }
+   }
+
+
+   private static ByteBuffer[] slice(final ByteBuffer data, final long count,
+                                     final int shift, final int bytes,
+                                     final ByteOrder order)
+   {
+      final ByteBuffer[] chunks = new ByteBuffer[chunkCount(count, shift)];
+      for (int c = 0; c < chunks.length; ++c)
+      {
+         final long n = Math.min(count - ((long)c << shift), 1L << shift);
+         final ByteBuffer b = data.duplicate();
+         final int start = data.position() + (int)(((long)c << shift) * bytes);
+         b.limit(start + (int)(n * bytes)).position(start);
+         chunks[c] = b.slice().order(order);
+      }
+      return chunks;
+   }
+
+
+   private static int chunkCount(final long count, final int shift)
+   {
+      return (int)((count + (1L << shift) - 1) >>> shift);
+   }
+
+
+   private static ByteBuffer[] concat(final ByteBuffer[] a, final ByteBuffer[] b)
+   {
+      final ByteBuffer[] c = new ByteBuffer[a.length + b.length];
+      System.arraycopy(a, 0, c, 0, a.length);
+      System.arraycopy(b, 0, c, a.length, b.length);
+      return c;
+   }
+
+
+   // sun.misc.Unsafe.invokeCleaner() releases a direct buffer's memory
+   // (or unmaps a mapped buffer) immediately. It is looked up reflectively
+   // since it is not part of the Java SE API.
+   private static final Object UNSAFE;
+   private static final Method INVOKE_CLEANER;
+   static
+   {
+      Object unsafe = null;
+      Method invokeCleaner = null;
+      try
+      {
+         final Class<?> c = Class.forName("sun.misc.Unsafe");
+         final Field f = c.getDeclaredField("theUnsafe");
+         f.setAccessible(true);
+         unsafe = f.get(null);
+         invokeCleaner = c.getMethod("invokeCleaner", ByteBuffer.class);
+      }
+      catch (ReflectiveOperationException | RuntimeException e)
+      {
+         unsafe = null;
+         invokeCleaner = null;
+      }
+      UNSAFE = unsafe;
+      INVOKE_CLEANER = invokeCleaner;
+   }
+}//PackedModel
@@ -0,0 +1,194 @@
+/*
+
+*/
+
+package fractals.pipeline;
+
+/**
+   A {@link PackedModel} whose shape depends on a parameter (an angle,
+   for example), and whose coordinates can be recomputed in place when
+   the parameter changes, without rebuilding the model.
+   <p>
+   The fractals in this project that have a parameter have the same
+   vertices and line segments for every value of the parameter, only
+   the coordinates of the vertices change. A {@code ParametricModel}
+   builds its line segments once. Each vertex is either a root vertex,
+   whose coordinates are set by the subclass, or a derived vertex,
+   computed from two earlier vertices {@code p0} and {@code p1} by
+   one of a few rules,
+   <pre>{@code
+      p = a*p0 + b*p1 + c*perp(p0, p1)
+      where perp(p0, p1) = (y0 - y1, x1 - x0)
+   }</pre>
+   (a derived vertex is in the same z-plane as {@code p0}). Only the
+   coefficients {@code a}, {@code b}, {@code c} of each rule depend on
+   the parameter, so {@link #setParameter} sets the root vertices and the
+   rules, and then recomputes every derived vertex, in index order, into
+   the model's existing storage. Nothing is allocated, so a parameter can
+   be animated at the frame rate.
+   <p>
+   The two parent indices and the rule of each vertex are kept in arrays
+   on the Java heap (9 bytes per vertex).
+*/
+public abstract class ParametricModel extends PackedModel
+{
+   private final int[] parent0;
+   private final int[] parent1;
+   private final byte[] rule;
+   private final double[] a, b, c;
+   private double parameter = Double.NaN;
+
+
+   /**
+      Create an empty {@code ParametricModel} with room for the given
+      number of vertices and line segments.
+
+      @param name             name for this model
+      @param vertexCapacity   number of vertices the subclass will add
+      @param segmentCapacity  number of line segments the subclass will add
+      @param rules            number of rules used by the derived vertices (at most 127)
+      @throws IllegalArgumentException if there are too many vertices or rules
+   */
+   protected ParametricModel(final String name,
+                             final int vertexCapacity,
+                             final long segmentCapacity,
+                             final int rules)
+   {
+      super(name, vertexCapacity, segmentCapacity, Storage.AUTO);
+      if (rules < 1 || rules > Byte.MAX_VALUE)
+         throw new IllegalArgumentException("a ParametricModel has between 1 and 127 rules");
+      parent0 = new int[vertexCapacity];
+      parent1 = new int[vertexCapacity];
+      rule = new byte[vertexCapacity];
+      a = new double[rules];
+      b = new double[rules];
+      c = new double[rules];
+   }
+
+
+   /**
+      Append a root vertex, whose coordinates are set by the subclass
+      (with {@link #setVertex}) and are not recomputed by this class.
+
+      @param x  x-coordinate of the new vertex
+      @param y  y-coordinate of the new vertex
+      @param z  z-coordinate of the new vertex
+      @return the index of the new vertex
+   */
+   protected final int putRoot(final double x, final double y, final double z)
+   {
+      final int v = putVertex(x, y, z);
+      parent0[v] = -1;
+      return v;
+   }
+
+
+   /**
+      Append a derived vertex. Its coordinates are computed by
+      {@link #setParameter}.
+
+      @param p0  index of the vertex's first parent (an earlier vertex)
+      @param p1  index of the vertex's second parent (an earlier vertex)
+      @param r   the rule that computes the vertex from its parents
+      @return the index of the new vertex
+   */
+   protected final int putDerived(final int p0, final int p1, final int r)
+   {
+      final int v = putVertex(0.0, 0.0, 0.0);
+      parent0[v] = p0;
+      parent1[v] = p1;
+      rule[v] = (byte)r;
+      return v;
+   }
+
+
+   /**
+      Set the coefficients of one of the rules.
+
+      @param r   the rule
+      @param ra  the coefficient of the first parent
+      @param rb  the coefficient of the second parent
+      @param rc  the coefficient of the parents' perpendicular
+   */
+   protected final void setRule(final int r, final double ra, final double rb, final double rc)
+   {
+      a[r] = ra;
+      b[r] = rb;
+      c[r] = rc;
+   }
+
+
+   /**
+      Set the root vertices and the rules for a value of the parameter.
+      This is called by {@link #setParameter}, before the derived
+      vertices are recomputed.
+
+      @param parameter  the new value of the parameter
+   */
+   protected abstract void shape(double parameter);
+
+
+   /**
+      Change the parameter of this model and recompute the coordinates
+      of its vertices in place.
+      <p>
+      The model must not be rendered while this method is running.
+
+      @param parameter  the new value of the parameter
+   */
+   public final void setParameter(final double parameter)
+   {
+      this.parameter = parameter;
+      shape(parameter);
+      recompute();
+   }
+
+
+   /**
+      Recompute the coordinates of every derived vertex from the
+      current root vertices and rules.
+   */
+   protected final void recompute()
+   {
+      final int count = getVertexCount();
+      for (int v = 0; v < count; ++v)
+      {
+         final int i0 = parent0[v];
+         if (i0 < 0) continue;
+         final int i1 = parent1[v];
+         final int r = rule[v];
+         final double x0 = getX(i0), y0 = getY(i0);
+         final double x1 = getX(i1), y1 = getY(i1);
+         setVertex(v, a[r]*x0 + b[r]*x1 + c[r]*(y0 - y1),
+                      a[r]*y0 + b[r]*y1 + c[r]*(x1 - x0),
+                      getZ(i0));
+      }
+   }
+
+
+   /**
+      @return the current value of the parameter
+   */
+   public final double getParameter()
+   {
+      return parameter;
+   }
+
+
+   /**
+      @return a name for the parameter, for example {@code "angle"}
+   */
+   public abstract String getParameterName();
+
+
+   /**
+      @return the smallest sensible value of the parameter
+   */
+   public abstract double getMinParameter();
+
+
+   /**
+      @return the largest sensible value of the parameter
+   */
+   public abstract double getMaxParameter();
+}//ParametricModel
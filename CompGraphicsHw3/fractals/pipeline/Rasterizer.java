@@ -0,0 +1,482 @@
+/*
+
+*/
+
+package fractals.pipeline;
+
+import renderer.framebuffer.*;
+
+import java.util.Arrays;
+
+/**
+   Rasterize projected line segments and points straight into a
+   {@link FrameBuffer}'s {@code pixel_buffer}.
+   <p>
+   The arithmetic is the same as in the renderer's {@code Rasterize_Clip_Line}
+   and {@code Rasterize_Clip_Point} stages (the same viewport transformation,
+   the same rounding, and the same DDA loops), so this class lights the same
+   pixels as the renderer's pipeline. But it writes the pixels directly, and
+   it skips line segments that lie outside of the viewport, and it stops
+   stepping along a line segment once the line segment leaves the viewport.
+   <p>
+   The input coordinates are in the image plane, after projection, where
+   the visible region is {@code -1 <= x, y <= 1}.
+   <p>
+   A {@code Rasterizer} can be limited to a rectangle of its viewport.
+   Then it lights exactly the pixels in the rectangle that a
+   {@code Rasterizer} for the whole viewport would light, and it rejects
+   everything outside of the rectangle as early as it would reject
+   everything outside of the viewport.
+   <p>
+   A {@code Rasterizer} can also draw one tile of an image that is
+   larger than its {@link FrameBuffer} (see {@link #Rasterizer(FrameBuffer, int, int, int, int)}).
+   It lights the pixels of the tile that a {@code Rasterizer} for the whole
+   image would light, so the tiles of an image can be rendered separately
+   (even by different processes) and put together into the same picture.
+*/
+public final class Rasterizer
+{
+   // Off-screen runs longer than this are jumped over with a single
+   // multiplication instead of being stepped through. The jump can
+   // round differently than the renderer's repeated additions, but
+   // only a line segment that extends millions of pixels past the
+   // edge of the viewport is long enough to be jumped over.
+   private static final int LONG_SKIP = 1 << 20;
+
+   // The results of clipLine() and clipPoint().
+   static final int REJECTED = 0; // entirely outside of the viewport
+   static final int INSIDE   = 1; // entirely inside of the viewport
+   static final int CLIPPED  = 2; // crosses an edge of the viewport
+
+   private final int[] pixels;
+   private final int stride;   // width of the framebuffer
+   private final int origin;   // index in pixels of the viewport's upper left corner (can be outside of pixels for a tile)
+   private final int w;        // width of the viewport
+   private final int h;        // height of the viewport
+   final double sx;            // the viewport transformation's scale factors
+   final double sy;
+
+   // The rectangle that is drawn into, as columns left to right-1
+   // and rows top to bottom-1 of the viewport.
+   private final int left, right, top, bottom;
+
+   /** The color of the pixels, in the {@code pixel_buffer}'s {@code 0xAARRGGBB} format. */
+   public int color = 0xFFFFFFFF;
+
+   // The rectangle of the image plane that can reach a pixel of the
+   // viewport, with two pixels to spare. Anything outside of it is
+   // rejected by drawLine and drawPoint (for points with radius 0).
+   final double xMin, xMax, yMin, yMax;
+
+   // The number of pixels written so far, for RenderStats.
+   long written = 0;
+
+   // The current point of a polyline (see moveTo and lineTo), rounded
+   // to the viewport, and its outcode.
+   private double vxPen, vyPen;
+   private int codePen;
+
+
+   /**
+      Create a {@code Rasterizer} that draws into a {@link FrameBuffer.Viewport}.
+
+      @param vp  {@link FrameBuffer.Viewport} to draw into
+   */
+   public Rasterizer(final FrameBuffer.Viewport vp)
+   {
+      this(vp, 0, 0, vp.getWidthVP(), vp.getHeightVP());
+   }
+
+
+   /**
+      Create a {@code Rasterizer} that draws only into a rectangle of a
+      {@link FrameBuffer.Viewport}, the columns {@code x} to {@code x+width-1}
+      and the rows {@code y} to {@code y+height-1}, counted from the
+      viewport's upper left corner. The viewport transformation is still
+      the one for the whole viewport.
+
+      @param vp      {@link FrameBuffer.Viewport} to draw into
+      @param x       the rectangle's left column
+      @param y       the rectangle's top row
+      @param width   the rectangle's width, in pixels
+      @param height  the rectangle's height, in pixels
+      @throws IllegalArgumentException if the rectangle is not inside of the viewport
+   */
+   public Rasterizer(final FrameBuffer.Viewport vp,
+                     final int x, final int y,
+                     final int width, final int height)
+   {
+      this(vp.getFrameBuffer().pixel_buffer, vp.getFrameBuffer().width,
+           vp.vp_ul_y * vp.getFrameBuffer().width + vp.vp_ul_x,
+           vp.getWidthVP(), vp.getHeightVP(),
+           x, y, width, height);
+   }
+
+
+   /**
+      Create a {@code Rasterizer} that draws one tile of an image that is
+      {@code imageWidth} by {@code imageHeight} pixels into a {@link FrameBuffer}
+      that holds just the tile. Pixel {@code (tileX + i, tileY + j)} of the
+      image is pixel {@code (i, j)} of {@code tile}. The viewport
+      transformation is the one for the whole image.
+
+      @param tile         {@link FrameBuffer} that holds the tile
+      @param imageWidth   width of the whole image, in pixels
+      @param imageHeight  height of the whole image, in pixels
+      @param tileX        the column of the image that is the tile's left column
+      @param tileY        the row of the image that is the tile's top row
+      @throws IllegalArgumentException if the tile is not inside of the image
+   */
+   public Rasterizer(final FrameBuffer tile,
+                     final int imageWidth, final int imageHeight,
+                     final int tileX, final int tileY)
+   {
+      this(tile.pixel_buffer, tile.width,
+           -(tileY * tile.width + tileX),
+           imageWidth, imageHeight,
+           tileX, tileY, tile.width, tile.height);
+   }
+
+
+   private Rasterizer(final int[] pixels, final int stride, final int origin,
+                      final int w, final int h,
+                      final int x, final int y,
+                      final int width, final int height)
+   {
+      this.pixels = pixels;
+      this.stride = stride;
+      this.origin = origin;
+      this.w = w;
+      this.h = h;
+      if (x < 0 || y < 0 || width < 0 || height < 0 || x + width > w || y + height > h)
+         throw new IllegalArgumentException("the rectangle must be inside of the viewport");
+      this.left = x;
+      this.right = x + width;
+      this.top = y;
+      this.bottom = y + height;
+      this.sx = pixelsPerUnit(w);
+      this.sy = pixelsPerUnit(h);
+      this.xMin = -1 + (left - 2) / sx;
+      this.xMax = -1 + (right + 2) / sx;
+      this.yMin = -1 + (h - bottom - 2) / sy;
+      this.yMax = -1 + (h - top + 2) / sy;
+   }
+
+
+   /**
+      The scale factor of the viewport transformation: the number of
+      pixels for each unit of the image plane, in a viewport that is
+      {@code size} pixels wide (or high). So, in an orthographic view,
+      translating a model by {@code k / pixelsPerUnit(width)} moves its
+      image by {@code k} pixels.
+
+      @param size  the width (or height) of a viewport, in pixels
+      @return the number of pixels for each unit of the image plane
+   */
+   public static double pixelsPerUnit(final int size)
+   {
+      return size / 2.001;
+   }
+
+
+   /**
+      Draw the line segment from {@code (x0, y0)} to {@code (x1, y1)}.
+
+      @param x0  x-coordinate of the first endpoint, in the image plane
+      @param y0  y-coordinate of the first endpoint, in the image plane
+      @param x1  x-coordinate of the second endpoint, in the image plane
+      @param y1  y-coordinate of the second endpoint, in the image plane
+   */
+   public void drawLine(final double x0, final double y0,
+                        final double x1, final double y1)
+   {
+      // Transform to the viewport and round to the nearest pixel.
+      final double vx0 = Math.round(0.5 + sx * (x0 + 1));
+      final double vy0 = Math.round(0.5 + sy * (y0 + 1));
+      final double vx1 = Math.round(0.5 + sx * (x1 + 1));
+      final double vy1 = Math.round(0.5 + sy * (y1 + 1));
+      if (0 == (outcode(vx0, vy0) & outcode(vx1, vy1)))
+      {
+         drawViewportLine(vx0, vy0, vx1, vy1);
+      }
+   }
+
+
+   /**
+      Start a polyline at {@code (x, y)}, without drawing anything.
+
+      @param x  x-coordinate of the polyline's first point, in the image plane
+      @param y  y-coordinate of the polyline's first point, in the image plane
+   */
+   public void moveTo(final double x, final double y)
+   {
+      vxPen = Math.round(0.5 + sx * (x + 1));
+      vyPen = Math.round(0.5 + sy * (y + 1));
+      codePen = outcode(vxPen, vyPen);
+   }
+
+
+   /**
+      Draw the line segment from the polyline's current point to
+      {@code (x, y)}, which becomes the current point. This lights the
+      same pixels as {@link #drawLine}, but the current point was already
+      transformed to the viewport, rounded, and given its outcode, so
+      each shared endpoint of a polyline is only worked on once.
+
+      @param x  x-coordinate of the polyline's next point, in the image plane
+      @param y  y-coordinate of the polyline's next point, in the image plane
+   */
+   public void lineTo(final double x, final double y)
+   {
+      final double vx = Math.round(0.5 + sx * (x + 1));
+      final double vy = Math.round(0.5 + sy * (y + 1));
+      final int code = outcode(vx, vy);
+      if (0 == (codePen & code))
+      {
+         drawViewportLine(vxPen, vyPen, vx, vy);
+      }
+      vxPen = vx;
+      vyPen = vy;
+      codePen = code;
+   }
+
+
+   /**
+      The outcode of a point in the viewport's coordinates: one bit for
+      each edge of the viewport (with a one-pixel margin) that the point
+      is beyond. Pixel (x, y) of the viewport is written to column x-1
+      and row h-y, so only {@code left+1 <= x <= right} and
+      {@code h-bottom < y <= h-top} are visible. The one-pixel margin
+      covers the rounding of the DDA's accumulated slope. A line segment
+      whose endpoints are both beyond the same edge does not light any
+      pixels.
+
+      @param vx  x-coordinate of the point, in the viewport
+      @param vy  y-coordinate of the point, in the viewport
+      @return the point's outcode, {@code 0} if it is inside of the margin
+   */
+   private int outcode(final double vx, final double vy)
+   {
+      return ((vx < left)         ? 1 : 0) | ((vx > right + 1)   ? 2 : 0)
+           | ((vy < h - bottom)   ? 4 : 0) | ((vy > h - top + 1) ? 8 : 0);
+   }
+
+
+   /**
+      Draw a line segment whose endpoints have been transformed
+      to the viewport and rounded to the nearest pixel.
+
+      @param vx0  x-coordinate of the first endpoint, in the viewport
+      @param vy0  y-coordinate of the first endpoint, in the viewport
+      @param vx1  x-coordinate of the second endpoint, in the viewport
+      @param vy1  y-coordinate of the second endpoint, in the viewport
+   */
+   private void drawViewportLine(double vx0, double vy0,
+                                 double vx1, double vy1)
+   {
+      if (vx0 == vx1 && vy0 == vy1)
+      {
+         if (setPixel((int)vx0 - 1, h - (int)vy0)) ++written;
+      }
+      else if (Math.abs(vy1 - vy0) <= Math.abs(vx1 - vx0)) // slope <= 1
+      {
+         if (vx1 < vx0)
+         {
+            double t = vx0; vx0 = vx1; vx1 = t;
+            t = vy0; vy0 = vy1; vy1 = t;
+         }
+         final double m = (vy1 - vy0) / (vx1 - vx0);
+         int x = (int)vx0;
+         final int xEnd = Math.min((int)vx1, right);
+         double y = vy0;
+         if (x < 1 - LONG_SKIP) // jump to the left edge of the viewport
+         {
+            y += (1.0 - x) * m;
+            x = 1;
+         }
+         for (; x <= left; ++x) // step to the left edge, the same way the renderer does
+         {
+            y += m;
+         }
+         int count = 0;
+         for (; x <= xEnd; ++x, y += m)
+         {
+            if (setPixel(x - 1, h - (int)Math.round(y))) ++count;
+         }
+         written += count;
+      }
+      else // slope > 1
+      {
+         if (vy1 < vy0)
+         {
+            double t = vx0; vx0 = vx1; vx1 = t;
+            t = vy0; vy0 = vy1; vy1 = t;
+         }
+         final double m = (vx1 - vx0) / (vy1 - vy0);
+         int y = (int)vy0;
+         final int yEnd = Math.min((int)vy1, h - top);
+         double x = vx0;
+         if (y < 1 - LONG_SKIP) // jump to the bottom edge of the viewport
+         {
+            x += (1.0 - y) * m;
+            y = 1;
+         }
+         for (; y <= h - bottom; ++y) // step to the bottom edge, the same way the renderer does
+         {
+            x += m;
+         }
+         int count = 0;
+         for (; y <= yEnd; ++y, x += m)
+         {
+            if (setPixel((int)Math.round(x) - 1, h - y)) ++count;
+         }
+         written += count;
+      }
+   }
+
+
+   /**
+      Draw a point as a square of {@code (2*radius+1)} by {@code (2*radius+1)}
+      pixels centered on {@code (x, y)}.
+      <p>
+      The square is clipped to the viewport once, and then each of its rows
+      is filled with a single {@link Arrays#fill}, so large points cost
+      about as much as small ones.
+
+      @param x       x-coordinate of the point, in the image plane
+      @param y       y-coordinate of the point, in the image plane
+      @param radius  radius, in pixels, of the point
+   */
+   public void drawPoint(final double x, final double y, final int radius)
+   {
+      final int xr = (int)(double)Math.round(0.5 + sx * (x + 1));
+      final int yr = (int)(double)Math.round(0.5 + sy * (y + 1));
+      if (0 == radius) // the most common case, a single pixel
+      {
+         if (left < xr && xr <= right && h - bottom < yr && yr <= h - top)
+         {
+            pixels[origin + (h - yr) * stride + xr - 1] = color;
+            ++written;
+         }
+         return;
+      }
+      final int xMin = Math.max(xr - radius, left + 1);
+      final int xMax = Math.min(xr + radius, right);
+      final int yMin = Math.max(yr - radius, h - bottom + 1);
+      final int yMax = Math.min(yr + radius, h - top);
+      if (xMin > xMax || yMin > yMax) return;
+      written += (long)(xMax - xMin + 1) * (yMax - yMin + 1);
+      for (int py = yMin; py <= yMax; ++py)
+      {
+         final int row = origin + (h - py) * stride - 1;
+         Arrays.fill(pixels, row + xMin, row + xMax + 1, color);
+      }
+   }
+
+
+   /**
+      Decide whether the line segment from {@code (x0, y0)} to {@code (x1, y1)}
+      is inside of the viewport, outside of it, or crosses one of its edges.
+      A line segment that is {@link #REJECTED} does not light any pixels.
+
+      @param x0  x-coordinate of the first endpoint, in the image plane
+      @param y0  y-coordinate of the first endpoint, in the image plane
+      @param x1  x-coordinate of the second endpoint, in the image plane
+      @param y1  y-coordinate of the second endpoint, in the image plane
+      @return {@link #REJECTED}, {@link #INSIDE}, or {@link #CLIPPED}
+   */
+   int clipLine(final double x0, final double y0,
+                final double x1, final double y1)
+   {
+      final double vx0 = Math.round(0.5 + sx * (x0 + 1));
+      final double vy0 = Math.round(0.5 + sy * (y0 + 1));
+      final double vx1 = Math.round(0.5 + sx * (x1 + 1));
+      final double vy1 = Math.round(0.5 + sy * (y1 + 1));
+      final double xMin = Math.min(vx0, vx1), xMax = Math.max(vx0, vx1);
+      final double yMin = Math.min(vy0, vy1), yMax = Math.max(vy0, vy1);
+      if (xMax < left || xMin > right + 1 || yMax < h - bottom || yMin > h - top + 1)
+         return REJECTED;
+      else if (left < xMin && xMax <= right && h - bottom < yMin && yMax <= h - top)
+         return INSIDE;
+      else
+         return CLIPPED;
+   }
+
+
+   /**
+      Decide whether the square drawn for a point at {@code (x, y)} is
+      inside of the viewport, outside of it, or crosses one of its edges.
+
+      @param x       x-coordinate of the point, in the image plane
+      @param y       y-coordinate of the point, in the image plane
+      @param radius  radius, in pixels, of the point
+      @return {@link #REJECTED}, {@link #INSIDE}, or {@link #CLIPPED}
+   */
+   int clipPoint(final double x, final double y, final int radius)
+   {
+      final int xr = (int)(double)Math.round(0.5 + sx * (x + 1));
+      final int yr = (int)(double)Math.round(0.5 + sy * (y + 1));
+      if (xr + radius <= left || xr - radius > right || yr + radius <= h - bottom || yr - radius > h - top)
+         return REJECTED;
+      else if (left < xr - radius && xr + radius <= right && h - bottom < yr - radius && yr + radius <= h - top)
+         return INSIDE;
+      else
+         return CLIPPED;
+   }
+
+
+   /**
+      @return the number of pixels in the viewport
+   */
+   int pixelCount()
+   {
+      return w * h;
+   }
+
+
+   /**
+      Find the pixel that {@link #drawPoint} would light for a point of
+      radius {@code 0} at {@code (x, y)}.
+
+      @param x  x-coordinate of the point, in the image plane
+      @param y  y-coordinate of the point, in the image plane
+      @return the pixel's index in the viewport, counting across the rows
+              from the upper left corner, or {@code -1} if the point is
+              outside of the viewport (or of this rasterizer's rectangle)
+   */
+   int pixelIndex(final double x, final double y)
+   {
+      final double xr = Math.round(0.5 + sx * (x + 1));
+      final double yr = Math.round(0.5 + sy * (y + 1));
+      if (left < xr && xr <= right && h - bottom < yr && yr <= h - top)
+      {
+         return (h - (int)yr) * w + (int)xr - 1;
+      }
+      return -1;
+   }
+
+
+   /**
+      Set a pixel, given its index from {@link #pixelIndex}, without
+      counting it in {@link #written} (so that this can be called from
+      several threads, for different pixels).
+
+      @param index  the pixel's index, from {@link #pixelIndex}
+      @param argb   the pixel's color, as an ARGB {@code int}
+   */
+   void writePixel(final int index, final int argb)
+   {
+      pixels[origin + (index / w) * stride + index % w] = argb;
+   }
+
+
+   private boolean setPixel(final int x, final int y)
+   {
+      if (left <= x && x < right && top <= y && y < bottom)
+      {
+         pixels[origin + y * stride + x] = color;
+         return true;
+      }
+      return false;
+   }
+}//Rasterizer
@@ -0,0 +1,358 @@
+/*
+
+*/
+
+package fractals.pipeline;
+
+import renderer.scene.*;
+import renderer.pipeline.*;
+import renderer.framebuffer.*;
+
+/**
+   The options for rendering a frame with the {@link FractalPipeline},
+   in one object that is passed to
+   {@link FractalPipeline#render(Scene, FrameBuffer.Viewport, RenderContext)},
+   instead of in static flags.
+   <p>
+   The renderer's {@link Rasterize#doClipping} and {@link Rasterize#debug}
+   are static, so two threads that render at the same time cannot use
+   different options, and a thread that changes one of them changes it in
+   the middle of the other threads' frames. A {@code RenderContext} holds
+   its own copy of each option, and the pipeline reads the options only
+   from the context that it is given. A program keeps its own context (a
+   new one, made with the {@code with} methods, each time an option
+   changes) and passes it to every frame.
+   <p>
+   The static {@link FractalPipeline#render(Scene, FrameBuffer)} is a
+   wrapper that renders with the context made by {@link #fromGlobals},
+   from the renderer's flags and the global options of this class, which
+   are set with {@link #setClipping}, {@link #setDebug},
+   {@link #setPointCloud}, {@link #setChaosGame} and {@link #setStats}.
+   <p>
+   A {@code RenderContext} is immutable, so one context can be used by
+   any number of threads at the same time, except for a context that has a
+   {@link RenderStats} object (see {@link #withStats}), since the counters
+   of a frame are written into it. Each thread that collects statistics
+   needs a context with its own {@link RenderStats}. The other per-frame
+   scratch data (the {@link Rasterizer}, the blocks of the instrumented
+   pipeline, and the {@link ChaosGame}'s density buffers) belong to the
+   frame or to the thread that renders it.
+   <p>
+   The renderer's {@link Pipeline}, which renders the models when a
+   debugging flag is set (or when clipping is turned off), only reads
+   the static flags, and it sets the static
+   {@link PipelineLogger#debugScene} and {@link PipelineLogger#debugPosition}
+   itself. So the {@link FractalPipeline} only calls it while holding a lock,
+   with the static flags set to the options of the context (see
+   {@link #runRenderer}). The frames that need the renderer's
+   {@link Pipeline} are rendered one at a time, and their log
+   messages are not mixed together. The static flags are only changed
+   with {@link #setClipping} and {@link #setDebug}, which take the same
+   lock (as do the setters of the other global options), so a frame that the renderer's {@link Pipeline} is rendering
+   does not see a flag change halfway through, and does not put back the
+   old value of a flag that was changed while it was being rendered.
+*/
+public final class RenderContext
+{
+   // Held while the renderer's static flags are changed or used.
+   private static final Object RENDERER = new Object();
+
+   // The global options of fromGlobals, besides the renderer's flags (guarded by RENDERER).
+   private static int globalPointSize = -1;
+   private static long globalChaosGamePoints = 0;
+   private static RenderStats globalStats = null;
+
+   /** Clipping on, no debugging, line segments, no chaos game, no statistics. */
+   public static final RenderContext DEFAULT =
+                               new RenderContext(true, false, false, 0, 0, null);
+
+   private final boolean clipping;
+   private final boolean debug;
+   private final boolean pointCloud;
+   private final int pointSize;
+   private final long chaosGamePoints;
+   private final RenderStats stats;
+
+
+   private RenderContext(final boolean clipping,
+                         final boolean debug,
+                         final boolean pointCloud,
+                         final int pointSize,
+                         final long chaosGamePoints,
+                         final RenderStats stats)
+   {
+      this.clipping = clipping;
+      this.debug = debug;
+      this.pointCloud = pointCloud;
+      this.pointSize = pointSize;
+      this.chaosGamePoints = chaosGamePoints;
+      this.stats = stats;
+   }
+
+
+   /**
+      Make a {@code RenderContext} with the current values of the
+      renderer's {@link Rasterize#doClipping} and {@link Rasterize#debug},
+      and of the global options set by {@link #setPointCloud},
+      {@link #setChaosGame} and {@link #setStats}.
+
+      @return a context with the options of the static flags
+   */
+   public static RenderContext fromGlobals()
+   {
+      synchronized (RENDERER) // not while runRenderer has changed the flags
+      {
+         return new RenderContext(Rasterize.doClipping, Rasterize.debug,
+                                  globalPointSize >= 0, Math.max(globalPointSize, 0),
+                                  globalChaosGamePoints, globalStats);
+      }
+   }
+
+
+   /**
+      Set the renderer's static {@link Rasterize#doClipping}, which
+      {@link #fromGlobals} (and so the static
+      {@link FractalPipeline#render(Scene, FrameBuffer)}) reads.
+
+      @param clipping  clip the line segments and points to the viewport
+   */
+   public static void setClipping(final boolean clipping)
+   {
+      synchronized (RENDERER)
+      {
+         Rasterize.doClipping = clipping;
+      }
+   }
+
+
+   /**
+      Set the renderer's static {@link Rasterize#debug}, which
+      {@link #fromGlobals} (and so the static
+      {@link FractalPipeline#render(Scene, FrameBuffer)}) reads.
+
+      @param debug  log every pixel
+   */
+   public static void setDebug(final boolean debug)
+   {
+      synchronized (RENDERER)
+      {
+         Rasterize.debug = debug;
+      }
+   }
+
+
+   /**
+      Set the global point cloud option, which {@link #fromGlobals}
+      (and so the static {@link FractalPipeline#render(Scene, FrameBuffer)}) reads.
+
+      @param pointSize  the radius, in pixels, of the points of the point cloud,
+                        or a negative number to draw line segments
+   */
+   public static void setPointCloud(final int pointSize)
+   {
+      synchronized (RENDERER)
+      {
+         globalPointSize = Math.max(pointSize, -1);
+      }
+   }
+
+
+   /**
+      Set the global chaos game option, which {@link #fromGlobals}
+      (and so the static {@link FractalPipeline#render(Scene, FrameBuffer)}) reads.
+
+      @param chaosGamePoints  the number of points per frame for drawing an
+                              {@link InstancedModel} by the {@link ChaosGame},
+                              or {@code 0} to expand it
+   */
+   public static void setChaosGame(final long chaosGamePoints)
+   {
+      synchronized (RENDERER)
+      {
+         globalChaosGamePoints = Math.max(chaosGamePoints, 0);
+      }
+   }
+
+
+   /**
+      Set where {@link #fromGlobals} (and so the static
+      {@link FractalPipeline#render(Scene, FrameBuffer)}) puts the
+      statistics of each frame.
+
+      @param stats  the {@link RenderStats} to fill in, or {@code null} to not collect statistics
+   */
+   public static void setStats(final RenderStats stats)
+   {
+      synchronized (RENDERER)
+      {
+         globalStats = stats;
+      }
+   }
+
+
+   /**
+      @param clipping  clip the line segments and points to the viewport
+                       (when {@code false}, the renderer's {@link Pipeline}
+                       renders everything, the way it does without clipping)
+      @return a copy of this context with the given clipping option
+   */
+   public RenderContext withClipping(final boolean clipping)
+   {
+      return new RenderContext(clipping, debug, pointCloud, pointSize, chaosGamePoints, stats);
+   }
+
+
+   /**
+      @param debug  log every pixel, like the renderer's {@link Rasterize#debug}
+      @return a copy of this context with the given debugging option
+   */
+   public RenderContext withDebug(final boolean debug)
+   {
+      return new RenderContext(clipping, debug, pointCloud, pointSize, chaosGamePoints, stats);
+   }
+
+
+   /**
+      @param pointSize  the radius, in pixels, of the points of the point cloud,
+                        or a negative number to draw line segments
+      @return a copy of this context that draws every model as a point
+              cloud with the given size of points (or as line segments)
+   */
+   public RenderContext withPointCloud(final int pointSize)
+   {
+      return new RenderContext(clipping, debug, pointSize >= 0, Math.max(pointSize, 0),
+                               chaosGamePoints, stats);
+   }
+
+
+   /**
+      @param chaosGamePoints  the number of points per frame for drawing an
+                              {@link InstancedModel} by the {@link ChaosGame},
+                              or {@code 0} to expand it
+      @return a copy of this context with the given number of points
+   */
+   public RenderContext withChaosGame(final long chaosGamePoints)
+   {
+      return new RenderContext(clipping, debug, pointCloud, pointSize,
+                               Math.max(chaosGamePoints, 0), stats);
+   }
+
+
+   /**
+      @param stats  where to put the statistics of each frame,
+                    or {@code null} to not collect them
+      @return a copy of this context with the given statistics object
+   */
+   public RenderContext withStats(final RenderStats stats)
+   {
+      return new RenderContext(clipping, debug, pointCloud, pointSize, chaosGamePoints, stats);
+   }
+
+
+   /**
+      @return {@code true} if the line segments and points are clipped to the viewport
+   */
+   public boolean isClipping()
+   {
+      return clipping;
+   }
+
+
+   /**
+      @return {@code true} if every pixel is logged
+   */
+   public boolean isDebug()
+   {
+      return debug;
+   }
+
+
+   /**
+      @return {@code true} if every model is drawn as a point cloud
+   */
+   public boolean isPointCloud()
+   {
+      return pointCloud;
+   }
+
+
+   /**
+      @return the radius, in pixels, of the points of a point cloud
+   */
+   public int getPointSize()
+   {
+      return pointSize;
+   }
+
+
+   /**
+      @return the number of points per frame for the {@link ChaosGame}, or {@code 0}
+   */
+   public long getChaosGamePoints()
+   {
+      return chaosGamePoints;
+   }
+
+
+   /**
+      @return where the statistics of each frame are put, or {@code null}
+   */
+   public RenderStats getStats()
+   {
+      return stats;
+   }
+
+
+   /**
+      Does this context need the renderer's {@link Pipeline} to render the
+      regular models of a {@link Scene} (for debugging, or without clipping)?
+
+      @param scene  the {@link Scene} to render
+      @return {@code true} if the regular models must be rendered by the {@link Pipeline}
+   */
+   boolean usesRenderer(final Scene scene)
+   {
+      return scene.debug || debug || ! clipping;
+   }
+
+
+   /**
+      Render a {@link Scene} with the renderer's {@link Pipeline}, with the
+      renderer's static flags set to the options of this context. The flags
+      are put back the way they were when the scene is rendered.
+
+      @param scene  {@link Scene} to render
+      @param vp     {@link FrameBuffer.Viewport} to hold the rendered image
+   */
+   void runRenderer(final Scene scene, final FrameBuffer.Viewport vp)
+   {
+      synchronized (RENDERER)
+      {
+         final boolean doClipping = Rasterize.doClipping;
+         final boolean rasterizeDebug = Rasterize.debug;
+         Rasterize.doClipping = clipping;
+         Rasterize.debug = debug;
+         try
+         {
+            Pipeline.render(scene, vp);
+         }
+         finally
+         {
+            Rasterize.doClipping = doClipping;
+            Rasterize.debug = rasterizeDebug;
+         }
+      }
+   }
+
+
+   @Override
+   public String toString()
+   {
+      return String.format("RenderContext: clipping %s, debug %s, %s, chaos game %s, statistics %s",
+                           clipping ? "on" : "off",
+                           debug ? "on" : "off",
+                           pointCloud ? "point cloud (size " + pointSize + ")" : "line segments",
+                           (chaosGamePoints > 0) ? chaosGamePoints + " points" : "off",
+                           (null != stats) ? "on" : "off");
+   }
+}//RenderContext
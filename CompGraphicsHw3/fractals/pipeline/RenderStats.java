@@ -0,0 +1,220 @@
+/*
+
+*/
+
+package fractals.pipeline;
+
+import renderer.framebuffer.*;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+   Counters and timers for each stage of one frame rendered by the
+   {@link FractalPipeline}.
+   <p>
+   The pipeline only fills in a {@code RenderStats} object when one is
+   given to it in a {@link RenderContext} (see
+   {@link RenderContext#withStats}). Then the pipeline renders each model
+   in blocks of a few thousand primitives, and it runs each stage
+   (model-to-camera, projection, clipping, rasterization) over a whole
+   block before it starts the next stage, so that each stage can be timed
+   with just a few calls to {@link System#nanoTime} per block. When the
+   context has no {@code RenderStats}, the pipeline does not do any of
+   this work.
+   <p>
+   The counters and timers are reset at the beginning of each frame,
+   except for {@link #buildNanos}, which is set by the client program
+   whenever it builds a model.
+*/
+public final class RenderStats
+{
+   /** Time it took to build the current model (set by the client program). */
+   public long buildNanos;
+
+   /** Number of visible models that were rendered. */
+   public long models;
+   /** Number of vertices that were transformed to camera coordinates and projected. */
+   public long verticesTransformed;
+   /** Number of line segments that were entirely inside of the viewport. */
+   public long segmentsDrawn;
+   /** Number of line segments that crossed an edge of the viewport. */
+   public long segmentsClipped;
+   /** Number of line segments that were entirely outside of the viewport. */
+   public long segmentsRejected;
+   /** Number of points that were at least partly inside of the viewport. */
+   public long pointsDrawn;
+   /** Number of points that were entirely outside of the viewport. */
+   public long pointsRejected;
+   /** Number of copies of an {@link InstancedModel}'s motif that were skipped because they were outside of the view. */
+   public long instancesCulled;
+
+   /** Number of pixels written into the framebuffer (a pixel can be written more than once). */
+   public long pixelsWritten;
+
+   /** Time spent translating vertices to camera coordinates. */
+   public long model2cameraNanos;
+   /** Time spent projecting vertices onto the image plane. */
+   public long projectionNanos;
+   /** Time spent deciding which primitives are inside of the viewport. */
+   public long clipNanos;
+   /** Time spent rasterizing primitives into the framebuffer. */
+   public long rasterizeNanos;
+   /** Time spent in the renderer's {@link renderer.pipeline.Pipeline} (when a debugging flag is set). */
+   public long rendererNanos;
+   /** Time it took to render the whole frame. */
+   public long totalNanos;
+
+
+   /**
+      Set all of the counters and timers, except {@link #buildNanos}, to zero.
+   */
+   public void reset()
+   {
+      models = 0;
+      verticesTransformed = 0;
+      segmentsDrawn = 0;
+      segmentsClipped = 0;
+      segmentsRejected = 0;
+      pointsDrawn = 0;
+      pointsRejected = 0;
+      instancesCulled = 0;
+      pixelsWritten = 0;
+      model2cameraNanos = 0;
+      projectionNanos = 0;
+      clipNanos = 0;
+      rasterizeNanos = 0;
+      rendererNanos = 0;
+      totalNanos = 0;
+   }
+
+
+   /**
+      The statistics, one line of text per counter or stage.
+
+      @return a {@link List} of lines of text
+   */
+   public List<String> lines()
+   {
+      final long other = totalNanos - model2cameraNanos - projectionNanos
+                       - clipNanos - rasterizeNanos - rendererNanos;
+      final List<String> lines = new ArrayList<>();
+      lines.add(String.format("frame        %9.3f ms", totalNanos / 1e6));
+      lines.add(String.format("  model2cam  %9.3f ms", model2cameraNanos / 1e6));
+      lines.add(String.format("  projection %9.3f ms", projectionNanos / 1e6));
+      lines.add(String.format("  clipping   %9.3f ms", clipNanos / 1e6));
+      lines.add(String.format("  rasterize  %9.3f ms", rasterizeNanos / 1e6));
+      if (0 != rendererNanos)
+      {
+         lines.add(String.format("  renderer   %9.3f ms", rendererNanos / 1e6));
+      }
+      lines.add(String.format("  other      %9.3f ms", other / 1e6));
+      lines.add(String.format("build        %9.3f ms", buildNanos / 1e6));
+      lines.add(String.format("models       %,12d", models));
+      lines.add(String.format("vertices     %,12d", verticesTransformed));
+      lines.add(String.format("segments     %,12d drawn", segmentsDrawn));
+      lines.add(String.format("             %,12d clipped", segmentsClipped));
+      lines.add(String.format("             %,12d rejected", segmentsRejected));
+      if (0 != pointsDrawn || 0 != pointsRejected)
+      {
+         lines.add(String.format("points       %,12d drawn", pointsDrawn));
+         lines.add(String.format("             %,12d rejected", pointsRejected));
+      }
+      if (0 != instancesCulled)
+      {
+         lines.add(String.format("instances    %,12d culled", instancesCulled));
+      }
+      lines.add(String.format("pixels       %,12d", pixelsWritten));
+      return lines;
+   }
+
+
+   /**
+      Draw the statistics as a translucent box of text in
+      the upper left hand corner of a {@link FrameBuffer}.
+
+      @param fb  {@link FrameBuffer} to draw into
+   */
+   public void drawHUD(final FrameBuffer fb)
+   {
+      final List<String> lines = lines();
+      final Font font = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+
+      // Measure the text with a scratch image.
+      final BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+      final Graphics2D g0 = scratch.createGraphics();
+      final FontMetrics fm = g0.getFontMetrics(font);
+      g0.dispose();
+      int textWidth = 0;
+      for (final String line : lines)
+      {
+         textWidth = Math.max(textWidth, fm.stringWidth(line));
+      }
+      final int w = Math.min(textWidth + 8, fb.width);
+      final int h = Math.min(lines.size() * fm.getHeight() + 8, fb.height);
+      if (w <= 0 || h <= 0) return;
+
+      final BufferedImage hud = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+      final Graphics2D g = hud.createGraphics();
+      g.setColor(new Color(0, 0, 0, 0xE0));
+      g.fillRect(0, 0, w, h);
+      g.setFont(font);
+      g.setColor(Color.YELLOW);
+      int y = 4 + fm.getAscent();
+      for (final String line : lines)
+      {
+         g.drawString(line, 4, y);
+         y += fm.getHeight();
+      }
+      g.dispose();
+
+      // Blend the HUD over the framebuffer's pixels.
+      final int[] argb = hud.getRGB(0, 0, w, h, null, 0, w);
+      for (int row = 0; row < h; ++row)
+      {
+         for (int col = 0; col < w; ++col)
+         {
+            final int src = argb[row * w + col];
+            final int a = src >>> 24;
+            final int i = row * fb.width + col;
+            final int dst = fb.pixel_buffer[i];
+            final int r  = blend((src >> 16) & 0xFF, (dst >> 16) & 0xFF, a);
+            final int gr = blend((src >>  8) & 0xFF, (dst >>  8) & 0xFF, a);
+            final int b  = blend( src        & 0xFF,  dst        & 0xFF, a);
+            fb.pixel_buffer[i] = 0xFF000000 | (r << 16) | (gr << 8) | b;
+         }
+      }
+   }
+
+
+   private static int blend(final int src, final int dst, final int alpha)
+   {
+      return (src * alpha + dst * (255 - alpha)) / 255;
+   }
+
+
+   /**
+      The statistics on a single line.
+
+      @return a {@link String} representation of this {@code RenderStats}
+   */
+   @Override
+   public String toString()
+   {
+      return String.format("frame %.3f ms (model2cam %.3f, projection %.3f, clipping %.3f,"
+                         + " rasterize %.3f, renderer %.3f), build %.3f ms,"
+                         + " %d models, %d vertices, segments %d/%d/%d (drawn/clipped/rejected),"
+                         + " points %d/%d (drawn/rejected), %d pixels",
+                           totalNanos / 1e6, model2cameraNanos / 1e6, projectionNanos / 1e6,
+                           clipNanos / 1e6, rasterizeNanos / 1e6, rendererNanos / 1e6,
+                           buildNanos / 1e6,
+                           models, verticesTransformed,
+                           segmentsDrawn, segmentsClipped, segmentsRejected,
+                           pointsDrawn, pointsRejected, pixelsWritten);
+   }
+}//RenderStats
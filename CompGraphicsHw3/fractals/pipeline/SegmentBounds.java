@@ -0,0 +1,222 @@
+/*
+
+*/
+
+package fractals.pipeline;
+
+import renderer.scene.*;
+import renderer.scene.primitives.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+   For each model, the bounding rectangles, in the xy-plane, of the
+   blocks of {@link #BLOCK} consecutive primitives of the model (or line
+   segments of a {@link PackedModel}, or line segments of a {@link LineStrip}).
+   <p>
+   In an orthographic view, a block whose rectangle, translated, is
+   entirely outside of a {@link Rasterizer}'s rectangle cannot light
+   any of the rasterizer's pixels, so the whole block can be skipped.
+   This is what makes rendering a thin strip of a model (see
+   {@link FractalPipeline#scroll}) cost in proportion to the part of the
+   model that is in the strip, plus one test for each block.
+   <p>
+   A model's rectangles are computed the first time they are asked for
+   and then cached for as long as the model is reachable, the same way
+   as {@link UsedVertices}. They take four {@code double}s per block.
+   <p>
+   The primitives of a model must not change after its rectangles have been computed.
+*/
+final class SegmentBounds
+{
+   /** The number of primitives (or line segments) in each block. */
+   static final int BLOCK = 256;
+
+   private static final Map<Object, double[]> CACHE = new WeakHashMap<>();
+
+   /**
+      Get the rectangles of the blocks of primitives of a {@link Model}.
+      The rectangle of a block is {@code xMin, yMin, xMax, yMax} at index
+      {@code 4*b} of the array. The rectangle of a {@link LineStrip}
+      includes all of its vertices, and a block with a {@link Point}
+      in it is never outside of anything.
+
+      @param model  a {@link Model} (not a {@link PackedModel})
+      @return the rectangles of the blocks (do not modify them)
+   */
+   static double[] of(final Model model)
+   {
+      synchronized (CACHE)
+      {
+         double[] bounds = CACHE.get(model);
+         if (null == bounds)
+         {
+            bounds = compute(model);
+            CACHE.put(model, bounds);
+         }
+         return bounds;
+      }
+   }
+
+
+   /**
+      Get the rectangles of the blocks of line segments of a {@link PackedModel}.
+
+      @param model  a {@link PackedModel}
+      @return the rectangles of the blocks (do not modify them)
+   */
+   static double[] of(final PackedModel model)
+   {
+      synchronized (CACHE)
+      {
+         double[] bounds = CACHE.get(model);
+         if (null == bounds)
+         {
+            bounds = compute(model);
+            CACHE.put(model, bounds);
+         }
+         return bounds;
+      }
+   }
+
+
+   /**
+      Get the rectangles of the blocks of line segments of a {@link LineStrip}.
+      Block {@code b} is the line segments from vertex {@code first+b*BLOCK}
+      to vertex {@code first+(b+1)*BLOCK} (or the strip's last vertex).
+
+      @param model  the {@link Model} that holds the strip's vertices
+      @param strip  a {@link LineStrip} of {@code model}
+      @return the rectangles of the blocks (do not modify them)
+   */
+   static double[] of(final Model model, final LineStrip strip)
+   {
+      synchronized (CACHE)
+      {
+         double[] bounds = CACHE.get(strip);
+         if (null == bounds)
+         {
+            bounds = compute(model.vertexList, strip);
+            CACHE.put(strip, bounds);
+         }
+         return bounds;
+      }
+   }
+
+
+   /**
+      Is the rectangle at index {@code 4*b} of {@code bounds}, translated
+      by {@code t}, entirely outside of {@code rasterizer}'s rectangle?
+
+      @param bounds      the bounding rectangles, as {@code xMin, yMin, xMax, yMax} for each block
+      @param b           index of the block
+      @param t           translation of the model's {@link Position}
+      @param rasterizer  the {@link Rasterizer} whose rectangle is tested
+      @return {@code true} if no line segment of the block can light a pixel
+   */
+   static boolean outside(final double[] bounds, final int b,
+                          final Vector t, final Rasterizer rasterizer)
+   {
+      return t.x + bounds[4*b + 2] < rasterizer.xMin
+          || t.y + bounds[4*b + 3] < rasterizer.yMin
+          || t.x + bounds[4*b]     > rasterizer.xMax
+          || t.y + bounds[4*b + 1] > rasterizer.yMax;
+   }
+
+
+   private static double[] compute(final Model model)
+   {
+      final List<Primitive> primitives = model.primitiveList;
+      final List<Vertex> vertexList = model.vertexList;
+      final double[] bounds = empty((primitives.size() + BLOCK - 1) / BLOCK);
+      for (int i = 0; i < primitives.size(); ++i)
+      {
+         final Primitive p = primitives.get(i);
+         final int b = 4 * (i / BLOCK);
+         if (p instanceof LineStrip)
+         {
+            final LineStrip strip = (LineStrip)p;
+            final int end = strip.getFirst() + strip.getVertexCount();
+            for (int v = strip.getFirst(); v < end; ++v)
+            {
+               add(bounds, b, vertexList.get(v).x, vertexList.get(v).y);
+            }
+         }
+         else if (p instanceof Point) // a big point can reach past the rectangle's margin
+         {
+            add(bounds, b, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY);
+            add(bounds, b, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+         }
+         for (final int v : p.vIndexList)
+         {
+            add(bounds, b, vertexList.get(v).x, vertexList.get(v).y);
+         }
+      }
+      return bounds;
+   }
+
+
+   private static double[] compute(final PackedModel model)
+   {
+      final long segments = model.getSegmentCount();
+      final double[] bounds = empty((int)((segments + BLOCK - 1) / BLOCK));
+      for (long s = 0; s < segments; ++s)
+      {
+         final int b = (int)(4 * (s / BLOCK));
+         final int i0 = model.getStart(s);
+         final int i1 = model.getEnd(s);
+         add(bounds, b, model.getX(i0), model.getY(i0));
+         add(bounds, b, model.getX(i1), model.getY(i1));
+      }
+      return bounds;
+   }
+
+
+   private static double[] compute(final List<Vertex> vertexList, final LineStrip strip)
+   {
+      final int segments = strip.getSegmentCount();
+      final double[] bounds = empty((segments + BLOCK - 1) / BLOCK);
+      for (int s = 0; s < segments; ++s)
+      {
+         final int b = 4 * (s / BLOCK);
+         final Vertex v0 = vertexList.get(strip.getFirst() + s);
+         final Vertex v1 = vertexList.get(strip.getFirst() + s + 1);
+         add(bounds, b, v0.x, v0.y);
+         add(bounds, b, v1.x, v1.y);
+      }
+      return bounds;
+   }
+
+
+   private static double[] empty(final int blocks)
+   {
+      final double[] bounds = new double[4 * blocks];
+      for (int b = 0; b < bounds.length; b += 4)
+      {
+         bounds[b]     = Double.POSITIVE_INFINITY;
+         bounds[b + 1] = Double.POSITIVE_INFINITY;
+         bounds[b + 2] = Double.NEGATIVE_INFINITY;
+         bounds[b + 3] = Double.NEGATIVE_INFINITY;
+      }
+      return bounds;
+   }
+
+
+   private static void add(final double[] bounds, final int b,
+                           final double x, final double y)
+   {
+      bounds[b]     = Math.min(bounds[b],     x);
+      bounds[b + 1] = Math.min(bounds[b + 1], y);
+      bounds[b + 2] = Math.max(bounds[b + 2], x);
+      bounds[b + 3] = Math.max(bounds[b + 3], y);
+   }
+
+
+   // Private default constructor to enforce noninstantiable class.
+   // See Item 4 in "Effective Java", 3rd Ed, Joshua Bloch.
+   private SegmentBounds() {
+      throw new AssertionError();
+   }
+}//SegmentBounds
@@ -0,0 +1,101 @@
+/*
+
+*/
+
+package fractals.pipeline;
+
+import renderer.scene.*;
+import renderer.scene.primitives.*;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+   For each model, a bitmap of the vertices that are used by at least one
+   of the model's primitives. These are the vertices that
+   {@link renderer.scene.util.PointCloud#make} turns into points.
+   <p>
+   A model's bitmap is computed the first time it is asked for and then
+   cached for as long as the model is reachable, so a model can be drawn
+   as a point cloud again and again without allocating anything. The
+   bitmap takes one bit per vertex.
+   <p>
+   The primitives of a model must not change after its bitmap has been computed.
+*/
+final class UsedVertices
+{
+   private static final Map<Model, long[]> CACHE = new WeakHashMap<>();
+
+   /**
+      Get the bitmap of the vertices of {@code model} that are used by
+      a primitive. Bit {@code i % 64} of word {@code i / 64} is set
+      if vertex {@code i} is used.
+
+      @param model  a {@link Model} or {@link PackedModel}
+      @return the bitmap of the used vertices (do not modify it)
+   */
+   static long[] of(final Model model)
+   {
+      synchronized (CACHE)
+      {
+         long[] used = CACHE.get(model);
+         if (null == used)
+         {
+            used = compute(model);
+            CACHE.put(model, used);
+         }
+         return used;
+      }
+   }
+
+
+   private static long[] compute(final Model model)
+   {
+      if (model instanceof PackedModel)
+      {
+         final PackedModel packed = (PackedModel)model;
+         final long[] used = new long[(packed.getVertexCount() + 63) >>> 6];
+         final long segments = packed.getSegmentCount();
+         for (long s = 0; s < segments; ++s)
+         {
+            final int v0 = packed.getStart(s);
+            final int v1 = packed.getEnd(s);
+            used[v0 >>> 6] |= 1L << v0;
+            used[v1 >>> 6] |= 1L << v1;
+         }
+         return used;
+      }
+      else
+      {
+         final long[] used = new long[(model.vertexList.size() + 63) >>> 6];
+         for (final Primitive p : model.primitiveList)
+         {
+            if (p instanceof LineStrip)
+            {
+               // A strip's vertices are used only if it has a line segment.
+               final LineStrip strip = (LineStrip)p;
+               if (strip.getSegmentCount() > 0)
+               {
+                  final int end = strip.getFirst() + strip.getVertexCount();
+                  for (int v = strip.getFirst(); v < end; ++v)
+                  {
+                     used[v >>> 6] |= 1L << v;
+                  }
+               }
+            }
+            for (final int v : p.vIndexList)
+            {
+               used[v >>> 6] |= 1L << v;
+            }
+         }
+         return used;
+      }
+   }
+
+
+   // Private default constructor to enforce noninstantiable class.
+   // See Item 4 in "Effective Java", 3rd Ed, Joshua Bloch.
+   private UsedVertices() {
+      throw new AssertionError();
+   }
+}//UsedVertices
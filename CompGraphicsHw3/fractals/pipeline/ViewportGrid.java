@@ -0,0 +1,205 @@
+/*
+
+*/
+
+package fractals.pipeline;
+
+import renderer.scene.*;
+import renderer.framebuffer.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+   Render several scenes side by side, each one into its own
+   {@link FrameBuffer.Viewport} of a {@link FrameBuffer}, at the same time.
+   <p>
+   Each cell of the grid is rendered by the {@link FractalPipeline} on a
+   worker thread of its own, so the time for the whole grid is about the
+   time of the slowest cell, instead of the sum of the times of all the
+   cells (as long as there are enough cores). The viewports of the cells
+   must not overlap, and the scenes, and their models, must not be changed
+   until the frame is finished (see {@link FractalPipeline}).
+   <p>
+   {@link #render} returns right away. A {@link CellListener} is told,
+   on the worker's thread, as soon as each cell is finished, so that the
+   cells can be shown as they come in, and the returned
+   {@link CompletableFuture} is completed when every cell is finished.
+   <p>
+   Every cell of a frame is rendered with the same {@link RenderContext},
+   so changing a static flag while a frame is being rendered does not
+   change the options of some of its cells. The statistics of the cells
+   are not collected, since a {@link RenderStats} object cannot be shared
+   by threads. {@link #render} reports the time that each cell took instead.
+   <p>
+   The worker threads are daemon threads, so they do not keep the program alive.
+*/
+public final class ViewportGrid
+{
+   /**
+      Something that is told when each cell of a frame is finished.
+   */
+   @FunctionalInterface
+   public interface CellListener
+   {
+      /**
+         Called on a worker thread when a cell has been rendered.
+
+         @param cell   the index of the cell
+         @param nanos  the time it took to clear and render the cell
+      */
+      void cellRendered(int cell, long nanos);
+   }
+
+   private final ExecutorService workers;
+   private final int threads;
+
+
+   /**
+      Create a {@code ViewportGrid} with one worker thread for each processor.
+   */
+   public ViewportGrid()
+   {
+      this(Runtime.getRuntime().availableProcessors());
+   }
+
+
+   /**
+      Create a {@code ViewportGrid} with the given number of worker threads.
+
+      @param threads  the most cells that are rendered at the same time
+      @throws IllegalArgumentException if {@code threads} is less than 1
+   */
+   public ViewportGrid(final int threads)
+   {
+      if (threads < 1)
+         throw new IllegalArgumentException("a ViewportGrid needs at least one thread");
+
+      this.threads = threads;
+      final AtomicInteger number = new AtomicInteger();
+      this.workers = Executors.newFixedThreadPool(threads, r -> {
+         final Thread t = new Thread(r, "viewport-grid-" + number.incrementAndGet());
+         t.setDaemon(true);
+         return t;
+      });
+   }
+
+
+   /**
+      Divide a {@link FrameBuffer} into a grid of {@code cells} viewports,
+      with as many columns as rows, or one more column than rows (so that
+      four cells are two by two, and six cells are three by two). The cells
+      are in rows, from the upper left corner, and the cells of a row (or
+      a column) differ in size by at most one pixel.
+
+      @param fb     {@link FrameBuffer} to divide
+      @param cells  the number of cells
+      @return the viewports of the cells
+      @throws IllegalArgumentException if {@code cells} is less than 1
+   */
+   public static List<FrameBuffer.Viewport> layout(final FrameBuffer fb, final int cells)
+   {
+      if (cells < 1)
+         throw new IllegalArgumentException("a grid needs at least one cell");
+
+      final int columns = (int)Math.ceil(Math.sqrt(cells));
+      final int rows = (cells + columns - 1) / columns;
+      final List<FrameBuffer.Viewport> viewports = new ArrayList<>(cells);
+      for (int cell = 0; cell < cells; ++cell)
+      {
+         final int c = cell % columns;
+         final int r = cell / columns;
+         final int x0 = c * fb.width / columns, x1 = (c + 1) * fb.width / columns;
+         final int y0 = r * fb.height / rows,   y1 = (r + 1) * fb.height / rows;
+         viewports.add(fb.new Viewport(x0, y0, x1 - x0, y1 - y0));
+      }
+      return viewports;
+   }
+
+
+   /**
+      Start rendering each scene into the viewport with the same index,
+      with the options of the static flags (see {@link RenderContext#fromGlobals}).
+
+      @param scenes     the {@link Scene}s to render
+      @param viewports  the {@link FrameBuffer.Viewport}s, which must not overlap
+      @param listener   is told as each cell is finished, or {@code null}
+      @return completed with the time each cell took, in nanoseconds,
+              when all of the cells are finished
+      @throws IllegalArgumentException if there is not one viewport for each scene
+   */
+   public CompletableFuture<long[]> render(final List<Scene> scenes,
+                                           final List<FrameBuffer.Viewport> viewports,
+                                           final CellListener listener)
+   {
+      return render(scenes, viewports, RenderContext.fromGlobals(), listener);
+   }
+
+
+   /**
+      Start rendering each scene into the viewport with the same index.
+      Each viewport is cleared to its background color before its
+      scene is rendered.
+
+      @param scenes     the {@link Scene}s to render
+      @param viewports  the {@link FrameBuffer.Viewport}s, which must not overlap
+      @param context    the options for every cell (its statistics are not used)
+      @param listener   is told as each cell is finished, or {@code null}
+      @return completed with the time each cell took, in nanoseconds,
+              when all of the cells are finished
+      @throws IllegalArgumentException if there is not one viewport for each scene
+   */
+   public CompletableFuture<long[]> render(final List<Scene> scenes,
+                                           final List<FrameBuffer.Viewport> viewports,
+                                           final RenderContext context,
+                                           final CellListener listener)
+   {
+      if (scenes.size() != viewports.size())
+         throw new IllegalArgumentException("there must be one viewport for each scene");
+
+      final RenderContext cellContext = context.withStats(null);
+      final long[] nanos = new long[scenes.size()];
+      final CompletableFuture<?>[] cells = new CompletableFuture<?>[scenes.size()];
+      for (int i = 0; i < cells.length; ++i)
+      {
+         final int cell = i;
+         final Scene scene = scenes.get(cell);
+         final FrameBuffer.Viewport vp = viewports.get(cell);
+         cells[cell] = CompletableFuture.runAsync(() -> {
+            final long start = System.nanoTime();
+            vp.clearVP();
+            FractalPipeline.render(scene, vp, cellContext);
+            nanos[cell] = System.nanoTime() - start;
+            if (null != listener)
+            {
+               listener.cellRendered(cell, nanos[cell]);
+            }
+         }, workers);
+      }
+      // Each cell writes its own element of nanos before the join.
+      return CompletableFuture.allOf(cells).thenApply(v -> nanos);
+   }
+
+
+   /**
+      @return the number of worker threads
+   */
+   public int getThreadCount()
+   {
+      return threads;
+   }
+
+
+   /**
+      Stop the worker threads, after the cells that have
+      been started are finished.
+   */
+   public void close()
+   {
+      workers.shutdown();
+   }
+}//ViewportGrid
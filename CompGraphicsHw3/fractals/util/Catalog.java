@@ -0,0 +1,117 @@
+/*
+
+*/
+
+package fractals.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+   The catalog of fractal models that the client programs display,
+   in the order that they are displayed.
+   <p>
+   The catalog only holds {@link ModelSpec} descriptions. Each client
+   decides when (and on which thread) to build the models. The models
+   at the end of the catalog are {@link fractals.pipeline.PackedModel}s,
+   which should be built only when they are needed, and closed when
+   they are no longer needed.
+*/
+public final class Catalog
+{
+   private static final List<ModelSpec> SPECS = buildSpecs();
+
+   /**
+      Get the {@link ModelSpec} of every model in the catalog.
+
+      @return an unmodifiable {@link List} of all the catalog's {@link ModelSpec}s
+   */
+   public static List<ModelSpec> specs()
+   {
+      return SPECS;
+   }
+
+
+   private static List<ModelSpec> buildSpecs()
+   {
+      final List<ModelSpec> specs = new ArrayList<>();
+
+      for (int n = 0; n <= 16; ++n)
+         specs.add(new ModelSpec("Canopy", n, 30 + n));
+
+      for (int n = 0; n <= 7; ++n)
+         specs.add(new ModelSpec("KochCurve", n));
+
+      for (int n = 0; n <= 16; ++n)
+         specs.add(new ModelSpec("H_Tree", n));
+
+      for (int n = 0; n <= 10; ++n)
+         specs.add(new ModelSpec("SierpinskiTriangle", n));
+
+      for (int n = 0; n <= 8; ++n)
+         specs.add(new ModelSpec("BoxFractal", n));
+
+      for (int n = 0; n <= 20; ++n)
+         specs.add(new ModelSpec("C_Curve", n));
+
+      for (int n = 0; n <= 15; ++n)
+         specs.add(new ModelSpec("PythagorasTree", n, 0.4, 0.45));
+
+      // Models too big for Vertex and LineSegment objects.
+      for (int n = 21; n <= 26; ++n)
+         specs.add(new ModelSpec("PackedC_Curve", n));
+
+      for (int n = 8; n <= 12; ++n)
+         specs.add(new ModelSpec("PackedKochCurve", n));
+
+      for (int n = 16; n <= 20; ++n)
+         specs.add(new ModelSpec("PackedPythagorasTree", n, 0.4, 0.45));
+
+      // Models whose parameter can be changed while they are displayed.
+      specs.add(new ModelSpec("ParametricCanopy", 14, 45));
+      specs.add(new ModelSpec("ParametricPythagorasTree", 14, 90));
+      specs.add(new ModelSpec("ParametricSierpinskiTriangle", 9, 0));
+
+      // Models stored as one motif and the maps that place its copies.
+      specs.add(new ModelSpec("InstancedKochCurve", 10));
+      specs.add(new ModelSpec("InstancedC_Curve", 22));
+      specs.add(new ModelSpec("InstancedH_Tree", 20));
+      specs.add(new ModelSpec("InstancedSierpinskiTriangle", 12));
+      specs.add(new ModelSpec("InstancedBoxFractal", 9));
+      specs.add(new ModelSpec("InstancedCanopy", 20, 50));
+
+      // Curves built from transformed copies of their previous levels.
+      specs.add(new ModelSpec("DoubledKochCurve", 11));
+      specs.add(new ModelSpec("DoubledC_Curve", 24));
+
+      // Curves and trees expanded from L-system rules while they are rendered.
+      specs.add(new ModelSpec("LSystemKochCurve", 10));
+      specs.add(new ModelSpec("LSystemC_Curve", 22));
+      specs.add(new ModelSpec("LSystemH_Tree", 20));
+      specs.add(new ModelSpec("LSystemCanopy", 20, 50));
+      specs.add(new ModelSpec("LSystemDragonCurve", 20));
+      specs.add(new ModelSpec("LSystemHilbertCurve", 9));
+
+      // Models with float vertices in one z-plane, in about half the memory.
+      specs.add(new ModelSpec("PlanarPackedC_Curve", 24));
+      specs.add(new ModelSpec("PlanarPackedKochCurve", 11));
+      specs.add(new ModelSpec("PlanarPackedPythagorasTree", 18, 0.4, 0.45));
+/*
+      for (int n = 0; n <= 15; ++n)
+         specs.add(new ModelSpec("PythagorasTree", n, 60));
+*/
+/*
+      for (int n = 0; n <= 8; ++n)
+         specs.add(new ModelSpec("SierpinskiTriangle", n, -1,-1,0, 1,-1,0, -1,1,0));
+*/
+      return Collections.unmodifiableList(specs);
+   }
+
+
+   // Private default constructor to enforce noninstantiable class.
+   // See Item 4 in "Effective Java", 3rd Ed, Joshua Bloch.
+   private Catalog() {
+      throw new AssertionError();
+   }
+}//Catalog
@@ -0,0 +1,187 @@
+/*
+
+*/
+
+package fractals.util;
+
+import java.util.Arrays;
+
+/**
+   A histogram of non-negative {@code long} values, with buckets whose
+   width grows with the values they hold, the same way as in Gil Tene's
+   HdrHistogram.
+   <p>
+   Values less than {@code 2*}{@link #SUB_BUCKETS} are counted exactly.
+   Above that, each power of two is divided into {@link #SUB_BUCKETS}
+   buckets of equal width, so every value is counted in a bucket whose
+   width is less than 1% of the value. That is accurate enough for
+   percentiles like p50 and p99, and a histogram of latencies measured
+   in microseconds, from one microsecond up to a minute, needs fewer
+   than 4,000 buckets.
+   <p>
+   The array of counts grows as larger values are recorded. A histogram
+   is not thread safe.
+*/
+public final class LatencyHistogram
+{
+   /** The number of buckets per power of two (so the precision is 1/128). */
+   public static final int SUB_BUCKETS = 128;
+   private static final int SUB_BUCKET_BITS = 7;
+
+   private long[] counts = new long[2 * SUB_BUCKETS];
+   private long count = 0;
+   private long min = Long.MAX_VALUE;
+   private long max = 0;
+   private double sum = 0.0;
+
+
+   /**
+      Count a value.
+
+      @param value  the value to count (negative values are counted as 0)
+   */
+   public void record(final long value)
+   {
+      final long v = Math.max(value, 0);
+      final int i = index(v);
+      if (i >= counts.length)
+      {
+         counts = Arrays.copyOf(counts, Math.max(i + 1, 2 * counts.length));
+      }
+      ++counts[i];
+      ++count;
+      min = Math.min(min, v);
+      max = Math.max(max, v);
+      sum += v;
+   }
+
+
+   /**
+      Add all of the values counted by another histogram to this histogram.
+
+      @param other  the {@code LatencyHistogram} to add to this one
+   */
+   public void add(final LatencyHistogram other)
+   {
+      if (other.counts.length > counts.length)
+      {
+         counts = Arrays.copyOf(counts, other.counts.length);
+      }
+      for (int i = 0; i < other.counts.length; ++i)
+      {
+         counts[i] += other.counts[i];
+      }
+      count += other.count;
+      min = Math.min(min, other.min);
+      max = Math.max(max, other.max);
+      sum += other.sum;
+   }
+
+
+   /**
+      Forget all of the values counted so far.
+   */
+   public void reset()
+   {
+      counts = new long[2 * SUB_BUCKETS];
+      count = 0;
+      min = Long.MAX_VALUE;
+      max = 0;
+      sum = 0.0;
+   }
+
+
+   /**
+      @return the number of values counted
+   */
+   public long getCount()
+   {
+      return count;
+   }
+
+
+   /**
+      @return the smallest value counted, or 0 if nothing was counted
+   */
+   public long getMin()
+   {
+      return (0 == count) ? 0 : min;
+   }
+
+
+   /**
+      @return the largest value counted, or 0 if nothing was counted
+   */
+   public long getMax()
+   {
+      return max;
+   }
+
+
+   /**
+      @return the mean of the values counted, or 0 if nothing was counted
+   */
+   public double getMean()
+   {
+      return (0 == count) ? 0.0 : sum / count;
+   }
+
+
+   /**
+      Get the value that {@code percentile} percent of the counted
+      values are less than or equal to. The value returned is the
+      largest value of the bucket that holds the percentile (but never
+      more than {@link #getMax}), so it is never less than the exact
+      percentile, and never more than 1% larger.
+
+      @param percentile  a percentile between 0 and 100
+      @return the value at {@code percentile}, or 0 if nothing was counted
+   */
+   public long getValueAtPercentile(final double percentile)
+   {
+      if (0 == count) return 0;
+      final double p = Math.min(Math.max(percentile, 0.0), 100.0);
+      final long rank = Math.max(1, (long)Math.ceil(p / 100.0 * count));
+      long seen = 0;
+      for (int i = 0; i < counts.length; ++i)
+      {
+         seen += counts[i];
+         if (seen >= rank)
+         {
+            return Math.min(highestValueIn(i), max);
+         }
+      }
+      return max;
+   }
+
+
+   private static int index(final long v)
+   {
+      if (v < 2 * SUB_BUCKETS) return (int)v;
+      final int e = 63 - Long.numberOfLeadingZeros(v) - SUB_BUCKET_BITS;
+      return SUB_BUCKETS * (e + 1) + (int)(v >>> e) - SUB_BUCKETS;
+   }
+
+
+   private static long highestValueIn(final int index)
+   {
+      if (index < 2 * SUB_BUCKETS) return index;
+      final int e = index / SUB_BUCKETS - 1;
+      final long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+      return ((sub + 1) << e) - 1;
+   }
+
+
+   /**
+      @return a {@link String} with the count, p50, p99, and max of this histogram
+   */
+   @Override
+   public String toString()
+   {
+      return String.format("count = %d, p50 = %d, p99 = %d, max = %d",
+                           count,
+                           getValueAtPercentile(50),
+                           getValueAtPercentile(99),
+                           max);
+   }
+}//LatencyHistogram
@@ -0,0 +1,470 @@
+/*
+
+*/
+
+package fractals.util;
+
+import fractals.pipeline.PackedModel;
+import renderer.scene.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+   Keep the built models within a budget of heap memory.
+   <p>
+   Before a model is built, its size is estimated from its
+   {@link ModelSpec} (see {@link ModelMemory}). If it would not fit in
+   the budget, then, depending on the {@link Policy}, either the least
+   recently used models are evicted to make room for it, or it is not
+   built at all. Either way, a model that cannot fit is refused with an
+   {@link IllegalStateException} whose message explains why, before any
+   memory is allocated for it, instead of running out of memory half way
+   through building it.
+   <p>
+   The most recently used model is never evicted, since it is usually
+   the one that is being displayed.
+   <p>
+   A {@link PackedModel} keeps almost nothing on the heap, but its
+   vertices and line segments are in direct memory or in a temporary
+   file. Those bytes are counted against a second, off-heap budget (see
+   {@link ModelMemory#offHeapBytes}), in the same way, so that a very deep
+   packed model is refused instead of filling the disk.
+   <p>
+   The budgets can be set on the command line.
+<pre>{@code
+   java -Dfractals.heapBudget=1500m -Dfractals.offHeapBudget=8g -Dfractals.budgetPolicy=refuse ...
+}</pre>
+   The default budget is three quarters of the maximum heap size, the
+   default off-heap budget is unlimited, and the default policy is
+   {@code evict}.
+   <p>
+   A program that builds models on several threads can build a model
+   without holding the budget's lock: it calls {@link #check} before it
+   builds the model, and {@link #put} after.
+*/
+public final class ModelBudget
+{
+   /** The system property that sets the budget, in bytes (with an optional k, m, or g suffix). */
+   public static final String BUDGET_PROPERTY = "fractals.heapBudget";
+
+   /** The system property that sets the off-heap budget of the packed models, in bytes (with an optional k, m, or g suffix). */
+   public static final String OFF_HEAP_PROPERTY = "fractals.offHeapBudget";
+
+   /** The system property that sets the {@link Policy} ({@code evict} or {@code refuse}). */
+   public static final String POLICY_PROPERTY = "fractals.budgetPolicy";
+
+   /**
+      What to do when a model does not fit in the rest of the budget.
+   */
+   public enum Policy
+   {
+      /** Evict the least recently used models until the new model fits. */
+      EVICT,
+      /** Do not build the new model. */
+      REFUSE
+   }
+
+   private final long budget;
+   private final long offHeapBudget;
+   private final Policy policy;
+   private final LinkedHashMap<ModelSpec, Model> models = new LinkedHashMap<>(16, 0.75f, true);
+   private final Map<ModelSpec, Long> sizes = new HashMap<>();
+   private final Map<ModelSpec, Long> offHeapSizes = new HashMap<>();
+   private long used = 0;
+   private long offHeapUsed = 0;
+   private long evictions = 0;
+
+
+   /**
+      Create a {@code ModelBudget} with no limit on the off-heap memory.
+
+      @param budget  the number of bytes of heap that the models may use
+      @param policy  the {@link Policy} for models that do not fit
+      @throws IllegalArgumentException if {@code budget} is not positive
+   */
+   public ModelBudget(final long budget, final Policy policy)
+   {
+      this(budget, Long.MAX_VALUE, policy);
+   }
+
+
+   /**
+      Create a {@code ModelBudget}.
+
+      @param budget         the number of bytes of heap that the models may use
+      @param offHeapBudget  the number of bytes of direct memory and temporary
+                            files that the packed models may use
+      @param policy         the {@link Policy} for models that do not fit
+      @throws IllegalArgumentException if a budget is not positive
+   */
+   public ModelBudget(final long budget, final long offHeapBudget, final Policy policy)
+   {
+      if (budget <= 0 || offHeapBudget <= 0)
+         throw new IllegalArgumentException("the budget must be positive");
+      if (null == policy)
+         throw new NullPointerException("policy must not be null");
+      this.budget = budget;
+      this.offHeapBudget = offHeapBudget;
+      this.policy = policy;
+   }
+
+
+   /**
+      Create a {@code ModelBudget} from the {@link #BUDGET_PROPERTY},
+      {@link #OFF_HEAP_PROPERTY} and {@link #POLICY_PROPERTY} system properties.
+
+      @return a {@code ModelBudget}
+      @throws IllegalArgumentException if a property has a bad value
+   */
+   public static ModelBudget fromProperties()
+   {
+      final String b = System.getProperty(BUDGET_PROPERTY);
+      final long bytes = (null == b) ? Runtime.getRuntime().maxMemory() / 4 * 3
+                                     : parseSize(b);
+      final String o = System.getProperty(OFF_HEAP_PROPERTY);
+      final long offHeap = (null == o) ? Long.MAX_VALUE : parseSize(o);
+      final String p = System.getProperty(POLICY_PROPERTY, "evict");
+      final Policy policy;
+      try
+      {
+         policy = Policy.valueOf(p.trim().toUpperCase());
+      }
+      catch (IllegalArgumentException e)
+      {
+         throw new IllegalArgumentException("bad " + POLICY_PROPERTY + ": " + p, e);
+      }
+      return new ModelBudget(bytes, offHeap, policy);
+   }
+
+
+   /**
+      Parse a number of bytes, like the JVM's {@code -Xmx} option does,
+      for example {@code "1048576"}, {@code "512k"}, {@code "700m"}, or {@code "2g"}.
+
+      @param s  a number of bytes, with an optional suffix
+      @return the number of bytes
+      @throws IllegalArgumentException if {@code s} is not a valid size
+   */
+   public static long parseSize(final String s)
+   {
+      final String t = s.trim().toLowerCase();
+      final int last = t.length() - 1;
+      long unit = 1;
+      String digits = t;
+      if (last > 0)
+      {
+         switch (t.charAt(last))
+         {
+            case 'k' : unit = 1L << 10; digits = t.substring(0, last); break;
+            case 'm' : unit = 1L << 20; digits = t.substring(0, last); break;
+            case 'g' : unit = 1L << 30; digits = t.substring(0, last); break;
+            default  : break;
+         }
+      }
+      try
+      {
+         return Math.multiplyExact(Long.parseLong(digits), unit);
+      }
+      catch (NumberFormatException | ArithmeticException e)
+      {
+         throw new IllegalArgumentException("bad size: " + s, e);
+      }
+   }
+
+
+   /**
+      Get the model described by {@code spec}, building it with
+      {@code builder} if it has not been built (or has been evicted).
+
+      @param spec     the {@link ModelSpec} of the model
+      @param builder  builds the model (for example {@link ModelSpec#build})
+      @return the model
+      @throws IllegalStateException if the model does not fit in the budget
+   */
+   public Model get(final ModelSpec spec, final Function<ModelSpec, Model> builder)
+   {
+      final Model resident = models.get(spec);
+      if (null != resident) return resident;
+
+      check(spec);
+      final long estimate = ModelMemory.heapBytes(spec);
+      final long offHeapEstimate = ModelMemory.offHeapBytes(spec);
+      evictFor(estimate, offHeapEstimate);
+      if (used + estimate > budget || offHeapUsed + offHeapEstimate > offHeapBudget)
+      {
+         throw new IllegalStateException(String.format(
+            "%s needs about %s of heap and %s off of the heap, but the model that is"
+          + " being displayed is using %s of the %s budget and %s of the %s off-heap budget.",
+            spec, ModelMemory.format(estimate), ModelMemory.format(offHeapEstimate),
+            ModelMemory.format(used), ModelMemory.format(budget),
+            ModelMemory.format(offHeapUsed), formatOffHeapBudget()));
+      }
+
+      final Model model;
+      try
+      {
+         model = builder.apply(spec);
+      }
+      catch (OutOfMemoryError e) // the estimate was wrong, or something else is using the heap
+      {
+         throw new IllegalStateException(String.format(
+            "Ran out of memory while building %s (%s of the %s budget is in use).",
+            spec, ModelMemory.format(used), ModelMemory.format(budget)), e);
+      }
+      add(spec, model);
+      return model;
+   }
+
+
+   /**
+      Check, before a model is built, that the model described by
+      {@code spec} could be put into the budget (see {@link #put}). Nothing
+      is evicted. A model that is larger than a whole budget never fits,
+      and with the {@link Policy#REFUSE} policy, a model must fit in the
+      rest of the budgets.
+
+      @param spec  the {@link ModelSpec} of the model
+      @throws IllegalStateException if the model cannot fit in the budget
+   */
+   public void check(final ModelSpec spec)
+   {
+      if (sizes.containsKey(spec)) return;
+
+      final long estimate = ModelMemory.heapBytes(spec);
+      if (estimate > budget)
+      {
+         throw new IllegalStateException(String.format(
+            "%s needs about %s of heap, but the whole heap budget is %s."
+          + " Use -D%s=SIZE (and a larger -Xmx) to raise the budget.",
+            spec, ModelMemory.format(estimate), ModelMemory.format(budget),
+            BUDGET_PROPERTY));
+      }
+      final long offHeapEstimate = ModelMemory.offHeapBytes(spec);
+      if (offHeapEstimate > offHeapBudget)
+      {
+         throw new IllegalStateException(String.format(
+            "%s needs about %s of direct memory or temporary files, but the whole"
+          + " off-heap budget is %s. Use -D%s=SIZE to raise the budget.",
+            spec, ModelMemory.format(offHeapEstimate), formatOffHeapBudget(),
+            OFF_HEAP_PROPERTY));
+      }
+      if (Policy.REFUSE == policy
+          && (used + estimate > budget || offHeapUsed + offHeapEstimate > offHeapBudget))
+      {
+         throw new IllegalStateException(String.format(
+            "%s needs about %s of heap and %s off of the heap, but only %s of the %s budget"
+          + " and %s of the %s off-heap budget are left (%d models are using them).",
+            spec, ModelMemory.format(estimate), ModelMemory.format(offHeapEstimate),
+            ModelMemory.format(budget - used), ModelMemory.format(budget),
+            (Long.MAX_VALUE == offHeapBudget) ? "all" : ModelMemory.format(offHeapBudget - offHeapUsed),
+            formatOffHeapBudget(), models.size()));
+      }
+   }
+
+
+   /**
+      Put a model that was built without the budget's lock into the budget,
+      evicting other models (depending on the {@link Policy}) to make room
+      for it. If there already is a model for {@code spec}, that model is
+      kept, and {@code model} is not.
+
+      @param spec   the {@link ModelSpec} of the model
+      @param model  the model built from {@code spec}
+      @return the model for {@code spec} that is in the budget now
+      @throws IllegalStateException if the model does not fit in the budget
+              (the caller still owns {@code model}, and should close it)
+   */
+   public Model put(final ModelSpec spec, final Model model)
+   {
+      final Model resident = models.get(spec);
+      if (null != resident) return resident;
+
+      check(spec);
+      final long size = ModelMemory.heapBytes(model);
+      final long offHeap = ModelMemory.offHeapBytes(model);
+      evictFor(size, offHeap);
+      if (used + size > budget || offHeapUsed + offHeap > offHeapBudget)
+      {
+         throw new IllegalStateException(String.format(
+            "%s uses %s of heap and %s off of the heap, but the model that is"
+          + " being displayed is using %s of the %s budget and %s of the %s off-heap budget.",
+            spec, ModelMemory.format(size), ModelMemory.format(offHeap),
+            ModelMemory.format(used), ModelMemory.format(budget),
+            ModelMemory.format(offHeapUsed), formatOffHeapBudget()));
+      }
+      add(spec, model);
+      return model;
+   }
+
+
+   private void add(final ModelSpec spec, final Model model)
+   {
+      final long size = ModelMemory.heapBytes(model);
+      final long offHeap = ModelMemory.offHeapBytes(model);
+      models.put(spec, model);
+      sizes.put(spec, size);
+      offHeapSizes.put(spec, offHeap);
+      used += size;
+      offHeapUsed += offHeap;
+   }
+
+
+   /**
+      Would the model described by {@code spec} fit in the rest of the
+      budget, without evicting any models?
+
+      @param spec  a {@link ModelSpec}
+      @return {@code true} if the model has been built or would fit
+   */
+   public boolean fits(final ModelSpec spec)
+   {
+      return sizes.containsKey(spec)
+          || (used + ModelMemory.heapBytes(spec) <= budget
+              && offHeapUsed + ModelMemory.offHeapBytes(spec) <= offHeapBudget);
+   }
+
+
+   /**
+      Forget a model, so that its memory can be reclaimed. A
+      {@link PackedModel} is closed, so its memory is released right away.
+
+      @param spec  the {@link ModelSpec} of the model
+   */
+   public void remove(final ModelSpec spec)
+   {
+      final Model model = models.remove(spec);
+      if (null != model)
+      {
+         used -= sizes.remove(spec);
+         offHeapUsed -= offHeapSizes.remove(spec);
+         if (model instanceof PackedModel)
+         {
+            ((PackedModel)model).close();
+         }
+      }
+   }
+
+
+   // Evict least recently used models, but not the most recently used
+   // one, until another "needed" bytes (and "offHeapNeeded" off-heap
+   // bytes) will fit.
+   private void evictFor(final long needed, final long offHeapNeeded)
+   {
+      final Iterator<Map.Entry<ModelSpec, Model>> it = models.entrySet().iterator();
+      int remaining = models.size();
+      while ((used + needed > budget || offHeapUsed + offHeapNeeded > offHeapBudget)
+             && remaining > 1)
+      {
+         final Map.Entry<ModelSpec, Model> e = it.next();
+         it.remove();
+         --remaining;
+         used -= sizes.remove(e.getKey());
+         offHeapUsed -= offHeapSizes.remove(e.getKey());
+         ++evictions;
+         if (e.getValue() instanceof PackedModel)
+         {
+            ((PackedModel)e.getValue()).close();
+         }
+      }
+   }
+
+
+   private String formatOffHeapBudget()
+   {
+      return (Long.MAX_VALUE == offHeapBudget) ? "unlimited" : ModelMemory.format(offHeapBudget);
+   }
+
+
+   /**
+      @return the budget, in bytes
+   */
+   public long getBudgetBytes()
+   {
+      return budget;
+   }
+
+
+   /**
+      @return the estimated number of bytes used by the models that have been built
+   */
+   public long getUsedBytes()
+   {
+      return used;
+   }
+
+
+   /**
+      @return the off-heap budget, in bytes ({@link Long#MAX_VALUE} when there is no limit)
+   */
+   public long getOffHeapBudgetBytes()
+   {
+      return offHeapBudget;
+   }
+
+
+   /**
+      @return the number of bytes of direct memory and temporary files used by the packed models
+   */
+   public long getOffHeapUsedBytes()
+   {
+      return offHeapUsed;
+   }
+
+
+   /**
+      @return the {@link Policy} for models that do not fit
+   */
+   public Policy getPolicy()
+   {
+      return policy;
+   }
+
+
+   /**
+      @return the number of models that have been evicted
+   */
+   public long getEvictions()
+   {
+      return evictions;
+   }
+
+
+   /**
+      Is the model described by {@code spec} built (and not evicted)?
+
+      @param spec  a {@link ModelSpec}
+      @return {@code true} if the model is in memory
+   */
+   public boolean contains(final ModelSpec spec)
+   {
+      return sizes.containsKey(spec);
+   }
+
+
+   /**
+      Get the estimated heap size of each model that has been built.
+
+      @return an unmodifiable {@link Map} from {@link ModelSpec} to bytes
+   */
+   public Map<ModelSpec, Long> sizes()
+   {
+      return Collections.unmodifiableMap(sizes);
+   }
+
+
+   @Override
+   public String toString()
+   {
+      return String.format("%d models using %s of the %s heap budget and %s of the %s off-heap"
+                         + " budget (%s policy, %d evictions)",
+                           models.size(), ModelMemory.format(used),
+                           ModelMemory.format(budget),
+                           ModelMemory.format(offHeapUsed), formatOffHeapBudget(),
+                           policy.toString().toLowerCase(), evictions);
+   }
+}//ModelBudget
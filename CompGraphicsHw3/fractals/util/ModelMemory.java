@@ -0,0 +1,218 @@
+/*
+
+*/
+
+package fractals.util;
+
+import fractals.pipeline.InstancedModel;
+import fractals.pipeline.LSystemModel;
+import fractals.pipeline.PackedModel;
+import fractals.pipeline.ParametricModel;
+import renderer.scene.*;
+
+/**
+   Estimates of the memory used by fractal models.
+   <p>
+   A {@link Model} keeps each vertex in its own {@link Vertex} object,
+   and each line segment in a {@link renderer.scene.primitives.LineSegment}
+   object that has its own {@code ArrayList} of {@code Integer} indices.
+   The constants in this class were measured on a 64-bit JVM with
+   compressed object pointers, and they include the references in the
+   model's lists (and the lists' unused capacity, on average). They are
+   rounded up, so the estimates are a little larger than the real sizes.
+   <p>
+   Every frame that is rendered by the renderer's
+   {@link renderer.pipeline.Pipeline} makes two transformed copies of
+   the model's vertices (one in camera coordinates and one projected),
+   which share the original model's primitives. The
+   {@link fractals.pipeline.FractalPipeline} does not make any copies.
+*/
+public final class ModelMemory
+{
+   /** Heap bytes for each {@link Vertex} of a {@link Model}. */
+   public static final long VERTEX_BYTES = 48;
+
+   /** Heap bytes for each primitive of a {@link Model}. */
+   public static final long PRIMITIVE_BYTES = 132;
+
+   /** Heap bytes for each vertex of one transformed copy of a {@link Model}. */
+   public static final long COPY_VERTEX_BYTES = 44;
+
+   /** Heap bytes for a {@link Model} object, its two lists, and its name. */
+   public static final long MODEL_BYTES = 160;
+
+   /** Heap bytes for each vertex of a {@link ParametricModel} (its parents and rule). */
+   public static final long PARAMETRIC_VERTEX_BYTES = 9;
+
+   /** Heap bytes for the motif and maps of an {@link InstancedModel} (at most), not counting its bounds. */
+   public static final long INSTANCED_BYTES = 512;
+
+   /** Heap bytes for the compiled rules of an {@link LSystemModel} (at most). */
+   public static final long LSYSTEM_BYTES = 1024;
+
+   /** Off-heap bytes for each vertex of a {@link PackedModel} (three {@code double}s). */
+   public static final long PACKED_VERTEX_BYTES = 24;
+
+   /** Off-heap bytes for each vertex of a planar {@link PackedModel} (two {@code float}s). */
+   public static final long PLANAR_VERTEX_BYTES = 8;
+
+   /** Off-heap bytes for each line segment of a {@link PackedModel} (two {@code int} indices). */
+   public static final long PACKED_SEGMENT_BYTES = 8;
+
+
+   /**
+      Estimate the number of bytes of the Java heap that are retained by
+      a model. A {@link PackedModel} keeps its data off of the heap (see
+      {@link #offHeapBytes}), except for the parents of the vertices
+      of a {@link ParametricModel}.
+
+      @param model  a {@link Model} or {@link PackedModel}
+      @return the estimated size of {@code model} on the heap
+   */
+   public static long heapBytes(final Model model)
+   {
+      if (model instanceof InstancedModel)
+      {
+         return MODEL_BYTES + ((InstancedModel)model).getDataBytes();
+      }
+      if (model instanceof LSystemModel)
+      {
+         return MODEL_BYTES + ((LSystemModel)model).getDataBytes();
+      }
+      if (model instanceof ParametricModel)
+      {
+         return MODEL_BYTES + PARAMETRIC_VERTEX_BYTES * ((ParametricModel)model).getVertexCount();
+      }
+      if (model instanceof PackedModel)
+      {
+         return MODEL_BYTES;
+      }
+      return MODEL_BYTES
+           + VERTEX_BYTES * model.vertexList.size()
+           + PRIMITIVE_BYTES * model.primitiveList.size();
+   }
+
+
+   /**
+      Estimate the number of bytes of the Java heap that the model
+      described by a {@link ModelSpec} will retain, without building it.
+
+      @param spec  a {@link ModelSpec}
+      @return the estimated size of the model on the heap
+   */
+   public static long heapBytes(final ModelSpec spec)
+   {
+      if (spec.isInstanced())
+      {
+         return MODEL_BYTES + INSTANCED_BYTES + 32L * (spec.n + 1);
+      }
+      if (spec.isLSystem())
+      {
+         return MODEL_BYTES + LSYSTEM_BYTES;
+      }
+      if (spec.isParametric())
+      {
+         return saturatedSum(MODEL_BYTES,
+                             saturatedProduct(PARAMETRIC_VERTEX_BYTES, spec.vertexCount()),
+                             0);
+      }
+      if (spec.isPacked())
+      {
+         return MODEL_BYTES;
+      }
+      final long primitives = ! spec.isLineStrip() ? spec.segmentCount()
+                            : (spec.segmentCount() > 0) ? 1 : 0;
+      return saturatedSum(MODEL_BYTES,
+                          saturatedProduct(VERTEX_BYTES, spec.vertexCount()),
+                          saturatedProduct(PRIMITIVE_BYTES, primitives));
+   }
+
+
+   /**
+      The number of bytes that a {@link PackedModel} keeps off of the heap,
+      in direct buffers or memory mapped files.
+
+      @param model  a {@link Model} or {@link PackedModel}
+      @return the size of the model's off-heap data ({@code 0} for a {@link Model})
+   */
+   public static long offHeapBytes(final Model model)
+   {
+      return (model instanceof PackedModel) ? ((PackedModel)model).getPackedBytes() : 0;
+   }
+
+
+   /**
+      Estimate the number of bytes that the {@link PackedModel} described
+      by a {@link ModelSpec} will keep off of the heap, without building it.
+      The estimate is an upper bound (a model of line strips does not store
+      the indices of its line segments).
+
+      @param spec  a {@link ModelSpec}
+      @return the estimated size of the model's off-heap data ({@code 0} if it is not packed)
+   */
+   public static long offHeapBytes(final ModelSpec spec)
+   {
+      if (! spec.isPacked())
+      {
+         return 0;
+      }
+      return saturatedSum(saturatedProduct(spec.isPlanar() ? PLANAR_VERTEX_BYTES : PACKED_VERTEX_BYTES,
+                                           spec.vertexCount()),
+                          saturatedProduct(PACKED_SEGMENT_BYTES, spec.segmentCount()),
+                          0);
+   }
+
+
+   /**
+      Estimate the number of bytes allocated for each frame by the
+      renderer's {@link renderer.pipeline.Pipeline} when it renders
+      a model (the {@link fractals.pipeline.FractalPipeline} does
+      not allocate anything).
+
+      @param model  a {@link Model} or {@link PackedModel}
+      @return the estimated size of the two transformed copies of {@code model}
+   */
+   public static long frameCopyBytes(final Model model)
+   {
+      if (model instanceof PackedModel)
+      {
+         return 0; // the renderer's Pipeline cannot render a PackedModel
+      }
+      return 2 * (MODEL_BYTES + COPY_VERTEX_BYTES * model.vertexList.size());
+   }
+
+
+   /**
+      Format a number of bytes for people to read, for example {@code "12.3 MB"}.
+
+      @param bytes  a number of bytes
+      @return {@code bytes} in B, KB, MB, or GB
+   */
+   public static String format(final long bytes)
+   {
+      if (bytes < (1L << 10))      return bytes + " B";
+      else if (bytes < (1L << 20)) return String.format("%.1f KB", bytes / (double)(1L << 10));
+      else if (bytes < (1L << 30)) return String.format("%.1f MB", bytes / (double)(1L << 20));
+      else                         return String.format("%.2f GB", bytes / (double)(1L << 30));
+   }
+
+
+   private static long saturatedProduct(final long a, final long b)
+   {
+      return (b > Long.MAX_VALUE / a) ? Long.MAX_VALUE : a * b;
+   }
+
+
+   private static long saturatedSum(final long a, final long b, final long c)
+   {
+      final long ab = (a > Long.MAX_VALUE - b) ? Long.MAX_VALUE : a + b;
+      return (ab > Long.MAX_VALUE - c) ? Long.MAX_VALUE : ab + c;
+   }
+
+
+   // Private default constructor to enforce noninstantiable class.
+   // See Item 4 in "Effective Java", 3rd Ed, Joshua Bloch.
+   private ModelMemory() {
+      throw new AssertionError();
+   }
+}//ModelMemory
@@ -0,0 +1,747 @@
+/*
+
+*/
+
+package fractals.util;
+
+import fractals.*;
+import fractals.jfr.ModelGenerationEvent;
+import fractals.pipeline.DoubledCurve;
+import fractals.pipeline.InstancedModel;
+import fractals.pipeline.LSystem;
+import fractals.pipeline.LSystemModel;
+import fractals.pipeline.LineStrip;
+import fractals.pipeline.PackedModel;
+import fractals.pipeline.ParametricModel;
+import renderer.scene.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+   A description of a fractal model: the name of the class that
+   generates it, the generator's parameters, and the level {@code n}.
+   <p>
+   A {@code ModelSpec} is written the same way as the constructor call
+   that builds the model, for example
+   <pre>{@code
+      C_Curve(18)
+      Canopy(38, 12)
+      PythagorasTree(0.4, 0.45, 10)
+      SierpinskiTriangle(-1,-1,0, 1,-1,0, -1,1,0, 8)
+   }</pre>
+   The number of parameters selects the constructor. When a constructor
+   takes base vertices, their coordinates are given as three parameters
+   per {@link Vertex}.
+   <p>
+   A {@code ModelSpec} is a small, immutable value, so it can be used
+   as a map key, written to a file, or sent to another process, and
+   the model can always be rebuilt from it.
+   <p>
+   The generators whose names start with {@code Packed} build
+   {@link PackedModel}s, which keep their data off the Java heap.
+   The generators whose names start with {@code Parametric} build
+   {@link ParametricModel}s, which are {@link PackedModel}s whose
+   parameter can be changed after they are built. The generators whose
+   names start with {@code Instanced} build {@link InstancedModel}s,
+   which store one motif and the maps that place its copies. The
+   generators whose names start with {@code Doubled} build
+   {@link DoubledCurve}s, which are {@link PackedModel}s that are built
+   from transformed copies of their previous levels. The generators
+   whose names start with {@code LSystem} build {@link LSystemModel}s,
+   which are expanded from their rules while they are rendered, and the
+   ones that start with {@code PackedLSystem} expand the same rules into
+   {@link PackedModel}s. The name of any generator of a model in one
+   z-plane (other than the ones above that are not {@link PackedModel}s)
+   can be given the prefix {@code Planar}, for example
+   {@code PlanarKochCurve(7)}, for a planar {@link PackedModel} (see
+   {@link PackedModel#planar}) that keeps each vertex as two
+   {@code float}s, in about half of the memory.
+*/
+public final class ModelSpec
+{
+   public final String generator;
+   public final int n;
+   private final double[] params;
+
+
+   /**
+      Create a {@code ModelSpec} for the given generator, level, and parameters.
+
+      @param generator  simple name of the fractal class
+      @param n          level of the fractal
+      @param params     parameters for the fractal's constructor (not including {@code n})
+      @throws IllegalArgumentException if there is no such generator or constructor
+   */
+   public ModelSpec(final String generator, final int n, final double... params)
+   {
+      if (null == generator)
+         throw new NullPointerException("generator must not be null");
+      if (n < 0)
+         throw new IllegalArgumentException("n must be greater than or equal to 0");
+
+      this.generator = generator;
+      this.n = n;
+      this.params = params.clone();
+      checkArity(generator, params.length);
+   }
+
+
+   /**
+      Parse a {@code ModelSpec} written the same way as a constructor
+      call, for example {@code "Canopy(38, 12)"} or {@code "C_Curve(18)"}.
+      The last argument is always the level {@code n}.
+
+      @param s  a {@link String} describing a model
+      @return the {@code ModelSpec} described by {@code s}
+      @throws IllegalArgumentException if {@code s} is not a valid description
+   */
+   public static ModelSpec parse(final String s)
+   {
+      final String t = s.replaceAll("\\s", "");
+      final int open = t.indexOf('(');
+      if (open <= 0 || ! t.endsWith(")"))
+         throw new IllegalArgumentException("bad model description: " + s);
+
+      final String generator = t.substring(0, open);
+      final String[] args = t.substring(open + 1, t.length() - 1).split(",");
+      try
+      {
+         final int n = Integer.parseInt(args[args.length - 1]);
+         final double[] params = new double[args.length - 1];
+         for (int i = 0; i < params.length; ++i)
+         {
+            params[i] = Double.parseDouble(args[i]);
+         }
+         return new ModelSpec(generator, n, params);
+      }
+      catch (NumberFormatException e)
+      {
+         throw new IllegalArgumentException("bad model description: " + s, e);
+      }
+   }
+
+
+   /**
+      Get a copy of this spec's constructor parameters (not including {@code n}).
+
+      @return the parameters of this {@code ModelSpec}
+   */
+   public double[] getParams()
+   {
+      return params.clone();
+   }
+
+
+   /**
+      Return a {@code ModelSpec} that is the same as this one except for its level.
+
+      @param n  the new level
+      @return a {@code ModelSpec} with level {@code n}
+   */
+   public ModelSpec withLevel(final int n)
+   {
+      return new ModelSpec(generator, n, params);
+   }
+
+
+   /**
+      Does this {@code ModelSpec} describe a {@link PackedModel}?
+
+      @return {@code true} if {@link #build} returns a {@link PackedModel}
+   */
+   public boolean isPacked()
+   {
+      return generator.startsWith("Packed")
+          || generator.startsWith("Doubled")
+          || isParametric()
+          || isPlanar();
+   }
+
+
+   /**
+      Does this {@code ModelSpec} describe a planar {@link PackedModel},
+      whose vertices are kept as {@code float}s?
+
+      @return {@code true} if {@link #build} returns a planar {@link PackedModel}
+   */
+   public boolean isPlanar()
+   {
+      return generator.startsWith("Planar");
+   }
+
+
+   /**
+      Get the {@code ModelSpec} of the planar {@link PackedModel} that has
+      the same line segments as this model.
+
+      @return a {@code ModelSpec} that {@link #isPlanar}, or {@code null}
+              if this model cannot be made planar
+   */
+   public ModelSpec planarForm()
+   {
+      if (isPlanar()) return this;
+      if (! planarGenerator(generator)) return null;
+      return new ModelSpec("Planar" + generator, n, params);
+   }
+
+
+   /**
+      Get the {@code ModelSpec} of the full precision model that
+      a planar {@code ModelSpec} is made from.
+
+      @return this {@code ModelSpec} without its {@code Planar} prefix,
+              or this {@code ModelSpec} if it is not planar
+   */
+   public ModelSpec planarBase()
+   {
+      if (! isPlanar()) return this;
+      return new ModelSpec(generator.substring("Planar".length()), n, params);
+   }
+
+
+   /**
+      Make the planar model that this {@code ModelSpec} describes out of
+      the model described by its {@link #planarBase}, which is closed if
+      it is a {@link PackedModel}.
+
+      @param base  the model built from {@link #planarBase}
+      @return a planar {@link PackedModel}
+      @throws IllegalArgumentException if {@code base} is not in one z-plane
+   */
+   public PackedModel planarFrom(final Model base)
+   {
+      final PackedModel planar = PackedModel.planar(base, PackedModel.Storage.AUTO);
+      if (base instanceof PackedModel)
+      {
+         ((PackedModel)base).close();
+      }
+      if (null == planar)
+         throw new IllegalArgumentException(this + " is not in one z-plane");
+      return planar;
+   }
+
+
+   /**
+      Does this {@code ModelSpec} describe a {@link ParametricModel}?
+
+      @return {@code true} if {@link #build} returns a {@link ParametricModel}
+   */
+   public boolean isParametric()
+   {
+      return generator.startsWith("Parametric");
+   }
+
+
+   /**
+      Does this {@code ModelSpec} describe an {@link InstancedModel}?
+
+      @return {@code true} if {@link #build} returns an {@link InstancedModel}
+   */
+   public boolean isInstanced()
+   {
+      return generator.startsWith("Instanced");
+   }
+
+
+   /**
+      Does this {@code ModelSpec} describe an {@link LSystemModel}?
+
+      @return {@code true} if {@link #build} returns an {@link LSystemModel}
+   */
+   public boolean isLSystem()
+   {
+      return generator.startsWith("LSystem");
+   }
+
+
+   /**
+      Does this {@code ModelSpec} describe a {@link Model} that draws
+      all of its line segments with a single {@link LineStrip}?
+
+      @return {@code true} if {@link #build} returns a model with one {@link LineStrip}
+   */
+   public boolean isLineStrip()
+   {
+      return "KochCurve".equals(generator) || "C_Curve".equals(generator);
+   }
+
+
+   /**
+      Get the {@code ModelSpec} of the {@link InstancedModel} that has the
+      same shape as this model, so that its limit set can be drawn by the
+      {@link fractals.pipeline.ChaosGame}.
+
+      @return a {@code ModelSpec} that {@link #isInstanced}, or {@code null}
+              if this model does not have an instanced form
+   */
+   public ModelSpec instancedForm()
+   {
+      if (isInstanced()) return this;
+      if (0 != params.length) return null; // only the usual shapes have maps
+      switch (generator)
+      {
+         case "SierpinskiTriangle": return new ModelSpec("InstancedSierpinskiTriangle", n);
+         case "BoxFractal":         return new ModelSpec("InstancedBoxFractal", n);
+         default:                   return null;
+      }
+   }
+
+
+   /**
+      The number of vertices in the model described by this {@code ModelSpec},
+      computed without building the model. The counts of very deep models
+      that do not fit in a {@code long} are given as {@link Long#MAX_VALUE}.
+
+      @return the number of vertices that {@link #build} will create
+   */
+   public long vertexCount()
+   {
+      if (isPlanar())
+      {
+         return planarBase().vertexCount();
+      }
+      if (isInstanced())
+      {
+         return 0; // an InstancedModel has no vertices, only a motif
+      }
+      if (isLSystem())
+      {
+         return 0; // an LSystemModel has no vertices, only rules
+      }
+      if (generator.startsWith("PackedLSystem"))
+      {
+         final LSystemModel model = lSystem();
+         return model.getLSystem().vertexCount(model.getLevel());
+      }
+      switch (generator)
+      {
+         case "Canopy":
+         case "ParametricCanopy":   return sat(pow(2, n + 1));
+         case "KochCurve":
+         case "PackedKochCurve":
+         case "DoubledKochCurve":   return sat(pow(4, n) + 1);
+         case "H_Tree":             return sat(pow(2, n + 2) - 2);
+         case "PackedC_Curve":      return sat(pow(2, n) + 1);
+         case "C_Curve":
+         case "DoubledC_Curve":     return (0 == n) ? 2 : sat(pow(2, n - 1) + 1);
+         case "SierpinskiTriangle":
+         case "ParametricSierpinskiTriangle": return sat((pow(3, n + 1) + 3) / 2);
+         case "BoxFractal":         return sat(3 * pow(5, n) + 1);
+         case "PythagorasTree":
+         case "PackedPythagorasTree":
+         case "ParametricPythagorasTree": return sat(3 * pow(2, n + 1) - 1);
+         default:
+            throw new IllegalArgumentException("unknown generator: " + generator);
+      }
+   }
+
+
+   /**
+      The number of line segments in the model described by this
+      {@code ModelSpec}, computed without building the model.
+
+      @return the number of line segments that {@link #build} will create
+              (or, for an {@link InstancedModel}, draw)
+   */
+   public long segmentCount()
+   {
+      if (isPlanar())
+      {
+         return planarBase().segmentCount();
+      }
+      if (isLSystem() || generator.startsWith("PackedLSystem"))
+      {
+         return lSystem().getSegmentCount();
+      }
+      switch (generator)
+      {
+         case "Canopy":
+         case "ParametricCanopy":
+         case "InstancedCanopy":    return sat(pow(2, n + 1) - 1);
+         case "KochCurve":
+         case "PackedKochCurve":
+         case "DoubledKochCurve":
+         case "InstancedKochCurve": return sat(pow(4, n));
+         case "H_Tree":
+         case "InstancedH_Tree":    return sat(pow(2, n + 1) - 1);
+         case "C_Curve":
+         case "PackedC_Curve":
+         case "DoubledC_Curve":
+         case "InstancedC_Curve":   return (0 == n) ? 0 : sat(pow(2, n - 1));
+         case "SierpinskiTriangle":
+         case "ParametricSierpinskiTriangle":
+         case "InstancedSierpinskiTriangle": return sat((pow(3, n + 2) - 3) / 2);
+         case "BoxFractal":
+         case "InstancedBoxFractal": return (0 == n) ? 4 : sat(24 * pow(5, n - 1));
+         case "PythagorasTree":
+         case "PackedPythagorasTree":
+         case "ParametricPythagorasTree": return sat(5 * pow(2, n + 1) - 4);
+         default:
+            throw new IllegalArgumentException("unknown generator: " + generator);
+      }
+   }
+
+
+   /**
+      Build the {@link Model} described by this {@code ModelSpec}.
+      <p>
+      Each build is recorded as a {@link ModelGenerationEvent}
+      when Java Flight Recorder is recording.
+
+      @return a new {@link Model}
+   */
+   public Model build()
+   {
+      final ModelGenerationEvent event = new ModelGenerationEvent();
+      event.begin();
+      final Model model = construct();
+      event.end();
+      if (event.shouldCommit())
+      {
+         event.generator = model.getClass();
+         event.n = n;
+         event.spec = toString();
+         if (model instanceof PackedModel)
+         {
+            event.vertices = ((PackedModel)model).getVertexCount();
+            event.segments = ((PackedModel)model).getSegmentCount();
+         }
+         else if (model instanceof InstancedModel)
+         {
+            event.vertices = 0;
+            event.segments = ((InstancedModel)model).getSegmentCount();
+         }
+         else if (model instanceof LSystemModel)
+         {
+            event.vertices = 0;
+            event.segments = ((LSystemModel)model).getSegmentCount();
+         }
+         else
+         {
+            event.vertices = model.vertexList.size();
+            event.segments = LineStrip.segmentCount(model);
+         }
+         event.commit();
+      }
+      return model;
+   }
+
+
+   private Model construct()
+   {
+      if (isPlanar())
+      {
+         return planarFrom(planarBase().build());
+      }
+      if (isLSystem())
+      {
+         return lSystem();
+      }
+      if (generator.startsWith("PackedLSystem"))
+      {
+         return lSystem().toPackedModel(PackedModel.Storage.AUTO);
+      }
+      final double[] p = params;
+      switch (generator)
+      {
+         case "Canopy":
+            return (1 == p.length) ? new Canopy(p[0], n)
+                                   : new Canopy(v(0), v(3), p[6], n);
+         case "KochCurve":
+            return (0 == p.length) ? new KochCurve(n)
+                                   : new KochCurve(v(0), v(3), n);
+         case "H_Tree":
+            return (0 == p.length) ? new H_Tree(n)
+                                   : new H_Tree(v(0), v(3), n);
+         case "C_Curve":
+            return (0 == p.length) ? new C_Curve(n)
+                                   : new C_Curve(v(0), v(3), n);
+         case "PackedC_Curve":
+            return (0 == p.length) ? new PackedC_Curve(n)
+                                   : new PackedC_Curve(v(0), v(3), n, PackedModel.Storage.AUTO);
+         case "PackedKochCurve":
+            return (0 == p.length) ? new PackedKochCurve(n)
+                                   : new PackedKochCurve(v(0), v(3), n, PackedModel.Storage.AUTO);
+         case "DoubledC_Curve":
+            return (0 == p.length) ? DoubledCurves.cCurve(n)
+                                   : DoubledCurves.cCurve(v(0), v(3), n, PackedModel.Storage.AUTO);
+         case "DoubledKochCurve":
+            return (0 == p.length) ? DoubledCurves.kochCurve(n)
+                                   : DoubledCurves.kochCurve(v(0), v(3), n, PackedModel.Storage.AUTO);
+         case "SierpinskiTriangle":
+            return (0 == p.length) ? new SierpinskiTriangle(n)
+                 : (1 == p.length) ? new SierpinskiTriangle(p[0], n)
+                                   : new SierpinskiTriangle(v(0), v(3), v(6), n);
+         case "BoxFractal":
+            return (0 == p.length) ? new BoxFractal(n)
+                                   : new BoxFractal(v(0), v(3), v(6), v(9), n);
+         case "PythagorasTree":
+            return (1 == p.length) ? new PythagorasTree(p[0], n)
+                 : (2 == p.length) ? new PythagorasTree(p[0], p[1], n)
+                                   : new PythagorasTree(v(0), v(3), p[6], p[7], n);
+         case "PackedPythagorasTree":
+            return (2 == p.length) ? new PackedPythagorasTree(p[0], p[1], n)
+                                   : new PackedPythagorasTree(v(0), v(3), p[6], p[7], n, PackedModel.Storage.AUTO);
+         case "ParametricCanopy":
+            return new ParametricCanopy(p[0], n);
+         case "ParametricPythagorasTree":
+            return new ParametricPythagorasTree(p[0], n);
+         case "ParametricSierpinskiTriangle":
+            return new ParametricSierpinskiTriangle((0 == p.length) ? 0.0 : p[0], n);
+         case "InstancedKochCurve":          return InstancedFractals.kochCurve(n);
+         case "InstancedC_Curve":            return InstancedFractals.cCurve(n);
+         case "InstancedH_Tree":             return InstancedFractals.hTree(n);
+         case "InstancedSierpinskiTriangle": return InstancedFractals.sierpinskiTriangle(n);
+         case "InstancedBoxFractal":         return InstancedFractals.boxFractal(n);
+         case "InstancedCanopy":             return InstancedFractals.canopy(p[0], n);
+         default:
+            throw new IllegalArgumentException("unknown generator: " + generator);
+      }
+   }
+
+
+   /**
+      The classes whose code decides what the model described by this
+      {@code ModelSpec} looks like: the generator's class, the classes it
+      builds the model with (such as {@link PackedModel} or {@link LineStrip}),
+      and this class, which chooses the generator's constructor. When
+      any of them changes, a saved copy of the model may be stale (see
+      {@link fractals.io.ModelCache}). A class's nested classes are not
+      listed, they belong to it.
+
+      @return the classes that implement this {@code ModelSpec}'s generator
+      @throws IllegalArgumentException if the generator is unknown
+   */
+   public List<Class<?>> generatorClasses()
+   {
+      if (isPlanar())
+      {
+         return planarBase().generatorClasses(); // and PackedModel, which it has
+      }
+      final List<Class<?>> classes = new ArrayList<>();
+      classes.add(ModelSpec.class);
+      classes.add(PackedModel.class);
+      classes.add(LineStrip.class);
+      if (null != lSystemName(generator))
+      {
+         classes.add(LSystems.class);
+         classes.add(LSystem.class);
+         classes.add(LSystemModel.class);
+         return classes;
+      }
+      switch (generator)
+      {
+         case "Canopy":               classes.add(Canopy.class);
+                                      classes.add(LSystems.class);
+                                      classes.add(LSystem.class); break;
+         case "KochCurve":            classes.add(KochCurve.class);
+                                      classes.add(LSystems.class);
+                                      classes.add(LSystem.class); break;
+         case "H_Tree":               classes.add(H_Tree.class);
+                                      classes.add(LSystems.class);
+                                      classes.add(LSystem.class); break;
+         case "C_Curve":              classes.add(C_Curve.class);
+                                      classes.add(LSystems.class);
+                                      classes.add(LSystem.class); break;
+         case "PackedC_Curve":        classes.add(PackedC_Curve.class); break;
+         case "PackedKochCurve":      classes.add(PackedKochCurve.class); break;
+         case "DoubledC_Curve":
+         case "DoubledKochCurve":     classes.add(DoubledCurves.class);
+                                      classes.add(DoubledCurve.class); break;
+         case "SierpinskiTriangle":   classes.add(SierpinskiTriangle.class); break;
+         case "BoxFractal":           classes.add(BoxFractal.class); break;
+         case "PythagorasTree":       classes.add(PythagorasTree.class); break;
+         case "PackedPythagorasTree": classes.add(PackedPythagorasTree.class); break;
+         case "ParametricCanopy":     classes.add(ParametricCanopy.class);
+                                      classes.add(ParametricModel.class); break;
+         case "ParametricPythagorasTree": classes.add(ParametricPythagorasTree.class);
+                                      classes.add(ParametricModel.class); break;
+         case "ParametricSierpinskiTriangle": classes.add(ParametricSierpinskiTriangle.class);
+                                      classes.add(ParametricModel.class); break;
+         case "InstancedKochCurve":
+         case "InstancedC_Curve":
+         case "InstancedH_Tree":
+         case "InstancedSierpinskiTriangle":
+         case "InstancedBoxFractal":
+         case "InstancedCanopy":      classes.add(InstancedFractals.class);
+                                      classes.add(InstancedModel.class); break;
+         default:
+            throw new IllegalArgumentException("unknown generator: " + generator);
+      }
+      return classes;
+   }
+
+
+   /**
+      The rules of an {@code LSystem} or {@code PackedLSystem} generator.
+      Building the {@link LSystemModel} only compiles its rules.
+
+      @return the generator's rules, as an {@link LSystemModel}
+   */
+   private LSystemModel lSystem()
+   {
+      switch (lSystemName(generator))
+      {
+         case "KochCurve":    return LSystems.kochCurve(n);
+         case "C_Curve":      return LSystems.cCurve(n);
+         case "H_Tree":       return LSystems.hTree(n);
+         case "Canopy":       return LSystems.canopy(params[0], n);
+         case "DragonCurve":  return LSystems.dragonCurve(n);
+         case "HilbertCurve": return LSystems.hilbertCurve(n);
+         default:
+            throw new IllegalArgumentException("unknown generator: " + generator);
+      }
+   }
+
+
+   // The name of the rules of an LSystem or PackedLSystem generator, or null.
+   private static String lSystemName(final String generator)
+   {
+      return generator.startsWith("LSystem") ? generator.substring("LSystem".length())
+           : generator.startsWith("PackedLSystem") ? generator.substring("PackedLSystem".length())
+           : null;
+   }
+
+
+   /**
+      A name for this {@code ModelSpec} that can be used in a file name,
+      for example {@code "Canopy_38_n12"}.
+
+      @return a file name friendly version of this {@code ModelSpec}
+   */
+   public String fileName()
+   {
+      final StringBuilder sb = new StringBuilder(generator);
+      for (final double d : params)
+      {
+         sb.append('_').append(format(d));
+      }
+      sb.append("_n").append(n);
+      return sb.toString();
+   }
+
+
+   @Override
+   public boolean equals(final Object o)
+   {
+      if (this == o) return true;
+      if (! (o instanceof ModelSpec)) return false;
+      final ModelSpec other = (ModelSpec)o;
+      return n == other.n
+          && generator.equals(other.generator)
+          && Arrays.equals(params, other.params);
+   }
+
+
+   @Override
+   public int hashCode()
+   {
+      return 31 * (31 * generator.hashCode() + n) + Arrays.hashCode(params);
+   }
+
+
+   /**
+      The same form that is accepted by {@link #parse}.
+
+      @return a {@link String} representation of this {@code ModelSpec}
+   */
+   @Override
+   public String toString()
+   {
+      final StringBuilder sb = new StringBuilder(generator).append('(');
+      for (final double d : params)
+      {
+         sb.append(format(d)).append(", ");
+      }
+      return sb.append(n).append(')').toString();
+   }
+
+
+   private Vertex v(final int i)
+   {
+      return new Vertex(params[i], params[i + 1], params[i + 2]);
+   }
+
+
+   // base to the power exp as a double, so that a count
+   // that overflows a long can be detected by sat().
+   private static double pow(final int base, final int exp)
+   {
+      return Math.pow(base, exp);
+   }
+
+
+   private static long sat(final double count)
+   {
+      return (count >= 0x1p62) ? Long.MAX_VALUE : (long)count;
+   }
+
+
+   private static String format(final double d)
+   {
+      return (d == Math.rint(d) && Math.abs(d) < 1e15) ? Long.toString((long)d)
+                                                       : Double.toString(d);
+   }
+
+
+   // Can the models of a generator be copied into a planar PackedModel?
+   // (The rest are not made of vertices, or must keep their own class.)
+   private static boolean planarGenerator(final String generator)
+   {
+      return ! generator.startsWith("Planar")
+          && ! generator.startsWith("Instanced")
+          && ! generator.startsWith("LSystem")
+          && ! generator.startsWith("Parametric");
+   }
+
+
+   private static void checkArity(final String generator, final int count)
+   {
+      if (generator.startsWith("Planar"))
+      {
+         final String base = generator.substring("Planar".length());
+         if (! planarGenerator(base))
+            throw new IllegalArgumentException("unknown generator: " + generator);
+         checkArity(base, count);
+         return;
+      }
+      final boolean ok;
+      switch ((null != lSystemName(generator)) ? "LSystem" + lSystemName(generator) : generator)
+      {
+         case "Canopy":             ok = (1 == count || 7 == count); break;
+         case "KochCurve":
+         case "H_Tree":
+         case "C_Curve":
+         case "PackedC_Curve":
+         case "PackedKochCurve":
+         case "DoubledC_Curve":
+         case "DoubledKochCurve":   ok = (0 == count || 6 == count); break;
+         case "SierpinskiTriangle": ok = (0 == count || 1 == count || 9 == count); break;
+         case "BoxFractal":         ok = (0 == count || 12 == count); break;
+         case "PythagorasTree":     ok = (1 == count || 2 == count || 8 == count); break;
+         case "PackedPythagorasTree": ok = (2 == count || 8 == count); break;
+         case "ParametricCanopy":
+         case "ParametricPythagorasTree": ok = (1 == count); break;
+         case "ParametricSierpinskiTriangle": ok = (0 == count || 1 == count); break;
+         case "InstancedKochCurve":
+         case "InstancedC_Curve":
+         case "InstancedH_Tree":
+         case "InstancedSierpinskiTriangle":
+         case "InstancedBoxFractal": ok = (0 == count); break;
+         case "InstancedCanopy":     ok = (1 == count); break;
+         case "LSystemKochCurve":
+         case "LSystemC_Curve":
+         case "LSystemH_Tree":
+         case "LSystemDragonCurve":
+         case "LSystemHilbertCurve": ok = (0 == count); break;
+         case "LSystemCanopy":       ok = (1 == count); break;
+         default:
+            throw new IllegalArgumentException("unknown generator: " + generator);
+      }
+      if (! ok)
+         throw new IllegalArgumentException(generator + " does not take "
+                                            + count + " parameters");
+   }
+}//ModelSpec
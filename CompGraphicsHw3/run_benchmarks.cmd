@@ -0,0 +1,8 @@
+rem  Run all of the benchmarks and save the results in benchmarks\results.json.
+rem  Run only some of them by giving a regular expression, for example
+rem     run_benchmarks.cmd  Pipeline
+rem  Compare the results of two runs with
+rem     java -cp benchmarks\classes  fractals.bench.CompareResults  old.json  benchmarks\results.json
+
+java -cp benchmarks\classes;.;renderer_2.jar;benchmarks\lib\*  org.openjdk.jmh.Main  -rf json -rff benchmarks\results.json  -prof gc  %*
+pause